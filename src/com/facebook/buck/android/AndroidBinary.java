@@ -227,6 +227,8 @@ public class AndroidBinary
   @AddToRuleKey
   private final Optional<Integer> xzCompressionLevel;
   @AddToRuleKey
+  private final Optional<Integer> xzCompressionThreads;
+  @AddToRuleKey
   private final Optional<Boolean> packageAssetLibraries;
   @AddToRuleKey
   private final Optional<Boolean> compressAssetLibraries;
@@ -269,6 +271,7 @@ public class AndroidBinary
       Optional<SourcePath> dexReorderToolFile,
       Optional<SourcePath> dexReorderDataDumpFile,
       Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzCompressionThreads,
       ListeningExecutorService dxExecutorService,
       Optional<Boolean> packageAssetLibraries,
       Optional<Boolean> compressAssetLibraries,
@@ -307,6 +310,7 @@ public class AndroidBinary
     this.dexReorderDataDumpFile = dexReorderDataDumpFile;
     this.dxExecutorService = dxExecutorService;
     this.xzCompressionLevel = xzCompressionLevel;
+    this.xzCompressionThreads = xzCompressionThreads;
     this.packageAssetLibraries = packageAssetLibraries;
     this.compressAssetLibraries = compressAssetLibraries;
     this.skipProguard = skipProguard;
@@ -700,7 +704,8 @@ public class AndroidBinary
               getProjectFilesystem(),
               libOutputBlob,
               libSubdirectory.resolve(SOLID_COMPRESSED_ASSET_LIBRARY_FILENAME),
-              compressionLevel));
+              compressionLevel,
+              xzCompressionThreads.orElse(1).intValue()));
     }
   }
 
@@ -1202,7 +1207,8 @@ public class AndroidBinary
         successDir,
         dxOptions,
         dxExecutorService,
-        xzCompressionLevel);
+        xzCompressionLevel,
+        xzCompressionThreads);
     steps.add(smartDexingCommand);
 
     if (isReorderingClasses()) {
@@ -155,6 +155,13 @@ public class AndroidBinaryDescription
         params = params.copyWithBuildTarget(BuildTarget.of(target.getUnflavoredBuildTarget()));
       }
 
+      if (args.xzCompressionThreads.isPresent() && args.xzCompressionThreads.get() < 1) {
+        throw new HumanReadableException(
+            "In %s, xz_compression_threads must be at least 1 but was %d.",
+            params.getBuildTarget(),
+            args.xzCompressionThreads.get());
+      }
+
       BuildRule keystore = resolver.getRule(args.keystore);
       if (!(keystore instanceof Keystore)) {
         throw new HumanReadableException(
@@ -233,6 +240,7 @@ public class AndroidBinaryDescription
           args.buildConfigValues,
           args.buildConfigValuesFile,
           Optional.empty(),
+          Optional.empty(),
           args.trimResourceIds.orElse(false),
           args.keepResourcePattern,
           nativePlatforms,
@@ -308,6 +316,7 @@ public class AndroidBinaryDescription
           args.dexReorderToolFile,
           args.dexReorderDataDumpFile,
           args.xzCompressionLevel,
+          args.xzCompressionThreads,
           dxExecutorService,
           args.packageAssetLibraries,
           args.compressAssetLibraries,
@@ -417,6 +426,7 @@ public class AndroidBinaryDescription
     public Optional<SourcePath> dexReorderToolFile;
     public Optional<SourcePath> dexReorderDataDumpFile;
     public Optional<Integer> xzCompressionLevel;
+    public Optional<Integer> xzCompressionThreads;
     public Optional<Boolean> packageAssetLibraries;
     public Optional<Boolean> compressAssetLibraries;
     public Map<String, List<Pattern>> nativeLibraryMergeMap = ImmutableMap.of();
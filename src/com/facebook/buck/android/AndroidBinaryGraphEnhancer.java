@@ -118,6 +118,7 @@ public class AndroidBinaryGraphEnhancer {
   private final BuildConfigFields buildConfigValues;
   private final Optional<SourcePath> buildConfigValuesFile;
   private final Optional<Integer> xzCompressionLevel;
+  private final Optional<Integer> xzCompressionThreads;
   private final AndroidNativeLibsPackageableGraphEnhancer nativeLibsEnhancer;
   private final APKModuleGraph apkModuleGraph;
   private final ListeningExecutorService dxExecutorService;
@@ -146,6 +147,7 @@ public class AndroidBinaryGraphEnhancer {
       BuildConfigFields buildConfigValues,
       Optional<SourcePath> buildConfigValuesFile,
       Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzCompressionThreads,
       boolean trimResourceIds,
       Optional<String> keepResourcePattern,
       ImmutableMap<TargetCpuType, NdkCxxPlatform> nativePlatforms,
@@ -185,6 +187,7 @@ public class AndroidBinaryGraphEnhancer {
     this.buildConfigValuesFile = buildConfigValuesFile;
     this.dxExecutorService = dxExecutorService;
     this.xzCompressionLevel = xzCompressionLevel;
+    this.xzCompressionThreads = xzCompressionThreads;
     this.trimResourceIds = trimResourceIds;
     this.keepResourcePattern = keepResourcePattern;
     this.nativeLibraryMergeCodeGenerator = nativeLibraryMergeCodeGenerator;
@@ -626,7 +629,8 @@ public class AndroidBinaryGraphEnhancer {
         allPreDexDeps,
         dexForUberRDotJava,
         dxExecutorService,
-        xzCompressionLevel);
+        xzCompressionLevel,
+        xzCompressionThreads);
     ruleResolver.addToIndex(preDexMerge);
 
     return preDexMerge;
@@ -659,29 +663,23 @@ public class AndroidBinaryGraphEnhancer {
         continue;
       }
 
-      // See whether the corresponding IntermediateDexRule has already been added to the
-      // ruleResolver.
+      // The IntermediateDexRule is shared by all the binaries depending on the library, so reuse
+      // it if it has already been added to the ruleResolver.
       BuildTarget originalTarget = javaLibrary.getBuildTarget();
       BuildTarget preDexTarget = BuildTarget.builder(originalTarget)
           .addFlavors(DEX_FLAVOR)
           .build();
-      Optional<BuildRule> preDexRule = ruleResolver.getRuleOptional(preDexTarget);
-      if (preDexRule.isPresent()) {
-        preDexDeps.put(
-            apkModuleGraph.findModuleForTarget(buildTarget),
-            (DexProducedFromJavaLibrary) preDexRule.get());
-        continue;
-      }
-
-      // Create the IntermediateDexRule and add it to both the ruleResolver and preDexDeps.
-      BuildRuleParams paramsForPreDex = buildRuleParams.copyWithChanges(
+      DexProducedFromJavaLibrary preDex = ruleResolver.computeIfAbsent(
           preDexTarget,
-          Suppliers.ofInstance(
-              ImmutableSortedSet.of(ruleResolver.getRule(javaLibrary.getBuildTarget()))),
-          /* extraDeps */ Suppliers.ofInstance(ImmutableSortedSet.of()));
-      DexProducedFromJavaLibrary preDex =
-          new DexProducedFromJavaLibrary(paramsForPreDex, pathResolver, javaLibrary);
-      ruleResolver.addToIndex(preDex);
+          DexProducedFromJavaLibrary.class,
+          () -> new DexProducedFromJavaLibrary(
+              buildRuleParams.copyWithChanges(
+                  preDexTarget,
+                  Suppliers.ofInstance(
+                      ImmutableSortedSet.of(ruleResolver.getRule(javaLibrary.getBuildTarget()))),
+                  /* extraDeps */ Suppliers.ofInstance(ImmutableSortedSet.of())),
+              pathResolver,
+              javaLibrary));
       preDexDeps.put(apkModuleGraph.findModuleForTarget(buildTarget), preDex);
     }
     return preDexDeps.build();
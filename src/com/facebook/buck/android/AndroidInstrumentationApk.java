@@ -87,6 +87,7 @@ public class AndroidInstrumentationApk extends AndroidBinary {
         Optional.empty(),
         Optional.empty(),
         Optional.empty(),
+        Optional.empty(),
         dxExecutorService,
         Optional.empty(),
         Optional.empty(),
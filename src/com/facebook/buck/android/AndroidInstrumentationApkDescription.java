@@ -140,6 +140,7 @@ public class AndroidInstrumentationApkDescription
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFile */ Optional.empty(),
         /* xzCompressionLevel */ Optional.empty(),
+        /* xzCompressionThreads */ Optional.empty(),
         /* trimResourceIds */ false,
         /* keepResourcePattern */ Optional.empty(),
         nativePlatforms,
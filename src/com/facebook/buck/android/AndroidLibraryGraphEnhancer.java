@@ -109,6 +109,16 @@ public class AndroidLibraryGraphEnhancer {
       return Optional.empty();
     }
 
+    return Optional.of(
+        ruleResolver.computeIfAbsent(
+            dummyRDotJavaBuildTarget,
+            DummyRDotJava.class,
+            () -> createDummyRDotJava(ruleResolver, androidResourceDeps)));
+  }
+
+  private DummyRDotJava createDummyRDotJava(
+      BuildRuleResolver ruleResolver,
+      ImmutableSet<HasAndroidResourceDeps> androidResourceDeps) {
     SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(ruleResolver);
     SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
 
@@ -123,7 +133,7 @@ public class AndroidLibraryGraphEnhancer {
     BuildTarget abiJarTarget =
         dummyRDotJavaParams.getBuildTarget().withAppendedFlavors(CalculateAbi.FLAVOR);
 
-    DummyRDotJava dummyRDotJava = new DummyRDotJava(
+    return new DummyRDotJava(
         dummyRDotJavaParams,
         pathResolver,
         ruleFinder,
@@ -133,9 +143,6 @@ public class AndroidLibraryGraphEnhancer {
         forceFinalResourceIds,
         resourceUnionPackage,
         finalRName);
-    ruleResolver.addToIndex(dummyRDotJava);
-
-    return Optional.of(dummyRDotJava);
   }
 
   public CalculateAbi getBuildableForAndroidResourcesAbi(
@@ -370,28 +370,21 @@ public class AndroidNativeLibsPackageableGraphEnhancer {
           .addFlavors(ImmutableFlavor.of(Flavor.replaceInvalidCharacters(targetCpuType.name())))
           .build();
 
-      Optional<BuildRule> previouslyCreated = ruleResolver.getRuleOptional(targetForStripRule);
-      StripLinkable stripLinkable;
-      if (previouslyCreated.isPresent()) {
-        stripLinkable = (StripLinkable) previouslyCreated.get();
-      } else {
-        BuildRuleParams paramsForStripLinkable = buildRuleParams.copyWithChanges(
-            targetForStripRule,
-            Suppliers.ofInstance(
-                ImmutableSortedSet.<BuildRule>naturalOrder()
-                    .addAll(ruleFinder.filterBuildRuleInputs(ImmutableList.of(sourcePath)))
-                    .build()),
-            /* extraDeps */ Suppliers.ofInstance(ImmutableSortedSet.of()));
-
-        stripLinkable = new StripLinkable(
-            paramsForStripLinkable,
-            pathResolver,
-            platform.getCxxPlatform().getStrip(),
-            sourcePath,
-            sharedLibrarySoName);
-
-        ruleResolver.addToIndex(stripLinkable);
-      }
+      StripLinkable stripLinkable = ruleResolver.computeIfAbsent(
+          targetForStripRule,
+          StripLinkable.class,
+          () -> new StripLinkable(
+              buildRuleParams.copyWithChanges(
+                  targetForStripRule,
+                  Suppliers.ofInstance(
+                      ImmutableSortedSet.<BuildRule>naturalOrder()
+                          .addAll(ruleFinder.filterBuildRuleInputs(ImmutableList.of(sourcePath)))
+                          .build()),
+                  /* extraDeps */ Suppliers.ofInstance(ImmutableSortedSet.of())),
+              pathResolver,
+              platform.getCxxPlatform().getStrip(),
+              sourcePath,
+              sharedLibrarySoName));
       result.put(
           stripLinkable,
           StrippedObjectDescription.builder()
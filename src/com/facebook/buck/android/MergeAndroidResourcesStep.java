@@ -27,6 +27,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.MoreCollectors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
@@ -42,6 +43,7 @@ import com.google.common.collect.TreeMultimap;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -312,6 +314,31 @@ public class MergeAndroidResourcesStep implements Step {
     }
   }
 
+  /**
+   * Reads a symbols file and parses each line as a resource.
+   */
+  private static ImmutableList<RDotTxtEntry> readSymbolsFile(
+      Path symbolsFile,
+      ProjectFilesystem filesystem) {
+    List<String> linesInSymbolsFile;
+    try {
+      linesInSymbolsFile =
+          FluentIterable.from(filesystem.readLines(symbolsFile))
+              .filter(input -> !Strings.isNullOrEmpty(input))
+              .toList();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    ImmutableList.Builder<RDotTxtEntry> resources = ImmutableList.builder();
+    for (String line : linesInSymbolsFile) {
+      Optional<RDotTxtEntry> parsedEntry = RDotTxtEntry.parse(line);
+      Preconditions.checkState(parsedEntry.isPresent(), "Should be able to match '%s'.", line);
+      resources.add(parsedEntry.get());
+    }
+    return resources.build();
+  }
+
   @VisibleForTesting
   static SortedSetMultimap<String, RDotTxtEntry> sortSymbols(
       Map<Path, String> symbolsFileToRDotJavaPackage,
@@ -333,29 +360,21 @@ public class MergeAndroidResourcesStep implements Step {
     SortedSetMultimap<String, RDotTxtEntry> rDotJavaPackageToSymbolsFiles = TreeMultimap.create();
     SortedSetMultimap<RDotTxtEntry, Path> bannedDuplicateResourceToSymbolsFiles =
         TreeMultimap.create();
+    // Reading and parsing the symbols files doesn't depend on the order they are read in, so is
+    // done for all of them at once. Ids are then handed out in the order of the files, as before.
+    ImmutableList<ImmutableList<RDotTxtEntry>> symbols = symbolsFileToRDotJavaPackage.keySet()
+        .parallelStream()
+        .map(symbolsFile -> readSymbolsFile(symbolsFile, filesystem))
+        .collect(MoreCollectors.toImmutableList());
+    int symbolsFileIndex = 0;
     for (Map.Entry<Path, String> entry : symbolsFileToRDotJavaPackage.entrySet()) {
       Path symbolsFile = entry.getKey();
-      // Read the symbols file and parse each line as a Resource.
-      List<String> linesInSymbolsFile;
-      try {
-        linesInSymbolsFile =
-            FluentIterable.from(filesystem.readLines(symbolsFile))
-                .filter(input -> !Strings.isNullOrEmpty(input))
-                .toList();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
-
       String packageName = entry.getValue();
-      for (String line : linesInSymbolsFile) {
-        Optional<RDotTxtEntry> parsedEntry = RDotTxtEntry.parse(line);
-        Preconditions.checkState(parsedEntry.isPresent(), "Should be able to match '%s'.", line);
-
+      for (RDotTxtEntry resource : symbols.get(symbolsFileIndex++)) {
         // We're only doing the remapping so Roboelectric is happy and it is already ignoring the
         // id references found in the styleable section.  So let's do that as well so we don't have
         // to get fancier than is needed.  That is, just re-enumerate all app-level resource ids
         // and ignore everything else, allowing the styleable references to be messed up.
-        RDotTxtEntry resource = parsedEntry.get();
         if (uberRDotTxtIds.isPresent()) {
           Preconditions.checkNotNull(finalIds);
           if (!finalIds.containsKey(resource)) {
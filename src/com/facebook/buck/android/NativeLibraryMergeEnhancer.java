@@ -767,33 +767,32 @@ class NativeLibraryMergeEnhancer {
 
       String soname = getSoname(cxxPlatform);
       BuildTarget target = getBuildTargetForPlatform(cxxPlatform);
-      Optional<BuildRule> ruleOptional = ruleResolver.getRuleOptional(target);
-      if (!ruleOptional.isPresent()) {
-        CxxLink rule = CxxLinkableEnhancer.createCxxLinkableBuildRule(
-            cxxBuckConfig,
-            cxxPlatform,
-            baseBuildRuleParams,
-            ruleResolver,
-            pathResolver,
-            ruleFinder,
-            target,
-            Linker.LinkType.SHARED,
-            Optional.of(soname),
-            BuildTargets.getGenPath(
-                baseBuildRuleParams.getProjectFilesystem(),
-                target,
-                "%s/" + getSoname(cxxPlatform)),
-            // Android Binaries will use share deps by default.
-            Linker.LinkableDepType.SHARED,
-            Iterables.concat(
-                getNativeLinkableDepsForPlatform(cxxPlatform),
-                getNativeLinkableExportedDepsForPlatform(cxxPlatform)),
-            Optional.empty(),
-            Optional.empty(),
-            ImmutableSet.of(),
-            getImmediateNativeLinkableInput(cxxPlatform));
-        ruleResolver.addToIndex(rule);
-      }
+      ruleResolver.computeIfAbsent(
+          target,
+          CxxLink.class,
+          () -> CxxLinkableEnhancer.createCxxLinkableBuildRule(
+              cxxBuckConfig,
+              cxxPlatform,
+              baseBuildRuleParams,
+              ruleResolver,
+              pathResolver,
+              ruleFinder,
+              target,
+              Linker.LinkType.SHARED,
+              Optional.of(soname),
+              BuildTargets.getGenPath(
+                  baseBuildRuleParams.getProjectFilesystem(),
+                  target,
+                  "%s/" + getSoname(cxxPlatform)),
+              // Android Binaries will use share deps by default.
+              Linker.LinkableDepType.SHARED,
+              Iterables.concat(
+                  getNativeLinkableDepsForPlatform(cxxPlatform),
+                  getNativeLinkableExportedDepsForPlatform(cxxPlatform)),
+              Optional.empty(),
+              Optional.empty(),
+              ImmutableSet.of(),
+              getImmediateNativeLinkableInput(cxxPlatform)));
       return ImmutableMap.of(
           soname,
           new BuildTargetSourcePath(target)
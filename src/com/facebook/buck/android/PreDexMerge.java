@@ -101,6 +101,8 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
   private final ListeningExecutorService dxExecutorService;
   private final BuildOutputInitializer<BuildOutput> buildOutputInitializer;
   private final Optional<Integer> xzCompressionLevel;
+  @AddToRuleKey
+  private final Optional<Integer> xzCompressionThreads;
 
   public PreDexMerge(
       BuildRuleParams params,
@@ -111,7 +113,8 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
       ImmutableMultimap<APKModule, DexProducedFromJavaLibrary> preDexDeps,
       DexProducedFromJavaLibrary dexForUberRDotJava,
       ListeningExecutorService dxExecutorService,
-      Optional<Integer> xzCompressionLevel) {
+      Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzCompressionThreads) {
     super(params, resolver);
     this.primaryDexPath = primaryDexPath;
     this.dexSplitMode = dexSplitMode;
@@ -121,6 +124,7 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
     this.dxExecutorService = dxExecutorService;
     this.buildOutputInitializer = new BuildOutputInitializer<>(params.getBuildTarget(), this);
     this.xzCompressionLevel = xzCompressionLevel;
+    this.xzCompressionThreads = xzCompressionThreads;
   }
 
   @Override
@@ -272,7 +276,8 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
             paths.successDir,
             DX_MERGE_OPTIONS,
             dxExecutorService,
-            xzCompressionLevel));
+            xzCompressionLevel,
+            xzCompressionThreads));
 
     // Record the primary dex SHA1 so exopackage apks can use it to compute their ABI keys.
     // Single dex apks cannot be exopackages, so they will never need ABI keys.
@@ -88,6 +88,7 @@ public class SmartDexingStep implements Step {
   private final EnumSet<DxStep.Option> dxOptions;
   private final ListeningExecutorService executorService;
   private final Optional<Integer> xzCompressionLevel;
+  private final Optional<Integer> xzCompressionThreads;
 
   /**
    * @param primaryOutputPath Path for the primary dex artifact.
@@ -112,7 +113,8 @@ public class SmartDexingStep implements Step {
       Path successDir,
       EnumSet<Option> dxOptions,
       ListeningExecutorService executorService,
-      Optional<Integer> xzCompressionLevel) {
+      Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzCompressionThreads) {
     this.filesystem = filesystem;
     this.outputToInputsSupplier = Suppliers.memoize(
         () -> {
@@ -129,6 +131,7 @@ public class SmartDexingStep implements Step {
     this.dxOptions = dxOptions;
     this.executorService = executorService;
     this.xzCompressionLevel = xzCompressionLevel;
+    this.xzCompressionThreads = xzCompressionThreads;
   }
 
   public static int determineOptimalThreadCount() {
@@ -173,17 +176,12 @@ public class SmartDexingStep implements Step {
                 filesystem,
                 ImmutableList.copyOf(secondaryDexJars),
                 secondaryBlobOutput);
-            Step xzStep;
-
-            if (xzCompressionLevel.isPresent()) {
-              xzStep = new XzStep(
-                  filesystem,
-                  secondaryBlobOutput,
-                  secondaryCompressedBlobOutput,
-                  xzCompressionLevel.get().intValue());
-            } else {
-              xzStep = new XzStep(filesystem, secondaryBlobOutput, secondaryCompressedBlobOutput);
-            }
+            Step xzStep = new XzStep(
+                filesystem,
+                secondaryBlobOutput,
+                secondaryCompressedBlobOutput,
+                xzCompressionLevel.orElse(XzStep.DEFAULT_COMPRESSION_LEVEL).intValue(),
+                xzCompressionThreads.orElse(1).intValue());
             stepRunner.runStepForBuildTarget(context, concatStep, Optional.empty());
             stepRunner.runStepForBuildTarget(context, xzStep, Optional.empty());
           }
@@ -285,7 +283,8 @@ public class SmartDexingStep implements Step {
               outputFile,
               successDir.resolve(outputFile.getFileName()),
               dxOptions,
-              xzCompressionLevel));
+              xzCompressionLevel,
+              xzCompressionThreads));
     }
 
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
@@ -318,6 +317,7 @@ public class SmartDexingStep implements Step {
     @Nullable
     private String newInputsHash;
     private final Optional<Integer> xzCompressionLevel;
+    private final Optional<Integer> xzCompressionThreads;
 
     public DxPseudoRule(
         ProjectFilesystem filesystem,
@@ -326,7 +326,8 @@ public class SmartDexingStep implements Step {
         Path outputPath,
         Path outputHashPath,
         EnumSet<Option> dxOptions,
-        Optional<Integer> xzCompressionLevel) {
+        Optional<Integer> xzCompressionLevel,
+        Optional<Integer> xzCompressionThreads) {
       this.filesystem = filesystem;
       this.dexInputHashes = ImmutableMap.copyOf(dexInputHashes);
       this.srcs = ImmutableSet.copyOf(srcs);
@@ -334,6 +335,7 @@ public class SmartDexingStep implements Step {
       this.outputHashPath = outputHashPath;
       this.dxOptions = dxOptions;
       this.xzCompressionLevel = xzCompressionLevel;
+      this.xzCompressionThreads = xzCompressionThreads;
     }
 
     /**
@@ -385,7 +387,8 @@ public class SmartDexingStep implements Step {
               srcs,
               outputPath,
               dxOptions,
-              xzCompressionLevel));
+              xzCompressionLevel,
+              xzCompressionThreads));
       steps.add(
           new WriteFileStep(filesystem, newInputsHash, outputHashPath, /* executable */ false));
 
@@ -408,7 +411,8 @@ public class SmartDexingStep implements Step {
       Collection<Path> filesToDex,
       Path outputPath,
       EnumSet<Option> dxOptions,
-      Optional<Integer> xzCompressionLevel) {
+      Optional<Integer> xzCompressionLevel,
+      Optional<Integer> xzCompressionThreads) {
 
     String output = outputPath.toString();
     List<Step> steps = Lists.newArrayList();
@@ -433,11 +437,12 @@ public class SmartDexingStep implements Step {
               repackedJar,
               repackedJar.resolveSibling(
                   repackedJar.getFileName() + ".meta")));
-      if (xzCompressionLevel.isPresent()) {
-        steps.add(new XzStep(filesystem, repackedJar, xzCompressionLevel.get().intValue()));
-      } else {
-        steps.add(new XzStep(filesystem, repackedJar));
-      }
+      steps.add(
+          new XzStep(
+              filesystem,
+              repackedJar,
+              xzCompressionLevel.orElse(XzStep.DEFAULT_COMPRESSION_LEVEL).intValue(),
+              xzCompressionThreads.orElse(1).intValue()));
     } else if (DexStore.XZS.matchesPath(outputPath)) {
       // Essentially the same logic as the XZ case above, except we compress later.
       // The differences in output file names make it worth separating into a different case.
@@ -27,7 +27,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
-import com.facebook.buck.util.XmlDomParser;
+import com.facebook.buck.util.MoreCollectors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
@@ -39,24 +39,25 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * Step which parses resources in an android {@code res} directory and compiles them into a
@@ -74,15 +75,16 @@ public class MiniAapt implements Step {
   private static final String ITEM_TAG = "item";
   private static final String CUSTOM_DRAWABLE_PREFIX = "app-";
 
-  private static final XPathExpression ANDROID_ID_USAGE =
-      createExpression("//@*[starts-with(., '@') and " +
-              "not(starts-with(., '@+')) and " +
-              "not(starts-with(., '@android:')) and " +
-              "not(starts-with(., '@null'))]");
-
-  private static final XPathExpression ANDROID_ID_DEFINITION =
-      createExpression("//@*[starts-with(., '@+') and " +
-              "not(starts-with(., '@+android:id'))]");
+  /**
+   * Resource files are parsed on several threads at once, and factories aren't guaranteed to be
+   * safe to use from more than one of them.
+   */
+  private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY =
+      ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        return factory;
+      });
 
   private static final ImmutableMap<String, RType> RESOURCE_TYPES = getResourceTypes();
   private static final ImmutableSet<String> IGNORED_TAGS = ImmutableSet.of(
@@ -132,14 +134,6 @@ public class MiniAapt implements Step {
     this.isGrayscaleImageProcessingEnabled = isGrayscaleImageProcessingEnabled;
   }
 
-  private static XPathExpression createExpression(String expressionStr) {
-    try {
-      return XPathFactory.newInstance().newXPath().compile(expressionStr);
-    } catch (XPathExpressionException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
   private static ImmutableMap<String, RType> getResourceTypes() {
     ImmutableMap.Builder<String, RType> types = ImmutableMap.builder();
     for (RType rType : RType.values()) {
@@ -163,7 +157,7 @@ public class MiniAapt implements Step {
     try {
       collectResources(filesystem, context.getBuckEventBus());
       processXmlFilesForIds(filesystem, references);
-    } catch (IOException | XPathExpressionException | ResourceParseException e) {
+    } catch (IOException | ResourceParseException e) {
       context.logError(e, "Error parsing resources to generate resource IDs for %s.", resDirectory);
       return StepExecutionResult.ERROR;
     }
@@ -255,6 +249,7 @@ public class MiniAapt implements Step {
       throws IOException, ResourceParseException {
     Collection<Path> contents = filesystem.getDirectoryContents(
         resolver.getAbsolutePath(resDirectory));
+    List<ResourceFileParser<List<ResourceAddition>>> parsers = new ArrayList<>();
     for (Path dir : contents) {
       if (!filesystem.isDirectory(dir) && !filesystem.isIgnored(dir)) {
         if (!shouldIgnoreFile(dir, filesystem)) {
@@ -268,16 +263,27 @@ public class MiniAapt implements Step {
         if (!isAValuesDir(dirname)) {
           throw new ResourceParseException("'%s' is not a valid values directory.", dir);
         }
-        processValues(filesystem, eventBus, dir);
+        addValuesParsers(filesystem, eventBus, dir, parsers);
       } else {
-        processFileNamesInDirectory(filesystem, dir);
+        addFileNameParsers(filesystem, dir, parsers);
       }
 
     }
+    addResources(parseAll(parsers));
   }
 
   void processFileNamesInDirectory(ProjectFilesystem filesystem, Path dir)
       throws IOException, ResourceParseException {
+    List<ResourceFileParser<List<ResourceAddition>>> parsers = new ArrayList<>();
+    addFileNameParsers(filesystem, dir, parsers);
+    addResources(parseAll(parsers));
+  }
+
+  private void addFileNameParsers(
+      ProjectFilesystem filesystem,
+      Path dir,
+      List<ResourceFileParser<List<ResourceAddition>>> parsers)
+      throws IOException, ResourceParseException {
     String dirname = dir.getFileName().toString();
     int dashIndex = dirname.indexOf('-');
     if (dashIndex != -1) {
@@ -299,17 +305,21 @@ public class MiniAapt implements Step {
 
       RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(dirname));
       if (rType == RType.DRAWABLE) {
-        processDrawables(filesystem, resourceFile);
+        parsers.add(() -> parseDrawable(filesystem, resourceFile));
       } else {
-        resourceCollector.addIntResourceIfNotPresent(
-            rType,
-            resourceName);
+        parsers.add(() -> ImmutableList.of(
+            collector -> collector.addIntResourceIfNotPresent(rType, resourceName)));
       }
     }
   }
 
   void processDrawables(ProjectFilesystem filesystem, Path resourceFile)
       throws IOException, ResourceParseException {
+    addResources(ImmutableList.of(parseDrawable(filesystem, resourceFile)));
+  }
+
+  private List<ResourceAddition> parseDrawable(ProjectFilesystem filesystem, Path resourceFile)
+      throws IOException, ResourceParseException {
     String filename = resourceFile.getFileName().toString();
     int dotIndex = filename.indexOf('.');
     String resourceName = dotIndex != -1 ? filename.substring(0, dotIndex) : filename;
@@ -319,29 +329,50 @@ public class MiniAapt implements Step {
     boolean isCustomDrawable = false;
     if (filename.endsWith(".xml")) {
       try (InputStream stream = filesystem.newFileInputStream(resourceFile)) {
-        Document dom = parseXml(resourceFile, stream);
-        Element root = dom.getDocumentElement();
-        isCustomDrawable = root.getNodeName().startsWith(CUSTOM_DRAWABLE_PREFIX);
+        XMLStreamReader reader = createXmlReader(resourceFile, stream);
+        try {
+          nextChildElement(reader);
+          isCustomDrawable = getName(reader).startsWith(CUSTOM_DRAWABLE_PREFIX);
+        } finally {
+          reader.close();
+        }
+      } catch (XMLStreamException e) {
+        throw createParseException(resourceFile, e);
       }
     } else if (isGrayscaleImageProcessingEnabled) {
       isGrayscaleImage = filename.endsWith(".g.png");
     }
 
     if (isCustomDrawable) {
-      resourceCollector.addCustomDrawableResourceIfNotPresent(
-          RType.DRAWABLE,
-          resourceName);
+      return ImmutableList.of(
+          collector -> collector.addCustomDrawableResourceIfNotPresent(
+              RType.DRAWABLE,
+              resourceName));
     } else if (isGrayscaleImage) {
-      resourceCollector.addGrayscaleImageResourceIfNotPresent(RType.DRAWABLE, resourceName);
+      return ImmutableList.of(
+          collector -> collector.addGrayscaleImageResourceIfNotPresent(
+              RType.DRAWABLE,
+              resourceName));
     } else {
-      resourceCollector.addIntResourceIfNotPresent(
-          RType.DRAWABLE,
-          resourceName);
+      return ImmutableList.of(
+          collector -> collector.addIntResourceIfNotPresent(
+              RType.DRAWABLE,
+              resourceName));
     }
   }
 
   void processValues(ProjectFilesystem filesystem, BuckEventBus eventBus, Path valuesDir)
       throws IOException, ResourceParseException {
+    List<ResourceFileParser<List<ResourceAddition>>> parsers = new ArrayList<>();
+    addValuesParsers(filesystem, eventBus, valuesDir, parsers);
+    addResources(parseAll(parsers));
+  }
+
+  private void addValuesParsers(
+      ProjectFilesystem filesystem,
+      BuckEventBus eventBus,
+      Path valuesDir,
+      List<ResourceFileParser<List<ResourceAddition>>> parsers) throws IOException {
     for (Path path : filesystem.getFilesUnderPath(valuesDir)) {
       if (shouldIgnoreFile(path, filesystem)) {
         continue;
@@ -350,7 +381,7 @@ public class MiniAapt implements Step {
         eventBus.post(ConsoleEvent.warning("MiniAapt [warning]: ignoring non-file '%s'.", path));
         continue;
       }
-      processValuesFile(filesystem, path);
+      parsers.add(() -> parseValuesFile(filesystem, path));
     }
   }
 
@@ -380,93 +411,118 @@ public class MiniAapt implements Step {
   @VisibleForTesting
   void processValuesFile(ProjectFilesystem filesystem, Path valuesFile)
       throws IOException, ResourceParseException {
+    addResources(ImmutableList.of(parseValuesFile(filesystem, valuesFile)));
+  }
+
+  private static List<ResourceAddition> parseValuesFile(
+      ProjectFilesystem filesystem,
+      Path valuesFile) throws IOException, ResourceParseException {
+    ImmutableList.Builder<ResourceAddition> additions = ImmutableList.builder();
     try (InputStream stream = filesystem.newFileInputStream(valuesFile)) {
-      Document dom = parseXml(valuesFile, stream);
-      Element root = dom.getDocumentElement();
-
-      // Exclude resources annotated with the attribute {@code exclude-from-resource-map}.
-      // This is useful to exclude using generated strings to build the
-      // resource map, which ensures a build break will show up at build time
-      // rather than being hidden until generated resources are updated.
-      if (root.getAttribute("exclude-from-buck-resource-map").equals("true")) {
-        return;
-      }
+      XMLStreamReader reader = createXmlReader(valuesFile, stream);
+      try {
+        if (!nextChildElement(reader)) {
+          return ImmutableList.of();
+        }
 
-      for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
-        if (node.getNodeType() != Node.ELEMENT_NODE) {
-          continue;
+        // Exclude resources annotated with the attribute {@code exclude-from-resource-map}.
+        // This is useful to exclude using generated strings to build the
+        // resource map, which ensures a build break will show up at build time
+        // rather than being hidden until generated resources are updated.
+        if ("true".equals(getAttribute(reader, "exclude-from-buck-resource-map"))) {
+          return ImmutableList.of();
         }
 
-        String resourceType = node.getNodeName();
-        if (resourceType.equals(ITEM_TAG)) {
-          Node typeNode = node.getAttributes().getNamedItem("type");
-          if (typeNode == null) {
-            throw new ResourceParseException(
-                "Error parsing file '%s', expected a 'type' attribute in: \n'%s'\n",
-                valuesFile,
-                node.toString());
+        while (nextChildElement(reader)) {
+          String resourceType = getName(reader);
+          if (resourceType.equals(ITEM_TAG)) {
+            String type = getAttribute(reader, "type");
+            if (type == null) {
+              throw new ResourceParseException(
+                  "Error parsing file '%s', expected a 'type' attribute in: \n'%s'\n",
+                  valuesFile,
+                  "<" + resourceType + ">");
+            }
+            resourceType = type;
           }
-          resourceType = typeNode.getNodeValue();
-        }
 
-        if (IGNORED_TAGS.contains(resourceType)) {
-          continue;
-        }
+          if (IGNORED_TAGS.contains(resourceType)) {
+            skipElement(reader);
+            continue;
+          }
 
-        if (!RESOURCE_TYPES.containsKey(resourceType)) {
-          throw new ResourceParseException(
-              "Invalid resource type '<%s>' in '%s'.",
-              resourceType,
-              valuesFile);
-        }
+          if (!RESOURCE_TYPES.containsKey(resourceType)) {
+            throw new ResourceParseException(
+                "Invalid resource type '<%s>' in '%s'.",
+                resourceType,
+                valuesFile);
+          }
 
-        RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(resourceType));
-        addToResourceCollector(node, rType);
+          RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(resourceType));
+          parseValuesResource(reader, rType, additions);
+        }
+      } finally {
+        reader.close();
       }
+    } catch (XMLStreamException e) {
+      throw createParseException(valuesFile, e);
     }
+    return additions.build();
   }
 
-  private void addToResourceCollector(Node node, RType rType) throws ResourceParseException {
-    String resourceName = sanitizeName(extractNameAttribute(node));
+  /**
+   * Reads the resource whose start tag {@code reader} is on, up to and including its end tag.
+   */
+  private static void parseValuesResource(
+      XMLStreamReader reader,
+      RType rType,
+      ImmutableList.Builder<ResourceAddition> additions)
+      throws XMLStreamException, ResourceParseException {
+    String resourceName = sanitizeName(extractNameAttribute(reader));
     if (rType.equals(RType.STYLEABLE)) {
 
       int count = 0;
-      for (Node attrNode = node.getFirstChild();
-           attrNode != null;
-           attrNode = attrNode.getNextSibling()) {
-        if (attrNode.getNodeType() != Node.ELEMENT_NODE ||
-            !attrNode.getNodeName().equals("attr")) {
+      while (nextChildElement(reader)) {
+        if (!getName(reader).equals("attr")) {
+          skipElement(reader);
           continue;
         }
 
-        String rawAttrName = extractNameAttribute(attrNode);
+        String rawAttrName = extractNameAttribute(reader);
         String attrName = sanitizeName(rawAttrName);
-        resourceCollector.addResource(
-            RType.STYLEABLE,
-            IdType.INT,
-            String.format(
-                "%s_%s",
-                resourceName,
-                attrName),
-            Integer.toString(count++));
+        String index = Integer.toString(count++);
+        additions.add(
+            collector -> collector.addResource(
+                RType.STYLEABLE,
+                IdType.INT,
+                String.format(
+                    "%s_%s",
+                    resourceName,
+                    attrName),
+                index));
 
         if (!rawAttrName.startsWith("android:")) {
-          resourceCollector.addIntResourceIfNotPresent(RType.ATTR, attrName);
+          additions.add(collector -> collector.addIntResourceIfNotPresent(RType.ATTR, attrName));
         }
+        skipElement(reader);
       }
 
-      resourceCollector.addIntArrayResourceIfNotPresent(rType, resourceName, count);
+      int attrCount = count;
+      additions.add(
+          collector -> collector.addIntArrayResourceIfNotPresent(rType, resourceName, attrCount));
     } else {
-      resourceCollector.addIntResourceIfNotPresent(rType, resourceName);
+      additions.add(collector -> collector.addIntResourceIfNotPresent(rType, resourceName));
+      skipElement(reader);
     }
   }
 
   void processXmlFilesForIds(
       ProjectFilesystem filesystem,
       ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
+      throws IOException, ResourceParseException {
     Path absoluteResDir = resolver.getAbsolutePath(resDirectory);
     Path relativeResDir = resolver.getRelativePath(resDirectory);
+    List<ResourceFileParser<XmlFileIds>> parsers = new ArrayList<>();
     for (Path path :
         filesystem.getFilesUnderPath(absoluteResDir, input -> input.toString().endsWith(".xml"))) {
       String dirname = relativeResDir.relativize(path).getName(0).toString();
@@ -474,7 +530,10 @@ public class MiniAapt implements Step {
         // Ignore files under values* directories.
         continue;
       }
-      processXmlFile(filesystem, path, references);
+      parsers.add(() -> parseXmlFile(filesystem, path));
+    }
+    for (XmlFileIds ids : parseAll(parsers)) {
+      addIds(ids, references);
     }
   }
 
@@ -483,71 +542,231 @@ public class MiniAapt implements Step {
       ProjectFilesystem filesystem,
       Path xmlFile,
       ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
+      throws IOException, ResourceParseException {
+    addIds(parseXmlFile(filesystem, xmlFile), references);
+  }
+
+  private void addIds(XmlFileIds ids, ImmutableSet.Builder<RDotTxtEntry> references) {
+    for (String id : ids.definitions) {
+      resourceCollector.addIntResourceIfNotPresent(RType.ID, id);
+    }
+    references.addAll(ids.references);
+  }
+
+  /**
+   * Finds the ids defined ({@code @+id/name}) and the resources referred to ({@code @type/name})
+   * by the attributes of an {@code xml} file, in the order they appear in the file, with the
+   * attributes of each element ordered by name.
+   */
+  private static XmlFileIds parseXmlFile(ProjectFilesystem filesystem, Path xmlFile)
+      throws IOException, ResourceParseException {
+    List<String> definitions = new ArrayList<>();
+    List<Map.Entry<String, String>> usages = new ArrayList<>();
     try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
-      Document dom = parseXml(xmlFile, stream);
-      NodeList nodesWithIds =
-          (NodeList) ANDROID_ID_DEFINITION.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesWithIds.getLength(); i++) {
-        String resourceName = nodesWithIds.item(i).getNodeValue();
-        if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
+      XMLStreamReader reader = createXmlReader(xmlFile, stream);
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          Map<String, String> attributes = new TreeMap<>();
+          for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attributes.put(getRawName(reader.getAttributeName(i)), reader.getAttributeValue(i));
+          }
+          for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            String value = attribute.getValue();
+            if (value.startsWith("@+")) {
+              if (!value.startsWith("@+android:id")) {
+                definitions.add(value);
+              }
+            } else if (value.startsWith("@") &&
+                !value.startsWith("@android:") &&
+                !value.startsWith("@null")) {
+              usages.add(attribute);
+            }
+          }
         }
-        Preconditions.checkState(resourceName.startsWith(ID_DEFINITION_PREFIX));
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw createParseException(xmlFile, e);
+    }
 
-        resourceCollector.addIntResourceIfNotPresent(
-            RType.ID,
-            resourceName.substring(ID_DEFINITION_PREFIX.length()));
+    ImmutableList.Builder<String> ids = ImmutableList.builder();
+    for (String resourceName : definitions) {
+      if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
       }
+      ids.add(resourceName.substring(ID_DEFINITION_PREFIX.length()));
+    }
 
-      NodeList nodesUsingIds =
-          (NodeList) ANDROID_ID_USAGE.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesUsingIds.getLength(); i++) {
-        String resourceName = nodesUsingIds.item(i).getNodeValue();
-        int slashPosition = resourceName.indexOf('/');
-        if (resourceName.charAt(0) != '@' || slashPosition == -1) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
+    ImmutableList.Builder<RDotTxtEntry> references = ImmutableList.builder();
+    for (Map.Entry<String, String> usage : usages) {
+      String resourceName = usage.getValue();
+      int slashPosition = resourceName.indexOf('/');
+      if (resourceName.charAt(0) != '@' || slashPosition == -1) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
+      }
 
-        String rawRType = resourceName.substring(1, slashPosition);
-        String name = resourceName.substring(slashPosition + 1);
+      String rawRType = resourceName.substring(1, slashPosition);
+      String name = resourceName.substring(slashPosition + 1);
+
+      String nodeName = usage.getKey();
+      if (name.startsWith("android:") || nodeName.startsWith("tools:")) {
+        continue;
+      }
+      if (!RESOURCE_TYPES.containsKey(rawRType)) {
+        throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
+      }
+      RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(rawRType));
 
-        String nodeName = nodesUsingIds.item(i).getNodeName();
-        if (name.startsWith("android:") || nodeName.startsWith("tools:")) {
-          continue;
-        }
-        if (!RESOURCE_TYPES.containsKey(rawRType)) {
-          throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
-        }
-        RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(rawRType));
 
+      references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+    }
+    return new XmlFileIds(ids.build(), references.build());
+  }
 
-        references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+  /**
+   * Adds resources to {@link #resourceCollector} in the order the files they were found in were
+   * listed, since that order decides the ids the resources are given.
+   */
+  private void addResources(List<List<ResourceAddition>> resources) {
+    for (List<ResourceAddition> additions : resources) {
+      for (ResourceAddition addition : additions) {
+        addition.addTo(resourceCollector);
       }
     }
   }
 
-  private static Document parseXml(Path filepath, InputStream inputStream)
+  /**
+   * Runs {@code parsers} concurrently, returning what each of them found in the order they were
+   * given.
+   */
+  private static <T> List<T> parseAll(List<ResourceFileParser<T>> parsers)
       throws IOException, ResourceParseException {
     try {
-      return XmlDomParser.parse(inputStream);
-    } catch (SAXException e) {
-      throw new ResourceParseException(
-          "Error parsing xml file '%s': %s.",
-          filepath,
-          e.getMessage());
+      return parsers.parallelStream()
+          .map(parser -> {
+            try {
+              return parser.parse();
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            } catch (ResourceParseException e) {
+              throw new UncheckedResourceParseException(e);
+            }
+          })
+          .collect(MoreCollectors.toImmutableList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (UncheckedResourceParseException e) {
+      throw e.cause;
+    }
+  }
+
+  private static XMLStreamReader createXmlReader(Path filepath, InputStream inputStream)
+      throws ResourceParseException {
+    try {
+      return XML_INPUT_FACTORY.get().createXMLStreamReader(inputStream);
+    } catch (XMLStreamException e) {
+      throw createParseException(filepath, e);
     }
   }
 
-  private static String extractNameAttribute(Node node) throws ResourceParseException {
-    Node attribute = node.getAttributes().getNamedItem("name");
-    if (attribute == null) {
+  private static ResourceParseException createParseException(
+      Path filepath,
+      XMLStreamException e) {
+    return new ResourceParseException(
+        "Error parsing xml file '%s': %s.",
+        filepath,
+        e.getMessage());
+  }
+
+  /**
+   * Moves {@code reader} to the start tag of the next child of the current element, or past the
+   * current element's end tag if it has no more children.
+   *
+   * @return whether a child was found.
+   */
+  private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        return true;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Moves {@code reader} past the end tag of the element whose start tag it is on.
+   */
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    while (nextChildElement(reader)) {
+      skipElement(reader);
+    }
+  }
+
+  /**
+   * Reads the text of the element whose start tag {@code reader} is on, moving past its end tag.
+   */
+  private static String readTextContent(XMLStreamReader reader) throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          text.append(reader.getText());
+          break;
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+   * @return the name of the current element as written in the file, including any prefix.
+   */
+  private static String getName(XMLStreamReader reader) {
+    return getRawName(reader.getName());
+  }
+
+  private static String getRawName(QName name) {
+    return name.getPrefix().isEmpty()
+        ? name.getLocalPart()
+        : name.getPrefix() + ":" + name.getLocalPart();
+  }
+
+  @Nullable
+  private static String getAttribute(XMLStreamReader reader, String name) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (getRawName(reader.getAttributeName(i)).equals(name)) {
+        return reader.getAttributeValue(i);
+      }
+    }
+    return null;
+  }
+
+  private static String extractNameAttribute(XMLStreamReader reader)
+      throws XMLStreamException, ResourceParseException {
+    String name = getAttribute(reader, "name");
+    if (name == null) {
+      String nodeName = getName(reader);
       throw new ResourceParseException(
           "Error: expected a 'name' attribute in node '%s' with value '%s'",
-          node.getNodeName(),
-          node.getTextContent());
+          nodeName,
+          readTextContent(reader));
     }
-    return attribute.getNodeValue();
+    return name;
   }
 
   private static String sanitizeName(String rawName) {
@@ -611,4 +830,42 @@ public class MiniAapt implements Step {
       super(String.format(messageFormat, args));
     }
   }
+
+  /**
+   * Carries a {@link ResourceParseException} out of a stream.
+   */
+  @SuppressWarnings("serial")
+  private static class UncheckedResourceParseException extends RuntimeException {
+    private final ResourceParseException cause;
+
+    UncheckedResourceParseException(ResourceParseException cause) {
+      super(cause);
+      this.cause = cause;
+    }
+  }
+
+  /**
+   * Parses a single resource file. Parsers may run on any thread, so they must leave
+   * {@link #resourceCollector} alone, and return what they find for it instead.
+   */
+  private interface ResourceFileParser<T> {
+    T parse() throws IOException, ResourceParseException;
+  }
+
+  /**
+   * A resource found by a {@link ResourceFileParser}, waiting to be added to the collector.
+   */
+  private interface ResourceAddition {
+    void addTo(AaptResourceCollector collector);
+  }
+
+  private static class XmlFileIds {
+    private final ImmutableList<String> definitions;
+    private final ImmutableList<RDotTxtEntry> references;
+
+    XmlFileIds(ImmutableList<String> definitions, ImmutableList<RDotTxtEntry> references) {
+      this.definitions = definitions;
+      this.references = references;
+    }
+  }
 }
@@ -341,18 +341,12 @@ public class AppleBinaryDescription
 
       ImmutableSortedSet.Builder<BuildRule> thinRules = ImmutableSortedSet.naturalOrder();
       for (BuildTarget thinTarget : fatBinaryInfo.get().getThinTargets()) {
-        Optional<BuildRule> existingThinRule = resolver.getRuleOptional(thinTarget);
-        if (existingThinRule.isPresent()) {
-          thinRules.add(existingThinRule.get());
-          continue;
-        }
-        BuildRule thinRule = requireThinBinary(
-            targetGraph,
-            params.copyWithBuildTarget(thinTarget),
-            resolver,
-            args);
-        resolver.addToIndex(thinRule);
-        thinRules.add(thinRule);
+        thinRules.add(
+            requireThinBinary(
+                targetGraph,
+                params.copyWithBuildTarget(thinTarget),
+                resolver,
+                args));
       }
       return MultiarchFileInfos.requireMultiarchRule(
           params,
@@ -369,27 +363,33 @@ public class AppleBinaryDescription
       BuildRuleParams params,
       BuildRuleResolver resolver,
       A args) throws NoSuchBuildTargetException {
-    Optional<BuildRule> existingThinRule = resolver.getRuleOptional(params.getBuildTarget());
-    if (existingThinRule.isPresent()) {
-      return existingThinRule.get();
-    }
+    // The rule created for a thin binary needn't be for its exact target, e.g. a stripped binary
+    // is represented by an unstripped one wrapping its strip rule.  The rules it is made of are
+    // shared, so keep whichever representative was indexed first.
+    BuildRule thinRule = createThinBinary(targetGraph, params, resolver, args);
+    return resolver.computeIfAbsent(thinRule.getBuildTarget(), BuildRule.class, () -> thinRule);
+  }
 
+  private <A extends Arg> BuildRule createThinBinary(
+      TargetGraph targetGraph,
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      A args) throws NoSuchBuildTargetException {
     SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
     SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
 
     Optional<Path> stubBinaryPath = getStubBinaryPath(params, args);
     if (shouldUseStubBinary(params) && stubBinaryPath.isPresent()) {
       try {
-        return resolver.addToIndex(
-            new WriteFile(
-                params,
-                pathResolver,
-                Files.readAllBytes(stubBinaryPath.get()),
-                BuildTargets.getGenPath(
-                    params.getProjectFilesystem(),
-                    params.getBuildTarget(),
-                    "%s"),
-                true));
+        return new WriteFile(
+            params,
+            pathResolver,
+            Files.readAllBytes(stubBinaryPath.get()),
+            BuildTargets.getGenPath(
+                params.getProjectFilesystem(),
+                params.getBuildTarget(),
+                "%s"),
+            true);
       } catch (IOException e) {
         throw new HumanReadableException("Could not read stub binary " + stubBinaryPath.get());
       }
@@ -400,8 +400,7 @@ public class AppleBinaryDescription
           delegateArg,
           args,
           params.getBuildTarget());
-      return resolver.addToIndex(
-          delegate.createBuildRule(targetGraph, params, resolver, delegateArg));
+      return delegate.createBuildRule(targetGraph, params, resolver, delegateArg);
     }
   }
 
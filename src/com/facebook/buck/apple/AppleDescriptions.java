@@ -523,19 +523,17 @@ public class AppleDescriptions {
           .withoutFlavors(AppleDebugFormat.FLAVOR_DOMAIN.getFlavors())
           .withoutFlavors(LinkerMapMode.NO_LINKER_MAP.getFlavor())
           .withAppendedFlavors(AppleDsym.RULE_FLAVOR);
-      Optional<BuildRule> dsymRule = resolver.getRuleOptional(dsymBuildTarget);
-      if (!dsymRule.isPresent()) {
-        dsymRule = Optional.of(
-            createAppleDsym(
-                params.copyWithBuildTarget(dsymBuildTarget),
-                resolver,
-                unstrippedBinaryRule,
-                cxxPlatformFlavorDomain,
-                defaultCxxPlatform,
-                appleCxxPlatforms));
-      }
-      Preconditions.checkArgument(dsymRule.get() instanceof AppleDsym);
-      return Optional.of((AppleDsym) dsymRule.get());
+      return Optional.of(
+          resolver.computeIfAbsent(
+              dsymBuildTarget,
+              AppleDsym.class,
+              () -> createAppleDsym(
+                  params.copyWithBuildTarget(dsymBuildTarget),
+                  resolver,
+                  unstrippedBinaryRule,
+                  cxxPlatformFlavorDomain,
+                  defaultCxxPlatform,
+                  appleCxxPlatforms)));
     }
     return Optional.empty();
   }
@@ -555,7 +553,7 @@ public class AppleDescriptions {
         unstrippedBinaryBuildRule.getBuildTarget(),
         MultiarchFileInfos.create(appleCxxPlatforms, unstrippedBinaryBuildRule.getBuildTarget()));
 
-    AppleDsym appleDsym = new AppleDsym(
+    return new AppleDsym(
         params.copyWithDeps(
             Suppliers.ofInstance(
                 ImmutableSortedSet.<BuildRule>naturalOrder()
@@ -569,8 +567,6 @@ public class AppleDescriptions {
         appleCxxPlatform.getLldb(),
         new BuildTargetSourcePath(unstrippedBinaryBuildRule.getBuildTarget()),
         AppleDsym.getDsymOutputPath(params.getBuildTarget(), params.getProjectFilesystem()));
-    resolver.addToIndex(appleDsym);
-    return appleDsym;
   }
 
   static AppleBundle createAppleBundle(
@@ -392,19 +392,17 @@ public class AppleLibraryDescription implements
       unstrippedTarget = unstrippedTarget.withoutFlavors(LinkerMapMode.NO_LINKER_MAP.getFlavor());
     }
 
-    Optional<BuildRule> existingRule = resolver.getRuleOptional(unstrippedTarget);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    } else {
-      BuildRule rule = delegate.createBuildRule(
-          params.copyWithBuildTarget(unstrippedTarget),
-          resolver,
-          delegateArg,
-          linkableDepType,
-          bundleLoader,
-          blacklist);
-      return resolver.addToIndex(rule);
-    }
+    BuildRuleParams unstrippedParams = params.copyWithBuildTarget(unstrippedTarget);
+    return resolver.computeIfAbsent(
+        unstrippedTarget,
+        BuildRule.class,
+        () -> delegate.createBuildRule(
+            unstrippedParams,
+            resolver,
+            delegateArg,
+            linkableDepType,
+            bundleLoader,
+            blacklist));
   }
 
   private boolean shouldWrapIntoDebuggableBinary(BuildTarget buildTarget, BuildRule buildRule) {
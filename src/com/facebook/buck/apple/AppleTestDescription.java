@@ -19,7 +19,6 @@ package com.facebook.buck.apple;
 import com.facebook.buck.cxx.CxxCompilationDatabase;
 import com.facebook.buck.cxx.CxxDescriptionEnhancer;
 import com.facebook.buck.cxx.CxxPlatform;
-import com.facebook.buck.cxx.CxxStrip;
 import com.facebook.buck.cxx.Linker;
 import com.facebook.buck.cxx.LinkerMapMode;
 import com.facebook.buck.cxx.NativeLinkable;
@@ -314,14 +313,16 @@ public class AppleTestDescription implements
               .build();
       final Path outputDirectory =
           BuildTargets.getGenPath(params.getProjectFilesystem(), unzipXctoolTarget, "%s/unzipped");
-      if (!resolver.getRuleOptional(unzipXctoolTarget).isPresent()) {
-        BuildRuleParams unzipXctoolParams =
-            params.copyWithChanges(
-                unzipXctoolTarget,
-                Suppliers.ofInstance(ImmutableSortedSet.of(xctoolZipBuildRule)),
-                Suppliers.ofInstance(ImmutableSortedSet.of()));
-        resolver.addToIndex(
-            new AbstractBuildRule(unzipXctoolParams, sourcePathResolver) {
+      resolver.computeIfAbsent(
+          unzipXctoolTarget,
+          BuildRule.class,
+          () -> {
+            BuildRuleParams unzipXctoolParams =
+                params.copyWithChanges(
+                    unzipXctoolTarget,
+                    Suppliers.ofInstance(ImmutableSortedSet.of(xctoolZipBuildRule)),
+                    Suppliers.ofInstance(ImmutableSortedSet.of()));
+            return new AbstractBuildRule(unzipXctoolParams, sourcePathResolver) {
               @Override
               public ImmutableList<Step> getBuildSteps(
                   BuildContext context,
@@ -338,8 +339,8 @@ public class AppleTestDescription implements
               public Path getPathToOutput() {
                 return outputDirectory;
               }
-            });
-      }
+            };
+          });
       return Optional.of(
           new BuildTargetSourcePath(unzipXctoolTarget, outputDirectory.resolve("bin/xctool")));
     } else if (appleConfig.getXctoolPath().isPresent()) {
@@ -358,27 +359,19 @@ public class AppleTestDescription implements
       Optional<SourcePath> testHostAppBinarySourcePath,
       ImmutableSet<BuildTarget> blacklist,
       BuildTarget libraryTarget) throws NoSuchBuildTargetException {
-    BuildTarget existingLibraryTarget = libraryTarget
-        .withAppendedFlavors(AppleDebuggableBinary.RULE_FLAVOR, CxxStrip.RULE_FLAVOR)
-        .withAppendedFlavors(StripStyle.NON_GLOBAL_SYMBOLS.getFlavor());
-    Optional<BuildRule> existingLibrary = resolver.getRuleOptional(existingLibraryTarget);
-    BuildRule library;
-    if (existingLibrary.isPresent()) {
-      library = existingLibrary.get();
-    } else {
-      library = appleLibraryDescription.createLibraryBuildRule(
-          targetGraph,
-          params.copyWithBuildTarget(libraryTarget),
-          resolver,
-          args,
-          // For now, instead of building all deps as dylibs and fixing up their install_names,
-          // we'll just link them statically.
-          Optional.of(Linker.LinkableDepType.STATIC),
-          testHostAppBinarySourcePath,
-          blacklist);
-      resolver.addToIndex(library);
-    }
-    return library;
+    BuildRule library = appleLibraryDescription.createLibraryBuildRule(
+        targetGraph,
+        params.copyWithBuildTarget(libraryTarget),
+        resolver,
+        args,
+        // For now, instead of building all deps as dylibs and fixing up their install_names,
+        // we'll just link them statically.
+        Optional.of(Linker.LinkableDepType.STATIC),
+        testHostAppBinarySourcePath,
+        blacklist);
+    // The rules the library is made of are shared by all flavors of the test, but the outermost
+    // one is created anew each time, so keep whichever was indexed first.
+    return resolver.computeIfAbsent(library.getBuildTarget(), BuildRule.class, () -> library);
   }
 
   @Override
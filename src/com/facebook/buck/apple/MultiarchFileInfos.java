@@ -132,28 +132,29 @@ public class MultiarchFileInfos {
       BuildRuleResolver resolver,
       MultiarchFileInfo info,
       ImmutableSortedSet<BuildRule> thinRules) {
-    Optional<BuildRule> existingRule = resolver.getRuleOptional(info.getFatTarget());
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
-    ImmutableSortedSet<SourcePath> inputs = FluentIterable
-        .from(thinRules)
-        .transform(SourcePaths.getToBuildTargetSourcePath())
-        .toSortedSet(Ordering.natural());
-    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
-    SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
-    MultiarchFile multiarchFile = new MultiarchFile(
-        params.copyWithDeps(
-            Suppliers.ofInstance(ImmutableSortedSet.of()),
-            Suppliers.ofInstance(thinRules)),
-        pathResolver,
-        ruleFinder,
-        info.getRepresentativePlatform().getLipo(),
-        inputs,
-        BuildTargets.getGenPath(params.getProjectFilesystem(), params.getBuildTarget(), "%s"));
-    resolver.addToIndex(multiarchFile);
-    return multiarchFile;
+    return resolver.computeIfAbsent(
+        info.getFatTarget(),
+        BuildRule.class,
+        () -> {
+          ImmutableSortedSet<SourcePath> inputs = FluentIterable
+              .from(thinRules)
+              .transform(SourcePaths.getToBuildTargetSourcePath())
+              .toSortedSet(Ordering.natural());
+          SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+          SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+          return new MultiarchFile(
+              params.copyWithDeps(
+                  Suppliers.ofInstance(ImmutableSortedSet.of()),
+                  Suppliers.ofInstance(thinRules)),
+              pathResolver,
+              ruleFinder,
+              info.getRepresentativePlatform().getLipo(),
+              inputs,
+              BuildTargets.getGenPath(
+                  params.getProjectFilesystem(),
+                  params.getBuildTarget(),
+                  "%s"));
+        });
   }
 
   private static final ImmutableSet<Flavor> FORBIDDEN_BUILD_ACTIONS =
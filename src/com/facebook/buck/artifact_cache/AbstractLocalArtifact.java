@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.google.common.collect.ImmutableMap;
+
+import org.immutables.value.Value;
+
+import java.nio.file.Path;
+
+/**
+ * A cached artifact which is kept in a file on the local disk, and so can be read where it is.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+interface AbstractLocalArtifact {
+  /** @return the absolute path of the file the artifact's payload is kept in. */
+  @Value.Parameter
+  Path getPath();
+
+  @Value.Parameter
+  ImmutableMap<String, String> getMetadata();
+}
@@ -22,8 +22,11 @@ import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.slb.HttpService;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -31,6 +34,7 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -78,8 +82,56 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
       final HttpArtifactCacheEvent.Finished.Builder eventBuilder)
       throws IOException;
 
+  /**
+   * @return whether {@link #multiFetchImpl} can fetch several artifacts in a single request.
+   */
+  protected boolean isMultiFetchSupported() {
+    return false;
+  }
+
+  /**
+   * Fetch the artifacts of several rule keys in a single request.  By default, this fetches them
+   * one at a time.
+   *
+   * @param eventBuilders the event builder of each request, in the same order as
+   *     {@code requests}.
+   * @return the result of each request, in the same order as {@code requests}.
+   */
+  protected ImmutableList<CacheResult> multiFetchImpl(
+      ImmutableList<Pair<RuleKey, LazyPath>> requests,
+      ImmutableList<HttpArtifactCacheEvent.Finished.Builder> eventBuilders) throws IOException {
+    ImmutableList.Builder<CacheResult> results = ImmutableList.builder();
+    for (int i = 0; i < requests.size(); i++) {
+      results.add(
+          fetchImpl(requests.get(i).getFirst(), requests.get(i).getSecond(), eventBuilders.get(i)));
+    }
+    return results.build();
+  }
+
+  /**
+   * Fetch an artifact, handing its payload to {@code consumer} as it is read from the response.
+   * By default, this fetches the artifact to a temporary file first.
+   */
+  protected CacheResult fetchStreamingImpl(
+      RuleKey ruleKey,
+      ArtifactPayloadConsumer consumer,
+      final HttpArtifactCacheEvent.Finished.Builder eventBuilder) throws IOException {
+    return BufferedArtifactFetch.fetchStreaming(
+        output -> fetchImpl(ruleKey, output, eventBuilder),
+        consumer);
+  }
+
   @Override
   public CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+    return fetch(ruleKey, eventBuilder -> fetchImpl(ruleKey, output, eventBuilder));
+  }
+
+  @Override
+  public CacheResult fetchStreaming(RuleKey ruleKey, ArtifactPayloadConsumer consumer) {
+    return fetch(ruleKey, eventBuilder -> fetchStreamingImpl(ruleKey, consumer, eventBuilder));
+  }
+
+  private CacheResult fetch(RuleKey ruleKey, FetchFunction fetchFunction) {
     HttpArtifactCacheEvent.Started startedEvent = HttpArtifactCacheEvent.newFetchStartedEvent(
         ruleKey);
     buckEventBus.post(startedEvent);
@@ -89,7 +141,7 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
         .setRequestedRuleKey(ruleKey);
 
     try {
-      CacheResult result = fetchImpl(ruleKey, output, eventBuilder);
+      CacheResult result = fetchFunction.fetch(eventBuilder);
       eventBuilder.getFetchBuilder().setFetchResult(result);
       buckEventBus.post(eventBuilder.build());
       return result;
@@ -106,6 +158,55 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
     }
   }
 
+  @Override
+  public ImmutableList<CacheResult> multiFetch(
+      ImmutableList<Pair<RuleKey, LazyPath>> requests) {
+    if (requests.size() <= 1 || !isMultiFetchSupported()) {
+      return ArtifactCache.super.multiFetch(requests);
+    }
+
+    ImmutableList.Builder<HttpArtifactCacheEvent.Finished.Builder> eventBuilders =
+        ImmutableList.builder();
+    for (Pair<RuleKey, LazyPath> request : requests) {
+      HttpArtifactCacheEvent.Started startedEvent = HttpArtifactCacheEvent.newFetchStartedEvent(
+          request.getFirst());
+      buckEventBus.post(startedEvent);
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder =
+          HttpArtifactCacheEvent.newFinishedEventBuilder(startedEvent);
+      eventBuilder.getFetchBuilder()
+          .setRequestedRuleKey(request.getFirst());
+      eventBuilders.add(eventBuilder);
+    }
+    ImmutableList<HttpArtifactCacheEvent.Finished.Builder> builtEventBuilders =
+        eventBuilders.build();
+
+    ImmutableList<CacheResult> results;
+    Optional<String> errorMessage = Optional.empty();
+    try {
+      results = multiFetchImpl(requests, builtEventBuilders);
+    } catch (IOException e) {
+      String msg = String.format("%s: %s", e.getClass().getName(), e.getMessage());
+      reportFailure(
+          e,
+          "multiFetch(%s): %s",
+          Lists.transform(requests, Pair::getFirst),
+          msg);
+      results = ImmutableList.copyOf(
+          Collections.nCopies(requests.size(), CacheResult.error(name, msg)));
+      errorMessage = Optional.of(msg);
+    }
+
+    for (int i = 0; i < requests.size(); i++) {
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder = builtEventBuilders.get(i);
+      eventBuilder.getFetchBuilder().setFetchResult(results.get(i));
+      if (errorMessage.isPresent()) {
+        eventBuilder.getFetchBuilder().setErrorMessage(errorMessage.get());
+      }
+      buckEventBus.post(eventBuilder.build());
+    }
+    return results;
+  }
+
   @Override
   public ListenableFuture<Void> store(
       final ArtifactInfo info,
@@ -184,6 +285,14 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
     return doStore;
   }
 
+  /**
+   * Subclasses which support streaming fetches override {@link #fetchStreamingImpl} as well.
+   */
+  @Override
+  public boolean isStreamingFetchSupported() {
+    return false;
+  }
+
   @Override
   public void close() {
     fetchClient.close();
@@ -232,6 +341,10 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
     }
   }
 
+  private interface FetchFunction {
+    CacheResult fetch(HttpArtifactCacheEvent.Finished.Builder eventBuilder) throws IOException;
+  }
+
   private static boolean isArtefactTooBigToBeStored(
       long artifactSizeBytes,
       Optional<Long> maxStoreSize) {
@@ -18,9 +18,16 @@ package com.facebook.buck.artifact_cache;
 
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.RuleKey;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.IOException;
+import java.util.Optional;
+
 public interface ArtifactCache extends AutoCloseable {
   /**
    * Fetch a cached artifact, keyed by ruleKey, save the artifact to path specified by output, and
@@ -34,6 +41,84 @@ public interface ArtifactCache extends AutoCloseable {
    */
   CacheResult fetch(RuleKey ruleKey, LazyPath output);
 
+  /**
+   * Fetch the cached artifacts of several rule keys, as if {@link #fetch(RuleKey, LazyPath)} was
+   * called for each of them in turn.  Caches which can fetch several artifacts in a single round
+   * trip should override this.
+   *
+   * @param requests cache fetch keys, each with the path to store its artifact to.
+   * @return the result of each request, in the same order as {@code requests}.
+   */
+  default ImmutableList<CacheResult> multiFetch(
+      ImmutableList<Pair<RuleKey, LazyPath>> requests) {
+    ImmutableList.Builder<CacheResult> results = ImmutableList.builder();
+    for (Pair<RuleKey, LazyPath> request : requests) {
+      results.add(fetch(request.getFirst(), request.getSecond()));
+    }
+    return results.build();
+  }
+
+  /**
+   * Check which of the given rule keys have an artifact in the cache, without fetching them.
+   *
+   * @return a {@link CacheResultType#HIT} or {@link CacheResultType#MISS} for each rule key that
+   *     this cache can check without fetching its artifact.  Other rule keys are left out.
+   */
+  default ImmutableMap<RuleKey, CacheResult> multiContains(ImmutableSet<RuleKey> ruleKeys) {
+    return ImmutableMap.of();
+  }
+
+  /**
+   * Fetch a cached artifact, keyed by ruleKey, handing its payload to {@code consumer} as it is
+   * read instead of saving it to a file first.
+   * <p>
+   * The consumer is only invoked for hits.  The payload checksum can only be verified once the
+   * consumer has returned, so if the result isn't a hit, whatever the consumer did with the payload
+   * must be discarded.
+   * <p>
+   * Unless {@link #isStreamingFetchSupported()} returns {@code true}, this fetches the artifact to
+   * a temporary file with {@link #fetch(RuleKey, LazyPath)} and hands that to the consumer.
+   */
+  default CacheResult fetchStreaming(RuleKey ruleKey, ArtifactPayloadConsumer consumer) {
+    try {
+      return BufferedArtifactFetch.fetchStreaming(output -> fetch(ruleKey, output), consumer);
+    } catch (IOException e) {
+      return CacheResult.error(
+          getClass().getSimpleName(),
+          String.format("%s: %s", e.getClass().getName(), e.getMessage()));
+    }
+  }
+
+  /**
+   * This method must return the same value over the lifetime of this object.
+   * @return whether this {@link ArtifactCache} supports
+   *     {@link #fetchStreaming(RuleKey, ArtifactPayloadConsumer)}.
+   */
+  default boolean isStreamingFetchSupported() {
+    return false;
+  }
+
+  /**
+   * Find the file on the local disk which a cached artifact, keyed by ruleKey, is kept in, so that
+   * it can be read in place instead of being copied out first.  The file belongs to the cache and
+   * may be evicted at any time, so callers should open it straight away and must not modify it.
+   * <p>
+   * Caches for which {@link #isLocalFetchSupported()} returns {@code false} always miss.
+   *
+   * @return the artifact, or {@link Optional#empty()} if it isn't in the cache.
+   */
+  default Optional<LocalArtifact> fetchLocal(RuleKey ruleKey) throws IOException {
+    return Optional.empty();
+  }
+
+  /**
+   * This method must return the same value over the lifetime of this object.
+   * @return whether this {@link ArtifactCache} supports {@link #fetchLocal(RuleKey)}.
+   */
+  default boolean isLocalFetchSupported() {
+    return false;
+  }
+
   /**
    * Store the artifact at path specified by output to cache, such that it can later be fetched
    * using ruleKey as the lookup key.  If any internal errors occur, fail silently and continue
@@ -22,6 +22,7 @@ import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 import com.facebook.buck.util.unit.SizeUnit;
+import com.facebook.buck.zip.ZipCompressionLevel;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
@@ -103,6 +104,15 @@ public class ArtifactCacheBuckConfig {
   private static final long TWO_LEVEL_CACHING_MIN_SIZE_DEFAULT = 20 * 1024L;
 
   private static final String HYBRID_THRIFT_ENDPOINT = "hybrid_thrift_endpoint";
+
+  private static final String MULTI_FETCH_ENABLED_FIELD_NAME = "multi_fetch_enabled";
+  private static final String STREAMING_FETCH_ENABLED_FIELD_NAME = "streaming_fetch_enabled";
+  private static final String ARTIFACT_COMPRESSION_LEVEL_FIELD_NAME =
+      "artifact_compression_level";
+  private static final String ARTIFACT_COMPRESSION_THREADS_FIELD_NAME =
+      "artifact_compression_threads";
+  private static final String ARTIFACT_COMPRESSION_SKIP_COMPRESSED_FILES_FIELD_NAME =
+      "artifact_compression_skip_compressed_files";
   private static final String REPOSITORY = "repository";
   private static final String DEFAULT_REPOSITORY = "";
 
@@ -251,6 +261,75 @@ public class ArtifactCacheBuckConfig {
         false);
   }
 
+  /**
+   * @return whether the artifacts of the deps of a rule which missed the cache should be fetched
+   *     in a single batch, instead of with one request each.
+   */
+  public boolean getMultiFetchEnabled() {
+    return buckConfig.getBooleanValue(
+        CACHE_SECTION_NAME,
+        MULTI_FETCH_ENABLED_FIELD_NAME,
+        false);
+  }
+
+  /**
+   * @return whether artifacts fetched from the cache should be unpacked as they are downloaded,
+   *     instead of being saved to a temporary zip file and unpacked from there.
+   */
+  public boolean getStreamingFetchEnabled() {
+    return buckConfig.getBooleanValue(
+        CACHE_SECTION_NAME,
+        STREAMING_FETCH_ENABLED_FIELD_NAME,
+        false);
+  }
+
+  /**
+   * @return the deflate level, from 0 (store) to 9 (best), used when zipping up artifacts to store
+   *     in the cache.
+   */
+  public int getArtifactCompressionLevel() {
+    int level = buckConfig.getInteger(CACHE_SECTION_NAME, ARTIFACT_COMPRESSION_LEVEL_FIELD_NAME)
+        .orElse(ZipCompressionLevel.DEFAULT_COMPRESSION_LEVEL.getValue());
+    if (level < ZipCompressionLevel.MIN_COMPRESSION_LEVEL.getValue() ||
+        level > ZipCompressionLevel.MAX_COMPRESSION_LEVEL.getValue()) {
+      throw new HumanReadableException(
+          "%s.%s must be between %d and %d, but was %d.",
+          CACHE_SECTION_NAME,
+          ARTIFACT_COMPRESSION_LEVEL_FIELD_NAME,
+          ZipCompressionLevel.MIN_COMPRESSION_LEVEL.getValue(),
+          ZipCompressionLevel.MAX_COMPRESSION_LEVEL.getValue(),
+          level);
+    }
+    return level;
+  }
+
+  /**
+   * @return how many threads may deflate a single artifact at once.
+   */
+  public int getArtifactCompressionThreads() {
+    int threads = buckConfig.getInteger(CACHE_SECTION_NAME, ARTIFACT_COMPRESSION_THREADS_FIELD_NAME)
+        .orElse(1);
+    if (threads < 1) {
+      throw new HumanReadableException(
+          "%s.%s must be at least 1, but was %d.",
+          CACHE_SECTION_NAME,
+          ARTIFACT_COMPRESSION_THREADS_FIELD_NAME,
+          threads);
+    }
+    return threads;
+  }
+
+  /**
+   * @return whether files in artifacts which are already compressed, such as jars, should be
+   *     stored as they are rather than deflated again.
+   */
+  public boolean getArtifactCompressionSkipCompressedFiles() {
+    return buckConfig.getBooleanValue(
+        CACHE_SECTION_NAME,
+        ARTIFACT_COMPRESSION_SKIP_COMPRESSED_FILES_FIELD_NAME,
+        false);
+  }
+
   public long getTwoLevelCachingMinimumSize() {
     return buckConfig.getValue(CACHE_SECTION_NAME, TWO_LEVEL_CACHING_MIN_SIZE_FIELD_NAME)
         .map(Optional::of)
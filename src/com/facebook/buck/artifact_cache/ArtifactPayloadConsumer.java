@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives the payload of an artifact as it is read off the wire, for caches which support
+ * {@link ArtifactCache#fetchStreaming(com.facebook.buck.rules.RuleKey, ArtifactPayloadConsumer)}.
+ */
+@FunctionalInterface
+public interface ArtifactPayloadConsumer {
+  /**
+   * @param payload the artifact payload.  It need not be read to the end, and must not be closed.
+   */
+  void consume(InputStream payload) throws IOException;
+}
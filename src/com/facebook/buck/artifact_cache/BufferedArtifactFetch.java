@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.io.LazyPath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Serves a streaming fetch from a cache which can only fetch artifacts into a file, by fetching
+ * the artifact into a temporary file and handing that to the consumer.
+ */
+final class BufferedArtifactFetch {
+
+  /** Utility class: do not instantiate. */
+  private BufferedArtifactFetch() {}
+
+  interface Fetcher {
+    CacheResult fetch(LazyPath output) throws IOException;
+  }
+
+  static CacheResult fetchStreaming(
+      Fetcher fetcher,
+      ArtifactPayloadConsumer consumer) throws IOException {
+    LazyPath output = new LazyPath() {
+      @Override
+      protected Path create() throws IOException {
+        return Files.createTempFile("buck-artifact-", ".tmp");
+      }
+    };
+    try {
+      CacheResult result = fetcher.fetch(output);
+      if (result.getType().isSuccess()) {
+        try (InputStream payload = Files.newInputStream(output.get())) {
+          consumer.consume(payload);
+        }
+      }
+      return result;
+    } finally {
+      Optional<Path> file = output.getIfCreated();
+      if (file.isPresent()) {
+        Files.deleteIfExists(file.get());
+      }
+    }
+  }
+}
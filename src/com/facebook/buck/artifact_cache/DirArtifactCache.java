@@ -22,7 +22,6 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.util.DirectoryCleaner;
-import com.facebook.buck.util.DirectoryCleanerArgs;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ComparisonChain;
@@ -36,6 +35,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
@@ -44,26 +44,38 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of artifacts in a local directory.
+ * <p>
+ * When the cache has a maximum size, the artifacts in it are tracked by a
+ * {@link DirArtifactCacheIndex}, so that it can be kept under that size by evicting the least
+ * recently used artifacts as new ones are stored, without walking the whole directory. The index
+ * is rebuilt from the directory every so often, to pick up changes it wasn't told about.
+ */
 public class DirArtifactCache implements ArtifactCache {
 
   private static final Logger LOG = Logger.get(DirArtifactCache.class);
-  // Ratio of bytes stored to max size that expresses how many bytes need to be stored after we
-  // attempt to delete old files.
-  private static final float STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER = 0.5f;
+  // Ratio of bytes stored to max size that triggers rebuilding the index from the directory.
+  private static final float STORED_TO_MAX_BYTES_RATIO_REBUILD_TRIGGER = 1f;
   // How much of the max size to leave if we decide to delete old files.
   private static final float MAX_BYTES_TRIM_RATIO = 2 / 3f;
   private static final String TMP_EXTENSION = ".tmp";
+  private static final String METADATA_EXTENSION = ".metadata";
 
   private final String name;
   private final ProjectFilesystem filesystem;
   private final Path cacheDir;
   private final Optional<Long> maxCacheSizeBytes;
   private final boolean doStore;
-  private long bytesSinceLastDeleteOldFiles;
+  private final Optional<DirArtifactCacheIndex> index;
+  private final AtomicLong bytesSinceLastDeleteOldFiles;
 
   public DirArtifactCache(
       String name,
@@ -77,7 +89,11 @@ public class DirArtifactCache implements ArtifactCache {
     this.cacheDir = cacheDir;
     this.maxCacheSizeBytes = maxCacheSizeBytes;
     this.doStore = doStore;
-    this.bytesSinceLastDeleteOldFiles = 0L;
+    this.index = maxCacheSizeBytes.map(
+        size -> new DirArtifactCacheIndex(
+            filesystem.resolve(getPathToIndexFolder()).resolve("journal"),
+            this::scanCache));
+    this.bytesSinceLastDeleteOldFiles = new AtomicLong();
 
     // Check first, as mkdirs will fail if the path is a symlink.
     if (!filesystem.isDirectory(cacheDir)) {
@@ -90,27 +106,15 @@ public class DirArtifactCache implements ArtifactCache {
     CacheResult result;
     try {
       // First, build up the metadata from the metadata file.
-      ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
-      try (DataInputStream in =
-               new DataInputStream(
-                   filesystem.newFileInputStream(
-                       getPathForRuleKey(ruleKey, Optional.of(".metadata"))))) {
-        int sz = in.readInt();
-        for (int i = 0; i < sz; i++) {
-          String key = in.readUTF();
-          int valSize = in.readInt();
-          byte[] val = new byte[valSize];
-          ByteStreams.readFully(in, val);
-          metadata.put(key, new String(val, Charsets.UTF_8));
-        }
-      }
+      ImmutableMap<String, String> metadata = readMetadata(ruleKey);
 
       // Now copy the artifact out.
       filesystem.copyFile(getPathForRuleKey(ruleKey, Optional.empty()), output.get());
 
-      result = CacheResult.hit(name, metadata.build(), filesystem.getFileSize(output.get()));
+      result = CacheResult.hit(name, metadata, filesystem.getFileSize(output.get()));
+      recordAccess(ruleKey);
     } catch (NoSuchFileException e) {
-      result = CacheResult.miss();
+      result = miss(ruleKey);
     } catch (IOException e) {
       LOG.warn(
           e,
@@ -128,6 +132,122 @@ public class DirArtifactCache implements ArtifactCache {
     return result;
   }
 
+  /**
+   * Hand the artifact straight from the cache directory to {@code consumer}, instead of copying it
+   * out first.
+   */
+  @Override
+  public CacheResult fetchStreaming(RuleKey ruleKey, ArtifactPayloadConsumer consumer) {
+    CacheResult result;
+    try {
+      ImmutableMap<String, String> metadata = readMetadata(ruleKey);
+      Path artifact = getPathForRuleKey(ruleKey, Optional.empty());
+      try (InputStream payload = filesystem.newFileInputStream(artifact)) {
+        consumer.consume(payload);
+      }
+      result = CacheResult.hit(name, metadata, filesystem.getFileSize(artifact));
+      recordAccess(ruleKey);
+    } catch (NoSuchFileException e) {
+      result = miss(ruleKey);
+    } catch (IOException e) {
+      LOG.warn(
+          e,
+          "Artifact fetchStreaming(%s) error",
+          ruleKey);
+      result = CacheResult.error(name, String.format("%s: %s", e.getClass(), e.getMessage()));
+    }
+
+    LOG.debug(
+        "Artifact fetchStreaming(%s) cache %s",
+        ruleKey,
+        (result.getType().isSuccess() ? "hit" : "miss"));
+    return result;
+  }
+
+  @Override
+  public boolean isStreamingFetchSupported() {
+    return true;
+  }
+
+  @Override
+  public Optional<LocalArtifact> fetchLocal(RuleKey ruleKey) throws IOException {
+    Optional<LocalArtifact> result;
+    try {
+      ImmutableMap<String, String> metadata = readMetadata(ruleKey);
+      Path artifact = filesystem.resolve(getPathForRuleKey(ruleKey, Optional.empty()));
+      if (Files.isRegularFile(artifact)) {
+        result = Optional.of(LocalArtifact.of(artifact, metadata));
+        recordAccess(ruleKey);
+      } else {
+        miss(ruleKey);
+        result = Optional.empty();
+      }
+    } catch (NoSuchFileException e) {
+      miss(ruleKey);
+      result = Optional.empty();
+    }
+
+    LOG.debug(
+        "Artifact fetchLocal(%s) cache %s",
+        ruleKey,
+        (result.isPresent() ? "hit" : "miss"));
+    return result;
+  }
+
+  @Override
+  public boolean isLocalFetchSupported() {
+    return true;
+  }
+
+  private CacheResult miss(RuleKey ruleKey) {
+    // If the artifact was indexed, it's been deleted from under us.
+    if (index.isPresent()) {
+      try {
+        index.get().recordRemoval(getIndexKey(ruleKey));
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to update the index of [%s].", cacheDir);
+      }
+    }
+    return CacheResult.miss();
+  }
+
+  private void recordAccess(RuleKey ruleKey) throws IOException {
+    if (index.isPresent()) {
+      index.get().recordAccess(getIndexKey(ruleKey));
+    }
+  }
+
+  private ImmutableMap<String, String> readMetadata(RuleKey ruleKey) throws IOException {
+    ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
+    try (DataInputStream in =
+             new DataInputStream(
+                 filesystem.newFileInputStream(
+                     getPathForRuleKey(ruleKey, Optional.of(METADATA_EXTENSION))))) {
+      int sz = in.readInt();
+      for (int i = 0; i < sz; i++) {
+        String key = in.readUTF();
+        int valSize = in.readInt();
+        byte[] val = new byte[valSize];
+        ByteStreams.readFully(in, val);
+        metadata.put(key, new String(val, Charsets.UTF_8));
+      }
+    }
+    return metadata.build();
+  }
+
+  /** @return a hit for each rule key whose artifact and metadata are both in the cache. */
+  @Override
+  public ImmutableMap<RuleKey, CacheResult> multiContains(ImmutableSet<RuleKey> ruleKeys) {
+    ImmutableMap.Builder<RuleKey, CacheResult> results = ImmutableMap.builder();
+    for (RuleKey ruleKey : ruleKeys) {
+      boolean contains =
+          filesystem.exists(getPathForRuleKey(ruleKey, Optional.empty())) &&
+          filesystem.exists(getPathForRuleKey(ruleKey, Optional.of(METADATA_EXTENSION)));
+      results.put(ruleKey, contains ? CacheResult.hit(name) : CacheResult.miss());
+    }
+    return results.build();
+  }
+
   @Override
   public ListenableFuture<Void> store(
       ArtifactInfo info,
@@ -141,7 +261,7 @@ public class DirArtifactCache implements ArtifactCache {
       Optional<Path> borrowedAndStoredArtifactPath = Optional.empty();
       for (RuleKey ruleKey : info.getRuleKeys()) {
         Path artifactPath = getPathForRuleKey(ruleKey, Optional.empty());
-        Path metadataPath = getPathForRuleKey(ruleKey, Optional.of(".metadata"));
+        Path metadataPath = getPathForRuleKey(ruleKey, Optional.of(METADATA_EXTENSION));
 
         if (filesystem.exists(artifactPath) && filesystem.exists(metadataPath)) {
           continue;
@@ -162,7 +282,6 @@ public class DirArtifactCache implements ArtifactCache {
             storeArtifactOutput(borrowedAndStoredArtifactPath.get(), artifactPath);
           }
         }
-        bytesSinceLastDeleteOldFiles += filesystem.getFileSize(artifactPath);
 
         // Now, write the meta data artifact.
         Path tmp = filesystem.createTempFile(getPreparedTempFolder(), "metadata", TMP_EXTENSION);
@@ -177,12 +296,27 @@ public class DirArtifactCache implements ArtifactCache {
             }
           }
           filesystem.move(tmp, metadataPath, StandardCopyOption.REPLACE_EXISTING);
-          bytesSinceLastDeleteOldFiles += filesystem.getFileSize(metadataPath);
         } finally {
           filesystem.deleteFileAtPathIfExists(tmp);
         }
+
+        if (index.isPresent()) {
+          long sizeBytes =
+              filesystem.getFileSize(artifactPath) + filesystem.getFileSize(metadataPath);
+          index.get().recordStore(getIndexKey(ruleKey), sizeBytes);
+          bytesSinceLastDeleteOldFiles.addAndGet(sizeBytes);
+        }
       }
 
+      if (index.isPresent()) {
+        long maxSizeBytes = maxCacheSizeBytes.get();
+        if (bytesSinceLastDeleteOldFiles.get() >
+            maxSizeBytes * STORED_TO_MAX_BYTES_RATIO_REBUILD_TRIGGER) {
+          deleteOldFiles();
+        } else if (index.get().getTotalSizeBytes() > maxSizeBytes) {
+          evictLeastRecentlyUsed();
+        }
+      }
     } catch (IOException e) {
       LOG.warn(
           e,
@@ -191,20 +325,83 @@ public class DirArtifactCache implements ArtifactCache {
           output);
     }
 
-    if (maxCacheSizeBytes.isPresent() &&
-        bytesSinceLastDeleteOldFiles >
-            (maxCacheSizeBytes.get() * STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER)) {
-      bytesSinceLastDeleteOldFiles = 0L;
-      deleteOldFiles();
+    return Futures.immediateFuture(null);
+  }
+
+  private void evictLeastRecentlyUsed() throws IOException {
+    Path cacheDirInFs = filesystem.resolve(cacheDir);
+    for (String key : index.get().evictLeastRecentlyUsed(
+        (long) (maxCacheSizeBytes.get() * MAX_BYTES_TRIM_RATIO))) {
+      Path artifact = cacheDirInFs.resolve(key);
+      filesystem.deleteFileAtPathIfExists(artifact);
+      filesystem.deleteFileAtPathIfExists(
+          artifact.resolveSibling(artifact.getFileName() + METADATA_EXTENSION));
     }
+  }
 
-    return Futures.immediateFuture(null);
+  /**
+   * Finds the artifacts in the cache directory, for rebuilding the index. Each artifact's size
+   * includes its metadata, and artifacts are ordered by when they were last accessed, as reported
+   * by the filesystem.
+   */
+  private ImmutableList<DirArtifactCacheIndex.Entry> scanCache() throws IOException {
+    Path cacheDirInFs = filesystem.resolve(cacheDir);
+    DirectoryCleaner.PathSelector pathSelector = getDirectoryCleanerPathSelector();
+
+    // Group each artifact with its metadata, treating the pair as recently used as the most
+    // recently used of the two.
+    Map<String, DirectoryCleaner.PathStats> artifacts = new TreeMap<>();
+    for (Path file : getAllFilesInCache()) {
+      BasicFileAttributes attributes;
+      try {
+        attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        continue;
+      }
+      String key = cacheDirInFs.relativize(file).toString();
+      if (key.endsWith(METADATA_EXTENSION)) {
+        key = key.substring(0, key.length() - METADATA_EXTENSION.length());
+      }
+      DirectoryCleaner.PathStats stats = new DirectoryCleaner.PathStats(
+          file,
+          attributes.size(),
+          attributes.creationTime().toMillis(),
+          attributes.lastAccessTime().toMillis());
+      DirectoryCleaner.PathStats previous = artifacts.get(key);
+      if (previous != null) {
+        DirectoryCleaner.PathStats latest =
+            pathSelector.comparePaths(previous, stats) > 0 ? previous : stats;
+        stats = new DirectoryCleaner.PathStats(
+            latest.getPath(),
+            previous.getTotalSizeBytes() + stats.getTotalSizeBytes(),
+            latest.getCreationMillis(),
+            latest.getLastAccessMillis());
+      }
+      artifacts.put(key, stats);
+    }
+
+    List<Map.Entry<String, DirectoryCleaner.PathStats>> sorted =
+        new ArrayList<>(artifacts.entrySet());
+    sorted.sort(Comparator.comparing(Map.Entry::getValue, pathSelector::comparePaths));
+    ImmutableList.Builder<DirArtifactCacheIndex.Entry> entries = ImmutableList.builder();
+    for (Map.Entry<String, DirectoryCleaner.PathStats> artifact : sorted) {
+      entries.add(
+          new DirArtifactCacheIndex.Entry(
+              artifact.getKey(),
+              artifact.getValue().getTotalSizeBytes(),
+              artifact.getValue().getLastAccessMillis()));
+    }
+    return entries.build();
   }
 
   private Path getPathToTempFolder() {
     return cacheDir.resolve("tmp");
   }
 
+  private Path getPathToIndexFolder() {
+    return cacheDir.resolve("index");
+  }
+
   private Path getPreparedTempFolder() throws IOException {
     Path tmp = getPathToTempFolder();
     if (!filesystem.exists(tmp)) {
@@ -227,6 +424,12 @@ public class DirArtifactCache implements ArtifactCache {
     return getParentDirForRuleKey(ruleKey).resolve(ruleKey.toString() + extension.orElse(""));
   }
 
+  private String getIndexKey(RuleKey ruleKey) {
+    return filesystem.resolve(cacheDir)
+        .relativize(filesystem.resolve(getPathForRuleKey(ruleKey, Optional.empty())))
+        .toString();
+  }
+
   @VisibleForTesting
   Path getParentDirForRuleKey(RuleKey ruleKey) {
     ImmutableList<String> folders = subfolders(ruleKey);
@@ -245,7 +448,6 @@ public class DirArtifactCache implements ArtifactCache {
     try {
       filesystem.copyFile(output, tmp);
       filesystem.move(tmp, artifactPath);
-      bytesSinceLastDeleteOldFiles += filesystem.getFileSize(artifactPath);
     } finally {
       filesystem.deleteFileAtPathIfExists(tmp);
     }
@@ -261,32 +463,42 @@ public class DirArtifactCache implements ArtifactCache {
 
   @Override
   public void close() {
-    // Do a cache clean up on exit only if cache was written to.
-    if (bytesSinceLastDeleteOldFiles > 0) {
-      deleteOldFiles();
+    if (!index.isPresent()) {
+      return;
+    }
+    try {
+      index.get().close();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to close the index of [%s].", cacheDir);
     }
   }
 
   /**
-   * Deletes files that haven't been accessed recently from the directory cache.
+   * Rebuilds the index from the cache directory, and then deletes the files that haven't been
+   * accessed recently.
    */
   @VisibleForTesting
   void deleteOldFiles() {
-    if (!maxCacheSizeBytes.isPresent()) {
+    if (!index.isPresent()) {
       return;
     }
 
-    Path cacheDirInFs = filesystem.resolve(cacheDir);
+    bytesSinceLastDeleteOldFiles.set(0L);
     try {
-      newDirectoryCleaner().clean(cacheDirInFs);
+      index.get().rebuild();
+      if (index.get().getTotalSizeBytes() > maxCacheSizeBytes.get()) {
+        evictLeastRecentlyUsed();
+      }
     } catch (IOException e) {
-      LOG.error(e, "Failed to clean path [%s].", cacheDirInFs);
+      LOG.error(e, "Failed to clean path [%s].", filesystem.resolve(cacheDir));
     }
   }
 
   @VisibleForTesting
   List<Path> getAllFilesInCache() throws IOException {
     final List<Path> allFiles = new ArrayList<>();
+    final Path tempFolder = filesystem.resolve(getPathToTempFolder());
+    final Path indexFolder = filesystem.resolve(getPathToIndexFolder());
     Files.walkFileTree(
         filesystem.resolve(cacheDir),
         ImmutableSet.of(),
@@ -296,8 +508,9 @@ public class DirArtifactCache implements ArtifactCache {
           @Override
           public FileVisitResult preVisitDirectory(
               Path dir, BasicFileAttributes attrs) throws IOException {
-            // do not work with files in temp folder as they will be moved later
-            if (dir.equals(getPathToTempFolder())) {
+            // do not work with files in temp folder as they will be moved later, or with the
+            // index, which isn't an artifact
+            if (dir.equals(tempFolder) || dir.equals(indexFolder)) {
               return FileVisitResult.SKIP_SUBTREE;
             }
             return super.preVisitDirectory(dir, attrs);
@@ -315,18 +528,6 @@ public class DirArtifactCache implements ArtifactCache {
     return allFiles;
   }
 
-  private DirectoryCleaner newDirectoryCleaner() {
-    DirectoryCleanerArgs cleanerArgs = DirectoryCleanerArgs.builder()
-        .setPathSelector(
-            getDirectoryCleanerPathSelector())
-        .setMaxTotalSizeBytes(maxCacheSizeBytes.get())
-        .setMaxBytesAfterDeletion((long) (maxCacheSizeBytes.get() * MAX_BYTES_TRIM_RATIO))
-        .setMinAmountOfEntriesToKeep(0)
-        .build();
-
-    return new DirectoryCleaner(cleanerArgs);
-  }
-
   @VisibleForTesting
   DirectoryCleaner.PathSelector getDirectoryCleanerPathSelector() {
     return new DirectoryCleaner.PathSelector() {
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+/**
+ * An index of the artifacts in a {@link DirArtifactCache}, kept in least recently used order, so
+ * that the cache can account for its size and evict old artifacts without walking its directory.
+ * <p>
+ * The index is persisted as an append-only journal of stores, accesses and removals. The journal
+ * is only replayed once the index is actually needed, when making room for a new artifact, so
+ * builds which just read from the cache only ever append to it. If the journal is missing, or
+ * wasn't closed cleanly, the index is rebuilt by scanning the cache directory instead, and the
+ * journal is rewritten. The journal is also compacted on close once it has grown much larger than
+ * the index it describes.
+ * <p>
+ * Several processes may share a cache, so every read and write of the journal holds a lock on a
+ * file next to it. Rewrites happen in place under that lock, so they can't lose records that
+ * others are appending.
+ */
+class DirArtifactCacheIndex implements Closeable {
+
+  private static final Logger LOG = Logger.get(DirArtifactCacheIndex.class);
+
+  private static final int MAGIC = 0x42434a4c;
+  private static final int VERSION = 1;
+
+  private static final byte STORE = 1;
+  private static final byte ACCESS = 2;
+  private static final byte REMOVE = 3;
+  private static final byte CLOSE = 4;
+
+  // Compact the journal once it has this many more records than the index has entries.
+  private static final long MIN_STALE_RECORDS_BEFORE_COMPACTION = 10000;
+
+  /**
+   * Finds the artifacts in the cache directory when the index needs to be rebuilt.
+   */
+  @FunctionalInterface
+  interface Scanner {
+    /**
+     * @return the artifacts in the cache, least recently used first.
+     */
+    ImmutableList<Entry> scan() throws IOException;
+  }
+
+  private final Path journalPath;
+  private final Path lockPath;
+  private final Scanner scanner;
+
+  // Entries by key, in access order, so iteration starts with the least recently used artifact.
+  // Null until the index is first needed.
+  @Nullable private LinkedHashMap<String, Entry> entries;
+  private long totalSizeBytes;
+  private long journalRecords;
+  // How big the journal should be given what we've written, so we can tell if others wrote to it.
+  private long expectedJournalSizeBytes;
+  @Nullable private FileChannel journal;
+
+  DirArtifactCacheIndex(Path journalPath, Scanner scanner) {
+    this.journalPath = journalPath;
+    this.lockPath = journalPath.resolveSibling(journalPath.getFileName() + ".lock");
+    this.scanner = scanner;
+  }
+
+  /**
+   * Records that an artifact of the given size was stored under {@code key}.
+   */
+  public synchronized void recordStore(String key, long sizeBytes) throws IOException {
+    LinkedHashMap<String, Entry> entries = load();
+    Entry previous = entries.remove(key);
+    if (previous != null) {
+      totalSizeBytes -= previous.getSizeBytes();
+    }
+    Entry entry = new Entry(key, sizeBytes, System.currentTimeMillis());
+    entries.put(key, entry);
+    totalSizeBytes += sizeBytes;
+    append(STORE, entry);
+  }
+
+  /**
+   * Records that the artifact stored under {@code key} was fetched, which makes it the most
+   * recently used. This doesn't need the index to be loaded.
+   */
+  public synchronized void recordAccess(String key) throws IOException {
+    long now = System.currentTimeMillis();
+    if (entries != null) {
+      Entry entry = entries.get(key);
+      if (entry == null) {
+        // Probably stored by another process since we loaded the index. We'll pick it up next time
+        // the index is loaded from the journal.
+        return;
+      }
+      entry.lastAccessMillis = now;
+    }
+    append(ACCESS, new Entry(key, 0, now));
+  }
+
+  /**
+   * Records that the artifact stored under {@code key} has gone, if the index knew about it.
+   */
+  public synchronized void recordRemoval(String key) throws IOException {
+    if (entries == null) {
+      return;
+    }
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      totalSizeBytes -= entry.getSizeBytes();
+      append(REMOVE, entry);
+    }
+  }
+
+  public synchronized long getTotalSizeBytes() throws IOException {
+    load();
+    return totalSizeBytes;
+  }
+
+  /**
+   * Removes the least recently used entries from the index until the artifacts it describes take
+   * up no more than {@code maxSizeBytes}.
+   *
+   * @return the keys of the removed entries, whose artifacts the caller should delete.
+   */
+  public synchronized ImmutableList<String> evictLeastRecentlyUsed(long maxSizeBytes)
+      throws IOException {
+    ImmutableList.Builder<String> evicted = ImmutableList.builder();
+    Iterator<Entry> iterator = load().values().iterator();
+    while (totalSizeBytes > maxSizeBytes && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      iterator.remove();
+      totalSizeBytes -= entry.getSizeBytes();
+      append(REMOVE, entry);
+      evicted.add(entry.getKey());
+    }
+    return evicted.build();
+  }
+
+  /**
+   * Throws away the index and rebuilds it from the artifacts actually in the cache directory.
+   * <p>
+   * The journal stays locked while scanning, so that artifacts stored by other processes in the
+   * meantime are either found by the scan or journalled after it's been rewritten.
+   */
+  public synchronized void rebuild() throws IOException {
+    try (JournalLock lock = lockJournal()) {
+      LinkedHashMap<String, Entry> rebuilt = newEntriesMap();
+      long rebuiltSizeBytes = 0;
+      for (Entry entry : scanner.scan()) {
+        Entry previous = rebuilt.put(entry.getKey(), entry);
+        Preconditions.checkState(previous == null, "Duplicate cache entry %s.", entry.getKey());
+        rebuiltSizeBytes += entry.getSizeBytes();
+      }
+      entries = rebuilt;
+      totalSizeBytes = rebuiltSizeBytes;
+      rewriteJournal(/* closed */ false);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      if (entries != null &&
+          journalRecords - entries.size() > MIN_STALE_RECORDS_BEFORE_COMPACTION &&
+          journalRecords > 2L * entries.size()) {
+        try (JournalLock lock = lockJournal()) {
+          // Others' records since we loaded the index would be lost, so leave those to be
+          // compacted by whoever closes the journal last.
+          if (!wasWrittenToByOthers()) {
+            rewriteJournal(/* closed */ true);
+            return;
+          }
+        }
+      }
+      // Having loaded the index, we may have rewritten the journal, which leaves it open.
+      if (journal != null || entries != null) {
+        append(CLOSE, null);
+      }
+    } finally {
+      closeJournal();
+    }
+  }
+
+  @VisibleForTesting
+  synchronized boolean isLoaded() {
+    return entries != null;
+  }
+
+  @VisibleForTesting
+  synchronized ImmutableList<String> getKeysLeastRecentlyUsedFirst() throws IOException {
+    return ImmutableList.copyOf(load().keySet());
+  }
+
+  private LinkedHashMap<String, Entry> load() throws IOException {
+    if (entries != null) {
+      return entries;
+    }
+
+    if (Files.exists(journalPath)) {
+      try (JournalLock lock = lockJournal()) {
+        if (replayJournal()) {
+          return Preconditions.checkNotNull(entries);
+        }
+      }
+    }
+
+    LOG.info("Rebuilding cache index %s.", journalPath);
+    rebuild();
+    return Preconditions.checkNotNull(entries);
+  }
+
+  /**
+   * @return whether the journal was read in its entirety and had been closed cleanly.
+   */
+  private boolean replayJournal() throws IOException {
+    LinkedHashMap<String, Entry> replayed = newEntriesMap();
+    long replayedSizeBytes = 0;
+    long records = 0;
+    byte lastRecord = CLOSE;
+
+    try (DataInputStream in =
+             new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LOG.warn("Cache index %s is not in a format we understand.", journalPath);
+        return false;
+      }
+
+      while (true) {
+        int type = in.read();
+        if (type == -1) {
+          break;
+        }
+        records++;
+        lastRecord = (byte) type;
+
+        if (type == CLOSE) {
+          continue;
+        }
+        String key = in.readUTF();
+        switch (type) {
+          case STORE:
+            Entry entry = new Entry(key, in.readLong(), in.readLong());
+            Entry previous = replayed.put(key, entry);
+            replayedSizeBytes += entry.getSizeBytes() -
+                (previous == null ? 0 : previous.getSizeBytes());
+            break;
+          case ACCESS:
+            long accessMillis = in.readLong();
+            Entry accessed = replayed.get(key);
+            if (accessed != null) {
+              accessed.lastAccessMillis = accessMillis;
+            }
+            break;
+          case REMOVE:
+            Entry removed = replayed.remove(key);
+            if (removed != null) {
+              replayedSizeBytes -= removed.getSizeBytes();
+            }
+            break;
+          default:
+            LOG.warn("Cache index %s has an unknown record type %d.", journalPath, type);
+            return false;
+        }
+      }
+    } catch (EOFException e) {
+      LOG.warn("Cache index %s ends with a partial record.", journalPath);
+      return false;
+    }
+
+    if (lastRecord != CLOSE) {
+      LOG.info("Cache index %s was not closed cleanly.", journalPath);
+      return false;
+    }
+
+    entries = replayed;
+    totalSizeBytes = replayedSizeBytes;
+    journalRecords = records;
+    expectedJournalSizeBytes = Files.size(journalPath);
+    return true;
+  }
+
+  /**
+   * Replaces the journal's contents with the current index. The journal must be locked.
+   */
+  private void rewriteJournal(boolean closed) throws IOException {
+    Preconditions.checkNotNull(entries);
+    closeJournal();
+    Files.createDirectories(journalPath.getParent());
+    long records = 0;
+    // Overwrite the journal rather than moving a new one over it, as others may have it open to
+    // append to once we release the lock.
+    try (FileChannel channel = FileChannel.open(
+             journalPath,
+             StandardOpenOption.CREATE,
+             StandardOpenOption.WRITE,
+             StandardOpenOption.TRUNCATE_EXISTING);
+         DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      for (Entry entry : entries.values()) {
+        writeRecord(out, STORE, entry);
+        records++;
+      }
+      if (closed) {
+        writeRecord(out, CLOSE, null);
+        records++;
+      }
+    }
+    journalRecords = records;
+    expectedJournalSizeBytes = Files.size(journalPath);
+  }
+
+  private void append(byte type, @Nullable Entry entry) throws IOException {
+    if (journal == null) {
+      // A journal that doesn't exist yet will be written in full when the index is rebuilt, so
+      // there's no point starting one just to record accesses.
+      if (entries == null && !Files.exists(journalPath)) {
+        return;
+      }
+      journal = FileChannel.open(
+          journalPath,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writeRecord(new DataOutputStream(bytes), type, entry);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    try (JournalLock lock = lockJournal()) {
+      while (buffer.hasRemaining()) {
+        expectedJournalSizeBytes += journal.write(buffer);
+      }
+    }
+    journalRecords++;
+  }
+
+  private static void writeRecord(DataOutputStream out, byte type, @Nullable Entry entry)
+      throws IOException {
+    out.writeByte(type);
+    if (type == CLOSE) {
+      return;
+    }
+    Preconditions.checkNotNull(entry);
+    out.writeUTF(entry.getKey());
+    if (type == STORE) {
+      out.writeLong(entry.getSizeBytes());
+    }
+    if (type == STORE || type == ACCESS) {
+      out.writeLong(entry.getLastAccessMillis());
+    }
+    out.flush();
+  }
+
+  private boolean wasWrittenToByOthers() throws IOException {
+    return !Files.exists(journalPath) || Files.size(journalPath) != expectedJournalSizeBytes;
+  }
+
+  private void closeJournal() throws IOException {
+    if (journal != null) {
+      try {
+        journal.close();
+      } finally {
+        journal = null;
+      }
+    }
+  }
+
+  private JournalLock lockJournal() throws IOException {
+    Files.createDirectories(lockPath.getParent());
+    return new JournalLock(lockPath);
+  }
+
+  private static LinkedHashMap<String, Entry> newEntriesMap() {
+    return new LinkedHashMap<>(16, 0.75f, /* accessOrder */ true);
+  }
+
+  /**
+   * Exclusive access to a journal, between processes and between the indexes of the same cache in
+   * this one. The lock is taken on a separate file, because closing any channel to a file may
+   * release all of this process's locks on it.
+   */
+  private static class JournalLock implements Closeable {
+    // File locks are held on behalf of the whole process, so threads have to take turns first.
+    private static final ConcurrentMap<Path, ReentrantLock> IN_PROCESS_LOCKS =
+        new ConcurrentHashMap<>();
+
+    private final ReentrantLock inProcessLock;
+    private final FileChannel channel;
+
+    JournalLock(Path lockPath) throws IOException {
+      inProcessLock = IN_PROCESS_LOCKS.computeIfAbsent(
+          lockPath.toAbsolutePath().normalize(),
+          path -> new ReentrantLock());
+      Preconditions.checkState(
+          !inProcessLock.isHeldByCurrentThread(),
+          "%s is already locked by this thread.",
+          lockPath);
+      inProcessLock.lock();
+      try {
+        channel = FileChannel.open(
+            lockPath,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+        try {
+          channel.lock();
+        } catch (IOException | RuntimeException e) {
+          channel.close();
+          throw e;
+        }
+      } catch (IOException | RuntimeException e) {
+        inProcessLock.unlock();
+        throw e;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        // Closing the channel releases the file lock.
+        channel.close();
+      } finally {
+        inProcessLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * An artifact in the cache. Its size includes the artifact's metadata.
+   */
+  static class Entry {
+    private final String key;
+    private final long sizeBytes;
+    private long lastAccessMillis;
+
+    Entry(String key, long sizeBytes, long lastAccessMillis) {
+      this.key = key;
+      this.sizeBytes = sizeBytes;
+      this.lastAccessMillis = lastAccessMillis;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public long getSizeBytes() {
+      return sizeBytes;
+    }
+
+    public long getLastAccessMillis() {
+      return lastAccessMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s (%d bytes)", key, sizeBytes);
+    }
+  }
+}
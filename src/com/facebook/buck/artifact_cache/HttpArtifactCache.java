@@ -22,6 +22,7 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.slb.HttpResponse;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -30,6 +31,7 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Optional;
 
 import okhttp3.MediaType;
 import okhttp3.Request;
@@ -57,6 +59,39 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
       RuleKey ruleKey,
       LazyPath output,
       final Finished.Builder eventBuilder) throws IOException {
+    TempFilePayloadConsumer consumer = new TempFilePayloadConsumer(output);
+    CacheResult result = fetchInternal(ruleKey, consumer, eventBuilder);
+    if (consumer.temp.isPresent()) {
+      if (result.getType() == CacheResultType.HIT) {
+        // Finally, move the temp file into it's final place.
+        projectFilesystem.move(
+            consumer.temp.get(),
+            output.get(),
+            StandardCopyOption.REPLACE_EXISTING);
+      } else {
+        projectFilesystem.deleteFileAtPath(consumer.temp.get());
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isStreamingFetchSupported() {
+    return true;
+  }
+
+  @Override
+  protected CacheResult fetchStreamingImpl(
+      RuleKey ruleKey,
+      ArtifactPayloadConsumer consumer,
+      Finished.Builder eventBuilder) throws IOException {
+    return fetchInternal(ruleKey, consumer, eventBuilder);
+  }
+
+  private CacheResult fetchInternal(
+      RuleKey ruleKey,
+      ArtifactPayloadConsumer consumer,
+      final Finished.Builder eventBuilder) throws IOException {
 
     Request.Builder requestBuilder =
         new Request.Builder()
@@ -81,21 +116,8 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
           return CacheResult.error(name, msg);
         }
 
-        // Setup a temporary file, which sits next to the destination, to write to and
-        // make sure all parent dirs exist.
-        Path file = output.get();
-        projectFilesystem.createParentDirs(file);
-        Path temp = projectFilesystem.createTempFile(
-            file.getParent(),
-            file.getFileName().toString(),
-            ".tmp");
-
-        FetchResponseReadResult fetchedData;
-        try (OutputStream tempFileOutputStream = projectFilesystem.newFileOutputStream(temp)) {
-          fetchedData = HttpArtifactCacheBinaryProtocol.readFetchResponse(
-              input,
-              tempFileOutputStream);
-        }
+        FetchResponseReadResult fetchedData =
+            HttpArtifactCacheBinaryProtocol.readFetchResponse(input, consumer);
 
         eventBuilder
             .setTarget(ArtifactCacheEvent.getTarget(fetchedData.getMetadata()))
@@ -111,19 +133,15 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
           return CacheResult.error(name, msg);
         }
 
-        // Now form the checksum on the file we got and compare it to the checksum form the
-        // the HTTP header.  If it's incorrect, log this and return a miss.
+        // Now form the checksum on the payload we got and compare it to the checksum form the
+        // the HTTP header.  If it's incorrect, log this and return an error.
         if (!fetchedData.getExpectedHashCode().equals(fetchedData.getActualHashCode())) {
           String msg = "artifact had invalid checksum";
           reportFailure("fetch(%s, %s): %s", response.requestUrl(), ruleKey, msg);
-          projectFilesystem.deleteFileAtPath(temp);
           eventBuilder.getFetchBuilder().setErrorMessage(msg);
           return CacheResult.error(name, msg);
         }
 
-        // Finally, move the temp file into it's final place.
-        projectFilesystem.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
-
         LOG.info("fetch(%s, %s): cache hit", response.requestUrl(), ruleKey);
         return CacheResult.hit(name, fetchedData.getMetadata(), fetchedData.getResponseSizeBytes());
       }
@@ -187,4 +205,31 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
       eventBuilder.getStoreBuilder().setWasStoreSuccessful(!requestFailed);
     }
   }
+
+  /**
+   * Writes the payload to a temporary file, which sits next to the destination.
+   */
+  private class TempFilePayloadConsumer implements ArtifactPayloadConsumer {
+    private final LazyPath output;
+    private Optional<Path> temp = Optional.empty();
+
+    public TempFilePayloadConsumer(LazyPath output) {
+      this.output = output;
+    }
+
+    @Override
+    public void consume(InputStream payload) throws IOException {
+      // Make sure all parent dirs exist.
+      Path file = output.get();
+      projectFilesystem.createParentDirs(file);
+      temp = Optional.of(
+          projectFilesystem.createTempFile(
+              file.getParent(),
+              file.getFileName().toString(),
+              ".tmp"));
+      try (OutputStream tempFileOutputStream = projectFilesystem.newFileOutputStream(temp.get())) {
+        ByteStreams.copy(payload, tempFileOutputStream);
+      }
+    }
+  }
 }
@@ -30,6 +30,7 @@ import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 
 import org.immutables.value.Value;
 
@@ -40,6 +41,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 /**
@@ -58,10 +60,16 @@ public class HttpArtifactCacheBinaryProtocol {
   public static FetchResponseReadResult readFetchResponse(
       DataInputStream input,
       OutputStream payloadSink) throws IOException {
+    return readFetchResponse(input, payload -> ByteStreams.copy(payload, payloadSink));
+  }
+
+  public static FetchResponseReadResult readFetchResponse(
+      DataInputStream input,
+      ArtifactPayloadConsumer payloadConsumer) throws IOException {
 
     MetadataAndPayloadReadResultInternal resultInternal = readMetadataAndPayload(
         input,
-        payloadSink);
+        payloadConsumer);
 
     FetchResponseReadResult.Builder result = FetchResponseReadResult.builder().from(resultInternal);
     return result.build();
@@ -89,6 +97,12 @@ public class HttpArtifactCacheBinaryProtocol {
   public static MetadataAndPayloadReadResultInternal readMetadataAndPayload(
       DataInputStream input,
       OutputStream payloadSink) throws IOException {
+    return readMetadataAndPayload(input, payload -> ByteStreams.copy(payload, payloadSink));
+  }
+
+  public static MetadataAndPayloadReadResultInternal readMetadataAndPayload(
+      DataInputStream input,
+      ArtifactPayloadConsumer payloadConsumer) throws IOException {
     // Read the size of a the metadata, and use that to build a input stream to read and
     // process the rest of it.
     int metadataSize = input.readInt();
@@ -134,12 +148,14 @@ public class HttpArtifactCacheBinaryProtocol {
       result.setExpectedHashCode(HashCode.fromBytes(hashCodeBytes));
     }
 
-    // The remaining data is the payload, which we write to the created file, and also include
-    // in our verification checksum.
+    // The remaining data is the payload, which we hand to the consumer, and also include
+    // in our verification checksum.  Whatever the consumer leaves unread still gets hashed.
     Hasher artifactOnlyHasher = HASH_FUNCTION.newHasher();
-    try (InputStream payload = new HasherInputStream(artifactOnlyHasher,
-        new HasherInputStream(hasher, input))) {
-      result.setResponseSizeBytes(ByteStreams.copy(payload, payloadSink));
+    try (CountingInputStream payload = new CountingInputStream(
+        new HasherInputStream(artifactOnlyHasher, new HasherInputStream(hasher, input)))) {
+      payloadConsumer.consume(payload);
+      ByteStreams.copy(payload, ByteStreams.nullOutputStream());
+      result.setResponseSizeBytes(payload.getCount());
       result.setArtifactOnlyHashCode(artifactOnlyHasher.hash());
     }
 
@@ -269,6 +285,17 @@ public class HttpArtifactCacheBinaryProtocol {
       return contentLength;
     }
 
+    /**
+     * @return the bytes which {@link #write(OutputStream)} writes before the payload, so that
+     *     callers which send the payload themselves can send these first.
+     */
+    public byte[] getHeader() {
+      return ByteBuffer.allocate(Integer.SIZE / Byte.SIZE + rawMetadata.length)
+          .putInt(rawMetadata.length)
+          .put(rawMetadata)
+          .array();
+    }
+
     public void write(OutputStream responseSink) throws IOException {
       try (DataOutputStream dataOutputStream = new DataOutputStream(responseSink)) {
         dataOutputStream.writeInt(rawMetadata.length);
@@ -18,11 +18,19 @@ package com.facebook.buck.artifact_cache;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.RuleKey;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
 /**
  * Decorator for wrapping a {@link ArtifactCache} to log a {@link ArtifactCacheEvent} for the start
  * and finish of each event.
@@ -54,6 +62,42 @@ public class LoggingArtifactCacheDecorator implements ArtifactCache {
     return fetchResult;
   }
 
+  @Override
+  public CacheResult fetchStreaming(RuleKey ruleKey, ArtifactPayloadConsumer consumer) {
+    ArtifactCacheEvent.Started started =
+        eventFactory.newFetchStartedEvent(ImmutableSet.of(ruleKey));
+    eventBus.post(started);
+    CacheResult fetchResult = delegate.fetchStreaming(ruleKey, consumer);
+    eventBus.post(eventFactory.newFetchFinishedEvent(
+            started,
+            fetchResult));
+    return fetchResult;
+  }
+
+  @Override
+  public ImmutableList<CacheResult> multiFetch(
+      ImmutableList<Pair<RuleKey, LazyPath>> requests) {
+    List<ArtifactCacheEvent.Started> startedEvents = new ArrayList<>(requests.size());
+    for (Pair<RuleKey, LazyPath> request : requests) {
+      ArtifactCacheEvent.Started started =
+          eventFactory.newFetchStartedEvent(ImmutableSet.of(request.getFirst()));
+      eventBus.post(started);
+      startedEvents.add(started);
+    }
+    ImmutableList<CacheResult> fetchResults = delegate.multiFetch(requests);
+    for (int i = 0; i < fetchResults.size(); i++) {
+      eventBus.post(eventFactory.newFetchFinishedEvent(
+              startedEvents.get(i),
+              fetchResults.get(i)));
+    }
+    return fetchResults;
+  }
+
+  @Override
+  public ImmutableMap<RuleKey, CacheResult> multiContains(ImmutableSet<RuleKey> ruleKeys) {
+    return delegate.multiContains(ruleKeys);
+  }
+
   @Override
   public ListenableFuture<Void> store(
       ArtifactInfo info,
@@ -71,6 +115,21 @@ public class LoggingArtifactCacheDecorator implements ArtifactCache {
     return delegate.isStoreSupported();
   }
 
+  @Override
+  public boolean isStreamingFetchSupported() {
+    return delegate.isStreamingFetchSupported();
+  }
+
+  @Override
+  public Optional<LocalArtifact> fetchLocal(RuleKey ruleKey) throws IOException {
+    return delegate.fetchLocal(ruleKey);
+  }
+
+  @Override
+  public boolean isLocalFetchSupported() {
+    return delegate.isLocalFetchSupported();
+  }
+
   @Override
   public void close() {
     delegate.close();
@@ -18,16 +18,36 @@ package com.facebook.buck.artifact_cache;
 
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.io.TeeInputStream;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.RuleKey;
 import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * MultiArtifactCache encapsulates a set of ArtifactCache instances such that fetch() succeeds if
@@ -36,15 +56,20 @@ import java.util.Optional;
  */
 public class MultiArtifactCache implements ArtifactCache {
 
+  private static final Logger LOG = Logger.get(MultiArtifactCache.class);
+
   private final ImmutableList<ArtifactCache> artifactCaches;
   private final ImmutableList<ArtifactCache> writableArtifactCaches;
   private final boolean isStoreSupported;
+  private final boolean isStreamingFetchSupported;
 
   public MultiArtifactCache(ImmutableList<ArtifactCache> artifactCaches) {
     this.artifactCaches = artifactCaches;
     this.writableArtifactCaches = ImmutableList.copyOf(
         Iterables.filter(artifactCaches, ArtifactCache::isStoreSupported));
     this.isStoreSupported = this.writableArtifactCaches.size() > 0;
+    this.isStreamingFetchSupported =
+        Iterables.all(artifactCaches, ArtifactCache::isStreamingFetchSupported);
   }
 
   /**
@@ -66,19 +91,182 @@ public class MultiArtifactCache implements ArtifactCache {
       }
     }
     if (cacheResult.getType().isSuccess()) {
-      // Success; terminate search for a cached artifact, and propagate artifact to caches
-      // earlier in the search order so that subsequent searches terminate earlier.
-      storeToCaches(
+      propagateToPriorCaches(
           priorCaches.build(),
-          ArtifactInfo.builder()
-              .addRuleKeys(ruleKey)
-              .setMetadata(cacheResult.getMetadata())
-              .build(),
+          ruleKey,
+          cacheResult,
           BorrowablePath.notBorrowablePath(output.getUnchecked()));
     }
     return cacheResult;
   }
 
+  /**
+   * Fetch the artifact matching ruleKey, handing its payload to consumer.  As with
+   * {@link #fetch(RuleKey, LazyPath)}, an artifact found in one of the encapsulated ArtifactCaches
+   * may be stored to the writable ones earlier in the search order, from a copy of the payload
+   * which is written as it streams by.
+   */
+  @Override
+  public CacheResult fetchStreaming(RuleKey ruleKey, ArtifactPayloadConsumer consumer) {
+    CacheResult cacheResult = CacheResult.miss();
+    ImmutableList.Builder<ArtifactCache> priorCaches = ImmutableList.builder();
+    for (ArtifactCache artifactCache : artifactCaches) {
+      ImmutableList<ArtifactCache> currentPriorCaches = priorCaches.build();
+      if (currentPriorCaches.isEmpty()) {
+        cacheResult = artifactCache.fetchStreaming(ruleKey, consumer);
+      } else {
+        cacheResult = fetchStreamingAndPropagate(
+            artifactCache,
+            currentPriorCaches,
+            ruleKey,
+            consumer);
+      }
+      if (cacheResult.getType().isSuccess()) {
+        break;
+      }
+      if (artifactCache.isStoreSupported()) {
+        priorCaches.add(artifactCache);
+      }
+    }
+    return cacheResult;
+  }
+
+  private static CacheResult fetchStreamingAndPropagate(
+      ArtifactCache artifactCache,
+      ImmutableList<ArtifactCache> priorCaches,
+      RuleKey ruleKey,
+      ArtifactPayloadConsumer consumer) {
+    Path copy;
+    try {
+      copy = Files.createTempFile("buck-artifact-", ".tmp");
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to create a temporary file, not propagating %s.", ruleKey);
+      return artifactCache.fetchStreaming(ruleKey, consumer);
+    }
+
+    CacheResult cacheResult = artifactCache.fetchStreaming(
+        ruleKey,
+        payload -> {
+          try (OutputStream copyStream = new BufferedOutputStream(Files.newOutputStream(copy))) {
+            consumer.consume(new TeeInputStream(payload, copyStream));
+            ByteStreams.copy(payload, copyStream);
+          }
+        });
+    if (!cacheResult.getType().isSuccess()) {
+      deleteCopy(copy);
+      return cacheResult;
+    }
+    propagateToPriorCaches(
+        priorCaches,
+        ruleKey,
+        cacheResult,
+        BorrowablePath.borrowablePath(copy))
+        .addListener(() -> deleteCopy(copy), MoreExecutors.directExecutor());
+    return cacheResult;
+  }
+
+  private static void deleteCopy(Path copy) {
+    try {
+      Files.deleteIfExists(copy);
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to delete %s.", copy);
+    }
+  }
+
+  @Override
+  public boolean isStreamingFetchSupported() {
+    return isStreamingFetchSupported;
+  }
+
+  /**
+   * Fetch the artifacts matching the requested rule keys, asking each encapsulated ArtifactCache
+   * in turn for only those artifacts which the previous ones did not contain.  As with
+   * {@link #fetch(RuleKey, LazyPath)}, found artifacts may be stored to caches earlier in the
+   * search order.
+   */
+  @Override
+  public ImmutableList<CacheResult> multiFetch(
+      ImmutableList<Pair<RuleKey, LazyPath>> requests) {
+    CacheResult[] cacheResults = new CacheResult[requests.size()];
+    Arrays.fill(cacheResults, CacheResult.miss());
+    List<Integer> pending = new ArrayList<>(requests.size());
+    for (int i = 0; i < requests.size(); i++) {
+      pending.add(i);
+    }
+    ImmutableList.Builder<ArtifactCache> priorCaches = ImmutableList.builder();
+    for (ArtifactCache artifactCache : artifactCaches) {
+      if (pending.isEmpty()) {
+        break;
+      }
+      ImmutableList<CacheResult> results = artifactCache.multiFetch(
+          ImmutableList.copyOf(Lists.transform(pending, requests::get)));
+      List<Integer> stillPending = new ArrayList<>(pending.size());
+      for (int i = 0; i < results.size(); i++) {
+        int index = pending.get(i);
+        CacheResult cacheResult = results.get(i);
+        cacheResults[index] = cacheResult;
+        if (cacheResult.getType().isSuccess()) {
+          Pair<RuleKey, LazyPath> request = requests.get(index);
+          propagateToPriorCaches(
+              priorCaches.build(),
+              request.getFirst(),
+              cacheResult,
+              BorrowablePath.notBorrowablePath(request.getSecond().getUnchecked()));
+        } else {
+          stillPending.add(index);
+        }
+      }
+      pending = stillPending;
+      if (artifactCache.isStoreSupported()) {
+        priorCaches.add(artifactCache);
+      }
+    }
+    return ImmutableList.copyOf(cacheResults);
+  }
+
+  /**
+   * @return a hit for each rule key which any encapsulated ArtifactCache contains, and a miss for
+   *     each rule key which all of them can tell they do not contain.
+   */
+  @Override
+  public ImmutableMap<RuleKey, CacheResult> multiContains(ImmutableSet<RuleKey> ruleKeys) {
+    Map<RuleKey, CacheResult> results = new HashMap<>();
+    Set<RuleKey> missedEverywhere = new HashSet<>(ruleKeys);
+    for (ArtifactCache artifactCache : artifactCaches) {
+      ImmutableMap<RuleKey, CacheResult> cacheResults = artifactCache.multiContains(
+          ImmutableSet.copyOf(Sets.difference(ruleKeys, results.keySet())));
+      for (Map.Entry<RuleKey, CacheResult> entry : cacheResults.entrySet()) {
+        if (entry.getValue().getType().isSuccess()) {
+          results.put(entry.getKey(), entry.getValue());
+        }
+      }
+      missedEverywhere.retainAll(
+          Maps.filterValues(cacheResults, result -> !result.getType().isSuccess()).keySet());
+    }
+    for (RuleKey ruleKey : missedEverywhere) {
+      results.put(ruleKey, CacheResult.miss());
+    }
+    return ImmutableMap.copyOf(results);
+  }
+
+  /**
+   * Propagate a fetched artifact to caches earlier in the search order so that subsequent
+   * searches terminate earlier.
+   */
+  private static ListenableFuture<Void> propagateToPriorCaches(
+      ImmutableList<ArtifactCache> priorCaches,
+      RuleKey ruleKey,
+      CacheResult cacheResult,
+      BorrowablePath output) {
+    return storeToCaches(
+        priorCaches,
+        ArtifactInfo.builder()
+            .addRuleKeys(ruleKey)
+            .setMetadata(cacheResult.getMetadata())
+            .build(),
+        output);
+  }
+
   private static ListenableFuture<Void> storeToCaches(
       ImmutableList<ArtifactCache> caches,
       ArtifactInfo info,
@@ -18,6 +18,7 @@ package com.facebook.buck.artifact_cache;
 import com.facebook.buck.artifact_cache.thrift.ArtifactMetadata;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchRequest;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiFetchRequest;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheRequest;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheRequestType;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheResponse;
@@ -25,6 +26,7 @@ import com.facebook.buck.artifact_cache.thrift.BuckCacheStoreRequest;
 import com.facebook.buck.artifact_cache.thrift.PayloadInfo;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.slb.HttpResponse;
 import com.facebook.buck.slb.ThriftProtocol;
@@ -35,12 +37,14 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -80,6 +84,34 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
       RuleKey ruleKey,
       LazyPath output,
       HttpArtifactCacheEvent.Finished.Builder eventBuilder) throws IOException {
+    return fetchInternal(
+        ruleKey,
+        eventBuilder,
+        (response, fetchResponse) ->
+            readArtifactFromResponse(response, fetchResponse, ruleKey, output, eventBuilder));
+  }
+
+  @Override
+  public boolean isStreamingFetchSupported() {
+    return true;
+  }
+
+  @Override
+  protected CacheResult fetchStreamingImpl(
+      RuleKey ruleKey,
+      ArtifactPayloadConsumer consumer,
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder) throws IOException {
+    return fetchInternal(
+        ruleKey,
+        eventBuilder,
+        (response, fetchResponse) ->
+            readArtifactFromResponse(response, fetchResponse, ruleKey, consumer, eventBuilder));
+  }
+
+  private CacheResult fetchInternal(
+      RuleKey ruleKey,
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder,
+      ArtifactReader artifactReader) throws IOException {
 
     BuckCacheFetchRequest fetchRequest = new BuckCacheFetchRequest();
     com.facebook.buck.artifact_cache.thrift.RuleKey thriftRuleKey =
@@ -129,51 +161,186 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
           return CacheResult.miss();
         }
 
-        LOG.verbose("Got artifact.  Attempting to read payload.");
-        Path tmp = createTempFileForDownload();
-        ThriftArtifactCacheProtocol.Response.ReadPayloadInfo readResult;
-        try (OutputStream tmpFile = projectFilesystem.newFileOutputStream(tmp)) {
-          readResult = response.readPayload(tmpFile);
-          LOG.verbose("Successfully read payload: %d bytes.", readResult.getBytesRead());
+        return artifactReader.read(response, fetchResponse);
+      }
+    }
+  }
+
+  @Override
+  protected boolean isMultiFetchSupported() {
+    return true;
+  }
+
+  @Override
+  protected ImmutableList<CacheResult> multiFetchImpl(
+      ImmutableList<Pair<RuleKey, LazyPath>> requests,
+      ImmutableList<HttpArtifactCacheEvent.Finished.Builder> eventBuilders) throws IOException {
+
+    BuckCacheMultiFetchRequest multiFetchRequest = new BuckCacheMultiFetchRequest();
+    for (Pair<RuleKey, LazyPath> request : requests) {
+      com.facebook.buck.artifact_cache.thrift.RuleKey thriftRuleKey =
+          new com.facebook.buck.artifact_cache.thrift.RuleKey();
+      thriftRuleKey.setHashString(request.getFirst().getHashCode().toString());
+      multiFetchRequest.addToRuleKeys(thriftRuleKey);
+    }
+    multiFetchRequest.setRepository(repository);
+    multiFetchRequest.setScheduleType(scheduleType);
+    multiFetchRequest.setDistributedBuildModeEnabled(distributedBuildModeEnabled);
+
+    BuckCacheRequest cacheRequest = new BuckCacheRequest();
+    cacheRequest.setType(BuckCacheRequestType.MULTI_FETCH);
+    cacheRequest.setMultiFetchRequest(multiFetchRequest);
+
+    LOG.verbose("Will fetch %d keys in a single request.", requests.size());
+
+    final ThriftArtifactCacheProtocol.Request request =
+        ThriftArtifactCacheProtocol.createRequest(PROTOCOL, cacheRequest);
+    Request.Builder builder = toOkHttpRequest(request);
+    try (HttpResponse httpResponse = fetchClient.makeRequest(hybridThriftEndpoint, builder)) {
+      if (httpResponse.code() != 200) {
+        String message = String.format(
+            "Failed to fetch %d cache artifacts with HTTP status code [%d] to url [%s].",
+            requests.size(),
+            httpResponse.code(),
+            httpResponse.requestUrl());
+        LOG.error(message);
+        return errorForEach(requests, message);
+      }
+
+      try (ThriftArtifactCacheProtocol.Response response =
+               ThriftArtifactCacheProtocol.parseResponse(PROTOCOL, httpResponse.getBody())) {
+        // The payloads of all artifacts share a single response, so only account for it once.
+        eventBuilders.get(0)
+            .getFetchBuilder()
+            .setResponseSizeBytes(httpResponse.contentLength());
+
+        BuckCacheResponse cacheResponse = response.getThriftData();
+        if (!cacheResponse.isWasSuccessful()) {
+          LOG.warn("Request was unsuccessful: %s", cacheResponse.getErrorMessage());
+          return errorForEach(requests, cacheResponse.getErrorMessage());
         }
 
-        ArtifactMetadata metadata = fetchResponse.getMetadata();
-        if (LOG.isVerboseEnabled()) {
-          LOG.verbose(String.format(
-              "Fetched artifact with rule key [%s] contains the following metadata: [%s]",
-              ruleKey,
-              ThriftUtil.thriftToDebugJson(metadata)));
+        List<BuckCacheFetchResponse> fetchResponses =
+            cacheResponse.getMultiFetchResponse().getResponses();
+        if (fetchResponses.size() != requests.size()) {
+          String message = String.format(
+              "Requested %d cache artifacts but got %d responses.",
+              requests.size(),
+              fetchResponses.size());
+          LOG.error(message);
+          return errorForEach(requests, message);
         }
 
-        eventBuilder
-            .setTarget(Optional.ofNullable(metadata.getBuildTarget()))
-            .getFetchBuilder()
-            .setAssociatedRuleKeys(toImmutableSet(metadata.getRuleKeys()))
-            .setArtifactSizeBytes(readResult.getBytesRead());
-        if (!metadata.isSetArtifactPayloadMd5()) {
-          String msg = "Fetched artifact is missing the MD5 hash.";
-          LOG.warn(msg);
-        } else {
-          eventBuilder.getFetchBuilder().setArtifactContentHash(metadata.getArtifactPayloadMd5());
-          if (!readResult.getMd5Hash()
-              .equals(fetchResponse.getMetadata().getArtifactPayloadMd5())) {
-            String msg = String.format(
-                "The artifact fetched from cache is corrupted. ExpectedMD5=[%s] ActualMD5=[%s]",
-                fetchResponse.getMetadata().getArtifactPayloadMd5(),
-                readResult.getMd5Hash());
-            LOG.error(msg);
-            return CacheResult.error(name, msg);
+        ImmutableList.Builder<CacheResult> results = ImmutableList.builder();
+        for (int i = 0; i < requests.size(); i++) {
+          BuckCacheFetchResponse fetchResponse = fetchResponses.get(i);
+          if (!fetchResponse.isArtifactExists()) {
+            LOG.verbose("Artifact did not exist.");
+            results.add(CacheResult.miss());
+            continue;
           }
+          results.add(
+              readArtifactFromResponse(
+                  response,
+                  fetchResponse,
+                  requests.get(i).getFirst(),
+                  requests.get(i).getSecond(),
+                  eventBuilders.get(i)));
         }
+        return results.build();
+      }
+    }
+  }
+
+  private ImmutableList<CacheResult> errorForEach(
+      ImmutableList<Pair<RuleKey, LazyPath>> requests,
+      String message) {
+    return ImmutableList.copyOf(
+        Collections.nCopies(requests.size(), CacheResult.error(name, message)));
+  }
 
-        // This makes sure we don't have 'half downloaded files' in the dir cache.
-        projectFilesystem.move(tmp, output.get(), StandardCopyOption.REPLACE_EXISTING);
-        return CacheResult.hit(
-            name,
-            ImmutableMap.copyOf(fetchResponse.getMetadata().getMetadata()),
-            readResult.getBytesRead());
+  /**
+   * Read the next payload of the response, which holds the artifact described by
+   * {@code fetchResponse}, to {@code output}.
+   */
+  private CacheResult readArtifactFromResponse(
+      ThriftArtifactCacheProtocol.Response response,
+      BuckCacheFetchResponse fetchResponse,
+      RuleKey ruleKey,
+      LazyPath output,
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder) throws IOException {
+    Path tmp = createTempFileForDownload();
+    CacheResult result = readArtifactFromResponse(
+        response,
+        fetchResponse,
+        ruleKey,
+        payload -> {
+          try (OutputStream tmpFile = projectFilesystem.newFileOutputStream(tmp)) {
+            ByteStreams.copy(payload, tmpFile);
+          }
+        },
+        eventBuilder);
+    if (result.getType() == CacheResultType.HIT) {
+      // This makes sure we don't have 'half downloaded files' in the dir cache.
+      projectFilesystem.move(tmp, output.get(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    return result;
+  }
+
+  /**
+   * Hand the next payload of the response, which holds the artifact described by
+   * {@code fetchResponse}, to {@code consumer}.
+   */
+  private CacheResult readArtifactFromResponse(
+      ThriftArtifactCacheProtocol.Response response,
+      BuckCacheFetchResponse fetchResponse,
+      RuleKey ruleKey,
+      ArtifactPayloadConsumer consumer,
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder) throws IOException {
+    LOG.verbose("Got artifact.  Attempting to read payload.");
+    ThriftArtifactCacheProtocol.Response.ReadPayloadInfo readResult =
+        response.readPayload(consumer);
+    LOG.verbose("Successfully read payload: %d bytes.", readResult.getBytesRead());
+
+    ArtifactMetadata metadata = fetchResponse.getMetadata();
+    if (LOG.isVerboseEnabled()) {
+      LOG.verbose(String.format(
+          "Fetched artifact with rule key [%s] contains the following metadata: [%s]",
+          ruleKey,
+          ThriftUtil.thriftToDebugJson(metadata)));
+    }
+
+    eventBuilder
+        .setTarget(Optional.ofNullable(metadata.getBuildTarget()))
+        .getFetchBuilder()
+        .setAssociatedRuleKeys(toImmutableSet(metadata.getRuleKeys()))
+        .setArtifactSizeBytes(readResult.getBytesRead());
+    if (!metadata.isSetArtifactPayloadMd5()) {
+      String msg = "Fetched artifact is missing the MD5 hash.";
+      LOG.warn(msg);
+    } else {
+      eventBuilder.getFetchBuilder().setArtifactContentHash(metadata.getArtifactPayloadMd5());
+      if (!readResult.getMd5Hash()
+          .equals(fetchResponse.getMetadata().getArtifactPayloadMd5())) {
+        String msg = String.format(
+            "The artifact fetched from cache is corrupted. ExpectedMD5=[%s] ActualMD5=[%s]",
+            fetchResponse.getMetadata().getArtifactPayloadMd5(),
+            readResult.getMd5Hash());
+        LOG.error(msg);
+        return CacheResult.error(name, msg);
       }
     }
+
+    return CacheResult.hit(
+        name,
+        ImmutableMap.copyOf(fetchResponse.getMetadata().getMetadata()),
+        readResult.getBytesRead());
+  }
+
+  private interface ArtifactReader {
+    CacheResult read(
+        ThriftArtifactCacheProtocol.Response response,
+        BuckCacheFetchResponse fetchResponse) throws IOException;
   }
 
   private static ImmutableSet<RuleKey> toImmutableSet(
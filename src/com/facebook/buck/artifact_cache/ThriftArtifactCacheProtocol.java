@@ -26,9 +26,11 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.hash.HashingOutputStream;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 
 import java.io.Closeable;
 import java.io.DataInputStream;
@@ -176,13 +178,7 @@ public class ThriftArtifactCacheProtocol {
     }
 
     public ReadPayloadInfo readPayload(OutputStream outStream) throws IOException {
-      Preconditions.checkState(
-          nextPayloadToBeRead < thriftData.getPayloadsSize(),
-          "Trying to download payload index=[%s] but the thriftData only contains [%s] payloads.",
-          nextPayloadToBeRead,
-          thriftData.getPayloadsSize());
-
-      long payloadSizeBytes = thriftData.getPayloads().get(nextPayloadToBeRead).getSizeBytes();
+      long payloadSizeBytes = getNextPayloadSizeBytes();
       try (HashingOutputStream wrappedOutputStream =
                new HashingOutputStream(MD5_HASH_FUNCTION, outStream)) {
         copyExactly(responseStream, wrappedOutputStream, payloadSizeBytes);
@@ -191,6 +187,39 @@ public class ThriftArtifactCacheProtocol {
       }
     }
 
+    /**
+     * Hand the next payload to {@code consumer} as it is read from the response.  Whatever the
+     * consumer leaves unread is skipped, so that the next payload can be read.
+     */
+    public ReadPayloadInfo readPayload(ArtifactPayloadConsumer consumer) throws IOException {
+      long payloadSizeBytes = getNextPayloadSizeBytes();
+      HashingInputStream payload = new HashingInputStream(
+          MD5_HASH_FUNCTION,
+          ByteStreams.limit(responseStream, payloadSizeBytes));
+      CountingInputStream countingPayload = new CountingInputStream(payload);
+      consumer.consume(countingPayload);
+      ByteStreams.copy(countingPayload, ByteStreams.nullOutputStream());
+      if (countingPayload.getCount() < payloadSizeBytes) {
+        String msg = String.format(
+            "InputStream was missing [%d] bytes. Expected to read a total of [%d] bytes.",
+            payloadSizeBytes - countingPayload.getCount(),
+            payloadSizeBytes);
+        LOG.error(msg);
+        throw new IOException(msg);
+      }
+      ++nextPayloadToBeRead;
+      return new ReadPayloadInfo(payloadSizeBytes, payload.hash().toString());
+    }
+
+    private long getNextPayloadSizeBytes() {
+      Preconditions.checkState(
+          nextPayloadToBeRead < thriftData.getPayloadsSize(),
+          "Trying to download payload index=[%s] but the thriftData only contains [%s] payloads.",
+          nextPayloadToBeRead,
+          thriftData.getPayloadsSize());
+      return thriftData.getPayloads().get(nextPayloadToBeRead).getSizeBytes();
+    }
+
     @Override
     public void close() throws IOException {
       responseStream.close();
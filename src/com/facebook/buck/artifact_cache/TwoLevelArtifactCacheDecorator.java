@@ -25,10 +25,12 @@ import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.AsyncFunction;
@@ -36,7 +38,10 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.IOException;
+import java.io.PushbackInputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -136,6 +141,102 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
     CacheResult outputFileFetchResult = delegate.fetch(
         new RuleKey(fetchResult.getMetadata().get(METADATA_KEY)),
         output);
+    return handleSecondLevelResult(fetchResult, outputFileFetchResult);
+  }
+
+  /**
+   * Fetch the first-level entries of all requests in one batch, then the second-level artifacts of
+   * those which were stored as two-level entries in a second batch.
+   */
+  @Override
+  public ImmutableList<CacheResult> multiFetch(
+      ImmutableList<Pair<RuleKey, LazyPath>> requests) {
+    ImmutableList<CacheResult> fetchResults = delegate.multiFetch(requests);
+    List<Integer> twoLevelIndices = new ArrayList<>();
+    ImmutableList.Builder<Pair<RuleKey, LazyPath>> secondLevelRequests = ImmutableList.builder();
+    for (int i = 0; i < fetchResults.size(); i++) {
+      CacheResult fetchResult = fetchResults.get(i);
+      if (fetchResult.getType().isSuccess() &&
+          fetchResult.getMetadata().containsKey(METADATA_KEY)) {
+        twoLevelIndices.add(i);
+        secondLevelRequests.add(
+            new Pair<>(
+                new RuleKey(fetchResult.getMetadata().get(METADATA_KEY)),
+                requests.get(i).getSecond()));
+      }
+    }
+    if (twoLevelIndices.isEmpty()) {
+      return fetchResults;
+    }
+    ImmutableList<CacheResult> outputFileFetchResults =
+        delegate.multiFetch(secondLevelRequests.build());
+    CacheResult[] results = fetchResults.toArray(new CacheResult[fetchResults.size()]);
+    for (int i = 0; i < twoLevelIndices.size(); i++) {
+      int index = twoLevelIndices.get(i);
+      results[index] = handleSecondLevelResult(results[index], outputFileFetchResults.get(i));
+    }
+    return ImmutableList.copyOf(results);
+  }
+
+  /**
+   * Fetch the first-level entry, then the second-level artifact if it was stored as a two-level
+   * entry.  The empty payload of a two-level entry's first level is not handed to
+   * {@code consumer}.
+   */
+  @Override
+  public CacheResult fetchStreaming(RuleKey ruleKey, ArtifactPayloadConsumer consumer) {
+    CacheResult fetchResult = delegate.fetchStreaming(
+        ruleKey,
+        payload -> {
+          PushbackInputStream pushbackPayload = new PushbackInputStream(payload);
+          int firstByte = pushbackPayload.read();
+          if (firstByte != -1) {
+            pushbackPayload.unread(firstByte);
+            consumer.consume(pushbackPayload);
+          }
+        });
+    if (!fetchResult.getType().isSuccess()) {
+      LOG.verbose("Missed first-level lookup.");
+      return fetchResult;
+    } else if (!fetchResult.getMetadata().containsKey(METADATA_KEY)) {
+      LOG.verbose("Found a single-level entry.");
+      return fetchResult;
+    }
+    LOG.verbose("Found a first-level artifact with metadata: %s", fetchResult.getMetadata());
+    CacheResult outputFileFetchResult = delegate.fetchStreaming(
+        new RuleKey(fetchResult.getMetadata().get(METADATA_KEY)),
+        consumer);
+    return handleSecondLevelResult(fetchResult, outputFileFetchResult);
+  }
+
+  /**
+   * Find the first-level entry, then the file of the second-level artifact if it was stored as a
+   * two-level entry.
+   */
+  @Override
+  public Optional<LocalArtifact> fetchLocal(RuleKey ruleKey) throws IOException {
+    Optional<LocalArtifact> artifact = delegate.fetchLocal(ruleKey);
+    if (!artifact.isPresent() || !artifact.get().getMetadata().containsKey(METADATA_KEY)) {
+      return artifact;
+    }
+    Optional<LocalArtifact> outputFile =
+        delegate.fetchLocal(new RuleKey(artifact.get().getMetadata().get(METADATA_KEY)));
+    if (!outputFile.isPresent()) {
+      LOG.verbose("Missed second-level lookup.");
+      secondLevelCacheMisses.inc();
+      return Optional.empty();
+    }
+    return Optional.of(LocalArtifact.of(outputFile.get().getPath(), artifact.get().getMetadata()));
+  }
+
+  @Override
+  public boolean isLocalFetchSupported() {
+    return delegate.isLocalFetchSupported();
+  }
+
+  private CacheResult handleSecondLevelResult(
+      CacheResult fetchResult,
+      CacheResult outputFileFetchResult) {
     if (!outputFileFetchResult.getType().isSuccess()) {
       LOG.verbose("Missed second-level lookup.");
       secondLevelCacheMisses.inc();
@@ -224,6 +325,11 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
     return delegate.isStoreSupported();
   }
 
+  @Override
+  public boolean isStreamingFetchSupported() {
+    return delegate.isStreamingFetchSupported();
+  }
+
   @Override
   public void close() {
     delegate.close();
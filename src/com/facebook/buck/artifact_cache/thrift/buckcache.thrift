@@ -14,6 +14,7 @@ enum BuckCacheRequestType {
   UNKNOWN = 0,
   FETCH = 100,
   STORE = 101,
+  MULTI_FETCH = 102,
 }
 
 struct RuleKey {
@@ -58,6 +59,20 @@ struct BuckCacheFetchResponse {
   100: optional binary payload;
 }
 
+struct BuckCacheMultiFetchRequest {
+  1: optional list<RuleKey> ruleKeys;
+  2: optional string repository;
+  3: optional string scheduleType;
+  4: optional bool distributedBuildModeEnabled;
+}
+
+struct BuckCacheMultiFetchResponse {
+  // One response per requested rule key, in the same order as the request.
+  // The payloads of the artifacts that exist are passed via the out of band
+  // method, in the same order as their responses.
+  1: optional list<BuckCacheFetchResponse> responses;
+}
+
 struct PayloadInfo {
   1: optional i64 sizeBytes;
 }
@@ -68,6 +83,7 @@ struct BuckCacheRequest {
   100: optional list<PayloadInfo> payloads;
   101: optional BuckCacheFetchRequest fetchRequest;
   102: optional BuckCacheStoreRequest storeRequest;
+  103: optional BuckCacheMultiFetchRequest multiFetchRequest;
 }
 
 struct BuckCacheResponse {
@@ -79,4 +95,5 @@ struct BuckCacheResponse {
   100: optional list<PayloadInfo> payloads;
   101: optional BuckCacheFetchResponse fetchResponse;
   102: optional BuckCacheStoreResponse storeResponse;
+  103: optional BuckCacheMultiFetchResponse multiFetchResponse;
 }
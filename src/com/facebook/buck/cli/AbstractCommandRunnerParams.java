@@ -24,12 +24,14 @@ import com.facebook.buck.parser.Parser;
 import com.facebook.buck.rules.ActionGraphCache;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.KnownBuildRuleTypesFactory;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.ProcessManager;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.util.cache.JarIndexCache;
 import com.facebook.buck.util.environment.BuildEnvironmentDescription;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
@@ -81,6 +83,8 @@ public interface AbstractCommandRunnerParams {
 
   Optional<ConcurrentMap<String, WorkerProcessPool>> getPersistentWorkerPools();
 
+  Optional<JarIndexCache> getPersistentJarIndexCache();
+
   BuckConfig getBuckConfig();
 
   FileHashCache getFileHashCache();
@@ -91,5 +95,7 @@ public interface AbstractCommandRunnerParams {
 
   ActionGraphCache getActionGraphCache();
 
+  Optional<DefaultRuleKeyCache> getDefaultRuleKeyCache();
+
   KnownBuildRuleTypesFactory getKnownBuildRuleTypesFactory();
 }
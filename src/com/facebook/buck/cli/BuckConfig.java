@@ -27,6 +27,7 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.parser.BuildTargetParseException;
 import com.facebook.buck.parser.BuildTargetParser;
 import com.facebook.buck.parser.BuildTargetPatternParser;
+import com.facebook.buck.rules.ActionGraphParallelizationMode;
 import com.facebook.buck.rules.BinaryBuildRuleToolProvider;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.BuildTargetSourcePath;
@@ -452,6 +453,22 @@ public class BuckConfig implements ConfigPathGetter {
     return Long.parseLong(getValue("test", "timeout").orElse("0"));
   }
 
+  /**
+   * @return How many persistent JVMs the JUnit tests of java_test() rules may be run in, rather
+   * than each rule starting a JVM of its own. 0, the default, disables persistent runners.
+   */
+  public int getMaxPersistentJUnitRunners() {
+    return getInteger("test", "persistent_junit_runners").orElse(0);
+  }
+
+  /**
+   * @return The most shards the test classes of a single java_test() rule may be split into, to be
+   * run concurrently. 1, the default, runs each rule's test classes one after another.
+   */
+  public int getMaxShardsPerTestRule() {
+    return Math.max(1, getInteger("test", "max_shards_per_rule").orElse(1));
+  }
+
   private static final String LOG_SECTION = "log";
 
   public int getMaxTraces() {
@@ -486,6 +503,10 @@ public class BuckConfig implements ConfigPathGetter {
     return getBooleanValue("log", "compress_traces", false);
   }
 
+  public boolean getBinaryTraces() {
+    return getBooleanValue("log", "binary_traces", false);
+  }
+
   public ProjectTestsMode xcodeProjectTestsMode() {
     return getEnum("project", "xcode_project_tests_mode", ProjectTestsMode.class).orElse(
         ProjectTestsMode.WITH_TESTS);
@@ -568,6 +589,38 @@ public class BuckConfig implements ConfigPathGetter {
     return getBooleanValue("cache", "action_graph_cache_check_enabled", false);
   }
 
+  public ActionGraphParallelizationMode getActionGraphParallelizationMode() {
+    return getEnum(
+        "cache",
+        "action_graph_parallelization",
+        ActionGraphParallelizationMode.class)
+        .orElse(ActionGraphParallelizationMode.DISABLED);
+  }
+
+  /**
+   * @return whether file content hashes should be persisted under buck-out and reused by
+   *     subsequent runs (including after a daemon restart).
+   */
+  public boolean isPersistentFileHashCacheEnabled() {
+    return getBooleanValue("cache", "persistent_file_hash_cache_enabled", false);
+  }
+
+  /**
+   * @return whether the daemon should keep default rule keys across commands, invalidating them
+   *     as the files they depend on change.
+   */
+  public boolean isDaemonRuleKeyCacheEnabled() {
+    return getBooleanValue("cache", "daemon_rule_key_cache_enabled", false);
+  }
+
+  /**
+   * @return whether the daemon should reuse the build rules of unchanged targets when the action
+   *     graph has to be created again.
+   */
+  public boolean isIncrementalActionGraphEnabled() {
+    return getBooleanValue("cache", "incremental_action_graph_enabled", false);
+  }
+
   public Optional<String> getRepository() {
     return config.get("cache", "repository");
   }
@@ -16,6 +16,11 @@
 
 package com.facebook.buck.cli;
 
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.graph.AbstractBreadthFirstTraversal;
+import com.facebook.buck.graph.AcyclicDepthFirstPostOrderTraversal;
+import com.facebook.buck.graph.GraphTraversable;
+import com.facebook.buck.graph.MutableDirectedGraph;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.json.BuildFileParseException;
@@ -25,6 +30,8 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
 import com.facebook.buck.model.FilesystemBackedBuildFileTree;
 import com.facebook.buck.model.HasBuildTarget;
+import com.facebook.buck.parser.ParseEvent;
+import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.PerBuildState;
 import com.facebook.buck.query.QueryBuildTarget;
 import com.facebook.buck.query.QueryEnvironment;
@@ -36,27 +43,39 @@ import com.facebook.buck.query.QueryTargetAccessor;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.Description;
 import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetGroup;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodes;
+import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.MoreMaps;
 import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
 
 /**
  * The environment of a Buck query that can evaluate queries to produce a result.
@@ -68,6 +87,7 @@ public class BuckQueryEnvironment implements QueryEnvironment {
   private static final Logger LOG = Logger.get(BuckQueryEnvironment.class);
 
   private final PerBuildState parserState;
+  private final BuckEventBus eventBus;
   private final Cell rootCell;
   private final OwnersReport.Builder ownersReportBuilder;
   private final TargetPatternEvaluator targetPatternEvaluator;
@@ -75,14 +95,31 @@ public class BuckQueryEnvironment implements QueryEnvironment {
   private final Map<Cell, BuildFileTree> buildFileTrees =  new HashMap<>();
   private final Map<BuildTarget, QueryTarget> buildTargetToQueryTarget = new HashMap<>();
 
-  private TargetGraph graph = TargetGraph.EMPTY;
+  /**
+   * The graph of every target node loaded so far, which grows as the query needs more of it
+   * rather than being rebuilt from scratch.
+   */
+  private final MutableDirectedGraph<TargetNode<?, ?>> graph = new MutableDirectedGraph<>();
+  private final Set<BuildTarget> graphTargets = new HashSet<>();
+  /**
+   * Like the index of a {@link TargetGraph}, this also maps the unflavored targets of flavored
+   * nodes in the graph to their nodes, which needn't be in the graph themselves.
+   */
+  private final Map<BuildTarget, TargetNode<?, ?>> targetsToNodes = new HashMap<>();
+
+  @Nullable
+  private ImmutableSet<TargetGroup> targetGroups;
+  @Nullable
+  private TargetGraph targetGraph;
 
   private BuckQueryEnvironment(
       Cell rootCell,
       OwnersReport.Builder ownersReportBuilder,
       PerBuildState parserState,
+      BuckEventBus eventBus,
       TargetPatternEvaluator targetPatternEvaluator) {
     this.parserState = parserState;
+    this.eventBus = eventBus;
     this.rootCell = rootCell;
     this.ownersReportBuilder = ownersReportBuilder;
     this.buildFileTrees.put(
@@ -97,9 +134,10 @@ public class BuckQueryEnvironment implements QueryEnvironment {
       Cell rootCell,
       OwnersReport.Builder ownersReportBuilder,
       PerBuildState parserState,
+      BuckEventBus eventBus,
       TargetPatternEvaluator targetPatternEvaluator) {
     return new BuckQueryEnvironment(
-        rootCell, ownersReportBuilder, parserState, targetPatternEvaluator
+        rootCell, ownersReportBuilder, parserState, eventBus, targetPatternEvaluator
     );
   }
 
@@ -114,6 +152,7 @@ public class BuckQueryEnvironment implements QueryEnvironment {
             params.getConsole()
         ),
         parserState,
+        params.getBuckEventBus(),
         new TargetPatternEvaluator(
             params.getCell(),
             params.getBuckConfig(),
@@ -125,7 +164,13 @@ public class BuckQueryEnvironment implements QueryEnvironment {
   }
 
   public TargetGraph getTargetGraph() {
-    return graph;
+    if (targetGraph == null) {
+      targetGraph = new TargetGraph(
+          graph,
+          ImmutableMap.copyOf(targetsToNodes),
+          targetGroups == null ? ImmutableSet.of() : targetGroups);
+    }
+    return targetGraph;
   }
 
   public PerBuildState getParserState() {
@@ -229,15 +274,6 @@ public class BuckQueryEnvironment implements QueryEnvironment {
     return builder.build();
   }
 
-  /** Given a set of target nodes, returns the build targets. */
-  private static Set<BuildTarget> getTargetsFromNodes(Iterable<TargetNode<?, ?>> input) {
-    Set<BuildTarget> result = new LinkedHashSet<>();
-    for (TargetNode<?, ?> node : input) {
-      result.add(node.getBuildTarget());
-    }
-    return result;
-  }
-
   @Override
   public Set<QueryTarget> getFwdDeps(Iterable<QueryTarget> targets)
       throws QueryException, InterruptedException {
@@ -275,17 +311,134 @@ public class BuckQueryEnvironment implements QueryEnvironment {
     for (QueryTarget target : targets) {
       nodes.add(getNode(target));
     }
-    // Reusing the existing getSubgraph() for simplicity. It builds the graph when we only need the
-    // nodes. The impact of creating the edges in terms of time and space should be minimal.
-    return getTargetsFromBuildTargetsContainer(graph.getSubgraph(nodes).getNodes());
+    final Set<TargetNode<?, ?>> closure = new LinkedHashSet<>();
+    new AbstractBreadthFirstTraversal<TargetNode<?, ?>>(nodes) {
+      @Override
+      public Iterable<TargetNode<?, ?>> visit(TargetNode<?, ?> node) {
+        closure.add(node);
+        return graph.getOutgoingNodesFor(node);
+      }
+    }.start();
+    return getTargetsFromBuildTargetsContainer(closure);
   }
 
-  private void buildGraphForBuildTargets(Set<BuildTarget> targets)
-      throws QueryException, InterruptedException {
+  /**
+   * Adds the given targets, which must not be in the graph yet, and everything they transitively
+   * depend on to the graph. Only the nodes which are new to the graph are visited, so that
+   * evaluating a query which keeps asking for more of the graph does not keep walking the parts
+   * of it which were already loaded.
+   */
+  private void extendGraph(Set<BuildTarget> newTargets)
+      throws BuildFileParseException, BuildTargetException, InterruptedException {
+    ParseEvent.Started parseStart = ParseEvent.started(newTargets);
+    eventBus.post(parseStart);
+    TargetGraph newTargetGraph = null;
     try {
-      graph = parserState.buildTargetGraph(targets);
-    } catch (BuildFileParseException | BuildTargetException | IOException e) {
-      throw new QueryException(e, "Error in building dependency graph");
+      newTargetGraph = extendGraphWithNewTargets(newTargets);
+      parserState.ensureConcreteFilesExist(eventBus);
+    } finally {
+      eventBus.post(ParseEvent.finished(parseStart, Optional.ofNullable(newTargetGraph)));
+    }
+  }
+
+  /**
+   * @return a graph of the nodes added to the graph, with edges to the nodes they depend on.
+   */
+  private TargetGraph extendGraphWithNewTargets(Set<BuildTarget> newTargets)
+      throws BuildFileParseException, BuildTargetException, InterruptedException {
+    // Load every new target up front, rather than one at a time as the traversal reaches them, so
+    // that their build files are parsed in parallel.
+    List<ListenableFuture<TargetNode<?, ?>>> newTargetJobs = new ArrayList<>();
+    for (BuildTarget target : newTargets) {
+      newTargetJobs.add(parserState.getTargetNodeJob(target));
+    }
+    try {
+      Futures.allAsList(newTargetJobs).get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), BuildFileParseException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), BuildTargetException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+
+    GraphTraversable<BuildTarget> traversable = target -> {
+      TargetNode<?, ?> node = getTargetNodeUnchecked(target);
+      for (BuildTarget dep : node.getDeps()) {
+        try {
+          parserState.getTargetNode(dep);
+        } catch (BuildFileParseException | BuildTargetException | HumanReadableException e) {
+          throw new HumanReadableException(
+              e,
+              "Couldn't get dependency '%s' of target '%s':\n%s",
+              dep,
+              target,
+              e.getMessage());
+        }
+      }
+      return Iterators.filter(node.getDeps().iterator(), dep -> !graphTargets.contains(dep));
+    };
+
+    // The new nodes, along with their edges to the nodes they depend on, which may already be in
+    // the graph. As nodes already in the graph never depend on new ones, checking this part of the
+    // graph for cycles and visibility is as good as checking all of it.
+    MutableDirectedGraph<TargetNode<?, ?>> newGraph = new MutableDirectedGraph<>();
+    Map<BuildTarget, TargetNode<?, ?>> newIndex = new HashMap<>();
+    try {
+      for (BuildTarget target :
+          new AcyclicDepthFirstPostOrderTraversal<>(traversable).traverse(newTargets)) {
+        TargetNode<?, ?> node = parserState.getTargetNode(target);
+        newGraph.addNode(node);
+        MoreMaps.putCheckEquals(newIndex, target, node);
+        if (target.isFlavored()) {
+          BuildTarget unflavoredTarget = BuildTarget.of(target.getUnflavoredBuildTarget());
+          MoreMaps.putCheckEquals(
+              newIndex,
+              unflavoredTarget,
+              parserState.getTargetNode(unflavoredTarget));
+        }
+        for (BuildTarget dep : node.getDeps()) {
+          TargetNode<?, ?> depNode = parserState.getTargetNode(dep);
+          newGraph.addEdge(node, depNode);
+          MoreMaps.putCheckEquals(newIndex, dep, depNode);
+        }
+      }
+    } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
+      throw new HumanReadableException(e.getMessage());
+    } catch (RuntimeException e) {
+      Throwables.propagateIfInstanceOf(e, HumanReadableException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), BuildFileParseException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), BuildTargetException.class);
+      throw e;
+    }
+    // The new nodes may be in cells we hadn't parsed yet, which may define groups of their own.
+    try {
+      targetGroups = Parser.expandNestedTargetGroups(parserState.getAllGroups());
+    } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
+      throw new HumanReadableException(e.getMessage());
+    }
+    // Constructing the graph checks that each new node can see what it depends on.
+    TargetGraph newTargetGraph =
+        new TargetGraph(newGraph, ImmutableMap.copyOf(newIndex), targetGroups);
+
+    for (TargetNode<?, ?> node : newGraph.getNodes()) {
+      graph.addNode(node);
+      graphTargets.add(node.getBuildTarget());
+      for (TargetNode<?, ?> dep : newGraph.getOutgoingNodesFor(node)) {
+        graph.addEdge(node, dep);
+      }
+    }
+    for (Map.Entry<BuildTarget, TargetNode<?, ?>> entry : newIndex.entrySet()) {
+      MoreMaps.putCheckEquals(targetsToNodes, entry.getKey(), entry.getValue());
+      getOrCreateQueryBuildTarget(entry.getKey());
+    }
+    targetGraph = null;
+    return newTargetGraph;
+  }
+
+  private TargetNode<?, ?> getTargetNodeUnchecked(BuildTarget target) {
+    try {
+      return parserState.getTargetNode(target);
+    } catch (BuildFileParseException | BuildTargetException e) {
+      throw new RuntimeException(e);
     }
   }
 
@@ -296,8 +449,7 @@ public class BuckQueryEnvironment implements QueryEnvironment {
       ListeningExecutorService executor)
       throws QueryException, InterruptedException {
     // Filter QueryTargets that are build targets and not yet present in the build target graph.
-    Set<BuildTarget> graphTargets = getTargetsFromNodes(graph.getNodes());
-    Set<BuildTarget> newBuildTargets = new HashSet<>();
+    Set<BuildTarget> newBuildTargets = new LinkedHashSet<>();
     for (QueryTarget target : targets) {
       if (target instanceof QueryBuildTarget) {
         BuildTarget buildTarget = ((QueryBuildTarget) target).getBuildTarget();
@@ -306,13 +458,13 @@ public class BuckQueryEnvironment implements QueryEnvironment {
         }
       }
     }
-    if (!newBuildTargets.isEmpty()) {
-      buildGraphForBuildTargets(Sets.union(newBuildTargets, graphTargets));
-      for (BuildTarget buildTarget : getTargetsFromNodes(graph.getNodes())) {
-        if (!buildTargetToQueryTarget.containsKey(buildTarget)) {
-          buildTargetToQueryTarget.put(buildTarget, QueryBuildTarget.of(buildTarget));
-        }
-      }
+    if (newBuildTargets.isEmpty()) {
+      return;
+    }
+    try {
+      extendGraph(newBuildTargets);
+    } catch (BuildFileParseException | BuildTargetException e) {
+      throw new QueryException(e, "Error in building dependency graph");
     }
   }
 
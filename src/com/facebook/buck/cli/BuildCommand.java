@@ -53,12 +53,16 @@ import com.facebook.buck.rules.BuildEngine;
 import com.facebook.buck.rules.BuildEvent;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.BuildRuleTimingHistory;
 import com.facebook.buck.rules.CachingBuildEngine;
 import com.facebook.buck.rules.CachingBuildEngineBuckConfig;
 import com.facebook.buck.rules.CachingBuildEngineDelegate;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.ConstructorArgMarshaller;
+import com.facebook.buck.rules.CriticalPathScheduler;
 import com.facebook.buck.rules.LocalCachingBuildEngineDelegate;
+import com.facebook.buck.rules.ResourceAwareSchedulingInfo;
+import com.facebook.buck.rules.RuleTypeResourceModel;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraphAndBuildTargets;
@@ -77,6 +81,7 @@ import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreExceptions;
 import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.util.cache.JarIndexCache;
 import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.util.environment.Platform;
@@ -297,6 +302,7 @@ public class BuildCommand extends AbstractCommand {
       BuckEventBus eventBus,
       Optional<TargetDevice> targetDevice,
       Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools,
+      Optional<JarIndexCache> persistentJarIndexCache,
       Platform platform,
       ImmutableMap<String, String> environment,
       ObjectMapper objectMapper,
@@ -331,6 +337,7 @@ public class BuildCommand extends AbstractCommand {
         adbOptions,
         targetDeviceOptions,
         persistentWorkerPools,
+        persistentJarIndexCache,
         executors);
   }
 
@@ -661,7 +668,9 @@ public class BuildCommand extends AbstractCommand {
             params.getBuckEventBus(),
             params.getBuckConfig().isActionGraphCheckingEnabled(),
             targetGraphAndBuildTargets.getTargetGraph(),
-            params.getBuckConfig().getKeySeed()));
+            params.getBuckConfig().getKeySeed(),
+            params.getBuckConfig().getActionGraphParallelizationMode(),
+            params.getBuckConfig().getNumThreads()));
 
     // If the user specified an explicit build target, use that.
     if (justBuildTarget != null) {
@@ -715,6 +724,29 @@ public class BuildCommand extends AbstractCommand {
       Iterable<? extends HasBuildTarget> targetsToBuild) throws IOException, InterruptedException {
     CachingBuildEngineBuckConfig cachingBuildEngineBuckConfig =
         rootCellBuckConfig.getView(CachingBuildEngineBuckConfig.class);
+    Optional<CriticalPathScheduler> criticalPathScheduler = Optional.empty();
+    if (cachingBuildEngineBuckConfig.isCriticalPathSchedulingEnabled()) {
+      ProjectFilesystem filesystem = params.getCell().getFilesystem();
+      criticalPathScheduler = Optional.of(
+          new CriticalPathScheduler(
+              BuildRuleTimingHistory.load(
+                  filesystem,
+                  filesystem.getBuckPaths().getBuildRuleTimingHistory()),
+              params.getBuckEventBus()));
+      params.getBuckEventBus().register(criticalPathScheduler.get());
+    }
+    ResourceAwareSchedulingInfo resourceAwareSchedulingInfo =
+        cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo();
+    if (resourceAwareSchedulingInfo.isResourceAwareSchedulingEnabled() &&
+        cachingBuildEngineBuckConfig.isLearnedResourceAmountsEnabled()) {
+      ProjectFilesystem filesystem = params.getCell().getFilesystem();
+      RuleTypeResourceModel ruleTypeResourceModel = RuleTypeResourceModel.load(
+          filesystem,
+          filesystem.getBuckPaths().getRuleTypeResourceModel());
+      params.getBuckEventBus().register(ruleTypeResourceModel);
+      resourceAwareSchedulingInfo =
+          resourceAwareSchedulingInfo.withRuleTypeResourceModel(ruleTypeResourceModel);
+    }
     try (Build build = createBuild(
         rootCellBuckConfig,
         actionGraphAndResolver.getActionGraph(),
@@ -733,12 +765,15 @@ public class BuildCommand extends AbstractCommand {
             params.getObjectMapper(),
             actionGraphAndResolver.getResolver(),
             rootCellBuckConfig.getKeySeed(),
-            cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo()),
+            resourceAwareSchedulingInfo,
+            params.getDefaultRuleKeyCache(),
+            criticalPathScheduler),
         artifactCache,
         params.getConsole(),
         params.getBuckEventBus(),
         Optional.empty(),
         params.getPersistentWorkerPools(),
+        params.getPersistentJarIndexCache(),
         rootCellBuckConfig.getPlatform(),
         rootCellBuckConfig.getEnvironment(),
         params.getObjectMapper(),
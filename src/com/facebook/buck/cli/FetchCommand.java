@@ -126,6 +126,7 @@ public class FetchCommand extends BuildCommand {
           params.getBuckEventBus(),
           Optional.empty(),
           params.getPersistentWorkerPools(),
+          params.getPersistentJarIndexCache(),
           params.getPlatform(),
           params.getEnvironment(),
           params.getObjectMapper(),
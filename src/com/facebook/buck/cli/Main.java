@@ -84,6 +84,7 @@ import com.facebook.buck.rules.KnownBuildRuleTypesFactory;
 import com.facebook.buck.rules.RelativeCellName;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.test.TestConfig;
@@ -111,6 +112,8 @@ import com.facebook.buck.util.WatchmanWatcher;
 import com.facebook.buck.util.WatchmanWatcherException;
 import com.facebook.buck.util.cache.DefaultFileHashCache;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.util.cache.JarIndexCache;
+import com.facebook.buck.util.cache.PersistentFileHashStore;
 import com.facebook.buck.util.cache.StackedFileHashCache;
 import com.facebook.buck.util.cache.WatchedFileHashCache;
 import com.facebook.buck.util.concurrent.MostExecutors;
@@ -330,12 +333,15 @@ public final class Main {
     private final Cell cell;
     private final Parser parser;
     private final DefaultFileHashCache hashCache;
+    private final Optional<PersistentFileHashStore> fileHashStore;
     private final FileHashCache buckOutHashCache;
     private final EventBus fileEventBus;
     private final Optional<WebServer> webServer;
     private final ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools;
     private final VersionedTargetGraphCache versionedTargetGraphCache;
     private final ActionGraphCache actionGraphCache;
+    private final Optional<DefaultRuleKeyCache> defaultRuleKeyCache;
+    private final JarIndexCache jarIndexCache;
     private final BroadcastEventListener broadcastEventListener;
 
     private ImmutableMap<Path, WatchmanCursor> cursor;
@@ -345,7 +351,10 @@ public final class Main {
         ObjectMapper objectMapper,
         Optional<WebServer> webServerToReuse) {
       this.cell = cell;
-      this.hashCache = new WatchedFileHashCache(cell.getFilesystem());
+      this.fileHashStore = loadFileHashStore(cell);
+      this.hashCache = fileHashStore.isPresent() ?
+          new WatchedFileHashCache(cell.getFilesystem(), fileHashStore.get()) :
+          new WatchedFileHashCache(cell.getFilesystem());
       this.buckOutHashCache =
           DefaultFileHashCache.createBuckOutFileHashCache(
               createProjectFilesystem(cell.getFilesystem().getRootPath()),
@@ -353,8 +362,14 @@ public final class Main {
       this.fileEventBus = new EventBus("file-change-events");
 
       this.broadcastEventListener = new BroadcastEventListener();
-      this.actionGraphCache = new ActionGraphCache(broadcastEventListener);
+      this.actionGraphCache = new ActionGraphCache(
+          broadcastEventListener,
+          cell.getBuckConfig().isIncrementalActionGraphEnabled());
       this.versionedTargetGraphCache = new VersionedTargetGraphCache();
+      this.defaultRuleKeyCache = cell.getBuckConfig().isDaemonRuleKeyCacheEnabled() ?
+          Optional.of(new DefaultRuleKeyCache(cell.getFilesystem())) :
+          Optional.empty();
+      this.jarIndexCache = new JarIndexCache();
 
       TypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory(objectMapper);
       this.parser = new Parser(
@@ -365,6 +380,7 @@ public final class Main {
       fileEventBus.register(parser);
       fileEventBus.register(actionGraphCache);
       fileEventBus.register(hashCache);
+      defaultRuleKeyCache.ifPresent(fileEventBus::register);
 
       if (webServerToReuse.isPresent()) {
         webServer = webServerToReuse;
@@ -459,6 +475,14 @@ public final class Main {
       return actionGraphCache;
     }
 
+    private Optional<DefaultRuleKeyCache> getDefaultRuleKeyCache() {
+      return defaultRuleKeyCache;
+    }
+
+    private JarIndexCache getJarIndexCache() {
+      return jarIndexCache;
+    }
+
     private BroadcastEventListener getBroadcastEventListener() {
       return broadcastEventListener;
     }
@@ -471,6 +495,10 @@ public final class Main {
       return buckOutHashCache;
     }
 
+    private Optional<PersistentFileHashStore> getFileHashStore() {
+      return fileHashStore;
+    }
+
     private ConcurrentMap<String, WorkerProcessPool> getPersistentWorkerPools() {
       return persistentWorkerPools;
     }
@@ -965,6 +993,7 @@ public final class Main {
 
         FileHashCache cellHashCache;
         FileHashCache buckOutHashCache;
+        Optional<PersistentFileHashStore> fileHashStore;
         // TODO(Coneko, ruibm, andrewjcg): Determine whether we can use the existing filesystem
         // object that is in scope instead of creating a new rootCellProjectFilesystem. The primary
         // difference appears to be that filesystem is created with a Config that is used to produce
@@ -975,8 +1004,14 @@ public final class Main {
         if (isDaemon) {
           cellHashCache = getFileHashCacheFromDaemon(rootCell);
           buckOutHashCache = getBuckOutFileHashCacheFromDaemon(rootCell);
+          fileHashStore = getFileHashStoreFromDaemon(rootCell);
         } else {
-          cellHashCache = DefaultFileHashCache.createDefaultFileHashCache(rootCell.getFilesystem());
+          fileHashStore = loadFileHashStore(rootCell);
+          cellHashCache = fileHashStore.isPresent() ?
+              DefaultFileHashCache.createPersistentFileHashCache(
+                  rootCell.getFilesystem(),
+                  fileHashStore.get()) :
+              DefaultFileHashCache.createDefaultFileHashCache(rootCell.getFilesystem());
           buckOutHashCache =
               DefaultFileHashCache.createBuckOutFileHashCache(
                   rootCellProjectFilesystem,
@@ -1201,6 +1236,8 @@ public final class Main {
           Parser parser = null;
           VersionedTargetGraphCache versionedTargetGraphCache = null;
           ActionGraphCache actionGraphCache = null;
+          Optional<DefaultRuleKeyCache> defaultRuleKeyCache = Optional.empty();
+          Optional<JarIndexCache> jarIndexCache = Optional.empty();
 
           if (isDaemon) {
             try {
@@ -1223,6 +1260,8 @@ public final class Main {
                   watchmanFreshInstanceAction);
               versionedTargetGraphCache = daemon.getVersionedTargetGraphCache();
               actionGraphCache = daemon.getActionGraphCache();
+              defaultRuleKeyCache = daemon.getDefaultRuleKeyCache();
+              jarIndexCache = Optional.of(daemon.getJarIndexCache());
             } catch (WatchmanWatcherException | IOException e) {
               buildEventBus.post(
                   ConsoleEvent.warning(
@@ -1248,11 +1287,12 @@ public final class Main {
                 new ConstructorArgMarshaller(typeCoercerFactory));
           }
 
-          // Because the Parser is potentially constructed before the CounterRegistry,
-          // we need to manually register its counters after it's created.
+          // Because the Parser and ActionGraphCache are potentially constructed before the
+          // CounterRegistry, we need to manually register their counters after they're created.
           //
           // The counters will be unregistered once the counter registry is closed.
           counterRegistry.registerCounters(parser.getCounters());
+          counterRegistry.registerCounters(actionGraphCache.getCounters());
 
           JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(rootCell.getFilesystem());
 
@@ -1300,6 +1340,7 @@ public final class Main {
                   .setClock(clock)
                   .setProcessManager(processManager)
                   .setPersistentWorkerPools(persistentWorkerPools)
+                  .setPersistentJarIndexCache(jarIndexCache)
                   .setWebServer(webServer)
                   .setBuckConfig(buckConfig)
                   .setFileHashCache(fileHashCache)
@@ -1307,6 +1348,7 @@ public final class Main {
                   .setBuildEnvironmentDescription(buildEnvironmentDescription)
                   .setVersionedTargetGraphCache(versionedTargetGraphCache)
                   .setActionGraphCache(actionGraphCache)
+                  .setDefaultRuleKeyCache(defaultRuleKeyCache)
                   .setKnownBuildRuleTypesFactory(factory)
                   .build());
           // We've reserved exitCode 2 for timeouts, and some commands (e.g. run) may violate this
@@ -1356,6 +1398,10 @@ public final class Main {
           context.get().exit(exitCode); // Allow nailgun client to exit while outputting traces.
         }
 
+        if (fileHashStore.isPresent()) {
+          saveFileHashStore(fileHashStore.get());
+        }
+
         closeDiskIoExecutorService(diskIoExecutorService);
         flushEventListeners(console, buildId, eventListeners);
         return exitCode;
@@ -1628,6 +1674,30 @@ public final class Main {
     return daemon.getBuckOutHashCache();
   }
 
+  private Optional<PersistentFileHashStore> getFileHashStoreFromDaemon(Cell cell)
+      throws IOException {
+    Daemon daemon = getDaemon(cell, objectMapper);
+    return daemon.getFileHashStore();
+  }
+
+  private static Optional<PersistentFileHashStore> loadFileHashStore(Cell cell) {
+    if (!cell.getBuckConfig().isPersistentFileHashCacheEnabled()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        PersistentFileHashStore.load(
+            cell.getFilesystem(),
+            cell.getFilesystem().getBuckPaths().getFileHashStore()));
+  }
+
+  private static void saveFileHashStore(PersistentFileHashStore fileHashStore) {
+    try {
+      fileHashStore.save();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to save file hashes to %s", fileHashStore.getStorePath());
+    }
+  }
+
   private Optional<WebServer> getWebServerIfDaemon(
       Optional<NGContext> context,
       Cell cell)
@@ -1732,16 +1802,17 @@ public final class Main {
             clock,
             objectMapper,
             config.getMaxTraces(),
-            config.getCompressTraces()));
+            config.getCompressTraces(),
+            config.getBinaryTraces()));
       } catch (IOException e) {
         LOG.error("Unable to create ChromeTrace listener!");
       }
     } else {
       LOG.warn("::: ChromeTrace listener disabled");
     }
-    if (webServer.isPresent()) {
-      eventListenersBuilder.add(webServer.get().createListener());
-    }
+    Optional<BuckEventListener> webServerListener =
+        webServer.map(WebServer::createListener);
+    webServerListener.ifPresent(eventListenersBuilder::add);
 
     loadListenersFromBuckConfig(eventListenersBuilder, projectFilesystem, config);
 
@@ -1786,7 +1857,15 @@ public final class Main {
     eventListenersBuilder.addAll(commandSpecificEventListeners);
 
     ImmutableList<BuckEventListener> eventListeners = eventListenersBuilder.build();
-    eventListeners.forEach(buckEventBus::register);
+    for (BuckEventListener listener : eventListeners) {
+      // The web server only streams events to whoever is watching, so it need not hold up the
+      // build if it can't keep up with them.
+      buckEventBus.register(
+          listener,
+          webServerListener.equals(Optional.of(listener)) ?
+              BuckEventBus.OverflowPolicy.DROP :
+              BuckEventBus.OverflowPolicy.BLOCK);
+    }
 
 
     return eventListeners;
@@ -272,7 +272,9 @@ public class TestCommand extends BuildCommand {
         .setPathToJavaAgent(Optional.ofNullable(pathToJavaAgent))
         .setCoverageReportFormat(coverageReportFormat)
         .setCoverageReportTitle(coverageReportTitle)
-        .setEnvironmentOverrides(environmentOverrides);
+        .setEnvironmentOverrides(environmentOverrides)
+        .setMaxPersistentJUnitRunners(params.getBuckConfig().getMaxPersistentJUnitRunners())
+        .setMaxShardsPerTestRule(params.getBuckConfig().getMaxShardsPerTestRule());
 
     Optional<ImmutableList<String>> coverageIncludes =
         params.getBuckConfig().getOptionalListWithoutComments("test", "coverageIncludes", ',');
@@ -493,7 +495,9 @@ public class TestCommand extends BuildCommand {
               params.getBuckEventBus(),
               params.getBuckConfig().isActionGraphCheckingEnabled(),
               targetGraphAndBuildTargets.getTargetGraph(),
-              params.getBuckConfig().getKeySeed()));
+              params.getBuckConfig().getKeySeed(),
+              params.getBuckConfig().getActionGraphParallelizationMode(),
+              params.getBuckConfig().getNumThreads()));
       // Look up all of the test rules in the action graph.
       Iterable<TestRule> testRules = Iterables.filter(
           actionGraphAndResolver.getActionGraph().getNodes(),
@@ -524,7 +528,9 @@ public class TestCommand extends BuildCommand {
               params.getObjectMapper(),
               actionGraphAndResolver.getResolver(),
               params.getBuckConfig().getKeySeed(),
-              cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo());
+              cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+              params.getDefaultRuleKeyCache(),
+              Optional.empty());
       try (Build build = createBuild(
           params.getBuckConfig(),
           actionGraphAndResolver.getActionGraph(),
@@ -537,6 +543,7 @@ public class TestCommand extends BuildCommand {
           params.getBuckEventBus(),
           getTargetDeviceOptional(),
           params.getPersistentWorkerPools(),
+          params.getPersistentJarIndexCache(),
           params.getPlatform(),
           params.getEnvironment(),
           params.getObjectMapper(),
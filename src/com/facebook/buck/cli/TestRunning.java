@@ -33,6 +33,7 @@ import com.facebook.buck.model.HasBuildTarget;
 import com.facebook.buck.rules.BuildEngine;
 import com.facebook.buck.rules.BuildResult;
 import com.facebook.buck.rules.BuildRuleSuccessType;
+import com.facebook.buck.rules.BuildRuleTimingHistory;
 import com.facebook.buck.rules.IndividualTestEvent;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
@@ -41,6 +42,7 @@ import com.facebook.buck.rules.TestRule;
 import com.facebook.buck.rules.TestRunEvent;
 import com.facebook.buck.rules.TestStatusMessageEvent;
 import com.facebook.buck.rules.TestSummaryEvent;
+import com.facebook.buck.step.ConcurrentStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepFailedException;
@@ -86,6 +88,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -124,7 +127,7 @@ public class TestRunning {
       final CommandRunnerParams params,
       Iterable<TestRule> tests,
       ExecutionContext executionContext,
-      final TestRunningOptions options,
+      TestRunningOptions unshardedOptions,
       ListeningExecutorService service,
       BuildEngine buildEngine,
       final StepRunner stepRunner,
@@ -132,6 +135,23 @@ public class TestRunning {
       SourcePathRuleFinder ruleFinder)
       throws IOException, ExecutionException, InterruptedException {
 
+    // Record how long each test case takes, to balance the shards of test rules next time.
+    final Optional<BuildRuleTimingHistory> testCaseTimingHistory;
+    final TestRunningOptions options;
+    if (unshardedOptions.getMaxShardsPerTestRule() > 1) {
+      ProjectFilesystem filesystem = params.getCell().getFilesystem();
+      BuildRuleTimingHistory history = BuildRuleTimingHistory.load(
+          filesystem,
+          filesystem.getBuckPaths().getTestCaseTimingHistory());
+      testCaseTimingHistory = Optional.of(history);
+      options = unshardedOptions.withTestCaseDurationEstimator(
+          (target, testCaseName) ->
+              history.getEstimatedDurationMillis(getTestCaseTimingKey(target, testCaseName)));
+    } else {
+      testCaseTimingHistory = Optional.empty();
+      options = unshardedOptions;
+    }
+
     ImmutableSet<JavaLibrary> rulesUnderTestForCoverage;
     // If needed, we first run instrumentation on the class files.
     if (options.isCodeCoverageEnabled()) {
@@ -300,12 +320,23 @@ public class TestRunning {
         steps = ImmutableList.of();
       }
 
+      Callable<TestResults> testResultsCallable = getStatusTransformingCallable(
+          isTestRunRequired,
+          resultsInterpreter);
+      // Test cases filtered by test selectors don't run in full, so their durations aren't
+      // representative.
+      if (isTestRunRequired &&
+          testCaseTimingHistory.isPresent() &&
+          options.getTestSelectorList().isEmpty()) {
+        testResultsCallable = getTimingRecordingCallable(
+            testCaseTimingHistory.get(),
+            testResultsCallable);
+      }
+
       TestRun testRun = TestRun.of(
           test,
           steps,
-          getStatusTransformingCallable(
-              isTestRunRequired,
-              resultsInterpreter),
+          testResultsCallable,
           testReportingCallback);
 
       // Always run the commands, even if the list of commands as empty. There may be zero
@@ -414,6 +445,17 @@ public class TestRunning {
       throw e;
     }
 
+    if (testCaseTimingHistory.isPresent()) {
+      try {
+        testCaseTimingHistory.get().save();
+      } catch (IOException e) {
+        LOG.warn(
+            e,
+            "Failed to save test case timing history to %s.",
+            testCaseTimingHistory.get().getStorePath());
+      }
+    }
+
     params.getBuckEventBus().post(TestRunEvent.finished(testTargets, completedResults));
 
     // Write out the results as XML, if requested.
@@ -594,6 +636,24 @@ public class TestRunning {
     };
   }
 
+  private static Callable<TestResults> getTimingRecordingCallable(
+      final BuildRuleTimingHistory testCaseTimingHistory,
+      final Callable<TestResults> originalCallable) {
+    return () -> {
+      TestResults testResults = originalCallable.call();
+      for (TestCaseSummary testCase : testResults.getTestCases()) {
+        testCaseTimingHistory.record(
+            getTestCaseTimingKey(testResults.getBuildTarget(), testCase.getTestCaseName()),
+            testCase.getTotalTime());
+      }
+      return testResults;
+    };
+  }
+
+  private static String getTestCaseTimingKey(BuildTarget target, String testCaseName) {
+    return target.getFullyQualifiedName() + " " + testCaseName;
+  }
+
   @VisibleForTesting
   static boolean isTestRunRequiredForTest(
       TestRule test,
@@ -891,18 +951,106 @@ public class TestRunning {
       BuckEventBus eventBus,
       ListeningExecutorService listeningExecutorService) {
     Preconditions.checkState(!listeningExecutorService.isShutdown());
-    Callable<TestResults> callable = () -> {
+    ListenableFuture<Void> stepsDone = listeningExecutorService.submit(() -> {
       LOG.debug("Test steps will run for %s", buildTarget);
       eventBus.post(TestRuleEvent.started(buildTarget));
-      for (Step step : steps) {
-        stepRunner.runStepForBuildTarget(context, step, Optional.of(buildTarget));
+      return null;
+    });
+
+    // Steps run one after another, except that the steps making up a ConcurrentStep, such as the
+    // shards of a test rule, are each run as a task of their own.
+    List<Step> sequentialSteps = new ArrayList<>();
+    for (Step step : steps) {
+      if (step instanceof ConcurrentStep) {
+        stepsDone = runStepsAfter(
+            stepsDone,
+            ImmutableList.copyOf(sequentialSteps),
+            stepRunner,
+            context,
+            buildTarget,
+            listeningExecutorService);
+        sequentialSteps.clear();
+        stepsDone = runConcurrentStepAfter(
+            stepsDone,
+            (ConcurrentStep) step,
+            stepRunner,
+            context,
+            buildTarget,
+            listeningExecutorService);
+      } else {
+        sequentialSteps.add(step);
       }
-      LOG.debug("Test steps did run for %s", buildTarget);
-      eventBus.post(TestRuleEvent.finished(buildTarget));
+    }
+    stepsDone = runStepsAfter(
+        stepsDone,
+        ImmutableList.copyOf(sequentialSteps),
+        stepRunner,
+        context,
+        buildTarget,
+        listeningExecutorService);
+
+    return Futures.transformAsync(
+        stepsDone,
+        ignored -> listeningExecutorService.submit(() -> {
+          LOG.debug("Test steps did run for %s", buildTarget);
+          eventBus.post(TestRuleEvent.finished(buildTarget));
+
+          return interpretResults.call();
+        }),
+        MoreExecutors.directExecutor());
+  }
 
-      return interpretResults.call();
-    };
+  private static ListenableFuture<Void> runStepsAfter(
+      ListenableFuture<Void> previousSteps,
+      final ImmutableList<Step> steps,
+      final StepRunner stepRunner,
+      final ExecutionContext context,
+      final BuildTarget buildTarget,
+      final ListeningExecutorService listeningExecutorService) {
+    if (steps.isEmpty()) {
+      return previousSteps;
+    }
+    return Futures.transformAsync(
+        previousSteps,
+        ignored -> listeningExecutorService.submit(() -> {
+          for (Step step : steps) {
+            stepRunner.runStepForBuildTarget(context, step, Optional.of(buildTarget));
+          }
+          return null;
+        }),
+        MoreExecutors.directExecutor());
+  }
 
-    return listeningExecutorService.submit(callable);
+  private static ListenableFuture<Void> runConcurrentStepAfter(
+      ListenableFuture<Void> previousSteps,
+      final ConcurrentStep concurrentStep,
+      final StepRunner stepRunner,
+      final ExecutionContext context,
+      final BuildTarget buildTarget,
+      final ListeningExecutorService listeningExecutorService) {
+    return Futures.transformAsync(
+        previousSteps,
+        ignored -> {
+          List<ListenableFuture<Void>> stepFutures = new ArrayList<>();
+          for (Step step : concurrentStep) {
+            stepFutures.add(
+                runStepsAfter(
+                    Futures.immediateFuture(null),
+                    ImmutableList.of(step),
+                    stepRunner,
+                    context,
+                    buildTarget,
+                    listeningExecutorService));
+          }
+          // Wait for every step to finish, even if one fails, before reporting the first failure.
+          return Futures.transformAsync(
+              Futures.successfulAsList(stepFutures),
+              results -> Futures.transform(
+                  Futures.allAsList(stepFutures),
+                  (List<Void> allResults) -> (Void) null,
+                  MoreExecutors.directExecutor()),
+              MoreExecutors.directExecutor());
+        },
+        MoreExecutors.directExecutor());
   }
 }
@@ -116,7 +116,9 @@ public class UninstallCommand extends AbstractCommand {
               params.getBuckEventBus(),
               params.getBuckConfig().isActionGraphCheckingEnabled(),
               result.getTargetGraph(),
-              params.getBuckConfig().getKeySeed())
+              params.getBuckConfig().getKeySeed(),
+              params.getBuckConfig().getActionGraphParallelizationMode(),
+              params.getBuckConfig().getNumThreads())
           ).getResolver();
     } catch (BuildTargetException | BuildFileParseException e) {
       params.getBuckEventBus().post(ConsoleEvent.severe(
@@ -18,6 +18,7 @@ package com.facebook.buck.command;
 
 import com.facebook.buck.android.AndroidPlatformTarget;
 import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.ArtifactCacheBuckConfig;
 import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
@@ -53,6 +54,7 @@ import com.facebook.buck.util.Console;
 import com.facebook.buck.util.ExceptionWithHumanReadableMessage;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.cache.JarIndexCache;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
@@ -123,11 +125,12 @@ public class Build implements Closeable {
       Optional<AdbOptions> adbOptions,
       Optional<TargetDeviceOptions> targetDeviceOptions,
       Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools,
+      Optional<JarIndexCache> persistentJarIndexCache,
       Map<ExecutorPool, ListeningExecutorService> executors) {
     this.actionGraph = actionGraph;
     this.ruleResolver = ruleResolver;
     this.rootCell = rootCell;
-    this.executionContext = ExecutionContext.builder()
+    ExecutionContext.Builder executionContextBuilder = ExecutionContext.builder()
         .setConsole(console)
         .setAndroidPlatformTargetSupplier(androidPlatformTargetSupplier)
         .setTargetDevice(targetDevice)
@@ -146,8 +149,9 @@ public class Build implements Closeable {
         .setPersistentWorkerPools(persistentWorkerPools)
         .setTargetDeviceOptions(targetDeviceOptions)
         .setExecutors(executors)
-        .setCellPathResolver(rootCell.getCellPathResolver())
-        .build();
+        .setCellPathResolver(rootCell.getCellPathResolver());
+    persistentJarIndexCache.ifPresent(executionContextBuilder::setJarIndexCache);
+    this.executionContext = executionContextBuilder.build();
     this.artifactCache = artifactCache;
     this.buildEngine = buildEngine;
     this.javaPackageFinder = javaPackageFinder;
@@ -225,6 +229,8 @@ public class Build implements Closeable {
       boolean isKeepGoing)
       throws IOException, ExecutionException, InterruptedException {
     BuildId buildId = executionContext.getBuildId();
+    ArtifactCacheBuckConfig artifactCacheBuckConfig =
+        new ArtifactCacheBuckConfig(rootCell.getBuckConfig());
     BuildEngineBuildContext buildContext = BuildEngineBuildContext.builder()
         .setBuildContext(BuildContext.builder()
             .setActionGraph(actionGraph)
@@ -239,6 +245,12 @@ public class Build implements Closeable {
         .setObjectMapper(objectMapper)
         .putAllEnvironment(executionContext.getEnvironment())
         .setKeepGoing(isKeepGoing)
+        .setArtifactCachePrefetchEnabled(artifactCacheBuckConfig.getMultiFetchEnabled())
+        .setArtifactCacheStreamingFetchEnabled(artifactCacheBuckConfig.getStreamingFetchEnabled())
+        .setArtifactCompressionLevel(artifactCacheBuckConfig.getArtifactCompressionLevel())
+        .setArtifactCompressionThreads(artifactCacheBuckConfig.getArtifactCompressionThreads())
+        .setArtifactCompressionSkipCompressedFiles(
+            artifactCacheBuckConfig.getArtifactCompressionSkipCompressedFiles())
         .build();
 
     // It is important to use this logic to determine the set of rules to build rather than
@@ -167,19 +167,16 @@ abstract class AbstractCxxSourceRuleFactory {
    */
   private BuildRule requireAggregatedPreprocessDepsRule() {
     BuildTarget target = createAggregatedPreprocessDepsBuildTarget();
-    Optional<DependencyAggregation> existingRule =
-        getResolver().getRuleOptionalWithType(target, DependencyAggregation.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    } else {
-      BuildRuleParams params = getParams().copyWithChanges(
-          target,
-          Suppliers.ofInstance(getPreprocessDeps()),
-          Suppliers.ofInstance(ImmutableSortedSet.of()));
-      DependencyAggregation rule = new DependencyAggregation(params, getPathResolver());
-      getResolver().addToIndex(rule);
-      return rule;
-    }
+    return getResolver().computeIfAbsent(
+        target,
+        DependencyAggregation.class,
+        () -> {
+          BuildRuleParams params = getParams().copyWithChanges(
+              target,
+              Suppliers.ofInstance(getPreprocessDeps()),
+              Suppliers.ofInstance(ImmutableSortedSet.of()));
+          return new DependencyAggregation(params, getPathResolver());
+        });
   }
 
   @VisibleForTesting
@@ -346,18 +343,15 @@ abstract class AbstractCxxSourceRuleFactory {
       CxxSource source) {
 
     BuildTarget target = createCompileBuildTarget(name);
-    Optional<CxxPreprocessAndCompile> existingRule = getResolver().getRuleOptionalWithType(
-        target, CxxPreprocessAndCompile.class);
-    if (existingRule.isPresent()) {
-      if (!existingRule.get().getInput().equals(source.getPath())) {
-        throw new RuntimeException(
-            String.format("Hash collision for %s; a build rule would have been ignored.", name));
-      }
-      return existingRule.get();
+    CxxPreprocessAndCompile rule = getResolver().computeIfAbsent(
+        target,
+        CxxPreprocessAndCompile.class,
+        () -> createCompileBuildRule(name, source));
+    if (!rule.getInput().equals(source.getPath())) {
+      throw new RuntimeException(
+          String.format("Hash collision for %s; a build rule would have been ignored.", name));
     }
-
-    return createCompileBuildRule(name, source);
-
+    return rule;
   }
 
   private CxxToolFlags computePreprocessorFlags(
@@ -397,14 +391,10 @@ abstract class AbstractCxxSourceRuleFactory {
       CxxSource source,
       InferBuckConfig inferConfig) {
     BuildTarget target = createInferCaptureBuildTarget(name);
-
-    Optional<CxxInferCapture> existingRule = getResolver().getRuleOptionalWithType(
-        target, CxxInferCapture.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
-    return createInferCaptureBuildRule(target, name, source, inferConfig);
+    return getResolver().computeIfAbsent(
+        target,
+        CxxInferCapture.class,
+        () -> createInferCaptureBuildRule(target, name, source, inferConfig));
   }
 
   private CxxInferCapture createInferCaptureBuildRule(
@@ -535,17 +525,15 @@ abstract class AbstractCxxSourceRuleFactory {
   CxxPreprocessAndCompile requirePreprocessAndCompileBuildRule(String name, CxxSource source) {
 
     BuildTarget target = createCompileBuildTarget(name);
-    Optional<CxxPreprocessAndCompile> existingRule = getResolver().getRuleOptionalWithType(
-        target, CxxPreprocessAndCompile.class);
-    if (existingRule.isPresent()) {
-      if (!existingRule.get().getInput().equals(source.getPath())) {
-        throw new RuntimeException(
-            String.format("Hash collision for %s; a build rule would have been ignored.", name));
-      }
-      return existingRule.get();
+    CxxPreprocessAndCompile rule = getResolver().computeIfAbsent(
+        target,
+        CxxPreprocessAndCompile.class,
+        () -> createPreprocessAndCompileBuildRule(name, source));
+    if (!rule.getInput().equals(source.getPath())) {
+      throw new RuntimeException(
+          String.format("Hash collision for %s; a build rule would have been ignored.", name));
     }
-
-    return createPreprocessAndCompileBuildRule(name, source);
+    return rule;
   }
 
   /**
@@ -700,12 +688,25 @@ abstract class AbstractCxxSourceRuleFactory {
         .addAllFlavors(flavors)
         .build();
 
-    Optional<CxxPrecompiledHeader> existingRule =
-        getResolver().getRuleOptionalWithType(target, CxxPrecompiledHeader.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
+    return getResolver().computeIfAbsent(
+        target,
+        CxxPrecompiledHeader.class,
+        () -> createPrecompiledHeader(
+            target,
+            preprocessorDelegate,
+            sourceType,
+            compilerFlags,
+            headerPath,
+            depsBuilder));
+  }
 
+  private CxxPrecompiledHeader createPrecompiledHeader(
+      BuildTarget target,
+      PreprocessorDelegate preprocessorDelegate,
+      CxxSource.Type sourceType,
+      CxxToolFlags compilerFlags,
+      SourcePath headerPath,
+      DepsBuilder depsBuilder) {
     // Give the PCH a filename that looks like a header file with .gch appended to it, GCC-style.
     // GCC accepts an "-include" flag with the .h file as its arg, and auto-appends ".gch" to
     // automagically use the precompiled header in place of the original header.  Of course in
@@ -731,7 +732,7 @@ abstract class AbstractCxxSourceRuleFactory {
             Suppliers.ofInstance(depsBuilder.build()),
             Suppliers.ofInstance(ImmutableSortedSet.of()));
 
-    CxxPrecompiledHeader rule = new CxxPrecompiledHeader(
+    return new CxxPrecompiledHeader(
         params,
         getPathResolver(),
         output,
@@ -742,10 +743,6 @@ abstract class AbstractCxxSourceRuleFactory {
         sourceType,
         getCxxPlatform().getCompilerDebugPathSanitizer(),
         getCxxPlatform().getAssemblerDebugPathSanitizer());
-
-    getResolver().addToIndex(rule);
-
-    return rule;
   }
 
   public ImmutableSet<CxxInferCapture> requireInferCaptureBuildRules(
@@ -267,8 +267,7 @@ public class CxxBinaryDescription implements
         args.frameworks,
         args.tests,
         params.getBuildTarget().withoutFlavors(cxxPlatforms.getFlavors()));
-    resolver.addToIndex(cxxBinary);
-    return cxxBinary;
+    return resolver.computeIfAbsent(cxxBinary.getBuildTarget(), CxxBinary.class, () -> cxxBinary);
   }
 
   @Override
@@ -182,25 +182,17 @@ public class CxxDescriptionEnhancer {
             cxxPlatform.getFlavor(),
             headerVisibility);
 
-    // Check the cache...
-    Optional<BuildRule> rule = ruleResolver.getRuleOptional(headerSymlinkTreeTarget);
-    if (rule.isPresent()) {
-      Preconditions.checkState(rule.get() instanceof HeaderSymlinkTree);
-      return (HeaderSymlinkTree) rule.get();
-    }
-
-    HeaderSymlinkTree symlinkTree = createHeaderSymlinkTree(
-        untypedParams,
-        ruleResolver,
-        pathResolver,
-        cxxPlatform,
-        headers,
-        headerVisibility,
-        shouldCreateHeadersSymlinks);
-
-    ruleResolver.addToIndex(symlinkTree);
-
-    return symlinkTree;
+    return ruleResolver.computeIfAbsent(
+        headerSymlinkTreeTarget,
+        HeaderSymlinkTree.class,
+        () -> createHeaderSymlinkTree(
+            untypedParams,
+            ruleResolver,
+            pathResolver,
+            cxxPlatform,
+            headers,
+            headerVisibility,
+            shouldCreateHeadersSymlinks));
   }
 
   private static SymlinkTree requireSandboxSymlinkTree(
@@ -906,40 +898,33 @@ public class CxxDescriptionEnhancer {
       Path linkOutput,
       ImmutableList.Builder<Arg> argsBuilder,
       BuildTarget linkRuleTarget) throws NoSuchBuildTargetException {
-    CxxLink cxxLink;
-    Optional<BuildRule> existingCxxLinkRule = resolver.getRuleOptional(linkRuleTarget);
-    if (existingCxxLinkRule.isPresent()) {
-      Preconditions.checkArgument(existingCxxLinkRule.get() instanceof CxxLink);
-      cxxLink = (CxxLink) existingCxxLinkRule.get();
-    } else {
-      // Generate the final link rule.  We use the top-level target as the link rule's
-      // target, so that it corresponds to the actual binary we build.
-      cxxLink =
-          CxxLinkableEnhancer.createCxxLinkableBuildRule(
-              cxxBuckConfig,
-              cxxPlatform,
-              params,
-              resolver,
-              sourcePathResolver,
-              ruleFinder,
-              linkRuleTarget,
-              Linker.LinkType.EXECUTABLE,
-              Optional.empty(),
-              linkOutput,
-              linkStyle,
-              FluentIterable.from(params.getDeps())
-                  .filter(NativeLinkable.class),
-              cxxRuntimeType,
-              Optional.empty(),
-              ImmutableSet.of(),
-              NativeLinkableInput.builder()
-                  .setArgs(argsBuilder.build())
-                  .setFrameworks(frameworks)
-                  .setLibraries(libraries)
-                  .build());
-      resolver.addToIndex(cxxLink);
-    }
-    return cxxLink;
+    // Generate the final link rule.  We use the top-level target as the link rule's
+    // target, so that it corresponds to the actual binary we build.
+    return resolver.computeIfAbsent(
+        linkRuleTarget,
+        CxxLink.class,
+        () -> CxxLinkableEnhancer.createCxxLinkableBuildRule(
+            cxxBuckConfig,
+            cxxPlatform,
+            params,
+            resolver,
+            sourcePathResolver,
+            ruleFinder,
+            linkRuleTarget,
+            Linker.LinkType.EXECUTABLE,
+            Optional.empty(),
+            linkOutput,
+            linkStyle,
+            FluentIterable.from(params.getDeps())
+                .filter(NativeLinkable.class),
+            cxxRuntimeType,
+            Optional.empty(),
+            ImmutableSet.of(),
+            NativeLinkableInput.builder()
+                .setArgs(argsBuilder.build())
+                .setFrameworks(frameworks)
+                .setLibraries(libraries)
+                .build()));
   }
 
   public static CxxStrip createCxxStripRule(
@@ -955,24 +940,19 @@ public class CxxDescriptionEnhancer {
                 CxxStrip.RULE_FLAVOR, stripStyle.getFlavor()),
             Suppliers.ofInstance(ImmutableSortedSet.of(unstrippedBinaryRule)),
             Suppliers.ofInstance(ImmutableSortedSet.of()));
-    Optional<BuildRule> exisitingRule = resolver.getRuleOptional(stripRuleParams.getBuildTarget());
-    if (exisitingRule.isPresent()) {
-      Preconditions.checkArgument(exisitingRule.get() instanceof CxxStrip);
-      return (CxxStrip) exisitingRule.get();
-    } else {
-      CxxStrip cxxStrip = new CxxStrip(
-          stripRuleParams,
-          sourcePathResolver,
-          stripStyle,
-          new BuildTargetSourcePath(unstrippedBinaryRule.getBuildTarget()),
-          cxxPlatform.getStrip(),
-          CxxDescriptionEnhancer.getBinaryOutputPath(
-              stripRuleParams.getBuildTarget(),
-              params.getProjectFilesystem(),
-              cxxPlatform.getBinaryExtension()));
-      resolver.addToIndex(cxxStrip);
-      return cxxStrip;
-    }
+    return resolver.computeIfAbsent(
+        stripRuleParams.getBuildTarget(),
+        CxxStrip.class,
+        () -> new CxxStrip(
+            stripRuleParams,
+            sourcePathResolver,
+            stripStyle,
+            new BuildTargetSourcePath(unstrippedBinaryRule.getBuildTarget()),
+            cxxPlatform.getStrip(),
+            CxxDescriptionEnhancer.getBinaryOutputPath(
+                stripRuleParams.getBuildTarget(),
+                params.getProjectFilesystem(),
+                cxxPlatform.getBinaryExtension())));
   }
 
   public static
@@ -1330,18 +1310,15 @@ public class CxxDescriptionEnhancer {
       throws NoSuchBuildTargetException {
     BuildTarget target =
         createSharedLibrarySymlinkTreeTarget(params.getBuildTarget(), cxxPlatform.getFlavor());
-    SymlinkTree tree = resolver.getRuleOptionalWithType(target, SymlinkTree.class).orElse(null);
-    if (tree == null) {
-      tree =
-          resolver.addToIndex(
-              createSharedLibrarySymlinkTree(
-                  params,
-                  pathResolver,
-                  cxxPlatform,
-                  deps,
-                  traverse));
-    }
-    return tree;
+    return resolver.computeIfAbsent(
+        target,
+        SymlinkTree.class,
+        () -> createSharedLibrarySymlinkTree(
+            params,
+            pathResolver,
+            cxxPlatform,
+            deps,
+            traverse));
   }
 
   public static Flavor flavorForLinkableDepType(Linker.LinkableDepType linkableDepType) {
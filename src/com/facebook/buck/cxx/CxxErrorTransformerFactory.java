@@ -16,20 +16,18 @@
 
 package com.facebook.buck.cxx;
 
-import com.facebook.buck.step.ExecutionContext;
-import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.util.Escaper;
-import com.facebook.buck.util.LineProcessorRunnable;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.StandardSystemProperty;
 import com.google.common.collect.ImmutableList;
 
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -42,6 +40,8 @@ import java.util.regex.Pattern;
  */
 class CxxErrorTransformerFactory {
 
+  private static final String LINE_SEPARATOR = StandardSystemProperty.LINE_SEPARATOR.value();
+
   private final Optional<Function<Path, Path>> absolutifier;
   private final HeaderPathNormalizer pathNormalizer;
 
@@ -57,20 +57,16 @@ class CxxErrorTransformerFactory {
   }
 
   /**
-   * Create a thread to process lines in the stream asynchronously.
+   * Transform each line of {@code output}, every one of which ends with a line separator.
    */
-  public LineProcessorRunnable createTransformerThread(
-      ExecutionContext context,
-      InputStream inputStream,
-      OutputStream outputStream) {
-    return new LineProcessorRunnable(context.getExecutorService(ExecutorPool.CPU),
-        inputStream,
-        outputStream) {
-      @Override
-      public String process(String line) {
-        return transformLine(line);
-      }
-    };
+  public String transformLines(String output) {
+    List<String> lines = Splitter.on(LINE_SEPARATOR).splitToList(output);
+    StringBuilder builder = new StringBuilder();
+    // Since every line ends with a separator, what follows the last one is empty.
+    for (String line : lines.subList(0, lines.size() - 1)) {
+      builder.append(transformLine(line)).append(LINE_SEPARATOR);
+    }
+    return builder.toString();
   }
 
   private static final ImmutableList<Pattern> PATH_PATTERNS =
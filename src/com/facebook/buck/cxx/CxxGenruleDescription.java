@@ -607,25 +607,21 @@ public class CxxGenruleDescription
           CxxDescriptionEnhancer.createSharedLibrarySymlinkTreeTarget(
               params.getBuildTarget(),
               cxxPlatform.getFlavor());
-      SymlinkTree symlinkTree =
-          resolver.getRuleOptionalWithType(symlinkTreeTarget, SymlinkTree.class).orElse(null);
-      if (symlinkTree == null) {
-        try {
-          symlinkTree =
-              resolver.addToIndex(
-                  CxxDescriptionEnhancer.createSharedLibrarySymlinkTree(
-                      params,
-                      pathResolver,
-                      cxxPlatform,
-                      rules,
-                      NativeLinkable.class::isInstance));
-        } catch (NoSuchBuildTargetException e) {
-          throw new MacroException(
-              String.format("cannot create shared library symlink tree: %s: %s", e, e.getMessage()),
-              e);
-        }
+      try {
+        return resolver.computeIfAbsent(
+            symlinkTreeTarget,
+            SymlinkTree.class,
+            () -> CxxDescriptionEnhancer.createSharedLibrarySymlinkTree(
+                params,
+                pathResolver,
+                cxxPlatform,
+                rules,
+                NativeLinkable.class::isInstance));
+      } catch (NoSuchBuildTargetException e) {
+        throw new MacroException(
+            String.format("cannot create shared library symlink tree: %s: %s", e, e.getMessage()),
+            e);
       }
-      return symlinkTree;
     }
 
     /**
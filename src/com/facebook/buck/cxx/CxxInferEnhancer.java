@@ -146,26 +146,21 @@ public final class CxxInferEnhancer {
 
     BuildRuleParams paramsWithInferFlavor = cleanParams.withFlavor(InferFlavors.INFER.get());
 
-    Optional<CxxInferComputeReport> existingRule = resolver.getRuleOptionalWithType(
-        paramsWithInferFlavor.getBuildTarget(), CxxInferComputeReport.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
-    CxxInferAnalyze analysisRule = requireInferAnalyzeBuildRuleForCxxDescriptionArg(
-        cleanParams,
-        resolver,
-        pathResolver,
-        cxxBuckConfig,
-        cxxPlatform,
-        args,
-        inferConfig,
-        sourceFilter);
-    return createInferReportRule(
-        paramsWithInferFlavor,
-        resolver,
-        pathResolver,
-        analysisRule);
+    return resolver.computeIfAbsent(
+        paramsWithInferFlavor.getBuildTarget(),
+        CxxInferComputeReport.class,
+        () -> createInferReportRule(
+            paramsWithInferFlavor,
+            pathResolver,
+            requireInferAnalyzeBuildRuleForCxxDescriptionArg(
+                cleanParams,
+                resolver,
+                pathResolver,
+                cxxBuckConfig,
+                cxxPlatform,
+                args,
+                inferConfig,
+                sourceFilter)));
   }
 
   private static <T extends BuildRule> CxxInferCaptureAndAggregatingRules<T>
@@ -225,30 +220,23 @@ public final class CxxInferEnhancer {
         .paramsWithoutAnyInferFlavor(params)
         .withFlavor(inferAnalyze);
 
-    Optional<CxxInferAnalyze> existingRule = resolver.getRuleOptionalWithType(
-        paramsWithInferAnalyzeFlavor.getBuildTarget(), CxxInferAnalyze.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
-    CxxInferCaptureAndAggregatingRules<CxxInferAnalyze> cxxInferCaptureAndAnalyzeRules =
-        requireTransitiveCaptureAndAggregatingRules(
-            params,
-            resolver,
-            cxxBuckConfig,
-            cxxPlatform,
-            args,
+    return resolver.computeIfAbsent(
+        paramsWithInferAnalyzeFlavor.getBuildTarget(),
+        CxxInferAnalyze.class,
+        () -> createInferAnalyzeRule(
+            paramsWithInferAnalyzeFlavor,
+            pathResolver,
             inferConfig,
-            sourceFilter,
-            inferAnalyze,
-            CxxInferAnalyze.class);
-
-    return createInferAnalyzeRule(
-        paramsWithInferAnalyzeFlavor,
-        resolver,
-        pathResolver,
-        inferConfig,
-        cxxInferCaptureAndAnalyzeRules);
+            requireTransitiveCaptureAndAggregatingRules(
+                params,
+                resolver,
+                cxxBuckConfig,
+                cxxPlatform,
+                args,
+                inferConfig,
+                sourceFilter,
+                inferAnalyze,
+                CxxInferAnalyze.class)));
   }
 
   public static CxxInferCaptureRulesAggregator
@@ -268,29 +256,22 @@ public final class CxxInferEnhancer {
         .paramsWithoutAnyInferFlavor(params)
         .withFlavor(inferCaptureOnly);
 
-    Optional<CxxInferCaptureRulesAggregator> existingRule = resolver.getRuleOptionalWithType(
-        paramsWithInferCaptureOnlyFlavor.getBuildTarget(), CxxInferCaptureRulesAggregator.class);
-    if (existingRule.isPresent()) {
-      return existingRule.get();
-    }
-
-    CxxInferCaptureAndAggregatingRules<CxxInferCaptureRulesAggregator>
-        cxxInferCaptureAndAnalyzeRules = requireTransitiveCaptureAndAggregatingRules(
-            params,
-            resolver,
-            cxxBuckConfig,
-            cxxPlatform,
-            args,
-            inferConfig,
-            sourceFilter,
-            inferCaptureOnly,
-            CxxInferCaptureRulesAggregator.class);
-
-    return createInferCaptureAggregatorRule(
-        paramsWithInferCaptureOnlyFlavor,
-        resolver,
-        pathResolver,
-        cxxInferCaptureAndAnalyzeRules);
+    return resolver.computeIfAbsent(
+        paramsWithInferCaptureOnlyFlavor.getBuildTarget(),
+        CxxInferCaptureRulesAggregator.class,
+        () -> createInferCaptureAggregatorRule(
+            paramsWithInferCaptureOnlyFlavor,
+            pathResolver,
+            requireTransitiveCaptureAndAggregatingRules(
+                params,
+                resolver,
+                cxxBuckConfig,
+                cxxPlatform,
+                args,
+                inferConfig,
+                sourceFilter,
+                inferCaptureOnly,
+                CxxInferCaptureRulesAggregator.class)));
   }
 
   private static <T extends BuildRule> ImmutableSet<T> requireTransitiveDependentLibraries(
@@ -477,52 +458,46 @@ public final class CxxInferEnhancer {
 
   private static CxxInferAnalyze createInferAnalyzeRule(
       BuildRuleParams params,
-      BuildRuleResolver resolver,
       SourcePathResolver pathResolver,
       InferBuckConfig inferConfig,
       CxxInferCaptureAndAggregatingRules<CxxInferAnalyze> captureAnalyzeRules) {
-    return resolver.addToIndex(
-        new CxxInferAnalyze(
-            params.copyWithChanges(
-                params.getBuildTarget(),
-                Suppliers.ofInstance(
-                    ImmutableSortedSet.<BuildRule>naturalOrder()
-                        .addAll(captureAnalyzeRules.captureRules)
-                        .addAll(captureAnalyzeRules.aggregatingRules)
-                        .build()),
-                params.getExtraDeps()),
-            pathResolver,
-            inferConfig,
-            captureAnalyzeRules));
+    return new CxxInferAnalyze(
+        params.copyWithChanges(
+            params.getBuildTarget(),
+            Suppliers.ofInstance(
+                ImmutableSortedSet.<BuildRule>naturalOrder()
+                    .addAll(captureAnalyzeRules.captureRules)
+                    .addAll(captureAnalyzeRules.aggregatingRules)
+                    .build()),
+            params.getExtraDeps()),
+        pathResolver,
+        inferConfig,
+        captureAnalyzeRules);
   }
 
   private static CxxInferCaptureRulesAggregator createInferCaptureAggregatorRule(
       BuildRuleParams params,
-      BuildRuleResolver resolver,
       SourcePathResolver pathResolver,
       CxxInferCaptureAndAggregatingRules<CxxInferCaptureRulesAggregator> captureAggregatorRules) {
-    return resolver.addToIndex(
-        new CxxInferCaptureRulesAggregator(
-            params,
-            pathResolver,
-            captureAggregatorRules));
+    return new CxxInferCaptureRulesAggregator(
+        params,
+        pathResolver,
+        captureAggregatorRules);
   }
 
   private static CxxInferComputeReport createInferReportRule(
       BuildRuleParams buildRuleParams,
-      BuildRuleResolver buildRuleResolver,
       SourcePathResolver sourcePathResolver,
       CxxInferAnalyze analysisToReport) {
-    return buildRuleResolver.addToIndex(
-        new CxxInferComputeReport(
-            buildRuleParams.copyWithDeps(
-                Suppliers.ofInstance(
-                    ImmutableSortedSet.<BuildRule>naturalOrder()
-                        .addAll(analysisToReport.getTransitiveAnalyzeRules())
-                        .add(analysisToReport)
-                        .build()),
-                buildRuleParams.getExtraDeps()),
-            sourcePathResolver,
-            analysisToReport));
+    return new CxxInferComputeReport(
+        buildRuleParams.copyWithDeps(
+            Suppliers.ofInstance(
+                ImmutableSortedSet.<BuildRule>naturalOrder()
+                    .addAll(analysisToReport.getTransitiveAnalyzeRules())
+                    .add(analysisToReport)
+                    .build()),
+            buildRuleParams.getExtraDeps()),
+        sourcePathResolver,
+        analysisToReport);
   }
 }
@@ -175,10 +175,13 @@ public class CxxLibraryDescription implements
                     .addAll(LIBRARY_TYPE.getFlavors())
                     .add(cxxPlatform.getFlavor())
                     .build());
-    Optional<BuildRule> rawRule = ruleResolver.getRuleOptional(rawTarget);
+    // When action graphs are created in parallel, the library may be being created on another
+    // thread, so may not have been indexed yet.  Computing its input below gives the same result,
+    // and creates rules only through BuildRuleResolver.computeIfAbsent, so can safely race with it.
+    Optional<CxxLibrary> rawRule =
+        ruleResolver.getRuleOptionalWithType(rawTarget, CxxLibrary.class);
     if (rawRule.isPresent()) {
-      CxxLibrary rule = (CxxLibrary) rawRule.get();
-      return rule
+      return rawRule.get()
           .getTransitiveCxxPreprocessorInput(cxxPlatform, HeaderVisibility.PUBLIC)
           .values();
     }
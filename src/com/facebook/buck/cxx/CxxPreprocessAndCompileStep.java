@@ -25,7 +25,6 @@ import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.DefaultProcessExecutor;
 import com.facebook.buck.util.Escaper;
-import com.facebook.buck.util.LineProcessorRunnable;
 import com.facebook.buck.util.MoreThrowables;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
@@ -38,9 +37,9 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.io.Files;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -241,33 +240,22 @@ public class CxxPreprocessAndCompileStep implements Step {
         params.getDirectory(),
         getDescription(context));
 
-    // Start the process.
+    // Start the process, capturing its error messages in memory, as these are typically small.
+    // Its output is handled on the executor's shared I/O threads rather than on threads of our own.
     ProcessExecutor executor = new DefaultProcessExecutor(Console.createNullConsole());
-    ProcessExecutor.LaunchedProcess process = executor.launchProcess(params);
-
-    // We buffer error messages in memory, as these are typically small.
-    ByteArrayOutputStream error = new ByteArrayOutputStream();
-
-    // Fire up managed threads to process the stdout and stderr lines.
-    int exitCode;
-    try {
-      try (LineProcessorRunnable errorProcessor =
-               createErrorTransformerFactory(context)
-                   .createTransformerThread(context, process.getErrorStream(), error)) {
-        errorProcessor.start();
-        errorProcessor.waitFor();
-      } catch (Throwable thrown) {
-        executor.destroyLaunchedProcess(process);
-        throw thrown;
-      }
-      exitCode = executor.waitForLaunchedProcess(process).getExitCode();
-    } finally {
-      executor.destroyLaunchedProcess(process);
-      executor.waitForLaunchedProcess(process);
-    }
+    ProcessExecutor.Result result = executor.launchAndExecute(
+        params,
+        EnumSet.of(
+            ProcessExecutor.Option.EXPECTING_STD_OUT,
+            ProcessExecutor.Option.EXPECTING_STD_ERR,
+            ProcessExecutor.Option.IS_SILENT),
+        /* stdin */ Optional.empty(),
+        /* timeOutMs */ Optional.empty(),
+        /* timeOutHandler */ Optional.empty());
+    int exitCode = result.getExitCode();
 
     // If we generated any error output, print that to the console.
-    String err = new String(error.toByteArray());
+    String err = createErrorTransformerFactory(context).transformLines(result.getStderr().get());
     if (!err.isEmpty()) {
       context.getBuckEventBus().post(
           createConsoleEvent(
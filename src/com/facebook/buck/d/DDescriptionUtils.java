@@ -242,43 +242,63 @@ abstract class DDescriptionUtils {
       SourcePath src,
       DIncludes includes)
       throws NoSuchBuildTargetException {
-    Optional<BuildRule> existingRule = buildRuleResolver.getRuleOptional(compileTarget);
-    if (existingRule.isPresent()) {
-      return (DCompileBuildRule) existingRule.get();
-    } else {
-      Tool compiler = dBuckConfig.getDCompiler();
+    return buildRuleResolver.computeIfAbsent(
+        compileTarget,
+        DCompileBuildRule.class,
+        () -> createDCompileBuildRule(
+            compileTarget,
+            baseParams,
+            sourcePathResolver,
+            ruleFinder,
+            dBuckConfig,
+            compilerFlags,
+            name,
+            src,
+            includes));
+  }
 
-      Map<BuildTarget, DIncludes> transitiveIncludes = new TreeMap<>();
-      transitiveIncludes.put(baseParams.getBuildTarget(), includes);
-      for (Map.Entry<BuildTarget, DLibrary> library :
-           getTransitiveDLibraryRules(baseParams.getDeps()).entrySet()) {
-        transitiveIncludes.put(library.getKey(), library.getValue().getIncludes());
-      }
+  private static DCompileBuildRule createDCompileBuildRule(
+      BuildTarget compileTarget,
+      BuildRuleParams baseParams,
+      SourcePathResolver sourcePathResolver,
+      SourcePathRuleFinder ruleFinder,
+      DBuckConfig dBuckConfig,
+      ImmutableList<String> compilerFlags,
+      String name,
+      SourcePath src,
+      DIncludes includes)
+      throws NoSuchBuildTargetException {
+    Tool compiler = dBuckConfig.getDCompiler();
 
-      ImmutableSortedSet.Builder<BuildRule> depsBuilder = ImmutableSortedSet.naturalOrder();
-      depsBuilder.addAll(compiler.getDeps(ruleFinder));
-      depsBuilder.addAll(ruleFinder.filterBuildRuleInputs(src));
-      for (DIncludes dIncludes : transitiveIncludes.values()) {
-        depsBuilder.addAll(dIncludes.getDeps(ruleFinder));
-      }
-      ImmutableSortedSet<BuildRule> deps = depsBuilder.build();
+    Map<BuildTarget, DIncludes> transitiveIncludes = new TreeMap<>();
+    transitiveIncludes.put(baseParams.getBuildTarget(), includes);
+    for (Map.Entry<BuildTarget, DLibrary> library :
+         getTransitiveDLibraryRules(baseParams.getDeps()).entrySet()) {
+      transitiveIncludes.put(library.getKey(), library.getValue().getIncludes());
+    }
 
-      return buildRuleResolver.addToIndex(
-          new DCompileBuildRule(
-              baseParams.copyWithChanges(
-                  compileTarget,
-                  Suppliers.ofInstance(deps),
-                  Suppliers.ofInstance(ImmutableSortedSet.of())),
-              sourcePathResolver,
-              compiler,
-              ImmutableList.<String>builder()
-                  .addAll(dBuckConfig.getBaseCompilerFlags())
-                  .addAll(compilerFlags)
-                  .build(),
-              name,
-              ImmutableSortedSet.of(src),
-              ImmutableList.copyOf(transitiveIncludes.values())));
+    ImmutableSortedSet.Builder<BuildRule> depsBuilder = ImmutableSortedSet.naturalOrder();
+    depsBuilder.addAll(compiler.getDeps(ruleFinder));
+    depsBuilder.addAll(ruleFinder.filterBuildRuleInputs(src));
+    for (DIncludes dIncludes : transitiveIncludes.values()) {
+      depsBuilder.addAll(dIncludes.getDeps(ruleFinder));
     }
+    ImmutableSortedSet<BuildRule> deps = depsBuilder.build();
+
+    return new DCompileBuildRule(
+        baseParams.copyWithChanges(
+            compileTarget,
+            Suppliers.ofInstance(deps),
+            Suppliers.ofInstance(ImmutableSortedSet.of())),
+        sourcePathResolver,
+        compiler,
+        ImmutableList.<String>builder()
+            .addAll(dBuckConfig.getBaseCompilerFlags())
+            .addAll(compilerFlags)
+            .build(),
+        name,
+        ImmutableSortedSet.of(src),
+        ImmutableList.copyOf(transitiveIncludes.values()));
   }
 
   /**
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the {@link ChromeTraceEvent}s written by a {@link BinaryChromeTraceWriter}.
+ * <p>
+ * A trace which was cut short, say because Buck was killed, reads as the events which were
+ * written in full.
+ */
+public class BinaryChromeTraceReader implements Closeable {
+
+  private final DataInputStream input;
+  private final List<String> strings = new ArrayList<>();
+  private long previousMicroTime = 0;
+
+  public BinaryChromeTraceReader(InputStream input) throws IOException {
+    this.input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(input)));
+    byte[] magic = new byte[BinaryChromeTraceWriter.MAGIC.length];
+    this.input.readFully(magic);
+    if (!Arrays.equals(magic, BinaryChromeTraceWriter.MAGIC)) {
+      throw new IOException("Not a binary trace.");
+    }
+    int version = this.input.readUnsignedByte();
+    if (version != BinaryChromeTraceWriter.VERSION) {
+      throw new IOException(String.format("Unsupported binary trace version %d.", version));
+    }
+  }
+
+  /**
+   * @return whether the stream, which must support {@link InputStream#mark(int)}, starts with
+   *     what could be a binary trace rather than JSON. The stream is left where it was.
+   */
+  public static boolean isBinaryTrace(InputStream input) throws IOException {
+    input.mark(2);
+    try {
+      // Binary traces are compressed, and so start with the GZIP magic number.
+      return input.read() == 0x1f && input.read() == 0x8b;
+    } finally {
+      input.reset();
+    }
+  }
+
+  /**
+   * Writes the events of a binary trace as the JSON array Chrome Trace View reads, one event at
+   * a time.
+   */
+  public static void convertToJson(
+      InputStream input,
+      ObjectMapper objectMapper,
+      Writer output) throws IOException {
+    try (BinaryChromeTraceReader reader = new BinaryChromeTraceReader(input)) {
+      JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.writeStartArray();
+      for (Optional<ChromeTraceEvent> event = reader.readEvent();
+           event.isPresent();
+           event = reader.readEvent()) {
+        objectMapper.writeValue(generator, event.get());
+      }
+      generator.writeEndArray();
+      generator.close();
+    }
+  }
+
+  /**
+   * @return the next event, or {@link Optional#empty()} at the end of the trace.
+   */
+  public Optional<ChromeTraceEvent> readEvent() throws IOException {
+    try {
+      input.mark(1);
+      if (input.read() == -1) {
+        return Optional.empty();
+      }
+      input.reset();
+
+      String category = readString();
+      String name = readString();
+      ChromeTraceEvent.Phase phase = readPhase();
+      long processId = readVarLong();
+      long threadId = readVarLong();
+      long microTime = previousMicroTime + readSignedVarLong();
+      long microThreadUserTime = readSignedVarLong();
+      long argCount = readVarLong();
+      ImmutableMap.Builder<String, String> args = ImmutableMap.builder();
+      for (long i = 0; i < argCount; i++) {
+        args.put(readString(), readString());
+      }
+      previousMicroTime = microTime;
+      return Optional.of(
+          new ChromeTraceEvent(
+              category,
+              name,
+              phase,
+              processId,
+              threadId,
+              microTime,
+              microThreadUserTime,
+              args.build()));
+    } catch (EOFException e) {
+      // The trace was cut short part way through this event.
+      return Optional.empty();
+    }
+  }
+
+  private ChromeTraceEvent.Phase readPhase() throws IOException {
+    String phase = String.valueOf((char) input.readUnsignedByte());
+    for (ChromeTraceEvent.Phase value : ChromeTraceEvent.Phase.values()) {
+      if (value.getPhase().equals(phase)) {
+        return value;
+      }
+    }
+    throw new IOException(String.format("Unknown trace event phase %s.", phase));
+  }
+
+  private String readString() throws IOException {
+    long reference = readVarLong();
+    if (reference != 0) {
+      if (reference > strings.size()) {
+        throw new IOException(String.format("Unknown string reference %d.", reference));
+      }
+      return strings.get((int) reference - 1);
+    }
+    byte[] bytes = new byte[(int) readVarLong()];
+    input.readFully(bytes);
+    String string = new String(bytes, Charsets.UTF_8);
+    if (strings.size() < BinaryChromeTraceWriter.MAX_STRING_REFERENCES) {
+      strings.add(string);
+    }
+    return string;
+  }
+
+  private long readSignedVarLong() throws IOException {
+    long value = readVarLong();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private long readVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = input.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer.");
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import com.google.common.base.Charsets;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes {@link ChromeTraceEvent}s in a compact binary form, compressing them as they are
+ * written, so that the trace of a large build neither takes up much space on disk nor has to be
+ * held in memory. {@link BinaryChromeTraceReader} reads the events back, and can convert them to
+ * the JSON that Chrome Trace View reads.
+ * <p>
+ * The trace is a GZIP stream of a header followed by the events. Each string is written in full
+ * the first time it appears and as a reference to that first appearance afterwards, up to
+ * {@link #MAX_STRING_REFERENCES} distinct strings. Numbers are written as variable length integers,
+ * and timestamps as the difference from the previous event's timestamp.
+ */
+public class BinaryChromeTraceWriter implements Closeable {
+
+  static final byte[] MAGIC = {'B', 'T', 'R', 'C'};
+  static final int VERSION = 1;
+
+  /**
+   * Bounds how many strings the writer and reader remember. Strings which appear once the limit
+   * is reached are always written in full.
+   */
+  static final int MAX_STRING_REFERENCES = 1 << 16;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final DataOutputStream output;
+  private final Map<String, Integer> stringReferences = new HashMap<>();
+  private long previousMicroTime = 0;
+
+  public BinaryChromeTraceWriter(OutputStream output) throws IOException {
+    this.output = new DataOutputStream(
+        new BufferedOutputStream(new GZIPOutputStream(output, BUFFER_SIZE), BUFFER_SIZE));
+    this.output.write(MAGIC);
+    this.output.writeByte(VERSION);
+  }
+
+  public void writeEvent(ChromeTraceEvent event) throws IOException {
+    writeString(event.getCategory());
+    writeString(event.getName());
+    output.writeByte(event.getPhase().getPhase().charAt(0));
+    writeVarLong(event.getProcessId());
+    writeVarLong(event.getThreadId());
+    writeSignedVarLong(event.getMicroTime() - previousMicroTime);
+    previousMicroTime = event.getMicroTime();
+    writeSignedVarLong(event.getMicroThreadUserTime());
+    Map<String, String> args = event.getArgs();
+    writeVarLong(args.size());
+    for (Map.Entry<String, String> arg : args.entrySet()) {
+      writeString(arg.getKey());
+      writeString(arg.getValue());
+    }
+  }
+
+  private void writeString(String string) throws IOException {
+    Integer reference = stringReferences.get(string);
+    if (reference != null) {
+      writeVarLong(reference + 1);
+      return;
+    }
+    writeVarLong(0);
+    byte[] bytes = string.getBytes(Charsets.UTF_8);
+    writeVarLong(bytes.length);
+    output.write(bytes);
+    if (stringReferences.size() < MAX_STRING_REFERENCES) {
+      stringReferences.put(string, stringReferences.size());
+    }
+  }
+
+  private void writeSignedVarLong(long value) throws IOException {
+    // Zig-zag encode, so that small negative numbers are small too.
+    writeVarLong((value << 1) ^ (value >> 63));
+  }
+
+  private void writeVarLong(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      output.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.writeByte((int) value);
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+}
@@ -19,21 +19,29 @@ import com.facebook.buck.log.CommandThreadFactory;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.timing.Clock;
-import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.eventbus.EventBus;
-import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Thin wrapper around guava event bus.
+ * <p>
+ * When asynchronous, each listener has a {@link ListenerEventQueue} of its own, which is delivered
+ * on a thread of its own while it has events, so that a slow listener doesn't hold up the others.
+ * Each listener sees events in the order they were posted, but events are not ordered across
+ * listeners: an event may reach one listener before another listener has seen earlier ones.
  */
 public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus {
 
@@ -41,12 +49,34 @@ public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus
 
   public static final int DEFAULT_SHUTDOWN_TIMEOUT_MS = 15000;
 
+  /**
+   * How many events a listener may fall behind by before its {@link OverflowPolicy} applies.
+   */
+  public static final int DEFAULT_LISTENER_QUEUE_CAPACITY = 65536;
+
+  /**
+   * What to do with an event posted for a listener whose queue is full.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Wait for the listener to catch up. Events posted while handling another event are queued
+     * regardless, as the listener being waited for might be the one handling the event.
+     */
+    BLOCK,
+    /**
+     * Drop the event. Only suitable for listeners which don't need to see every event.
+     */
+    DROP,
+  }
+
   private static final Supplier<Long> DEFAULT_THREAD_ID_SUPPLIER =
       () -> Thread.currentThread().getId();
 
   private final Clock clock;
-  private final ExecutorService executorService;
+  private final Optional<ExecutorService> executorService;
   private final EventBus eventBus;
+  private final List<ListenerEventQueue> listenerQueues = new CopyOnWriteArrayList<>();
+  private final int listenerQueueCapacity;
   private final Supplier<Long> threadIdSupplier;
   private final BuildId buildId;
   private final int shutdownTimeoutMillis;
@@ -61,20 +91,50 @@ public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus
       boolean async,
       BuildId buildId,
       int shutdownTimeoutMillis) {
+    this(clock, async, buildId, shutdownTimeoutMillis, DEFAULT_LISTENER_QUEUE_CAPACITY);
+  }
+
+  @VisibleForTesting
+  public BuckEventBus(
+      Clock clock,
+      boolean async,
+      BuildId buildId,
+      int shutdownTimeoutMillis,
+      int listenerQueueCapacity) {
     this.clock = clock;
+    // Listeners are only delivered to on a thread while they have events queued, so threads are
+    // created as they're needed and discarded when they're idle. Events whose delivery is rejected
+    // as the bus is closed are delivered on the thread posting them instead.
     this.executorService = async ?
-        MostExecutors.newSingleThreadExecutor(
-            new CommandThreadFactory(BuckEventBus.class.getSimpleName())) :
-        MoreExecutors.newDirectExecutorService();
+        Optional.of(
+            new ThreadPoolExecutor(
+                /* corePoolSize */ 0,
+                /* maximumPoolSize */ Integer.MAX_VALUE,
+                /* keepAliveTime */ 60L, TimeUnit.SECONDS,
+                /* workQueue */ new SynchronousQueue<>(),
+                /* threadFactory */ new CommandThreadFactory(BuckEventBus.class.getSimpleName()))) :
+        Optional.empty();
     this.eventBus = new EventBus("buck-build-events");
+    this.listenerQueueCapacity = listenerQueueCapacity;
     this.threadIdSupplier = DEFAULT_THREAD_ID_SUPPLIER;
     this.buildId = buildId;
     this.shutdownTimeoutMillis = shutdownTimeoutMillis;
   }
 
-  private void dispatch(final BuckEvent event) {
-    executorService.submit(
-        () -> eventBus.post(event));
+  private void dispatch(BuckEvent event) {
+    if (!executorService.isPresent()) {
+      eventBus.post(event);
+      return;
+    }
+    if (executorService.get().isShutdown()) {
+      return;
+    }
+    Class<?> eventType = event.getClass();
+    for (ListenerEventQueue queue : listenerQueues) {
+      if (queue.isSubscribedTo(eventType)) {
+        queue.add(event);
+      }
+    }
   }
 
   @Override
@@ -109,7 +169,19 @@ public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus
 
   @Override
   public void register(Object object) {
+    register(object, OverflowPolicy.BLOCK);
+  }
+
+  public void register(Object object, OverflowPolicy overflowPolicy) {
     eventBus.register(object);
+    if (executorService.isPresent()) {
+      listenerQueues.add(
+          new ListenerEventQueue(
+              object,
+              listenerQueueCapacity,
+              overflowPolicy,
+              executorService.get()));
+    }
   }
 
   @VisibleForTesting
@@ -141,26 +213,50 @@ public class BuckEventBus implements Closeable, com.facebook.buck.event.EventBus
   }
 
   /**
-   * {@link ExecutorService#awaitTermination(long, java.util.concurrent.TimeUnit)} is called
-   * to wait for events which have been posted, but which have been queued by the
-   * {@link EventBus}, to be delivered. This allows listeners to record or report as much
-   * information as possible. This aids debugging when close is called during exception processing.
+   * Waits for events which have been posted, but which are still queued for some listeners, to be
+   * delivered. This allows listeners to record or report as much information as possible. This
+   * aids debugging when close is called during exception processing.
    */
   @Override
   public void close() throws IOException {
-    executorService.shutdown();
+    if (!executorService.isPresent()) {
+      return;
+    }
+    long deadlineNanos =
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
     try {
-      if (!executorService.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+      boolean delivered = true;
+      for (ListenerEventQueue queue : listenerQueues) {
+        if (!queue.awaitDelivery(deadlineNanos)) {
+          delivered = false;
+          break;
+        }
+      }
+      executorService.get().shutdown();
+      if (!delivered ||
+          !executorService.get().awaitTermination(
+              Math.max(0, deadlineNanos - System.nanoTime()),
+              TimeUnit.NANOSECONDS)) {
         LOG.warn(Joiner.on(System.lineSeparator()).join(
           "The BuckEventBus failed to shut down within the standard timeout.",
           "Your build might have succeeded, but some messages were probably lost.",
           "Here's some debugging information:",
-          executorService.toString()));
-        executorService.shutdownNow();
+          executorService.get().toString(),
+          Joiner.on(System.lineSeparator()).join(listenerQueues)));
+        executorService.get().shutdownNow();
       }
     } catch (InterruptedException e) {
+      executorService.get().shutdownNow();
       Thread.currentThread().interrupt();
     }
+    for (ListenerEventQueue queue : listenerQueues) {
+      if (queue.getDroppedEvents() > 0) {
+        LOG.info(
+            "%d events were dropped as %s fell behind.",
+            queue.getDroppedEvents(),
+            queue.getListener().getClass().getName());
+      }
+    }
   }
 
   /**
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.reflect.TypeToken;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * The events posted to a {@link BuckEventBus} which are still to be delivered to one of its
+ * listeners. Each listener has a queue of its own, so that a listener which is slow to handle
+ * events only holds up itself rather than every other listener.
+ * <p>
+ * Events are delivered in the order they were added, in batches, by at most one thread at a time.
+ * Only events which the listener subscribes to are queued at all. As each listener is delivered to
+ * independently, the order in which different listeners see events is unrelated: one listener may
+ * handle an event before another has handled the events posted before it.
+ */
+class ListenerEventQueue {
+
+  /**
+   * The most events taken off the queue at once, so that a listener which has fallen behind
+   * frees up space in its queue as it catches up.
+   */
+  private static final int MAX_BATCH_SIZE = 256;
+
+  /**
+   * Whether the current thread is delivering events to a listener. Such threads never wait for
+   * space in a queue, as the listener they would be waiting for might be the one they are
+   * delivering to.
+   */
+  private static final ThreadLocal<Boolean> isDeliveryThread =
+      ThreadLocal.withInitial(() -> false);
+
+  private final Object listener;
+  private final EventBus listenerBus;
+  private final ImmutableSet<Class<?>> subscribedEventTypes;
+  private final ConcurrentMap<Class<?>, Boolean> isSubscribedCache = new ConcurrentHashMap<>();
+  private final int capacity;
+  private final BuckEventBus.OverflowPolicy overflowPolicy;
+  private final Executor executor;
+
+  private final Object lock = new Object();
+  @GuardedBy("lock")
+  private final ArrayDeque<BuckEvent> events = new ArrayDeque<>();
+  @GuardedBy("lock")
+  private boolean delivering = false;
+  @GuardedBy("lock")
+  private long droppedEvents = 0;
+
+  public ListenerEventQueue(
+      Object listener,
+      int capacity,
+      BuckEventBus.OverflowPolicy overflowPolicy,
+      Executor executor) {
+    this.listener = listener;
+    this.listenerBus = new EventBus("buck-build-events");
+    this.listenerBus.register(listener);
+    this.subscribedEventTypes = getSubscribedEventTypes(listener.getClass());
+    this.capacity = capacity;
+    this.overflowPolicy = overflowPolicy;
+    this.executor = executor;
+  }
+
+  /**
+   * Mirrors how {@link EventBus} finds the subscriber methods of a listener.
+   */
+  private static ImmutableSet<Class<?>> getSubscribedEventTypes(Class<?> listenerClass) {
+    ImmutableSet.Builder<Class<?>> eventTypes = ImmutableSet.builder();
+    for (Class<?> type : TypeToken.of(listenerClass).getTypes().rawTypes()) {
+      for (Method method : type.getDeclaredMethods()) {
+        if (method.isAnnotationPresent(Subscribe.class) &&
+            !method.isSynthetic() &&
+            method.getParameterTypes().length == 1) {
+          eventTypes.add(method.getParameterTypes()[0]);
+        }
+      }
+    }
+    return eventTypes.build();
+  }
+
+  public boolean isSubscribedTo(Class<?> eventType) {
+    return isSubscribedCache.computeIfAbsent(
+        eventType,
+        type -> subscribedEventTypes.stream()
+            .anyMatch(subscribedType -> subscribedType.isAssignableFrom(type)));
+  }
+
+  /**
+   * Queues an event for delivery to the listener, first waiting for space in the queue or
+   * dropping the event if the listener has fallen too far behind, depending on its
+   * {@link BuckEventBus.OverflowPolicy}.
+   */
+  public void add(BuckEvent event) {
+    synchronized (lock) {
+      if (events.size() >= capacity) {
+        if (overflowPolicy == BuckEventBus.OverflowPolicy.DROP) {
+          droppedEvents++;
+          return;
+        }
+        if (!isDeliveryThread.get()) {
+          waitForSpace();
+        }
+      }
+      events.add(event);
+      if (delivering) {
+        return;
+      }
+      delivering = true;
+    }
+    try {
+      executor.execute(this::deliverEvents);
+    } catch (RejectedExecutionException e) {
+      // The bus is being closed, so deliver the events on this thread rather than leaving them
+      // queued with no thread to deliver them.
+      deliverEvents();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void waitForSpace() {
+    try {
+      while (events.size() >= capacity) {
+        lock.wait();
+      }
+    } catch (InterruptedException e) {
+      // Queue the event anyway, rather than losing it.
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void deliverEvents() {
+    boolean wasDeliveryThread = isDeliveryThread.get();
+    isDeliveryThread.set(true);
+    List<BuckEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    boolean drained = false;
+    try {
+      while (true) {
+        synchronized (lock) {
+          if (events.isEmpty()) {
+            delivering = false;
+            drained = true;
+            lock.notifyAll();
+            return;
+          }
+          while (batch.size() < MAX_BATCH_SIZE && !events.isEmpty()) {
+            batch.add(events.poll());
+          }
+          lock.notifyAll();
+        }
+        for (BuckEvent event : batch) {
+          listenerBus.post(event);
+        }
+        batch.clear();
+      }
+    } finally {
+      isDeliveryThread.set(wasDeliveryThread);
+      if (!drained) {
+        synchronized (lock) {
+          delivering = false;
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits until every event added so far has been delivered to the listener.
+   *
+   * @return whether the events were all delivered before {@code deadlineNanos}, as given by
+   *     {@link System#nanoTime()}.
+   */
+  public boolean awaitDelivery(long deadlineNanos) throws InterruptedException {
+    synchronized (lock) {
+      while (delivering) {
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+      }
+      return true;
+    }
+  }
+
+  public long getDroppedEvents() {
+    synchronized (lock) {
+      return droppedEvents;
+    }
+  }
+
+  public Object getListener() {
+    return listener;
+  }
+
+  @Override
+  public String toString() {
+    synchronized (lock) {
+      return String.format(
+          "%s: %d queued events%s",
+          listener.getClass().getName(),
+          events.size(),
+          delivering ? ", delivering" : "");
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.facebook.buck.artifact_cache.ArtifactCacheConnectEvent;
 import com.facebook.buck.artifact_cache.ArtifactCacheEvent;
 import com.facebook.buck.event.ActionGraphEvent;
 import com.facebook.buck.event.ArtifactCompressionEvent;
+import com.facebook.buck.event.BinaryChromeTraceWriter;
 import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventListener;
 import com.facebook.buck.event.ChromeTraceEvent;
@@ -34,7 +35,6 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.json.ParseBuckFileEvent;
 import com.facebook.buck.jvm.java.AnnotationProcessingEvent;
 import com.facebook.buck.jvm.java.tracing.JavacPhaseEvent;
-import com.facebook.buck.log.CommandThreadFactory;
 import com.facebook.buck.log.InvocationInfo;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildId;
@@ -49,7 +49,6 @@ import com.facebook.buck.util.BestCompressionGZIPOutputStream;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.Optionals;
 import com.facebook.buck.util.ProcessResourceConsumption;
-import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.perf.PerfStatsTracking;
 import com.facebook.buck.util.perf.ProcessTracker;
 import com.facebook.buck.util.unit.SizeUnit;
@@ -65,6 +64,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
@@ -73,14 +73,14 @@ import java.util.Date;
 import java.util.Locale;
 import java.util.Optional;
 import java.util.TimeZone;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
- * Logs events to a json file formatted to be viewed in Chrome Trace View (chrome://tracing).
+ * Logs events to a json file formatted to be viewed in Chrome Trace View (chrome://tracing), or
+ * to a more compact binary file written by {@link BinaryChromeTraceWriter}, which the web server
+ * converts to json to display.
  */
 public class ChromeTraceBuildListener implements BuckEventListener {
 
@@ -101,28 +101,25 @@ public class ChromeTraceBuildListener implements BuckEventListener {
 
 
   private static final Logger LOG = Logger.get(ChromeTraceBuildListener.class);
-  private static final int TIMEOUT_SECONDS = 30;
 
   private final ProjectFilesystem projectFilesystem;
   private final Clock clock;
   private final int tracesToKeep;
   private final boolean compressTraces;
-  private final ObjectMapper mapper;
   private final ThreadLocal<SimpleDateFormat> dateFormat;
   private final Path tracePath;
   private final OutputStream traceStream;
-  private final JsonGenerator jsonGenerator;
+  private final TraceEventWriter traceEventWriter;
   private final InvocationInfo invocationInfo;
 
-  private final ExecutorService outputExecutor;
-
   public ChromeTraceBuildListener(
       ProjectFilesystem projectFilesystem,
       InvocationInfo invocationInfo,
       Clock clock,
       ObjectMapper objectMapper,
       int tracesToKeep,
-      boolean compressTraces) throws IOException {
+      boolean compressTraces,
+      boolean binaryTraces) throws IOException {
     this(
         projectFilesystem,
         invocationInfo,
@@ -131,7 +128,8 @@ public class ChromeTraceBuildListener implements BuckEventListener {
         Locale.US,
         TimeZone.getDefault(),
         tracesToKeep,
-        compressTraces);
+        compressTraces,
+        binaryTraces);
   }
 
   @VisibleForTesting
@@ -143,11 +141,11 @@ public class ChromeTraceBuildListener implements BuckEventListener {
       final Locale locale,
       final TimeZone timeZone,
       int tracesToKeep,
-      boolean compressTraces) throws IOException {
+      boolean compressTraces,
+      boolean binaryTraces) throws IOException {
     this.invocationInfo = invocationInfo;
     this.projectFilesystem = projectFilesystem;
     this.clock = clock;
-    this.mapper = objectMapper;
     this.dateFormat = new ThreadLocal<SimpleDateFormat>() {
       @Override
       protected SimpleDateFormat initialValue() {
@@ -157,15 +155,16 @@ public class ChromeTraceBuildListener implements BuckEventListener {
       }
     };
     this.tracesToKeep = tracesToKeep;
-    this.compressTraces = compressTraces;
-    this.outputExecutor = MostExecutors.newSingleThreadExecutor(
-        new CommandThreadFactory(getClass().getName()));
+    // Binary traces are always compressed, and keep the name of an uncompressed trace so that
+    // the web server lists them.
+    this.compressTraces = compressTraces && !binaryTraces;
     TracePathAndStream tracePathAndStream = createPathAndStream(invocationInfo);
     this.tracePath = tracePathAndStream.getPath();
     this.traceStream = tracePathAndStream.getStream();
-    this.jsonGenerator = objectMapper.getFactory().createGenerator(this.traceStream);
+    this.traceEventWriter = binaryTraces ?
+        new BinaryTraceEventWriter(new BinaryChromeTraceWriter(traceStream)) :
+        new JsonTraceEventWriter(objectMapper, traceStream);
 
-    this.jsonGenerator.writeStartArray();
     addProcessMetadataEvent();
   }
 
@@ -230,17 +229,9 @@ public class ChromeTraceBuildListener implements BuckEventListener {
   public void outputTrace(BuildId buildId) {
     try {
       LOG.debug("Writing Chrome trace to %s", tracePath);
-      outputExecutor.shutdown();
-      try {
-        if (!outputExecutor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
-          LOG.warn("Failed to log buck trace %s.  Trace might be corrupt", tracePath);
-        }
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
+      synchronized (traceEventWriter) {
+        traceEventWriter.close();
       }
-
-      jsonGenerator.writeEndArray();
-      jsonGenerator.close();
       traceStream.close();
       String symlinkName = compressTraces ? "build.trace.gz" : "build.trace";
       Path symlinkPath = projectFilesystem.getBuckPaths().getLogDir().resolve(symlinkName);
@@ -746,19 +737,63 @@ public class ChromeTraceBuildListener implements BuckEventListener {
     submitTraceEvent(chromeTraceEvent);
   }
 
+  /**
+   * Writes the event as it arrives, as the event bus delivers events to each listener on a thread
+   * of its own, rather than holding up other listeners.
+   */
   @SuppressWarnings("PMD.EmptyCatchBlock")
-  private void submitTraceEvent(final ChromeTraceEvent chromeTraceEvent) {
-    outputExecutor.submit(new Callable<Void>() {
-      @Override
-      public Void call() throws Exception {
-        try {
-          mapper.writeValue(jsonGenerator, chromeTraceEvent);
-        } catch (IOException e) {
-          // Swallow any failures to write.
-        }
-        return null;
+  private void submitTraceEvent(ChromeTraceEvent chromeTraceEvent) {
+    synchronized (traceEventWriter) {
+      try {
+        traceEventWriter.write(chromeTraceEvent);
+      } catch (IOException e) {
+        // Swallow any failures to write.
       }
-    });
+    }
+  }
+
+  private interface TraceEventWriter extends Closeable {
+    void write(ChromeTraceEvent event) throws IOException;
+  }
+
+  private static class JsonTraceEventWriter implements TraceEventWriter {
+    private final ObjectMapper mapper;
+    private final JsonGenerator jsonGenerator;
+
+    private JsonTraceEventWriter(ObjectMapper mapper, OutputStream stream) throws IOException {
+      this.mapper = mapper;
+      this.jsonGenerator = mapper.getFactory().createGenerator(stream);
+      this.jsonGenerator.writeStartArray();
+    }
+
+    @Override
+    public void write(ChromeTraceEvent event) throws IOException {
+      mapper.writeValue(jsonGenerator, event);
+    }
+
+    @Override
+    public void close() throws IOException {
+      jsonGenerator.writeEndArray();
+      jsonGenerator.close();
+    }
+  }
+
+  private static class BinaryTraceEventWriter implements TraceEventWriter {
+    private final BinaryChromeTraceWriter writer;
+
+    private BinaryTraceEventWriter(BinaryChromeTraceWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void write(ChromeTraceEvent event) throws IOException {
+      writer.writeEvent(event);
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.close();
+    }
   }
 
   private class TracePathAndStream {
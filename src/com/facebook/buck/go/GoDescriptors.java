@@ -26,7 +26,6 @@ import com.facebook.buck.model.Flavor;
 import com.facebook.buck.model.HasBuildTarget;
 import com.facebook.buck.model.ImmutableFlavor;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
-import com.facebook.buck.rules.BinaryBuildRule;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -267,19 +266,29 @@ abstract class GoDescriptors {
     // doesn't vary per test.
     BuildTarget generatorTarget = sourceParams.getBuildTarget()
         .withFlavors(ImmutableFlavor.of("make-test-main-gen"));
-    Optional<BuildRule> generator = resolver.getRuleOptional(generatorTarget);
-    if (generator.isPresent()) {
-      return ((BinaryBuildRule) generator.get()).getExecutableCommand();
-    }
+    return resolver.computeIfAbsent(
+        generatorTarget,
+        GoBinary.class,
+        () -> createTestMainGenerator(goBuckConfig, sourceParams, resolver, generatorTarget))
+        .getExecutableCommand();
+  }
 
+  private static GoBinary createTestMainGenerator(
+      GoBuckConfig goBuckConfig,
+      BuildRuleParams sourceParams,
+      BuildRuleResolver resolver,
+      BuildTarget generatorTarget)
+      throws NoSuchBuildTargetException {
     SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
     SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
     BuildTarget generatorSourceTarget =
         sourceParams.getBuildTarget()
             .withAppendedFlavors(ImmutableFlavor.of("test-main-gen-source"));
     WriteFile writeFile =
-        resolver.addToIndex(
-            new WriteFile(
+        resolver.computeIfAbsent(
+            generatorSourceTarget,
+            WriteFile.class,
+            () -> new WriteFile(
                 sourceParams.copyWithChanges(
                     generatorSourceTarget,
                     Suppliers.ofInstance(ImmutableSortedSet.of()),
@@ -292,21 +301,18 @@ abstract class GoDescriptors {
                     "%s/main.go"),
                 /* executable */ false));
 
-    GoBinary binary =
-        resolver.addToIndex(
-            createGoBinaryRule(
-                sourceParams.copyWithChanges(
-                    generatorTarget,
-                    Suppliers.ofInstance(ImmutableSortedSet.of()),
-                    Suppliers.ofInstance(ImmutableSortedSet.of(writeFile))),
-                resolver,
-                goBuckConfig,
-                ImmutableSet.of(new BuildTargetSourcePath(generatorSourceTarget)),
-                ImmutableList.of(),
-                ImmutableList.of(),
-                ImmutableList.of(),
-                goBuckConfig.getDefaultPlatform()));
-    return binary.getExecutableCommand();
+    return createGoBinaryRule(
+        sourceParams.copyWithChanges(
+            generatorTarget,
+            Suppliers.ofInstance(ImmutableSortedSet.of()),
+            Suppliers.ofInstance(ImmutableSortedSet.of(writeFile))),
+        resolver,
+        goBuckConfig,
+        ImmutableSet.of(new BuildTargetSourcePath(generatorSourceTarget)),
+        ImmutableList.of(),
+        ImmutableList.of(),
+        ImmutableList.of(),
+        goBuckConfig.getDefaultPlatform());
   }
 
   private static String extractTestMainGenerator() {
@@ -22,6 +22,10 @@ package com.facebook.buck.graph;
  */
 public abstract class AbstractBottomUpTraversal<T, E extends Throwable> {
 
+  private static final byte UNVISITED = 0;
+  private static final byte EXPLORING = 1;
+  private static final byte VISITED = 2;
+
   private final TraversableGraph<T> graph;
 
   public AbstractBottomUpTraversal(TraversableGraph<T> graph) {
@@ -29,15 +33,38 @@ public abstract class AbstractBottomUpTraversal<T, E extends Throwable> {
   }
 
   public final void traverse() throws E {
-    Iterable<T> roots  = graph.getNodesWithNoIncomingEdges();
-    GraphTraversable<T> graphTraversable = node -> graph.getOutgoingNodesFor(node).iterator();
-    try {
-      for (T node : new AcyclicDepthFirstPostOrderTraversal<>(graphTraversable).traverse(roots)) {
-        visit(node);
+    // Walk the graph depth first from each root, as ids on an explicit stack rather than by
+    // recursing, and visit each node once all the nodes it has edges to have been visited.
+    CompactDirectedGraph<T> compactGraph = CompactDirectedGraph.copyOf(graph);
+    int nodeCount = compactGraph.getNodeCount();
+    byte[] states = new byte[nodeCount];
+    int[] stack = new int[nodeCount];
+    int[] nextEdges = new int[nodeCount];
+    for (int root = 0; root < nodeCount; root++) {
+      if (compactGraph.getIncomingEdgeCount(root) != 0) {
+        continue;
+      }
+      int stackSize = 0;
+      stack[stackSize++] = root;
+      states[root] = EXPLORING;
+      while (stackSize > 0) {
+        int node = stack[stackSize - 1];
+        if (nextEdges[node] < compactGraph.getOutgoingEdgeCount(node)) {
+          int sink = compactGraph.getOutgoingId(node, nextEdges[node]++);
+          if (states[sink] == EXPLORING) {
+            throw new IllegalStateException(
+                "Cycle detected despite graph which was claimed to be a DAG");
+          }
+          if (states[sink] == UNVISITED) {
+            states[sink] = EXPLORING;
+            stack[stackSize++] = sink;
+          }
+          continue;
+        }
+        stackSize--;
+        states[node] = VISITED;
+        visit(compactGraph.getNode(node));
       }
-    } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
-      throw new IllegalStateException(
-          "Cycle detected despite graph which was claimed to be a DAG", e);
     }
   }
 
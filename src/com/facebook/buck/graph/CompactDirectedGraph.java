@@ -0,0 +1,373 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.graph;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable directed graph which numbers its nodes from {@code 0} to {@code n - 1} and stores
+ * its edges in compressed sparse row form: the ids of the nodes a node has edges to sit next to
+ * each other in a single {@code int[]}, as do the ids of the nodes with edges to it. Compared with
+ * keeping a hash multimap of nodes for each direction, this takes a fraction of the memory, and
+ * algorithms which work on the ids, such as {@link AbstractBottomUpTraversal},
+ * {@link TopologicalSort} and {@link #findStronglyConnectedComponents()}, walk arrays rather than
+ * chase pointers.
+ * <p>
+ * Nodes are numbered in the order the graph they were copied from iterates over them, and the
+ * edges of each node keep the order they had there too.
+ * @param <T> the type of object stored as nodes in this graph
+ */
+public final class CompactDirectedGraph<T> implements TraversableGraph<T> {
+
+  private final ImmutableMap<T, Integer> ids;
+  private final ImmutableList<T> nodes;
+
+  /**
+   * The outgoing edges of node {@code i} are to the nodes in {@code outgoingIds} from index
+   * {@code outgoingOffsets[i]} inclusive to {@code outgoingOffsets[i + 1]} exclusive.
+   */
+  private final int[] outgoingOffsets;
+  private final int[] outgoingIds;
+
+  /** As {@link #outgoingOffsets}, for the nodes with an edge to each node. */
+  private final int[] incomingOffsets;
+  private final int[] incomingIds;
+
+  /**
+   * The sets handed out by {@link #getOutgoingNodesFor} and {@link #getIncomingNodesFor}, built
+   * the first time each is asked for, as traversals tend to ask for the same nodes' edges again.
+   */
+  private final AtomicReferenceArray<ImmutableSet<T>> outgoingNodes;
+  private final AtomicReferenceArray<ImmutableSet<T>> incomingNodes;
+
+  private CompactDirectedGraph(
+      ImmutableMap<T, Integer> ids,
+      int[] outgoingOffsets,
+      int[] outgoingIds) {
+    this.ids = ids;
+    this.nodes = ids.keySet().asList();
+    this.outgoingOffsets = outgoingOffsets;
+    this.outgoingIds = outgoingIds;
+
+    // Counting sort the edges by the node they are to.
+    int nodeCount = nodes.size();
+    this.incomingOffsets = new int[nodeCount + 1];
+    for (int sink : outgoingIds) {
+      incomingOffsets[sink + 1]++;
+    }
+    for (int i = 0; i < nodeCount; i++) {
+      incomingOffsets[i + 1] += incomingOffsets[i];
+    }
+    this.incomingIds = new int[outgoingIds.length];
+    int[] nextIncoming = Arrays.copyOf(incomingOffsets, nodeCount);
+    for (int source = 0; source < nodeCount; source++) {
+      for (int i = outgoingOffsets[source]; i < outgoingOffsets[source + 1]; i++) {
+        incomingIds[nextIncoming[outgoingIds[i]]++] = source;
+      }
+    }
+
+    this.outgoingNodes = new AtomicReferenceArray<>(nodeCount);
+    this.incomingNodes = new AtomicReferenceArray<>(nodeCount);
+  }
+
+  /**
+   * @return a compact copy of {@code graph}, or the graph itself when it is already compact.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> CompactDirectedGraph<T> copyOf(TraversableGraph<T> graph) {
+    if (graph instanceof CompactDirectedGraph) {
+      return (CompactDirectedGraph<T>) graph;
+    }
+    if (graph instanceof DirectedAcyclicGraph) {
+      return ((DirectedAcyclicGraph<T>) graph).getCompactGraph();
+    }
+
+    ImmutableMap.Builder<T, Integer> idsBuilder = ImmutableMap.builder();
+    int nodeCount = 0;
+    for (T node : graph.getNodes()) {
+      idsBuilder.put(node, nodeCount++);
+    }
+    ImmutableMap<T, Integer> ids = idsBuilder.build();
+
+    int[] outgoingOffsets = new int[nodeCount + 1];
+    int[] outgoingIds = new int[Math.max(nodeCount, 16)];
+    int edgeCount = 0;
+    int source = 0;
+    for (T node : ids.keySet()) {
+      for (T sink : graph.getOutgoingNodesFor(node)) {
+        if (edgeCount == outgoingIds.length) {
+          outgoingIds = Arrays.copyOf(outgoingIds, edgeCount * 2);
+        }
+        outgoingIds[edgeCount++] = Preconditions.checkNotNull(
+            ids.get(sink),
+            "%s has an edge to %s, which is not in the graph.",
+            node,
+            sink);
+      }
+      outgoingOffsets[++source] = edgeCount;
+    }
+    return new CompactDirectedGraph<>(ids, outgoingOffsets, Arrays.copyOf(outgoingIds, edgeCount));
+  }
+
+  public int getNodeCount() {
+    return nodes.size();
+  }
+
+  public int getEdgeCount() {
+    return outgoingIds.length;
+  }
+
+  /**
+   * @return the id of {@code node}, or {@code -1} if it is not in the graph.
+   */
+  public int getId(T node) {
+    Integer id = ids.get(node);
+    return id == null ? -1 : id;
+  }
+
+  public T getNode(int id) {
+    return nodes.get(id);
+  }
+
+  public int getOutgoingEdgeCount(int id) {
+    return outgoingOffsets[id + 1] - outgoingOffsets[id];
+  }
+
+  /**
+   * @return the id of the node which the {@code index}th outgoing edge of node {@code id} is to.
+   */
+  public int getOutgoingId(int id, int index) {
+    return outgoingIds[outgoingOffsets[id] + index];
+  }
+
+  public int getIncomingEdgeCount(int id) {
+    return incomingOffsets[id + 1] - incomingOffsets[id];
+  }
+
+  /**
+   * @return the id of the node which the {@code index}th incoming edge of node {@code id} is from.
+   */
+  public int getIncomingId(int id, int index) {
+    return incomingIds[incomingOffsets[id] + index];
+  }
+
+  @Override
+  public ImmutableSet<T> getNodesWithNoIncomingEdges() {
+    ImmutableSet.Builder<T> builder = ImmutableSet.builder();
+    for (int id = 0; id < nodes.size(); id++) {
+      if (getIncomingEdgeCount(id) == 0) {
+        builder.add(nodes.get(id));
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  public ImmutableSet<T> getNodesWithNoOutgoingEdges() {
+    ImmutableSet.Builder<T> builder = ImmutableSet.builder();
+    for (int id = 0; id < nodes.size(); id++) {
+      if (getOutgoingEdgeCount(id) == 0) {
+        builder.add(nodes.get(id));
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  public ImmutableSet<T> getIncomingNodesFor(T sink) {
+    Integer id = ids.get(sink);
+    if (id == null) {
+      return ImmutableSet.of();
+    }
+    return getNodes(incomingNodes, incomingIds, incomingOffsets, id);
+  }
+
+  @Override
+  public ImmutableSet<T> getOutgoingNodesFor(T source) {
+    Integer id = ids.get(source);
+    if (id == null) {
+      return ImmutableSet.of();
+    }
+    return getNodes(outgoingNodes, outgoingIds, outgoingOffsets, id);
+  }
+
+  private ImmutableSet<T> getNodes(
+      AtomicReferenceArray<ImmutableSet<T>> cache,
+      int[] nodeIds,
+      int[] offsets,
+      int id) {
+    ImmutableSet<T> cached = cache.get(id);
+    if (cached != null) {
+      return cached;
+    }
+    ImmutableSet.Builder<T> builder = ImmutableSet.builder();
+    for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+      builder.add(nodes.get(nodeIds[i]));
+    }
+    // Racing threads build equal sets, so it doesn't matter whose is kept.
+    ImmutableSet<T> built = builder.build();
+    cache.lazySet(id, built);
+    return built;
+  }
+
+  @Override
+  public ImmutableSet<T> getNodes() {
+    return ids.keySet();
+  }
+
+  /**
+   * @return whether the graph has no cycles, including edges from a node to itself.
+   */
+  public boolean isAcyclic() {
+    // Repeatedly remove nodes with no edges to nodes which have not been removed yet. Only nodes
+    // which are part of a cycle, or depend on one, are never removed.
+    int nodeCount = nodes.size();
+    int[] remainingOutDegrees = new int[nodeCount];
+    int[] removable = new int[nodeCount];
+    int removableCount = 0;
+    for (int id = 0; id < nodeCount; id++) {
+      remainingOutDegrees[id] = getOutgoingEdgeCount(id);
+      if (remainingOutDegrees[id] == 0) {
+        removable[removableCount++] = id;
+      }
+    }
+    for (int removed = 0; removed < removableCount; removed++) {
+      int id = removable[removed];
+      for (int i = incomingOffsets[id]; i < incomingOffsets[id + 1]; i++) {
+        if (--remainingOutDegrees[incomingIds[i]] == 0) {
+          removable[removableCount++] = incomingIds[i];
+        }
+      }
+    }
+    return removableCount == nodeCount;
+  }
+
+  /**
+   * Finds the strongly connected components of the graph using Tarjan's algorithm, without
+   * recursing, in {@code O(|V| + |E|)}.
+   * @return the components, each of which comes before any component with an edge to it.
+   */
+  public ImmutableList<ImmutableSet<T>> findStronglyConnectedComponents() {
+    int nodeCount = nodes.size();
+    int[] indexes = new int[nodeCount];
+    Arrays.fill(indexes, -1);
+    int[] lowlinks = new int[nodeCount];
+    boolean[] onComponentStack = new boolean[nodeCount];
+    int[] componentStack = new int[nodeCount];
+    int componentStackSize = 0;
+    // Stands in for the call stack of the recursive algorithm, along with how far through the
+    // edges of each node on it the search has got.
+    int[] searchStack = new int[nodeCount];
+    int[] nextEdges = new int[nodeCount];
+    int searchStackSize = 0;
+    int nextIndex = 0;
+
+    ImmutableList.Builder<ImmutableSet<T>> components = ImmutableList.builder();
+    for (int root = 0; root < nodeCount; root++) {
+      if (indexes[root] != -1) {
+        continue;
+      }
+      indexes[root] = lowlinks[root] = nextIndex++;
+      componentStack[componentStackSize++] = root;
+      onComponentStack[root] = true;
+      nextEdges[root] = outgoingOffsets[root];
+      searchStack[searchStackSize++] = root;
+
+      while (searchStackSize > 0) {
+        int node = searchStack[searchStackSize - 1];
+        if (nextEdges[node] < outgoingOffsets[node + 1]) {
+          int sink = outgoingIds[nextEdges[node]++];
+          if (indexes[sink] == -1) {
+            indexes[sink] = lowlinks[sink] = nextIndex++;
+            componentStack[componentStackSize++] = sink;
+            onComponentStack[sink] = true;
+            nextEdges[sink] = outgoingOffsets[sink];
+            searchStack[searchStackSize++] = sink;
+          } else if (onComponentStack[sink]) {
+            lowlinks[node] = Math.min(lowlinks[node], indexes[sink]);
+          }
+          continue;
+        }
+
+        searchStackSize--;
+        if (searchStackSize > 0) {
+          int parent = searchStack[searchStackSize - 1];
+          lowlinks[parent] = Math.min(lowlinks[parent], lowlinks[node]);
+        }
+        // If node is a root node, then pop the stack and generate a strongly connected component.
+        if (lowlinks[node] == indexes[node]) {
+          ImmutableSet.Builder<T> component = ImmutableSet.builder();
+          int member;
+          do {
+            member = componentStack[--componentStackSize];
+            onComponentStack[member] = false;
+            component.add(nodes.get(member));
+          } while (member != node);
+          components.add(component.build());
+        }
+      }
+    }
+    return components.build();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof CompactDirectedGraph)) {
+      return false;
+    }
+
+    // The graphs may have numbered their nodes differently, so compare the nodes themselves.
+    CompactDirectedGraph<?> that = (CompactDirectedGraph<?>) other;
+    if (!ids.keySet().equals(that.ids.keySet()) || getEdgeCount() != that.getEdgeCount()) {
+      return false;
+    }
+    for (int id = 0; id < nodes.size(); id++) {
+      Integer thatId = Preconditions.checkNotNull(that.ids.get(nodes.get(id)));
+      if (getOutgoingEdgeCount(id) != that.getOutgoingEdgeCount(thatId)) {
+        return false;
+      }
+      ImmutableSet<T> sinks = getNodes(outgoingNodes, outgoingIds, outgoingOffsets, id);
+      for (int i = 0; i < that.getOutgoingEdgeCount(thatId); i++) {
+        if (!sinks.contains(that.getNode(that.getOutgoingId(thatId, i)))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int edgesHashCode = 0;
+    for (int source = 0; source < nodes.size(); source++) {
+      for (int i = outgoingOffsets[source]; i < outgoingOffsets[source + 1]; i++) {
+        edgesHashCode += Objects.hash(nodes.get(source), nodes.get(outgoingIds[i]));
+      }
+    }
+    return Objects.hash(ids.keySet(), edgesHashCode);
+  }
+}
@@ -18,47 +18,50 @@ package com.facebook.buck.graph;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSetMultimap;
-import com.google.common.collect.Sets;
-
-import java.util.Objects;
 
+/**
+ * An immutable directed graph with no cycles, kept as a {@link CompactDirectedGraph}.
+ */
 public class DirectedAcyclicGraph<T> implements TraversableGraph<T> {
 
-  private final ImmutableSet<T> nodes;
-  private final ImmutableSetMultimap<T, T> outgoingEdges;
-  private final ImmutableSetMultimap<T, T> incomingEdges;
+  private final CompactDirectedGraph<T> graph;
 
   public DirectedAcyclicGraph(MutableDirectedGraph<T> graph) {
-    Preconditions.checkState(graph.isAcyclic(), "Graph must by acyclic");
-    this.nodes = graph.createImmutableCopyOfNodes();
-    this.outgoingEdges = graph.createImmutableCopyOfOutgoingEdges();
-    this.incomingEdges = graph.createImmutableCopyOfIncomingEdges();
+    this.graph = CompactDirectedGraph.copyOf(graph);
+    Preconditions.checkState(this.graph.isAcyclic(), "Graph must by acyclic");
+  }
+
+  /**
+   * @return the graph as a {@link CompactDirectedGraph}, for algorithms which work on the ids of
+   *     its nodes.
+   */
+  public CompactDirectedGraph<T> getCompactGraph() {
+    return graph;
   }
 
   @Override
   public ImmutableSet<T> getOutgoingNodesFor(T source) {
-    return outgoingEdges.get(source);
+    return graph.getOutgoingNodesFor(source);
   }
 
   @Override
   public ImmutableSet<T> getIncomingNodesFor(T sink) {
-    return incomingEdges.get(sink);
+    return graph.getIncomingNodesFor(sink);
   }
 
   @Override
   public ImmutableSet<T> getNodesWithNoOutgoingEdges() {
-    return ImmutableSet.copyOf(Sets.difference(nodes, outgoingEdges.keySet()));
+    return graph.getNodesWithNoOutgoingEdges();
   }
 
   @Override
   public ImmutableSet<T> getNodesWithNoIncomingEdges() {
-    return ImmutableSet.copyOf(Sets.difference(nodes, incomingEdges.keySet()));
+    return graph.getNodesWithNoIncomingEdges();
   }
 
   @Override
   public ImmutableSet<T> getNodes() {
-    return nodes;
+    return graph.getNodes();
   }
 
   @Override
@@ -68,13 +71,11 @@ public class DirectedAcyclicGraph<T> implements TraversableGraph<T> {
     }
 
     DirectedAcyclicGraph<?> that = (DirectedAcyclicGraph<?>) other;
-    return Objects.equals(this.nodes, that.nodes) &&
-        Objects.equals(this.outgoingEdges, that.outgoingEdges) &&
-        Objects.equals(this.incomingEdges, that.incomingEdges);
+    return graph.equals(that.graph);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(nodes, outgoingEdges, incomingEdges);
+    return graph.hashCode();
   }
 }
@@ -16,21 +16,15 @@
 
 package com.facebook.buck.graph;
 
-import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -164,7 +158,7 @@ public final class MutableDirectedGraph<T> implements TraversableGraph<T> {
   }
 
   public boolean isAcyclic() {
-    return findCycles().isEmpty();
+    return CompactDirectedGraph.copyOf(this).isAcyclic();
   }
 
   public ImmutableSet<ImmutableSet<T>> findCycles() {
@@ -192,8 +186,8 @@ public final class MutableDirectedGraph<T> implements TraversableGraph<T> {
    *     and represents a strongly connected component.
    */
   public Set<Set<T>> findStronglyConnectedComponents() {
-    Tarjan<T> tarjan = new Tarjan<T>(this);
-    return tarjan.findStronglyConnectedComponents();
+    return ImmutableSet.<Set<T>>copyOf(
+        CompactDirectedGraph.copyOf(this).findStronglyConnectedComponents());
   }
 
   @Override
@@ -205,84 +199,4 @@ public final class MutableDirectedGraph<T> implements TraversableGraph<T> {
   public Iterable<T> getNodesWithNoOutgoingEdges() {
     return Sets.difference(nodes, outgoingEdges.keySet());
   }
-
-  ImmutableSet<T> createImmutableCopyOfNodes() {
-    return ImmutableSet.copyOf(nodes);
-  }
-
-  ImmutableSetMultimap<T, T> createImmutableCopyOfOutgoingEdges() {
-    return ImmutableSetMultimap.copyOf(outgoingEdges);
-  }
-
-  ImmutableSetMultimap<T, T> createImmutableCopyOfIncomingEdges() {
-    return ImmutableSetMultimap.copyOf(incomingEdges);
-  }
-
-  /**
-   * Implementation of
-   * http://en.wikipedia.org/wiki/Tarjan%E2%80%99s_strongly_connected_components_algorithm
-   * used to find cycles in the graph.
-   */
-  private static class Tarjan<S> {
-    private final MutableDirectedGraph<S> graph;
-    private final Map<S, Integer> indexes;
-    private final Map<S, Integer> lowlinks;
-    private final Deque<S> nodeStack;
-    private final Set<Set<S>> stronglyConnectedComponents;
-    private int index;
-
-    private Tarjan(MutableDirectedGraph<S> graph) {
-      this.graph = graph;
-      this.indexes = Maps.newHashMap();
-      this.lowlinks = Maps.newHashMap();
-      this.nodeStack = Lists.newLinkedList();
-      this.stronglyConnectedComponents = Sets.newHashSet();
-      this.index = 0;
-    }
-
-    public Set<Set<S>> findStronglyConnectedComponents() {
-      for (S node : graph.nodes) {
-        if (!indexes.containsKey(node)) {
-          doStrongConnect(node);
-        }
-      }
-      return Collections.unmodifiableSet(stronglyConnectedComponents);
-    }
-
-    private void doStrongConnect(final S node) {
-      // Set the depth index for node to the smallest unused index.
-      indexes.put(node, index);
-      lowlinks.put(node, index);
-      index++;
-      nodeStack.push(node);
-
-      // Consider successors of node.
-      for (S sink : graph.getOutgoingNodesFor(node)) {
-        if (!indexes.containsKey(sink)) {
-          doStrongConnect(sink);
-          int lowlink = Math.min(
-              Preconditions.checkNotNull(lowlinks.get(node)),
-              Preconditions.checkNotNull(lowlinks.get(sink)));
-          lowlinks.put(node, lowlink);
-        } else if (nodeStack.contains(sink)) {
-          // TODO(bolinfest): contains() is O(N), consider maintaining an index so it is O(1)?
-          int lowlink = Math.min(
-              Preconditions.checkNotNull(lowlinks.get(node)),
-              Preconditions.checkNotNull(indexes.get(sink)));
-          lowlinks.put(node, lowlink);
-        }
-      }
-
-      // If node is a root node, then pop the stack and generate a strongly connected component.
-      if (Preconditions.checkNotNull(lowlinks.get(node)).equals(indexes.get(node))) {
-        Set<S> stronglyConnectedComponent = Sets.newHashSet();
-        S componentElement;
-        do {
-          componentElement = nodeStack.pop();
-          stronglyConnectedComponent.add(componentElement);
-        } while (componentElement != node);
-        stronglyConnectedComponents.add(Collections.unmodifiableSet(stronglyConnectedComponent));
-      }
-    }
-  }
 }
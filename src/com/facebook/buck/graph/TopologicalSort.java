@@ -16,17 +16,10 @@
 
 package com.facebook.buck.graph;
 
-import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Queues;
-import com.google.common.collect.Sets;
 
-import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
 
 public class TopologicalSort {
 
@@ -35,44 +28,46 @@ public class TopologicalSort {
   public static <T extends Comparable<?>> ImmutableList<T> sort(
       TraversableGraph<T> graph) {
 
-    // AtomicInteger is used to decrement the integer value in-place.
-    Map<T, AtomicInteger> effectiveOutDegreesOfExplorableNodes = Maps.newHashMap();
-    Queue<T> nextLevel = Queues.newArrayDeque(graph.getNodesWithNoOutgoingEdges());
-    Set<T> visitedNodes = Sets.newHashSet();
+    CompactDirectedGraph<T> compactGraph = CompactDirectedGraph.copyOf(graph);
+    int nodeCount = compactGraph.getNodeCount();
+    int[] effectiveOutDegrees = new int[nodeCount];
+    int[] nextLevel = new int[nodeCount];
+    int nextLevelSize = 0;
+    for (int id = 0; id < nodeCount; id++) {
+      effectiveOutDegrees[id] = compactGraph.getOutgoingEdgeCount(id);
+      if (effectiveOutDegrees[id] == 0) {
+        nextLevel[nextLevelSize++] = id;
+      }
+    }
+    int[] toExplore = new int[nodeCount];
     ImmutableList.Builder<T> toReturn = ImmutableList.builder();
 
-    while (!nextLevel.isEmpty()) {
-      Queue<T> toExplore = nextLevel;
-      nextLevel = Queues.newArrayDeque();
-
-      Set<T> level = Sets.newTreeSet();
+    while (nextLevelSize > 0) {
+      int[] swap = toExplore;
+      toExplore = nextLevel;
+      nextLevel = swap;
+      int toExploreSize = nextLevelSize;
+      nextLevelSize = 0;
 
-      while (!toExplore.isEmpty()) {
-        T node = toExplore.remove();
-        Preconditions.checkState(
-            !visitedNodes.contains(node),
-            "The queue of nodes to explore should not contain a node that has already been" +
-                " visited.");
-
-        level.add(node);
-        visitedNodes.add(node);
+      List<T> level = new ArrayList<>(toExploreSize);
+      for (int i = 0; i < toExploreSize; i++) {
+        int node = toExplore[i];
+        level.add(compactGraph.getNode(node));
 
         // Only add a node to the set of nodes to be explored if all the nodes it depends on have
         // been visited already. We achieve the same by keeping track of the out degrees of
         // explorable nodes. After visiting a node, decrement the out degree of each of its parent
         // node. When the out degree reaches zero, it is safe to add that node to the list of nodes
         // to explore next.
-        for (T exploreCandidate : graph.getIncomingNodesFor(node)) {
-          if (!effectiveOutDegreesOfExplorableNodes.containsKey(exploreCandidate)) {
-            effectiveOutDegreesOfExplorableNodes.put(
-                exploreCandidate,
-                new AtomicInteger(Iterables.size(graph.getOutgoingNodesFor(exploreCandidate))));
-          }
-          if (effectiveOutDegreesOfExplorableNodes.get(exploreCandidate).decrementAndGet() == 0) {
-            nextLevel.add(exploreCandidate);
+        for (int j = 0; j < compactGraph.getIncomingEdgeCount(node); j++) {
+          int exploreCandidate = compactGraph.getIncomingId(node, j);
+          if (--effectiveOutDegrees[exploreCandidate] == 0) {
+            nextLevel[nextLevelSize++] = exploreCandidate;
           }
         }
       }
+      // Sort each level by the natural ordering of its nodes.
+      level.sort(null);
       toReturn.addAll(level);
     }
 
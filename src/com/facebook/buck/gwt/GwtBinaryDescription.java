@@ -103,35 +103,29 @@ public class GwtBinaryDescription implements Description<GwtBinaryDescription.Ar
         BuildTarget gwtModuleTarget = BuildTargets.createFlavoredBuildTarget(
             javaLibrary.getBuildTarget().checkUnflavored(),
             JavaLibrary.GWT_MODULE_FLAVOR);
-        Optional<BuildRule> gwtModule = resolver.getRuleOptional(gwtModuleTarget);
-        if (!gwtModule.isPresent() && javaLibrary.getPathToOutput() != null) {
-          ImmutableSortedSet<SourcePath> filesForGwtModule =
-              ImmutableSortedSet.<SourcePath>naturalOrder()
-                  .addAll(javaLibrary.getSources())
-                  .addAll(javaLibrary.getResources())
-                  .build();
-          ImmutableSortedSet<BuildRule> deps =
-              ImmutableSortedSet.copyOf(ruleFinder.filterBuildRuleInputs(filesForGwtModule));
-
-          BuildRule module = resolver.addToIndex(
-              new GwtModule(
+        BuildRule gwtModule = resolver.computeIfAbsent(
+            gwtModuleTarget,
+            BuildRule.class,
+            () -> {
+              ImmutableSortedSet<SourcePath> filesForGwtModule =
+                  ImmutableSortedSet.<SourcePath>naturalOrder()
+                      .addAll(javaLibrary.getSources())
+                      .addAll(javaLibrary.getResources())
+                      .build();
+              ImmutableSortedSet<BuildRule> deps =
+                  ImmutableSortedSet.copyOf(ruleFinder.filterBuildRuleInputs(filesForGwtModule));
+              return new GwtModule(
                   params.copyWithChanges(
                       gwtModuleTarget,
                       Suppliers.ofInstance(deps),
                       Suppliers.ofInstance(ImmutableSortedSet.of())),
                   pathResolver,
                   ruleFinder,
-                  filesForGwtModule));
-          gwtModule = Optional.of(module);
-        }
+                  filesForGwtModule);
+            });
 
-        // Note that gwtModule could be absent if javaLibrary is a rule with no srcs of its own,
-        // but a rule that exists only as a collection of deps.
-        if (gwtModule.isPresent()) {
-          extraDeps.add(gwtModule.get());
-          gwtModuleJarsBuilder.add(
-              Preconditions.checkNotNull(gwtModule.get().getPathToOutput()));
-        }
+        extraDeps.add(gwtModule);
+        gwtModuleJarsBuilder.add(Preconditions.checkNotNull(gwtModule.getPathToOutput()));
 
         // Traverse all of the deps of this rule.
         return rule.getDeps();
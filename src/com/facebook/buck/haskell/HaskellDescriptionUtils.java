@@ -194,14 +194,10 @@ public class HaskellDescriptionUtils {
     BuildTarget target = getCompileBuildTarget(params.getBuildTarget(), cxxPlatform, depType);
 
     // If this rule has already been generated, return it.
-    Optional<HaskellCompileRule> existing =
-        resolver.getRuleOptionalWithType(target, HaskellCompileRule.class);
-    if (existing.isPresent()) {
-      return existing.get();
-    }
-
-    return resolver.addToIndex(
-        HaskellDescriptionUtils.createCompileRule(
+    return resolver.computeIfAbsent(
+        target,
+        HaskellCompileRule.class,
+        () -> HaskellDescriptionUtils.createCompileRule(
             target,
             params,
             resolver,
@@ -185,12 +185,10 @@ public class HaskellLibraryDescription implements
                 Type.STATIC.getFlavor() :
                 Type.STATIC_PIC.getFlavor(),
             cxxPlatform.getFlavor());
-    Optional<Archive> archive = resolver.getRuleOptionalWithType(target, Archive.class);
-    if (archive.isPresent()) {
-      return archive.get();
-    }
-    return resolver.addToIndex(
-        createStaticLibrary(
+    return resolver.computeIfAbsent(
+        target,
+        Archive.class,
+        () -> createStaticLibrary(
             target,
             baseParams,
             resolver,
@@ -301,13 +299,19 @@ public class HaskellLibraryDescription implements
       default:
         throw new IllegalStateException();
     }
-    Optional<HaskellPackageRule> packageRule =
-        resolver.getRuleOptionalWithType(target, HaskellPackageRule.class);
-    if (packageRule.isPresent()) {
-      return packageRule.get();
-    }
-    return resolver.addToIndex(createPackage(
-        target, baseParams, resolver, pathResolver, ruleFinder, cxxPlatform, args, depType));
+    BuildTarget packageTarget = target;
+    return resolver.computeIfAbsent(
+        packageTarget,
+        HaskellPackageRule.class,
+        () -> createPackage(
+            packageTarget,
+            baseParams,
+            resolver,
+            pathResolver,
+            ruleFinder,
+            cxxPlatform,
+            args,
+            depType));
   }
 
   private HaskellLinkRule createSharedLibrary(
@@ -359,13 +363,17 @@ public class HaskellLibraryDescription implements
             .isEmpty());
     BuildTarget target =
         baseTarget.withAppendedFlavors(Type.SHARED.getFlavor(), cxxPlatform.getFlavor());
-    Optional<HaskellLinkRule> linkRule =
-        resolver.getRuleOptionalWithType(target, HaskellLinkRule.class);
-    if (linkRule.isPresent()) {
-      return linkRule.get();
-    }
-    return resolver.addToIndex(createSharedLibrary(
-        target, baseParams, resolver, pathResolver, ruleFinder, cxxPlatform, args));
+    return resolver.computeIfAbsent(
+        target,
+        HaskellLinkRule.class,
+        () -> createSharedLibrary(
+            target,
+            baseParams,
+            resolver,
+            pathResolver,
+            ruleFinder,
+            cxxPlatform,
+            args));
   }
 
   @Override
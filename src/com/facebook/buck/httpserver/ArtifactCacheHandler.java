@@ -20,25 +20,37 @@ import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactInfo;
 import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.HttpArtifactCacheBinaryProtocol;
+import com.facebook.buck.artifact_cache.LocalArtifact;
 import com.facebook.buck.artifact_cache.StoreResponseReadResult;
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
 import com.google.common.io.ByteSource;
 
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import java.io.DataInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 
+import javax.annotation.Nullable;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -49,8 +61,16 @@ import javax.servlet.http.HttpServletResponse;
 public class ArtifactCacheHandler extends AbstractHandler {
   private static final Logger LOG = Logger.get(ArtifactCacheHandler.class);
 
+  private static final String BYTES_UNIT = "bytes";
+
+  /**
+   * The most of an artifact to map at once, so that sending a large artifact doesn't tie up a large
+   * part of the address space.
+   */
+  private static final long MAX_MAPPED_REGION_BYTES = 64 * 1024 * 1024;
+
   private final ProjectFilesystem projectFilesystem;
-  private Optional<ArtifactCache> artifactCache;
+  private volatile Optional<ArtifactCache> artifactCache;
 
   public ArtifactCacheHandler(
       ProjectFilesystem projectFilesystem) {
@@ -73,6 +93,8 @@ public class ArtifactCacheHandler extends AbstractHandler {
       String method = baseRequest.getMethod();
       if (method.equals("GET")) {
         status = handleGet(baseRequest, response);
+      } else if (method.equals("HEAD")) {
+        status = handleHead(baseRequest, response);
       } else if (method.equals("PUT")) {
         status = handlePut(baseRequest, response);
       }
@@ -87,21 +109,19 @@ public class ArtifactCacheHandler extends AbstractHandler {
     }
   }
 
-  private int handleGet(Request baseRequest, HttpServletResponse response) throws IOException {
-    if (!artifactCache.isPresent()) {
-      response.getWriter().write("Serving local cache is disabled for this instance.");
+  private int handleGet(
+      Request baseRequest,
+      HttpServletResponse response) throws IOException {
+    Optional<ArtifactCache> artifactCache = this.artifactCache;
+    Optional<RuleKey> ruleKey = getRuleKey(artifactCache, baseRequest, response);
+    if (!ruleKey.isPresent()) {
       return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
     }
 
-    String path = baseRequest.getUri().getPath();
-    String[] pathElements = path.split("/");
-    if (pathElements.length != 4 || !pathElements[2].equals("key")) {
-      response.getWriter().write("Incorrect url format.");
-      return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    if (artifactCache.get().isLocalFetchSupported()) {
+      return handleLocalGet(artifactCache.get(), ruleKey.get(), baseRequest, response);
     }
 
-    RuleKey ruleKey = new RuleKey(pathElements[3]);
-
     Path temp = null;
     try {
       projectFilesystem.mkdirs(projectFilesystem.getBuckPaths().getScratchDir());
@@ -109,7 +129,8 @@ public class ArtifactCacheHandler extends AbstractHandler {
           projectFilesystem.getBuckPaths().getScratchDir(),
           "outgoing_rulekey",
           ".tmp");
-      CacheResult fetchResult = artifactCache.get().fetch(ruleKey, LazyPath.ofInstance(temp));
+      CacheResult fetchResult =
+          artifactCache.get().fetch(ruleKey.get(), LazyPath.ofInstance(temp));
       if (!fetchResult.getType().isSuccess()) {
         return HttpServletResponse.SC_NOT_FOUND;
       }
@@ -117,7 +138,7 @@ public class ArtifactCacheHandler extends AbstractHandler {
       final Path tempFinal = temp;
       HttpArtifactCacheBinaryProtocol.FetchResponse fetchResponse =
           new HttpArtifactCacheBinaryProtocol.FetchResponse(
-              ImmutableSet.of(ruleKey),
+              ImmutableSet.of(ruleKey.get()),
               fetchResult.getMetadata(),
               new ByteSource() {
                 @Override
@@ -125,8 +146,9 @@ public class ArtifactCacheHandler extends AbstractHandler {
                   return projectFilesystem.newFileInputStream(tempFinal);
                 }
               });
-      fetchResponse.write(response.getOutputStream());
+      response.setStatus(HttpServletResponse.SC_OK);
       response.setContentLengthLong(fetchResponse.getContentLength());
+      fetchResponse.write(response.getOutputStream());
       return HttpServletResponse.SC_OK;
     } finally {
       if (temp != null) {
@@ -135,7 +157,204 @@ public class ArtifactCacheHandler extends AbstractHandler {
     }
   }
 
+  /**
+   * Serve an artifact straight from the file the cache keeps it in.  The payload is mapped and
+   * handed to Jetty a region at a time, so it goes from the page cache to the socket without being
+   * copied through the heap or into a scratch file first.
+   */
+  private int handleLocalGet(
+      ArtifactCache artifactCache,
+      RuleKey ruleKey,
+      Request baseRequest,
+      HttpServletResponse response) throws IOException {
+    Optional<LocalArtifact> artifact;
+    try {
+      artifact = artifactCache.fetchLocal(ruleKey);
+    } catch (IOException e) {
+      // As when fetching into a scratch file, a cache error is the same as a miss to clients.
+      LOG.warn(e, "Error looking up %s in the served cache.", ruleKey);
+      return HttpServletResponse.SC_NOT_FOUND;
+    }
+    if (!artifact.isPresent()) {
+      return HttpServletResponse.SC_NOT_FOUND;
+    }
+
+    // Once the file is open it can still be read even if the cache evicts it meanwhile.
+    try (FileChannel payload =
+             FileChannel.open(artifact.get().getPath(), StandardOpenOption.READ)) {
+      HttpArtifactCacheBinaryProtocol.FetchResponse fetchResponse =
+          new HttpArtifactCacheBinaryProtocol.FetchResponse(
+              ImmutableSet.of(ruleKey),
+              artifact.get().getMetadata(),
+              asByteSource(payload));
+      byte[] header = fetchResponse.getHeader();
+      long contentLength = fetchResponse.getContentLength();
+
+      response.setHeader(HttpHeader.ACCEPT_RANGES.asString(), BYTES_UNIT);
+      Optional<Range<Long>> range =
+          parseRange(baseRequest.getHeader(HttpHeader.RANGE.asString()), contentLength);
+      long start = 0;
+      long end = contentLength;
+      int status = HttpServletResponse.SC_OK;
+      if (range.isPresent()) {
+        if (range.get().isEmpty()) {
+          response.setHeader(
+              HttpHeader.CONTENT_RANGE.asString(),
+              String.format("%s */%d", BYTES_UNIT, contentLength));
+          return HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+        }
+        start = range.get().lowerEndpoint();
+        end = range.get().upperEndpoint();
+        response.setHeader(
+            HttpHeader.CONTENT_RANGE.asString(),
+            String.format("%s %d-%d/%d", BYTES_UNIT, start, end - 1, contentLength));
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+      }
+      response.setStatus(status);
+      response.setContentLengthLong(end - start);
+
+      HttpOutput output = baseRequest.getResponse().getHttpOutput();
+      if (start < header.length) {
+        output.write(
+            ByteBuffer.wrap(header, (int) start, (int) (Math.min(end, header.length) - start)));
+      }
+      long payloadEnd = end - header.length;
+      for (long position = Math.max(start - header.length, 0);
+           position < payloadEnd;
+           position += MAX_MAPPED_REGION_BYTES) {
+        output.write(
+            payload.map(
+                FileChannel.MapMode.READ_ONLY,
+                position,
+                Math.min(MAX_MAPPED_REGION_BYTES, payloadEnd - position)));
+      }
+      return status;
+    } catch (NoSuchFileException e) {
+      // The artifact was evicted after it was found.
+      return HttpServletResponse.SC_NOT_FOUND;
+    }
+  }
+
+  /**
+   * Answer whether an artifact is in the cache without sending it, if the cache can tell without
+   * fetching the artifact.
+   */
+  private int handleHead(
+      Request baseRequest,
+      HttpServletResponse response) throws IOException {
+    Optional<ArtifactCache> artifactCache = this.artifactCache;
+    Optional<RuleKey> ruleKey = getRuleKey(artifactCache, baseRequest, response);
+    if (!ruleKey.isPresent()) {
+      return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    CacheResult result =
+        artifactCache.get().multiContains(ImmutableSet.of(ruleKey.get())).get(ruleKey.get());
+    if (result == null) {
+      // Jetty doesn't send the body of a response to a HEAD request.
+      return handleGet(baseRequest, response);
+    }
+    return result.getType().isSuccess() ?
+        HttpServletResponse.SC_OK :
+        HttpServletResponse.SC_NOT_FOUND;
+  }
+
+  private static Optional<RuleKey> getRuleKey(
+      Optional<ArtifactCache> artifactCache,
+      Request baseRequest,
+      HttpServletResponse response) throws IOException {
+    if (!artifactCache.isPresent()) {
+      response.getWriter().write("Serving local cache is disabled for this instance.");
+      return Optional.empty();
+    }
+
+    String path = baseRequest.getUri().getPath();
+    String[] pathElements = path.split("/");
+    if (pathElements.length != 4 || !pathElements[2].equals("key")) {
+      response.getWriter().write("Incorrect url format.");
+      return Optional.empty();
+    }
+
+    return Optional.of(new RuleKey(pathElements[3]));
+  }
+
+  /**
+   * Parse a {@code Range} header asking for a single range of the bytes of a response.
+   *
+   * @param header the value of the header, if the request had one.
+   * @param length the length of the whole response.
+   * @return the range of bytes to send, which is empty if none of the bytes asked for are in the
+   *     response, or {@link Optional#empty()} if the whole response should be sent.
+   */
+  @VisibleForTesting
+  static Optional<Range<Long>> parseRange(@Nullable String header, long length) {
+    // Several ranges would need a multipart response, which isn't worth it for cache clients, so
+    // they get the whole response instead, as does anything which can't be parsed.
+    if (header == null || !header.startsWith(BYTES_UNIT + "=") || header.indexOf(',') != -1) {
+      return Optional.empty();
+    }
+    String spec = header.substring(BYTES_UNIT.length() + 1).trim();
+    int dash = spec.indexOf('-');
+    if (dash == -1) {
+      return Optional.empty();
+    }
+
+    long start;
+    long end;
+    try {
+      if (dash == 0) {
+        // A suffix: the last N bytes.
+        start = Math.max(length - Long.parseLong(spec.substring(1)), 0);
+        end = length;
+      } else {
+        start = Long.parseLong(spec.substring(0, dash));
+        end = length;
+        if (dash != spec.length() - 1) {
+          long last = Long.parseLong(spec.substring(dash + 1));
+          if (last < start) {
+            return Optional.empty();
+          }
+          end = Math.min(last + 1, length);
+        }
+      }
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+    if (start < 0) {
+      return Optional.empty();
+    }
+    if (start >= end) {
+      return Optional.of(Range.closedOpen(length, length));
+    }
+    return Optional.of(Range.closedOpen(start, end));
+  }
+
+  /**
+   * Read the payload through a channel which is already open, so that the checksum is of the same
+   * file which is sent, even if the cache replaces it meanwhile.
+   */
+  private static ByteSource asByteSource(final FileChannel channel) {
+    return new ByteSource() {
+      @Override
+      public InputStream openStream() throws IOException {
+        channel.position(0);
+        return new FilterInputStream(Channels.newInputStream(channel)) {
+          @Override
+          public void close() {
+            // The channel is closed once the response has been sent.
+          }
+        };
+      }
+
+      @Override
+      public long size() throws IOException {
+        return channel.size();
+      }
+    };
+  }
+
   private int handlePut(Request baseRequest, HttpServletResponse response) throws IOException {
+    Optional<ArtifactCache> artifactCache = this.artifactCache;
     if (!artifactCache.isPresent()) {
       response.getWriter().write("Serving local cache is disabled for this instance.");
       return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
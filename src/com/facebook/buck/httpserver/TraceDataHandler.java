@@ -16,6 +16,9 @@
 
 package com.facebook.buck.httpserver;
 
+import com.facebook.buck.event.BinaryChromeTraceReader;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.io.CharStreams;
 import com.google.common.net.MediaType;
@@ -23,6 +26,7 @@ import com.google.common.net.MediaType;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -46,9 +50,11 @@ class TraceDataHandler extends AbstractHandler {
   static final Pattern CALLBACK_PATTERN = Pattern.compile("[\\w\\.]+");
 
   private final TracesHelper tracesHelper;
+  private final ObjectMapper objectMapper;
 
   TraceDataHandler(TracesHelper tracesHelper) {
     this.tracesHelper = tracesHelper;
+    this.objectMapper = ObjectMappers.newDefaultInstance();
   }
 
   @Override
@@ -101,10 +107,12 @@ class TraceDataHandler extends AbstractHandler {
       } else {
         isFirst = false;
       }
-      try (
-          InputStream input = traceStreams.next();
-          InputStreamReader inputStreamReader = new InputStreamReader(input)) {
-        CharStreams.copy(inputStreamReader, responseWriter);
+      try (InputStream input = new BufferedInputStream(traceStreams.next())) {
+        if (BinaryChromeTraceReader.isBinaryTrace(input)) {
+          BinaryChromeTraceReader.convertToJson(input, objectMapper, responseWriter);
+        } else {
+          CharStreams.copy(new InputStreamReader(input), responseWriter);
+        }
       }
     }
 
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.httpserver;
 
+import com.facebook.buck.event.BinaryChromeTraceReader;
+import com.facebook.buck.event.ChromeTraceEvent;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.HumanReadableException;
@@ -29,6 +31,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -125,9 +128,37 @@ public class TracesHelper {
   }
 
   private Optional<String> parseCommandFrom(Path pathToTrace) {
-    try (
-        InputStream input = projectFilesystem.newFileInputStream(pathToTrace);
-        JsonReader jsonReader = new JsonReader(new InputStreamReader(input))) {
+    try (InputStream input =
+             new BufferedInputStream(projectFilesystem.newFileInputStream(pathToTrace))) {
+      if (BinaryChromeTraceReader.isBinaryTrace(input)) {
+        return parseCommandFromBinaryTrace(input);
+      }
+      return parseCommandFromJsonTrace(input);
+    } catch (IOException e) {
+      logger.error(e);
+      return Optional.empty();
+    }
+  }
+
+  private static Optional<String> parseCommandFromBinaryTrace(InputStream input)
+      throws IOException {
+    try (BinaryChromeTraceReader reader = new BinaryChromeTraceReader(input)) {
+      for (int i = 0; i < 4; i++) {
+        Optional<ChromeTraceEvent> event = reader.readEvent();
+        if (!event.isPresent()) {
+          break;
+        }
+        String commandArgs = event.get().getArgs().get("command_args");
+        if (commandArgs != null) {
+          return Optional.of("buck " + event.get().getName() + " " + commandArgs);
+        }
+      }
+      return Optional.empty();
+    }
+  }
+
+  private static Optional<String> parseCommandFromJsonTrace(InputStream input) {
+    try (JsonReader jsonReader = new JsonReader(new InputStreamReader(input))) {
       jsonReader.beginArray();
       Gson gson = new Gson();
 
@@ -86,6 +86,46 @@ abstract class AbstractBuckPaths {
     return getBuckOut().resolve("cache");
   }
 
+  /**
+   * The file in which file content hashes are persisted across runs.
+   */
+  @Value.Derived
+  public Path getFileHashStore() {
+    return getBuckOut().resolve(".filehashes");
+  }
+
+  /**
+   * The directory in which the raw nodes parsed from build files are persisted across runs.
+   */
+  @Value.Derived
+  public Path getRawNodeCacheDir() {
+    return getBuckOut().resolve(".rawnodes");
+  }
+
+  /**
+   * The file in which the durations of locally built rules are persisted across runs.
+   */
+  @Value.Derived
+  public Path getBuildRuleTimingHistory() {
+    return getBuckOut().resolve(".ruletimings");
+  }
+
+  /**
+   * The file in which the durations of the test cases of test rules are persisted across runs.
+   */
+  @Value.Derived
+  public Path getTestCaseTimingHistory() {
+    return getBuckOut().resolve(".testtimings");
+  }
+
+  /**
+   * The file in which the measured resource usage of each rule type is persisted across runs.
+   */
+  @Value.Derived
+  public Path getRuleTypeResourceModel() {
+    return getBuckOut().resolve(".ruleresources");
+  }
+
   @Value.Derived
   public Path getTmpDir() {
     return getBuckOut().resolve("tmp");
@@ -90,6 +90,16 @@ public abstract class LazyPath {
     }
   }
 
+  /**
+   * Does not invoke the path supplier.
+   * @return Memoized path, or {@link Optional#empty()} if it hasn't been created yet.
+   */
+  public Optional<Path> getIfCreated() {
+    synchronized (path) {
+      return Optional.ofNullable(path.get());
+    }
+  }
+
   /**
    * @return Path that will be created lazily and memoized.
    * @throws IOException
@@ -23,6 +23,7 @@ import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.facebook.buck.zip.CustomZipEntry;
 import com.facebook.buck.zip.CustomZipOutputStream;
+import com.facebook.buck.zip.ParallelZipWriter;
 import com.facebook.buck.zip.ZipOutputStreams;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
@@ -43,7 +44,9 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.UnmodifiableIterator;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -90,6 +93,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.ToIntFunction;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
@@ -1028,16 +1032,9 @@ public class ProjectFilesystem {
       ImmutableMap<Path, String> additionalFileContents) throws IOException {
     try (CustomZipOutputStream zip = ZipOutputStreams.newOutputStream(out)) {
       for (Path path : pathsToIncludeInZip) {
-        boolean isDirectory = isDirectory(path);
-        CustomZipEntry entry = new CustomZipEntry(path, isDirectory);
-
-        // We want deterministic ZIPs, so avoid mtimes.
-        entry.setFakeTime();
-
-        entry.setExternalAttributes(getFileAttributesForZipEntry(path));
-
+        CustomZipEntry entry = createZipEntry(path);
         zip.putNextEntry(entry);
-        if (!isDirectory) {
+        if (!entry.isDirectory()) {
           try (InputStream input = newFileInputStream(path)) {
             ByteStreams.copy(input, zip);
           }
@@ -1059,6 +1056,48 @@ public class ProjectFilesystem {
     }
   }
 
+  /**
+   * Like {@link #createZip(Collection, Path)}, but deflates the files on {@code executor}, with up
+   * to {@code parallelism} blocks of a file being deflated at once, at the compression level
+   * {@code compressionLevel} picks for each file.
+   */
+  public void createZip(
+      Collection<Path> pathsToIncludeInZip,
+      Path out,
+      ListeningExecutorService executor,
+      int parallelism,
+      ToIntFunction<Path> compressionLevel) throws IOException {
+    try (ParallelZipWriter zip = new ParallelZipWriter(
+             ZipOutputStreams.newOutputStream(out),
+             executor,
+             parallelism)) {
+      for (Path path : pathsToIncludeInZip) {
+        CustomZipEntry entry = createZipEntry(path);
+        if (!entry.isDirectory()) {
+          entry.setCompressionLevel(compressionLevel.applyAsInt(path));
+        }
+        zip.putNextEntry(
+            entry,
+            new ByteSource() {
+              @Override
+              public InputStream openStream() throws IOException {
+                return newFileInputStream(path);
+              }
+            });
+      }
+    }
+  }
+
+  private CustomZipEntry createZipEntry(Path path) throws IOException {
+    CustomZipEntry entry = new CustomZipEntry(path, isDirectory(path));
+
+    // We want deterministic ZIPs, so avoid mtimes.
+    entry.setFakeTime();
+
+    entry.setExternalAttributes(getFileAttributesForZipEntry(path));
+    return entry;
+  }
+
   public Manifest getJarManifest(Path path) throws IOException {
     Path absolutePath = getPathForRelativePath(path);
     try (JarFile jarFile = new JarFile(absolutePath.toFile())) {
@@ -65,4 +65,27 @@ public class TeeInputStream extends FilterInputStream {
     }
     return numBytesRead;
   }
+
+  @Override
+  public long skip(long numBytesToSkip) throws IOException {
+    // Skipped bytes still need to reach the destination, so read them instead.
+    long numBytesSkipped = 0;
+    byte[] buffer = new byte[(int) Math.min(numBytesToSkip, 8192)];
+    while (numBytesSkipped < numBytesToSkip) {
+      int numBytesRead = read(
+          buffer,
+          0,
+          (int) Math.min(buffer.length, numBytesToSkip - numBytesSkipped));
+      if (numBytesRead == -1) {
+        break;
+      }
+      numBytesSkipped += numBytesRead;
+    }
+    return numBytesSkipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
 }
@@ -42,6 +42,8 @@ abstract class AbstractJUnitJvmArgs {
   private static final String MODULE_BASE_PATH_PROPERTY = "com.facebook.buck.moduleBasePath";
   private static final String STD_OUT_LOG_LEVEL_PROPERTY = "com.facebook.buck.stdOutLogLevel";
   private static final String STD_ERR_LOG_LEVEL_PROPERTY = "com.facebook.buck.stdErrLogLevel";
+  private static final String PERSISTENT_JUNIT_RUNNER =
+      "com.facebook.buck.testrunner.JUnitWorkerMain";
 
   /**
    * @return Directory to use to write test results to.
@@ -175,35 +177,12 @@ abstract class AbstractJUnitJvmArgs {
       args.add(String.format("-agentpath:%s", getPathToJavaAgent().get()));
     }
 
-    // Include the buildId
-    args.add(String.format("-D%s=%s", BUILD_ID_PROPERTY, getBuildId()));
-
-    // Include the baseDir
-    args.add(
-        String.format("-D%s=%s", MODULE_BASE_PATH_PROPERTY, getBuckModuleBaseSourceCodePath()));
+    addBuildProperties(args);
 
     // Disable the Java icon from appearing in the OS X Dock while running tests
     args.add("-Dapple.awt.UIElement=true");
 
-    // Include log levels
-    if (getStdOutLogLevel().isPresent()) {
-      args.add(
-          String.format(
-              "-D%s=%s",
-              STD_OUT_LOG_LEVEL_PROPERTY, getStdOutLogLevel().get()));
-    }
-    if (getStdErrLogLevel().isPresent()) {
-      args.add(
-          String.format(
-              "-D%s=%s",
-              STD_ERR_LOG_LEVEL_PROPERTY, getStdErrLogLevel().get()));
-    }
-
-    if (getRobolectricLogPath().isPresent()) {
-      args.add(
-          String.format(
-              "-Drobolectric.logging=%s", getRobolectricLogPath().get()));
-    }
+    addLoggingProperties(args);
 
     if (isDebugEnabled()) {
       // This is the default config used by IntelliJ. By doing this, all a user
@@ -233,6 +212,95 @@ abstract class AbstractJUnitJvmArgs {
     // responsible for running the tests.
     args.add(getTestType().getDefaultTestRunner());
 
+    addRunnerArgs(args, defaultTestTimeoutMillis);
+  }
+
+  /**
+   * Formats the command which starts a persistent JVM to run the tests of successive rules in. The
+   * properties and runner arguments particular to each rule are passed to it as its jobs, by
+   * {@link #formatPersistentRunnerJobArgsToList}.
+   */
+  public void formatPersistentRunnerCommandToList(
+      ImmutableList.Builder<String> args,
+      Verbosity verbosity) {
+    args.add(String.format("-Dbuck.testrunner_classes=%s", getTestRunnerClasspath()));
+
+    // Disable the Java icon from appearing in the OS X Dock while running tests
+    args.add("-Dapple.awt.UIElement=true");
+
+    // User-defined VM arguments, such as -D or -X.
+    if (getExtraJvmArgs().isPresent()) {
+      args.addAll(getExtraJvmArgs().get());
+    }
+
+    if (verbosity.shouldUseVerbosityFlagIfAvailable()) {
+      args.add("-verbose");
+    }
+
+    // The tests' own classpath is only loaded for each job, in a class loader of its own.
+    args.add("-classpath", getTestRunnerClasspath().toString());
+    args.add(PERSISTENT_JUNIT_RUNNER);
+  }
+
+  /**
+   * Formats the arguments of a job for a persistent runner started with
+   * {@link #formatPersistentRunnerCommandToList}: the absolute path of the classpath file, the
+   * system properties to set while running the tests, as {@code -Dname=value}, and then the
+   * arguments for the test runner.
+   */
+  public void formatPersistentRunnerJobArgsToList(
+      ImmutableList.Builder<String> args,
+      ProjectFilesystem filesystem,
+      long defaultTestTimeoutMillis) {
+    args.add(filesystem.resolve(getClasspathFile()).toString());
+    addBuildProperties(args);
+    addLoggingProperties(args);
+    addRunnerArgs(args, defaultTestTimeoutMillis);
+  }
+
+  /**
+   * @return Whether the tests can be run in a persistent runner, rather than needing a JVM of
+   * their own: that is, when they are JUnit tests and the JVM needs no agents.
+   */
+  public boolean canUsePersistentRunner() {
+    return getTestType() == TestType.JUNIT &&
+        !isDebugEnabled() &&
+        !isCodeCoverageEnabled() &&
+        !getPathToJavaAgent().isPresent();
+  }
+
+  private void addBuildProperties(ImmutableList.Builder<String> args) {
+    // Include the buildId
+    args.add(String.format("-D%s=%s", BUILD_ID_PROPERTY, getBuildId()));
+
+    // Include the baseDir
+    args.add(
+        String.format("-D%s=%s", MODULE_BASE_PATH_PROPERTY, getBuckModuleBaseSourceCodePath()));
+  }
+
+  private void addLoggingProperties(ImmutableList.Builder<String> args) {
+    // Include log levels
+    if (getStdOutLogLevel().isPresent()) {
+      args.add(
+          String.format(
+              "-D%s=%s",
+              STD_OUT_LOG_LEVEL_PROPERTY, getStdOutLogLevel().get()));
+    }
+    if (getStdErrLogLevel().isPresent()) {
+      args.add(
+          String.format(
+              "-D%s=%s",
+              STD_ERR_LOG_LEVEL_PROPERTY, getStdErrLogLevel().get()));
+    }
+
+    if (getRobolectricLogPath().isPresent()) {
+      args.add(
+          String.format(
+              "-Drobolectric.logging=%s", getRobolectricLogPath().get()));
+    }
+  }
+
+  private void addRunnerArgs(ImmutableList.Builder<String> args, long defaultTestTimeoutMillis) {
     // The first argument to the test runner is where the test results should be written. It is not
     // reliable to write test results to stdout or stderr because there may be output from the unit
     // tests written to those file descriptors, as well.
@@ -16,12 +16,14 @@
 
 package com.facebook.buck.jvm.java;
 
+import com.facebook.buck.hashing.FileHashLoader;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.rules.CellPathResolver;
 import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.cache.JarIndexCache;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
@@ -54,4 +56,12 @@ abstract class AbstractJavacExecutionContext {
    */
   public abstract Optional<DirectToJarOutputSettings> getDirectToJarOutputSettings();
 
+  /**
+   * Listings of classpath jars shared between compilations. In-process javac only uses them when
+   * {@link #getFileHashLoader()} is present, to check the jars haven't changed.
+   */
+  public abstract JarIndexCache getJarIndexCache();
+
+  public abstract Optional<FileHashLoader> getFileHashLoader();
+
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.hashing.FileHashLoader;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.cache.JarIndexCache;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.Nullable;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A {@link StandardJavaFileManager} which lists the packages of the jars on the classpath from a
+ * {@link JarIndexCache} shared between compilations, rather than having javac open and index every
+ * jar again. Jars are only opened when a class is actually read from them, and are closed with the
+ * file manager.
+ * <p>
+ * If any jar on the classpath can't be indexed, listing falls back to the wrapped file manager for
+ * the whole compilation, so that the classpath is always searched in a consistent order.
+ */
+class ClasspathIndexingFileManager extends ForwardingStandardJavaFileManager {
+
+  private static final Logger LOG = Logger.get(ClasspathIndexingFileManager.class);
+
+  private final JarIndexCache jarIndexCache;
+  private final FileHashLoader hashLoader;
+
+  @Nullable
+  private Optional<List<ClasspathEntry>> classpath;
+  private final Map<Path, ZipFile> openJars = new HashMap<>();
+
+  public ClasspathIndexingFileManager(
+      StandardJavaFileManager fileManager,
+      JarIndexCache jarIndexCache,
+      FileHashLoader hashLoader) {
+    super(fileManager);
+    this.jarIndexCache = jarIndexCache;
+    this.hashLoader = hashLoader;
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location,
+      String packageName,
+      Set<JavaFileObject.Kind> kinds,
+      boolean recurse) throws IOException {
+    if (location != StandardLocation.CLASS_PATH || recurse) {
+      return super.list(location, packageName, kinds, recurse);
+    }
+    Optional<List<ClasspathEntry>> classpath = getClasspath();
+    if (!classpath.isPresent()) {
+      return super.list(location, packageName, kinds, recurse);
+    }
+
+    List<JavaFileObject> files = new ArrayList<>();
+    for (ClasspathEntry entry : classpath.get()) {
+      if (entry.index.isPresent()) {
+        String directory = packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/";
+        for (String fileName : entry.index.get().getFileNames(packageName)) {
+          JavaFileObject.Kind kind = getKind(fileName);
+          if (kinds.contains(kind)) {
+            files.add(new JarEntryJavaFileObject(entry.path, directory + fileName, kind));
+          }
+        }
+      } else {
+        File[] directoryFiles =
+            new File(entry.path.toFile(), packageName.replace('.', File.separatorChar))
+                .listFiles(File::isFile);
+        if (directoryFiles == null) {
+          continue;
+        }
+        for (File file : directoryFiles) {
+          if (kinds.contains(getKind(file.getName()))) {
+            for (JavaFileObject fileObject : fileManager.getJavaFileObjects(file)) {
+              files.add(fileObject);
+            }
+          }
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Indexes the classpath the first time it is listed, as javac only knows it once it has
+   * processed its options.
+   */
+  private Optional<List<ClasspathEntry>> getClasspath() {
+    if (classpath == null) {
+      classpath = indexClasspath();
+    }
+    return classpath;
+  }
+
+  private Optional<List<ClasspathEntry>> indexClasspath() {
+    List<ClasspathEntry> entries = new ArrayList<>();
+    Iterable<? extends File> location = fileManager.getLocation(StandardLocation.CLASS_PATH);
+    if (location == null) {
+      return Optional.of(entries);
+    }
+    for (File file : location) {
+      Path path = file.toPath().toAbsolutePath();
+      if (file.isDirectory()) {
+        entries.add(new ClasspathEntry(path, Optional.empty()));
+      } else if (file.isFile()) {
+        Optional<JarIndexCache.JarIndex> index = jarIndexCache.get(path, hashLoader);
+        if (!index.isPresent()) {
+          LOG.debug("Not using classpath indexes, as %s could not be indexed", path);
+          return Optional.empty();
+        }
+        entries.add(new ClasspathEntry(path, index));
+      }
+    }
+    return Optional.of(entries);
+  }
+
+  private static JavaFileObject.Kind getKind(String fileName) {
+    for (JavaFileObject.Kind kind : JavaFileObject.Kind.values()) {
+      if (kind != JavaFileObject.Kind.OTHER && fileName.endsWith(kind.extension)) {
+        return kind;
+      }
+    }
+    return JavaFileObject.Kind.OTHER;
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof JarEntryJavaFileObject) {
+      return ((JarEntryJavaFileObject) file).getBinaryName();
+    }
+    return super.inferBinaryName(location, file);
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    if (a instanceof JarEntryJavaFileObject || b instanceof JarEntryJavaFileObject) {
+      return a.toUri().equals(b.toUri());
+    }
+    return super.isSameFile(a, b);
+  }
+
+  private synchronized ZipFile getJar(Path path) throws IOException {
+    ZipFile zipFile = openJars.get(path);
+    if (zipFile == null) {
+      zipFile = new ZipFile(path.toFile());
+      openJars.put(path, zipFile);
+    }
+    return zipFile;
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      for (ZipFile zipFile : openJars.values()) {
+        try {
+          zipFile.close();
+        } catch (IOException e) {
+          LOG.warn(e, "Unable to close %s", zipFile.getName());
+        }
+      }
+      openJars.clear();
+    }
+    super.close();
+  }
+
+  private static class ClasspathEntry {
+    private final Path path;
+    /**
+     * Present for jars, absent for directories.
+     */
+    private final Optional<JarIndexCache.JarIndex> index;
+
+    private ClasspathEntry(Path path, Optional<JarIndexCache.JarIndex> index) {
+      this.path = path;
+      this.index = index;
+    }
+  }
+
+  /**
+   * A file in a classpath jar, which is only opened once it is read. This can't extend
+   * {@link javax.tools.SimpleJavaFileObject}, which doesn't accept {@code jar:} URIs.
+   */
+  private class JarEntryJavaFileObject implements JavaFileObject {
+    private final Path jarPath;
+    private final String entryName;
+    private final Kind kind;
+    private final URI uri;
+
+    private JarEntryJavaFileObject(Path jarPath, String entryName, Kind kind) {
+      this.jarPath = jarPath;
+      this.entryName = entryName;
+      this.kind = kind;
+      this.uri = createJarUri(jarPath, entryName);
+    }
+
+    private String getBinaryName() {
+      return entryName.substring(0, entryName.length() - kind.extension.length())
+          .replace('/', '.');
+    }
+
+    @Override
+    public URI toUri() {
+      return uri;
+    }
+
+    @Override
+    public String getName() {
+      return jarPath + "(" + entryName + ")";
+    }
+
+    @Override
+    public Kind getKind() {
+      return kind;
+    }
+
+    @Override
+    public boolean isNameCompatible(String simpleName, Kind kind) {
+      String fileName = simpleName + kind.extension;
+      return kind == this.kind &&
+          (entryName.equals(fileName) || entryName.endsWith("/" + fileName));
+    }
+
+    @Override
+    @Nullable
+    public NestingKind getNestingKind() {
+      return null;
+    }
+
+    @Override
+    @Nullable
+    public Modifier getAccessLevel() {
+      return null;
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      ZipFile zipFile = getJar(jarPath);
+      ZipEntry entry = zipFile.getEntry(entryName);
+      if (entry == null) {
+        throw new FileNotFoundException(getName());
+      }
+      return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+      return new StringReader(getCharContent(ignoreEncodingErrors).toString());
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      try (InputStream inputStream = openInputStream()) {
+        return new String(ByteStreams.toByteArray(inputStream), Charsets.UTF_8);
+      }
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws IOException {
+      throw new UnsupportedOperationException("Classpath jars are read-only");
+    }
+
+    @Override
+    public Writer openWriter() throws IOException {
+      throw new UnsupportedOperationException("Classpath jars are read-only");
+    }
+
+    @Override
+    public long getLastModified() {
+      try {
+        ZipEntry entry = getJar(jarPath).getEntry(entryName);
+        return entry == null ? 0 : entry.getTime();
+      } catch (IOException e) {
+        return 0;
+      }
+    }
+
+    @Override
+    public boolean delete() {
+      return false;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof JarEntryJavaFileObject &&
+          ((JarEntryJavaFileObject) other).uri.equals(uri);
+    }
+
+    @Override
+    public int hashCode() {
+      return uri.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return getName();
+    }
+  }
+
+  /**
+   * Creates the same {@code jar:} URIs javac uses for files in jars, which
+   * {@link ClassUsageTracker} relies on to find which jar a class was read from.
+   */
+  private static URI createJarUri(Path jarPath, String entryName) {
+    try {
+      return new URI(
+          "jar:" + jarPath.toUri() + "!" + new URI(null, null, "/" + entryName, null).getRawPath());
+    } catch (URISyntaxException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
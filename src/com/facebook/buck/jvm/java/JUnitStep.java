@@ -20,15 +20,24 @@ import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.shell.ShellStep;
+import com.facebook.buck.shell.WorkerJobParams;
+import com.facebook.buck.shell.WorkerProcessPoolFactory;
+import com.facebook.buck.shell.WorkerShellStep;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
 import com.facebook.buck.util.environment.Platform;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
@@ -46,6 +55,7 @@ public class JUnitStep extends ShellStep {
   private final Optional<Long> testCaseTimeoutMs;
   private final ImmutableMap<String, String> env;
   private final JUnitJvmArgs junitJvmArgs;
+  private final int maxPersistentRunners;
 
   // Set when the junit command times out.
   private boolean hasTimedOut = false;
@@ -57,7 +67,8 @@ public class JUnitStep extends ShellStep {
       Optional<Long> testCaseTimeoutMs,
       ImmutableMap<String, String> env,
       JavaRuntimeLauncher javaRuntimeLauncher,
-      JUnitJvmArgs junitJvmArgs) {
+      JUnitJvmArgs junitJvmArgs,
+      int maxPersistentRunners) {
     super(filesystem.getRootPath());
     this.filesystem = filesystem;
     this.javaRuntimeLauncher = javaRuntimeLauncher;
@@ -66,6 +77,7 @@ public class JUnitStep extends ShellStep {
     this.testCaseTimeoutMs = testCaseTimeoutMs;
     this.env = env;
     this.junitJvmArgs = junitJvmArgs;
+    this.maxPersistentRunners = maxPersistentRunners;
   }
 
   @Override
@@ -92,6 +104,65 @@ public class JUnitStep extends ShellStep {
     return args.build();
   }
 
+  /**
+   * Runs the tests in one of a pool of persistent test runner JVMs shared by the rules of this
+   * build, if they are enabled and the tests don't need a JVM of their own, rather than starting a
+   * new JVM for them.
+   */
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws InterruptedException, IOException {
+    if (!canUsePersistentRunner()) {
+      return super.execute(context);
+    }
+    return getPersistentRunnerStep(context).execute(context);
+  }
+
+  @VisibleForTesting
+  boolean canUsePersistentRunner() {
+    // A rule timeout is enforced by killing the JVM, and the environment can only be set when a
+    // JVM starts, so those tests still get a JVM of their own.
+    return maxPersistentRunners > 0 &&
+        !testRuleTimeoutMs.isPresent() &&
+        env.isEmpty() &&
+        nativeLibsEnvironment.isEmpty() &&
+        junitJvmArgs.canUsePersistentRunner();
+  }
+
+  @VisibleForTesting
+  WorkerShellStep getPersistentRunnerStep(ExecutionContext context) {
+    ImmutableList.Builder<String> command = ImmutableList.builder();
+    command.add(javaRuntimeLauncher.getCommand());
+    junitJvmArgs.formatPersistentRunnerCommandToList(command, context.getVerbosity());
+    ImmutableList<String> startupCommand = command.build();
+
+    ImmutableList.Builder<String> jobArgs = ImmutableList.builder();
+    junitJvmArgs.formatPersistentRunnerJobArgsToList(
+        jobArgs,
+        filesystem,
+        testCaseTimeoutMs.orElse(context.getDefaultTestTimeoutMillis()));
+
+    // Runners started with different commands get pools, and so temp dirs, of their own.
+    String runnerHash = Hashing.sha1()
+        .hashString(Joiner.on(' ').join(startupCommand), StandardCharsets.UTF_8)
+        .toString();
+    // The test selectors argument contains newlines, so the arguments are NUL-separated.
+    WorkerJobParams params = WorkerJobParams.of(
+        filesystem.getBuckPaths().getScratchDir().resolve("junit-runners").resolve(runnerHash),
+        startupCommand,
+        "",
+        ImmutableMap.of(),
+        Joiner.on('\0').join(jobArgs.build()),
+        maxPersistentRunners,
+        Optional.empty(),
+        Optional.empty());
+    return new WorkerShellStep(
+        Optional.of(params),
+        Optional.empty(),
+        Optional.empty(),
+        new WorkerProcessPoolFactory(filesystem));
+  }
+
   @Override
   public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
     ImmutableMap.Builder<String, String> env = ImmutableMap.builder();
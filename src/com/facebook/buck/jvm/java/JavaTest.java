@@ -40,6 +40,7 @@ import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TestRule;
 import com.facebook.buck.step.AbstractExecutionStep;
+import com.facebook.buck.step.ConcurrentStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
@@ -70,13 +71,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -249,7 +254,8 @@ public class JavaTest
         testCaseTimeoutMs,
         env,
         javaRuntimeLauncher,
-        args);
+        args,
+        options.getMaxPersistentJUnitRunners());
   }
 
   /**
@@ -295,19 +301,87 @@ public class JavaTest
       }
       junits = junitsBuilder.build();
     } else {
-      junits = ImmutableList.of(
-          getJUnitStep(
-            executionContext,
-            options,
-            Optional.of(pathToTestOutput),
-            Optional.of(pathToTestLogs),
-            testClassNames)
-      );
+      // A debugger can only attach to one JVM at a time.
+      int maxShards = executionContext.isDebugEnabled() ? 1 : options.getMaxShardsPerTestRule();
+      ImmutableList.Builder<JUnitStep> junitsBuilder = ImmutableList.builder();
+      for (Set<String> shard : shardTestClasses(
+          testClassNames,
+          maxShards,
+          testClass -> options.getTestCaseDurationEstimator()
+              .getEstimatedDurationMillis(getBuildTarget(), testClass))) {
+        junitsBuilder.add(
+            getJUnitStep(
+                executionContext,
+                options,
+                Optional.of(pathToTestOutput),
+                Optional.of(pathToTestLogs),
+                shard));
+      }
+      junits = junitsBuilder.build();
+    }
+    if (forkMode() != ForkMode.PER_TEST && junits.size() > 1) {
+      // Each shard writes the results of its own test classes, so they may run concurrently.
+      steps.add(new ConcurrentStep(junits));
+    } else {
+      steps.addAll(junits);
     }
-    steps.addAll(junits);
     return steps.build();
   }
 
+  /**
+   * Splits the test classes between at most {@code maxShards} shards, balancing their estimated
+   * durations by assigning the longest classes first, each to the shard with the least work so
+   * far. Classes which haven't been run before are assumed to take as long as the average of
+   * those which have.
+   */
+  @VisibleForTesting
+  static ImmutableList<ImmutableSet<String>> shardTestClasses(
+      Set<String> testClassNames,
+      int maxShards,
+      Function<String, Optional<Long>> estimatedDurationMillis) {
+    int numShards = Math.min(maxShards, testClassNames.size());
+    if (numShards <= 1) {
+      return ImmutableList.of(ImmutableSet.copyOf(testClassNames));
+    }
+
+    Map<String, Long> estimates = new HashMap<>();
+    long totalKnownMillis = 0;
+    for (String testClassName : testClassNames) {
+      Optional<Long> estimate = estimatedDurationMillis.apply(testClassName);
+      if (estimate.isPresent()) {
+        estimates.put(testClassName, estimate.get());
+        totalKnownMillis += estimate.get();
+      }
+    }
+    long defaultMillis = estimates.isEmpty() ? 1 : Math.max(1, totalKnownMillis / estimates.size());
+
+    List<String> longestFirst = new ArrayList<>(testClassNames);
+    Collections.sort(
+        longestFirst,
+        Comparator.<String, Long>comparing(name -> estimates.getOrDefault(name, defaultMillis))
+            .reversed()
+            .thenComparing(Comparator.naturalOrder()));
+
+    long[] shardMillis = new long[numShards];
+    List<ImmutableSet.Builder<String>> shards = new ArrayList<>(numShards);
+    for (int i = 0; i < numShards; i++) {
+      shards.add(ImmutableSet.builder());
+    }
+    for (String testClassName : longestFirst) {
+      int leastLoaded = 0;
+      for (int i = 1; i < numShards; i++) {
+        if (shardMillis[i] < shardMillis[leastLoaded]) {
+          leastLoaded = i;
+        }
+      }
+      shards.get(leastLoaded).add(testClassName);
+      shardMillis[leastLoaded] += estimates.getOrDefault(testClassName, defaultMillis);
+    }
+    return shards.stream()
+        .map(ImmutableSet.Builder::build)
+        .collect(MoreCollectors.toImmutableList());
+  }
+
   private static Iterable<String> reorderClasses(Set<String> testClassNames, boolean shuffle) {
     Random rng;
     if (shuffle) {
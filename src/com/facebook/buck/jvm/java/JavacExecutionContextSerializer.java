@@ -25,6 +25,7 @@ import com.facebook.buck.util.Console;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorSerializer;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.cache.JarIndexCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -145,6 +146,8 @@ public class JavacExecutionContextSerializer {
         (Map<String, String>) data.get(ENVIRONMENT),
         processExecutor,
         absolutePathsForInputs,
-        directToJarOutputSettings);
+        directToJarOutputSettings,
+        new JarIndexCache(),
+        Optional.empty());
   }
 }
@@ -186,7 +186,9 @@ public class JavacStep implements Step {
           firstOrderContext.getEnvironment(),
           firstOrderContext.getProcessExecutor(),
           getAbsolutePathsForJavacInputs(javac),
-          directToJarOutputSettings);
+          directToJarOutputSettings,
+          firstOrderContext.getJarIndexCache(),
+          firstOrderContext.getFileHashLoader());
       return performBuild(context, stdout, stderr, javac, javacExecutionContext);
     }
   }
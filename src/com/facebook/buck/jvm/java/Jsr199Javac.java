@@ -127,6 +127,12 @@ public abstract class Jsr199Javac implements Javac {
     JavaInMemoryFileManager inMemoryFileManager = null;
     try {
       fileManager = compiler.getStandardFileManager(null, null, null);
+      if (context.getFileHashLoader().isPresent()) {
+        fileManager = new ClasspathIndexingFileManager(
+            fileManager,
+            context.getJarIndexCache(),
+            context.getFileHashLoader().get());
+      }
       Supplier<ImmutableSet<String>> alreadyAddedFilesAvailableAfterCompilation =
           Suppliers.ofInstance(ImmutableSet.of());
       if (context.getDirectToJarOutputSettings().isPresent()) {
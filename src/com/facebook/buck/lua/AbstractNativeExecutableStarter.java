@@ -106,54 +106,10 @@ abstract class AbstractNativeExecutableStarter implements Starter, NativeLinkTar
         BuildTarget.builder(getBaseParams().getBuildTarget())
             .addFlavors(ImmutableFlavor.of("native-starter-cxx-source"))
             .build();
-    if (!getRuleResolver().getRuleOptional(target).isPresent()) {
-
-      BuildTarget templateTarget =
-          BuildTarget.builder(getBaseParams().getBuildTarget())
-              .addFlavors(ImmutableFlavor.of("native-starter-cxx-source-template"))
-              .build();
-      getRuleResolver().addToIndex(
-          new WriteFile(
-              getBaseParams().copyWithChanges(
-                  templateTarget,
-                  Suppliers.ofInstance(ImmutableSortedSet.of()),
-                  Suppliers.ofInstance(ImmutableSortedSet.of())),
-              getPathResolver(),
-              getNativeStarterCxxSourceTemplate(),
-              BuildTargets.getGenPath(
-                  getBaseParams().getProjectFilesystem(),
-                  templateTarget,
-                  "%s/native-starter.cpp.in"),
-            /* executable */ false));
-
-      Path output =
-          BuildTargets.getGenPath(
-              getBaseParams().getProjectFilesystem(),
-              target,
-              "%s/native-starter.cpp");
-      getRuleResolver().addToIndex(
-          WriteStringTemplateRule.from(
-              getBaseParams(),
-              getPathResolver(),
-              getRuleFinder(),
-              target,
-              output,
-              new BuildTargetSourcePath(templateTarget),
-              ImmutableMap.of(
-                  "MAIN_MODULE",
-                  Escaper.escapeAsPythonString(getMainModule()),
-                  "MODULES_DIR",
-                  getRelativeModulesDir().isPresent() ?
-                      Escaper.escapeAsPythonString(getRelativeModulesDir().get().toString()) :
-                      "NULL",
-                  "PY_MODULES_DIR",
-                  getRelativePythonModulesDir().isPresent() ?
-                      Escaper.escapeAsPythonString(getRelativePythonModulesDir().get().toString()) :
-                      "NULL",
-                  "EXT_SUFFIX",
-                  Escaper.escapeAsPythonString(getCxxPlatform().getSharedLibraryExtension())),
-            /* executable */ false));
-    }
+    getRuleResolver().computeIfAbsent(
+        target,
+        WriteStringTemplateRule.class,
+        () -> createNativeStarterCxxSource(target));
 
     return CxxSource.of(
         CxxSource.Type.CXX,
@@ -161,6 +117,55 @@ abstract class AbstractNativeExecutableStarter implements Starter, NativeLinkTar
         ImmutableList.of());
   }
 
+  private WriteStringTemplateRule createNativeStarterCxxSource(BuildTarget target) {
+    BuildTarget templateTarget =
+        BuildTarget.builder(getBaseParams().getBuildTarget())
+            .addFlavors(ImmutableFlavor.of("native-starter-cxx-source-template"))
+            .build();
+    getRuleResolver().computeIfAbsent(
+        templateTarget,
+        WriteFile.class,
+        () -> new WriteFile(
+            getBaseParams().copyWithChanges(
+                templateTarget,
+                Suppliers.ofInstance(ImmutableSortedSet.of()),
+                Suppliers.ofInstance(ImmutableSortedSet.of())),
+            getPathResolver(),
+            getNativeStarterCxxSourceTemplate(),
+            BuildTargets.getGenPath(
+                getBaseParams().getProjectFilesystem(),
+                templateTarget,
+                "%s/native-starter.cpp.in"),
+            /* executable */ false));
+
+    Path output =
+        BuildTargets.getGenPath(
+            getBaseParams().getProjectFilesystem(),
+            target,
+            "%s/native-starter.cpp");
+    return WriteStringTemplateRule.from(
+        getBaseParams(),
+        getPathResolver(),
+        getRuleFinder(),
+        target,
+        output,
+        new BuildTargetSourcePath(templateTarget),
+        ImmutableMap.of(
+            "MAIN_MODULE",
+            Escaper.escapeAsPythonString(getMainModule()),
+            "MODULES_DIR",
+            getRelativeModulesDir().isPresent() ?
+                Escaper.escapeAsPythonString(getRelativeModulesDir().get().toString()) :
+                "NULL",
+            "PY_MODULES_DIR",
+            getRelativePythonModulesDir().isPresent() ?
+                Escaper.escapeAsPythonString(getRelativePythonModulesDir().get().toString()) :
+                "NULL",
+            "EXT_SUFFIX",
+            Escaper.escapeAsPythonString(getCxxPlatform().getSharedLibraryExtension())),
+        /* executable */ false);
+  }
+
   private ImmutableList<CxxPreprocessorInput> getTransitiveCxxPreprocessorInput(
       CxxPlatform cxxPlatform,
       Iterable<? extends CxxPreprocessorDep> deps)
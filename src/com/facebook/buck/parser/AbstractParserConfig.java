@@ -236,6 +236,16 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
     return pyconfig.getPythonInterpreter();
   }
 
+  /**
+   * @return whether the raw nodes parsed from build files should be persisted under buck-out and
+   *     reused by subsequent runs (including after a daemon restart) while their inputs are
+   *     unchanged.
+   */
+  @Value.Lazy
+  public boolean isPersistentRawNodeCacheEnabled() {
+    return getDelegate().getBooleanValue("parser", "persistent_raw_node_cache_enabled", false);
+  }
+
   @Value.Lazy
   public String getPythonInterpreter(ExecutableFinder exeFinder) {
     Optional<String> configPath = getDelegate().getValue(
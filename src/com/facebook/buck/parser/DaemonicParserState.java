@@ -80,9 +80,9 @@ class DaemonicParserState {
    * The value is a list of strings with the root build file as the head and included
    * build files as the tail, for example: {"__includes":["/foo/BUCK", "/foo/buck_includes"]}
    */
-  private static final String INCLUDES_META_RULE = "__includes";
-  private static final String CONFIGS_META_RULE = "__configs";
-  private static final String ENV_META_RULE = "__env";
+  static final String INCLUDES_META_RULE = "__includes";
+  static final String CONFIGS_META_RULE = "__configs";
+  static final String ENV_META_RULE = "__env";
 
   private static final String COUNTER_CATEGORY = "buck_parser_state";
   private static final String INVALIDATED_BY_ENV_VARS_COUNTER_NAME = "invalidated_by_env_vars";
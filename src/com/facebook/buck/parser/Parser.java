@@ -272,11 +272,6 @@ public class Parser {
       return TargetGraph.EMPTY;
     }
 
-    final Map<BuildTarget, TargetGroup> groups = Maps.newHashMap();
-    for (TargetGroup group : state.getAllGroups()) {
-      groups.put(group.getBuildTarget(), group);
-    }
-
     final MutableDirectedGraph<TargetNode<?, ?>> graph = new MutableDirectedGraph<>();
     final Map<BuildTarget, TargetNode<?, ?>> index = new HashMap<>();
 
@@ -315,18 +310,6 @@ public class Parser {
       return node.getDeps().iterator();
     };
 
-    GraphTraversable<BuildTarget> groupExpander = target -> {
-      TargetGroup group = groups.get(target);
-      Preconditions.checkNotNull(
-          group,
-          "SANITY FAILURE: Tried to expand group %s but it doesn't exist.",
-          target);
-      return Iterators.filter(group.iterator(), groups::containsKey);
-    };
-
-    AcyclicDepthFirstPostOrderTraversal<BuildTarget> targetGroupExpansion =
-        new AcyclicDepthFirstPostOrderTraversal<>(groupExpander);
-
     AcyclicDepthFirstPostOrderTraversal<BuildTarget> targetNodeTraversal =
         new AcyclicDepthFirstPostOrderTraversal<>(traversable);
 
@@ -350,27 +333,10 @@ public class Parser {
         }
       }
 
-      for (BuildTarget groupTarget : targetGroupExpansion.traverse(groups.keySet())) {
-        ImmutableMap<BuildTarget, Iterable<BuildTarget>> replacements = Maps.toMap(
-            groupExpander.findChildren(groupTarget),
-            target -> {
-              TargetGroup group = groups.get(target);
-              Preconditions.checkNotNull(
-                  group,
-                  "SANITY FAILURE: Tried to expand group %s but it doesn't exist.",
-                  target);
-              return group;
-            });
-        if (!replacements.isEmpty()) {
-          // TODO(csarbora): Stop duplicating target lists
-          groups.put(groupTarget, groups.get(groupTarget).withReplacedTargets(replacements));
-        }
-      }
-
       targetGraph = new TargetGraph(
           graph,
           ImmutableMap.copyOf(index),
-          ImmutableSet.copyOf(groups.values()));
+          expandNestedTargetGroups(state.getAllGroups()));
       state.ensureConcreteFilesExist(eventBus);
       return targetGraph;
     } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
@@ -382,6 +348,49 @@ public class Parser {
     }
   }
 
+  /**
+   * Replaces the groups nested in each of {@code targetGroups} with the targets they contain, so
+   * that each group lists every target it transitively contains.
+   */
+  public static ImmutableSet<TargetGroup> expandNestedTargetGroups(
+      Iterable<TargetGroup> targetGroups)
+      throws AcyclicDepthFirstPostOrderTraversal.CycleException {
+    final Map<BuildTarget, TargetGroup> groups = Maps.newHashMap();
+    for (TargetGroup group : targetGroups) {
+      groups.put(group.getBuildTarget(), group);
+    }
+
+    GraphTraversable<BuildTarget> groupExpander = target -> {
+      TargetGroup group = groups.get(target);
+      Preconditions.checkNotNull(
+          group,
+          "SANITY FAILURE: Tried to expand group %s but it doesn't exist.",
+          target);
+      return Iterators.filter(group.iterator(), groups::containsKey);
+    };
+
+    AcyclicDepthFirstPostOrderTraversal<BuildTarget> targetGroupExpansion =
+        new AcyclicDepthFirstPostOrderTraversal<>(groupExpander);
+
+    for (BuildTarget groupTarget : targetGroupExpansion.traverse(groups.keySet())) {
+      ImmutableMap<BuildTarget, Iterable<BuildTarget>> replacements = Maps.toMap(
+          groupExpander.findChildren(groupTarget),
+          target -> {
+            TargetGroup group = groups.get(target);
+            Preconditions.checkNotNull(
+                group,
+                "SANITY FAILURE: Tried to expand group %s but it doesn't exist.",
+                target);
+            return group;
+          });
+      if (!replacements.isEmpty()) {
+        // TODO(csarbora): Stop duplicating target lists
+        groups.put(groupTarget, groups.get(groupTarget).withReplacedTargets(replacements));
+      }
+    }
+    return ImmutableSet.copyOf(groups.values());
+  }
+
   /**
    * @param eventBus used to log events while parsing.
    * @param targetNodeSpecs the specs representing the build targets to generate a target graph for.
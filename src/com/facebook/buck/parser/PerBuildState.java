@@ -124,6 +124,7 @@ public class PerBuildState implements AutoCloseable {
     this.rawNodeParsePipeline = new RawNodeParsePipeline(
         parser.getPermState().getRawNodeCache(),
         projectBuildFileParserPool,
+        new PersistentRawNodeCache(ignoreBuckAutodepsFiles),
         executorService);
     this.targetNodeParsePipeline = new TargetNodeParsePipeline(
         parser.getPermState().getOrCreateNodeCache(TargetNode.class),
@@ -157,6 +158,13 @@ public class PerBuildState implements AutoCloseable {
     return targetNodeParsePipeline.getNode(owningCell, target);
   }
 
+  public ListenableFuture<TargetNode<?, ?>> getTargetNodeJob(BuildTarget target)
+      throws BuildTargetException {
+    Cell owningCell = getCell(target);
+
+    return targetNodeParsePipeline.getNodeJob(owningCell, target);
+  }
+
   public ImmutableSet<TargetNode<?, ?>> getAllTargetNodes(Cell cell, Path buildFile)
       throws BuildFileParseException {
     Preconditions.checkState(buildFile.startsWith(cell.getRoot()));
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.bser.BserDeserializer;
+import com.facebook.buck.bser.BserSerializer;
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuckVersion;
+import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.Description;
+import com.facebook.buck.util.ChecksummedFiles;
+import com.facebook.buck.util.cache.DefaultFileHashCache;
+import com.facebook.buck.util.cache.FileHashCache;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * An on-disk cache of the raw nodes parsed from build files, which survives daemon restarts.
+ * <p>
+ * Each build file's raw nodes, including the meta rules describing what the parse read, are
+ * stored in their own file under {@code buck-out/.rawnodes} in the build file's cell. An entry is
+ * only reused while:
+ * <ul>
+ *   <li>the build file, the files it included and the cell's default includes hash the same,</li>
+ *   <li>the names of the files in the build file's package are the same, as globs depend on
+ *       them,</li>
+ *   <li>the configuration values and environment variables the parse read are the same, and</li>
+ *   <li>the parser itself and the configuration it was run with are the same.</li>
+ * </ul>
+ * The package is the same set of files the daemon invalidates a build file for when they are
+ * added or removed, so a persisted entry is no more or less trusted than one held in memory.
+ */
+class PersistentRawNodeCache {
+
+  private static final Logger LOG = Logger.get(PersistentRawNodeCache.class);
+
+  private static final int MAGIC = 0x4255_524e;
+  private static final int VERSION = 1;
+
+  /**
+   * Build files and includes modified this recently before being parsed are not recorded, as a
+   * subsequent write within the filesystem's timestamp granularity could go unnoticed by the
+   * parse.
+   */
+  @VisibleForTesting
+  static final long RACY_MODIFICATION_WINDOW_MILLIS = 2000;
+
+  private static final ImmutableList<String> PARSER_CONFIG_SECTIONS =
+      ImmutableList.of("autodeps", "buildfile", "parser", "project");
+
+  private static final Supplier<String> BUCK_PY_HASH = Suppliers.memoize(
+      () -> {
+        try {
+          return Resources.asByteSource(Resources.getResource("buck_parser/buck.py"))
+              .hash(Hashing.sha1())
+              .toString();
+        } catch (IllegalArgumentException | IOException e) {
+          LOG.debug(e, "Unable to hash buck.py.");
+          return "";
+        }
+      });
+
+  private final boolean ignoreBuckAutodepsFiles;
+  private final ConcurrentMap<Path, String> parserFingerprints = new ConcurrentHashMap<>();
+  // By cell root. Every build file in a cell depends on its default includes, so each is only
+  // hashed once however many build files are looked up.
+  private final ConcurrentMap<Path, FileHashCache> fileHashCaches = new ConcurrentHashMap<>();
+
+  PersistentRawNodeCache(boolean ignoreBuckAutodepsFiles) {
+    this.ignoreBuckAutodepsFiles = ignoreBuckAutodepsFiles;
+  }
+
+  public boolean isEnabled(Cell cell) {
+    return cell.getBuckConfig().getView(ParserConfig.class).isPersistentRawNodeCacheEnabled();
+  }
+
+  /**
+   * Looks up the raw nodes of {@code buildFile}. This should be done before parsing the build file
+   * if they aren't found, as the returned {@link Lookup} captures the state of its package.
+   */
+  public Lookup lookup(Cell cell, Path buildFile) {
+    Preconditions.checkState(buildFile.isAbsolute());
+    Preconditions.checkState(isEnabled(cell));
+
+    long startMillis = System.currentTimeMillis();
+    String packageHash;
+    try {
+      packageHash = hashPackage(cell, buildFile);
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to list the package of %s, so not caching its raw nodes.", buildFile);
+      return new Lookup(cell, buildFile, Optional.empty(), Optional.empty(), startMillis);
+    }
+
+    Optional<ImmutableSet<Map<String, Object>>> rawNodes = Optional.empty();
+    Path entryPath = getEntryPath(cell, buildFile);
+    if (cell.getFilesystem().isFile(entryPath)) {
+      try (InputStream inputStream = cell.getFilesystem().newFileInputStream(entryPath)) {
+        rawNodes = readEntry(cell, buildFile, packageHash, inputStream);
+      } catch (NoSuchFileException e) {
+        // Deleted from under us, which is no worse than it not being there at all.
+      } catch (IOException e) {
+        LOG.warn(e, "Discarding invalid raw node cache entry for %s.", buildFile);
+      }
+    }
+    LOG.verbose("Raw node cache %s for %s.", rawNodes.isPresent() ? "hit" : "miss", buildFile);
+    return new Lookup(cell, buildFile, rawNodes, Optional.of(packageHash), startMillis);
+  }
+
+  /**
+   * The result of looking up the raw nodes of a build file.
+   */
+  class Lookup {
+    private final Cell cell;
+    private final Path buildFile;
+    private final Optional<ImmutableSet<Map<String, Object>>> rawNodes;
+    private final Optional<String> packageHash;
+    private final long startMillis;
+
+    private Lookup(
+        Cell cell,
+        Path buildFile,
+        Optional<ImmutableSet<Map<String, Object>>> rawNodes,
+        Optional<String> packageHash,
+        long startMillis) {
+      this.cell = cell;
+      this.buildFile = buildFile;
+      this.rawNodes = rawNodes;
+      this.packageHash = packageHash;
+      this.startMillis = startMillis;
+    }
+
+    /**
+     * @return the raw nodes, including meta rules, if they were cached and are still valid.
+     */
+    public Optional<ImmutableSet<Map<String, Object>>> getRawNodes() {
+      return rawNodes;
+    }
+
+    /**
+     * Records the raw nodes, including meta rules, parsed from the build file since it was looked
+     * up. Failures are logged rather than thrown, since the cache is only an optimization.
+     */
+    public void store(ImmutableSet<Map<String, Object>> parsedRawNodes) {
+      if (rawNodes.isPresent() || !packageHash.isPresent()) {
+        return;
+      }
+      try {
+        writeEntry(cell, buildFile, packageHash.get(), startMillis, parsedRawNodes);
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to write raw node cache entry for %s.", buildFile);
+      }
+    }
+  }
+
+  private Optional<ImmutableSet<Map<String, Object>>> readEntry(
+      Cell cell,
+      Path buildFile,
+      String packageHash,
+      InputStream inputStream) throws IOException {
+    Entry entry = ChecksummedFiles.read(inputStream, MAGIC, VERSION, Entry::read);
+    if (!entry.parserFingerprint.equals(getParserFingerprint(cell)) ||
+        !entry.relativePath.equals(getRelativePath(cell, buildFile)) ||
+        !entry.packageHash.equals(packageHash)) {
+      return Optional.empty();
+    }
+    for (Map.Entry<String, String> dependencyHash : entry.dependencyHashes.entrySet()) {
+      Path dependency = buildFile.getFileSystem().getPath(dependencyHash.getKey());
+      if (!Files.isRegularFile(dependency) ||
+          !dependencyHash.getValue().equals(hashFile(cell, dependency))) {
+        return Optional.empty();
+      }
+    }
+
+    ImmutableSet<Map<String, Object>> rawNodes = deserializeRawNodes(entry.serializedRawNodes);
+    if (!usedConfigAndEnvironmentUnchanged(cell, rawNodes)) {
+      return Optional.empty();
+    }
+    return Optional.of(rawNodes);
+  }
+
+  private void writeEntry(
+      Cell cell,
+      Path buildFile,
+      String packageHash,
+      long startMillis,
+      ImmutableSet<Map<String, Object>> rawNodes) throws IOException {
+    ImmutableMap.Builder<String, String> dependencyHashes = ImmutableMap.builder();
+    for (Path dependency : getDependencies(cell, rawNodes)) {
+      BasicFileAttributes attributes =
+          Files.readAttributes(dependency, BasicFileAttributes.class);
+      if (attributes.lastModifiedTime().toMillis() >
+          startMillis - RACY_MODIFICATION_WINDOW_MILLIS) {
+        LOG.debug("Not caching raw nodes of %s as %s was just modified.", buildFile, dependency);
+        return;
+      }
+      dependencyHashes.put(dependency.toString(), hashFile(cell, dependency));
+    }
+
+    Entry entry = new Entry(
+        getParserFingerprint(cell),
+        getRelativePath(cell, buildFile),
+        packageHash,
+        dependencyHashes.build(),
+        serializeRawNodes(rawNodes));
+    ChecksummedFiles.write(
+        cell.getFilesystem().resolve(getEntryPath(cell, buildFile)),
+        MAGIC,
+        VERSION,
+        entry::write);
+  }
+
+  private static byte[] serializeRawNodes(ImmutableSet<Map<String, Object>> rawNodes)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new BserSerializer().serializeToStream(rawNodes.asList(), bytes);
+    return bytes.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ImmutableSet<Map<String, Object>> deserializeRawNodes(byte[] serializedRawNodes)
+      throws IOException {
+    // Use the same key ordering as the parser, so the nodes are indistinguishable from its.
+    Object rawNodes = new BserDeserializer(BserDeserializer.KeyOrdering.SORTED)
+        .deserializeBserValue(new ByteArrayInputStream(serializedRawNodes));
+    if (!(rawNodes instanceof List<?>)) {
+      throw new IOException(String.format("Invalid raw nodes (expected list, got %s)", rawNodes));
+    }
+    return ImmutableSet.copyOf((List<Map<String, Object>>) rawNodes);
+  }
+
+  /**
+   * @return the files which were read to produce {@code rawNodes}: the build file and its
+   *     includes, as reported by the parser, and the cell's default includes.
+   */
+  @SuppressWarnings("unchecked")
+  private static ImmutableSortedSet<Path> getDependencies(
+      Cell cell,
+      ImmutableSet<Map<String, Object>> rawNodes) {
+    ImmutableSortedSet.Builder<Path> dependencies = ImmutableSortedSet.naturalOrder();
+    for (Map<String, Object> rawNode : rawNodes) {
+      if (rawNode.containsKey(DaemonicParserState.INCLUDES_META_RULE)) {
+        for (String path : Preconditions.checkNotNull(
+                 (List<String>) rawNode.get(DaemonicParserState.INCLUDES_META_RULE))) {
+          dependencies.add(cell.getFilesystem().resolve(path));
+        }
+      }
+    }
+    for (String include :
+         cell.getBuckConfig().getView(ParserConfig.class).getDefaultIncludes()) {
+      Preconditions.checkState(include.startsWith("//"));
+      dependencies.add(cell.getFilesystem().resolve(include.substring(2)));
+    }
+    return dependencies.build();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static boolean usedConfigAndEnvironmentUnchanged(
+      Cell cell,
+      ImmutableSet<Map<String, Object>> rawNodes) {
+    for (Map<String, Object> rawNode : rawNodes) {
+      if (rawNode.containsKey(DaemonicParserState.CONFIGS_META_RULE)) {
+        Map<String, Map<String, String>> configs = Preconditions.checkNotNull(
+            (Map<String, Map<String, String>>)
+                rawNode.get(DaemonicParserState.CONFIGS_META_RULE));
+        for (Map.Entry<String, Map<String, String>> section : configs.entrySet()) {
+          for (Map.Entry<String, String> field : section.getValue().entrySet()) {
+            if (!cell.getBuckConfig().getValue(section.getKey(), field.getKey())
+                .equals(Optional.ofNullable(field.getValue()))) {
+              return false;
+            }
+          }
+        }
+      } else if (rawNode.containsKey(DaemonicParserState.ENV_META_RULE)) {
+        Map<String, String> env = Preconditions.checkNotNull(
+            (Map<String, String>) rawNode.get(DaemonicParserState.ENV_META_RULE));
+        for (Map.Entry<String, String> variable : env.entrySet()) {
+          if (!Objects.equals(
+                  cell.getBuckConfig().getEnvironment().get(variable.getKey()),
+                  variable.getValue())) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Hashes the names of the files which are part of the build file's package, and so could be
+   * matched by its globs. As for invalidation in {@link DaemonicParserState}, subpackages are
+   * excluded when package boundaries are enforced, and temporary files are ignored.
+   */
+  @VisibleForTesting
+  static String hashPackage(Cell cell, Path buildFile) throws IOException {
+    ProjectFilesystem filesystem = cell.getFilesystem();
+    Path packageDir = MorePaths.getParentOrEmpty(filesystem.relativize(buildFile));
+    Iterable<Pattern> tempFilePatterns = cell.getTempFilePatterns();
+    List<String> files = new ArrayList<>();
+    filesystem.walkRelativeFileTree(
+        packageDir,
+        EnumSet.noneOf(FileVisitOption.class),
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (dir.equals(packageDir)) {
+              return FileVisitResult.CONTINUE;
+            }
+            if (filesystem.isIgnored(dir) ||
+                (filesystem.isFile(dir.resolve(cell.getBuildFileName())) &&
+                    cell.isEnforcingBuckPackageBoundaries(dir))) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            String fileName = file.getFileName().toString();
+            for (Pattern pattern : tempFilePatterns) {
+              if (pattern.matcher(fileName).matches()) {
+                return FileVisitResult.CONTINUE;
+              }
+            }
+            files.add(MorePaths.pathWithUnixSeparators(file));
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String file : ImmutableSortedSet.copyOf(files)) {
+      hasher.putString(file, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * @return a hash of everything about the parser which could change the raw nodes it produces,
+   *     other than the build files themselves and the configuration values they read.
+   */
+  private String getParserFingerprint(Cell cell) {
+    return parserFingerprints.computeIfAbsent(
+        cell.getRoot(),
+        root -> {
+          Hasher hasher = Hashing.sha1().newHasher()
+              .putString(BuckVersion.getVersion(), StandardCharsets.UTF_8)
+              .putString(BUCK_PY_HASH.get(), StandardCharsets.UTF_8)
+              .putString(root.toString(), StandardCharsets.UTF_8)
+              .putBoolean(ignoreBuckAutodepsFiles)
+              .putBoolean(cell.getBuckConfig().getView(ParserConfig.class).getAllowEmptyGlobs());
+          for (String section : PARSER_CONFIG_SECTIONS) {
+            hasher.putString(section, StandardCharsets.UTF_8);
+            for (Map.Entry<String, String> entry : ImmutableSortedMap.copyOf(
+                     cell.getBuckConfig().getEntriesForSection(section)).entrySet()) {
+              hasher
+                  .putString(entry.getKey(), StandardCharsets.UTF_8)
+                  .putByte((byte) 0)
+                  .putString(entry.getValue(), StandardCharsets.UTF_8)
+                  .putByte((byte) 0);
+            }
+          }
+          for (Description<?> description : cell.getAllDescriptions()) {
+            hasher.putString(
+                Description.getBuildRuleType(description).getName(),
+                StandardCharsets.UTF_8);
+          }
+          return hasher.hash().toString();
+        });
+  }
+
+  private static String getRelativePath(Cell cell, Path buildFile) {
+    return MorePaths.pathWithUnixSeparators(cell.getFilesystem().relativize(buildFile));
+  }
+
+  private static Path getEntryPath(Cell cell, Path buildFile) {
+    HashCode key = Hashing.sha1().hashString(
+        getRelativePath(cell, buildFile),
+        StandardCharsets.UTF_8);
+    return cell.getFilesystem().getBuckPaths().getRawNodeCacheDir().resolve(key.toString());
+  }
+
+  private String hashFile(Cell cell, Path path) throws IOException {
+    FileHashCache fileHashCache = fileHashCaches.computeIfAbsent(
+        cell.getRoot(),
+        root -> DefaultFileHashCache.createDefaultFileHashCache(cell.getFilesystem()));
+    if (fileHashCache.willGet(path)) {
+      return fileHashCache.get(path).toString();
+    }
+    // Outside the cell, e.g. an include from another cell, so not worth keeping.
+    return Hashing.sha1().hashBytes(Files.readAllBytes(path)).toString();
+  }
+
+  /**
+   * A build file's raw nodes, and what they were parsed from, as stored on disk.
+   */
+  private static class Entry {
+    private final String parserFingerprint;
+    private final String relativePath;
+    private final String packageHash;
+    private final ImmutableMap<String, String> dependencyHashes;
+    private final byte[] serializedRawNodes;
+
+    private Entry(
+        String parserFingerprint,
+        String relativePath,
+        String packageHash,
+        ImmutableMap<String, String> dependencyHashes,
+        byte[] serializedRawNodes) {
+      this.parserFingerprint = parserFingerprint;
+      this.relativePath = relativePath;
+      this.packageHash = packageHash;
+      this.dependencyHashes = dependencyHashes;
+      this.serializedRawNodes = serializedRawNodes;
+    }
+
+    private static Entry read(DataInputStream inputStream) throws IOException {
+      String parserFingerprint = inputStream.readUTF();
+      String relativePath = inputStream.readUTF();
+      String packageHash = inputStream.readUTF();
+      int dependencyCount = inputStream.readInt();
+      ImmutableMap.Builder<String, String> dependencyHashes = ImmutableMap.builder();
+      for (int i = 0; i < dependencyCount; i++) {
+        dependencyHashes.put(inputStream.readUTF(), inputStream.readUTF());
+      }
+      byte[] serializedRawNodes = new byte[inputStream.readInt()];
+      inputStream.readFully(serializedRawNodes);
+      return new Entry(
+          parserFingerprint,
+          relativePath,
+          packageHash,
+          dependencyHashes.build(),
+          serializedRawNodes);
+    }
+
+    private void write(DataOutputStream outputStream) throws IOException {
+      outputStream.writeUTF(parserFingerprint);
+      outputStream.writeUTF(relativePath);
+      outputStream.writeUTF(packageHash);
+      outputStream.writeInt(dependencyHashes.size());
+      for (Map.Entry<String, String> dependencyHash : dependencyHashes.entrySet()) {
+        outputStream.writeUTF(dependencyHash.getKey());
+        outputStream.writeUTF(dependencyHash.getValue());
+      }
+      outputStream.writeInt(serializedRawNodes.length);
+      outputStream.write(serializedRawNodes);
+    }
+  }
+}
@@ -36,15 +36,18 @@ public class RawNodeParsePipeline extends ParsePipeline<Map<String, Object>> {
   private final PipelineNodeCache<Path, ImmutableSet<Map<String, Object>>> cache;
   private final ListeningExecutorService executorService;
   private final ProjectBuildFileParserPool projectBuildFileParserPool;
+  private final PersistentRawNodeCache persistentRawNodeCache;
 
   public RawNodeParsePipeline(
       Cache<Path, ImmutableSet<Map<String, Object>>> cache,
       ProjectBuildFileParserPool projectBuildFileParserPool,
+      PersistentRawNodeCache persistentRawNodeCache,
       ListeningExecutorService executorService) {
     super();
     this.executorService = executorService;
     this.cache = new PipelineNodeCache<>(cache);
     this.projectBuildFileParserPool = projectBuildFileParserPool;
+    this.persistentRawNodeCache = persistentRawNodeCache;
   }
 
   /**
@@ -94,9 +97,30 @@ public class RawNodeParsePipeline extends ParsePipeline<Map<String, Object>> {
             return Futures.immediateCancelledFuture();
           }
 
-          return projectBuildFileParserPool.getAllRulesAndMetaRules(
-              cell,
-              buildFile,
+          if (!persistentRawNodeCache.isEnabled(cell)) {
+            return projectBuildFileParserPool.getAllRulesAndMetaRules(
+                cell,
+                buildFile,
+                executorService);
+          }
+
+          return Futures.transformAsync(
+              executorService.submit(() -> persistentRawNodeCache.lookup(cell, buildFile)),
+              lookup -> {
+                if (lookup.getRawNodes().isPresent()) {
+                  return Futures.immediateFuture(lookup.getRawNodes().get());
+                }
+                return Futures.transformAsync(
+                    projectBuildFileParserPool.getAllRulesAndMetaRules(
+                        cell,
+                        buildFile,
+                        executorService),
+                    rawNodes -> {
+                      lookup.store(rawNodes);
+                      return Futures.immediateFuture(rawNodes);
+                    },
+                    executorService);
+              },
               executorService);
         });
   }
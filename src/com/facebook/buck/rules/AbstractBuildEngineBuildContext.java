@@ -22,6 +22,7 @@ import com.facebook.buck.model.BuildId;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.facebook.buck.zip.ZipCompressionLevel;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
 
@@ -49,6 +50,49 @@ abstract class AbstractBuildEngineBuildContext {
     return false;
   }
 
+  /**
+   * Whether the artifacts of the deps of a rule which missed the cache should be fetched from the
+   * {@link ArtifactCache} in a single batch before their own builds start.
+   */
+  @Value.Default
+  public boolean isArtifactCachePrefetchEnabled() {
+    return false;
+  }
+
+  /**
+   * Whether artifacts should be unpacked as they are fetched from the {@link ArtifactCache}, if it
+   * supports streaming fetches, rather than from a temporary zip file once they have been fetched.
+   */
+  @Value.Default
+  public boolean isArtifactCacheStreamingFetchEnabled() {
+    return false;
+  }
+
+  /**
+   * The deflate level used when zipping up artifacts to store in the {@link ArtifactCache}.
+   */
+  @Value.Default
+  public int getArtifactCompressionLevel() {
+    return ZipCompressionLevel.DEFAULT_COMPRESSION_LEVEL.getValue();
+  }
+
+  /**
+   * How many threads may deflate a single artifact at once.
+   */
+  @Value.Default
+  public int getArtifactCompressionThreads() {
+    return 1;
+  }
+
+  /**
+   * Whether files which are already compressed, such as jars, should be stored in artifacts as
+   * they are, rather than deflated again.
+   */
+  @Value.Default
+  public boolean isArtifactCompressionSkipCompressedFiles() {
+    return false;
+  }
+
   /**
    * Creates an {@link OnDiskBuildInfo}.
    * <p>
@@ -72,7 +116,10 @@ abstract class AbstractBuildEngineBuildContext {
         getClock(),
         getBuildId(),
         getObjectMapper(),
-        ImmutableMap.copyOf(getEnvironment()));
+        ImmutableMap.copyOf(getEnvironment()),
+        getArtifactCompressionLevel(),
+        getArtifactCompressionThreads(),
+        isArtifactCompressionSkipCompressedFiles());
   }
 
   public final BuckEventBus getEventBus() {
@@ -68,10 +68,23 @@ abstract class AbstractCachingBuildEngineBuckConfig implements ConfigView<BuckCo
         .orElse(Long.MAX_VALUE);
   }
 
+  /**
+   * @return whether to prioritize rules on the critical path of the build, as estimated from how
+   *     long rules took to build locally in previous builds.
+   */
+  public boolean isCriticalPathSchedulingEnabled() {
+    return getDelegate().getBooleanValue("build", "critical_path_scheduling", false);
+  }
+
   public ResourceAwareSchedulingInfo getResourceAwareSchedulingInfo() {
     return ResourceAwareSchedulingInfo.of(
         getDelegate().isResourceAwareSchedulingEnabled(),
         getDelegate().getDefaultResourceAmounts(),
-        getDelegate().getResourceAmountsPerRuleType());
+        getDelegate().getResourceAmountsPerRuleType(),
+        Optional.empty());
+  }
+
+  public boolean isLearnedResourceAmountsEnabled() {
+    return getDelegate().getBooleanValue("resources", "learn_resource_amounts", false);
   }
 }
@@ -23,6 +23,8 @@ import com.google.common.collect.ImmutableMap;
 
 import org.immutables.value.Value;
 
+import java.util.Optional;
+
 @Value.Immutable
 @BuckStyleTuple
 abstract class AbstractResourceAwareSchedulingInfo {
@@ -31,7 +33,8 @@ abstract class AbstractResourceAwareSchedulingInfo {
       ResourceAwareSchedulingInfo.of(
           false,
           ResourceAmountsEstimator.DEFAULT_AMOUNTS,
-          ImmutableMap.of());
+          ImmutableMap.of(),
+          Optional.empty());
 
   public abstract boolean isResourceAwareSchedulingEnabled();
 
@@ -42,6 +45,13 @@ abstract class AbstractResourceAwareSchedulingInfo {
    */
   public abstract ImmutableMap<String, ResourceAmounts> getAmountsPerRuleType();
 
+  /**
+   * Resources learned from previous builds, used for rule types without configured amounts. They
+   * can only raise the default amounts: measurements miss whatever subprocesses the process tracker
+   * doesn't see, so they are taken as a lower bound of what a rule needs.
+   */
+  public abstract Optional<RuleTypeResourceModel> getRuleTypeResourceModel();
+
   public ResourceAmounts getResourceAmountsForRule(BuildRule rule) {
     if (isRuleResourceFree(rule)) {
       return ResourceAmounts.ZERO;
@@ -58,6 +68,11 @@ abstract class AbstractResourceAwareSchedulingInfo {
     Preconditions.checkArgument(isResourceAwareSchedulingEnabled());
     if (getAmountsPerRuleType().containsKey(rule.getType())) {
       return getAmountsPerRuleType().get(rule.getType());
+    } else if (getRuleTypeResourceModel().isPresent()) {
+      return getRuleTypeResourceModel().get()
+          .getResourceAmounts(rule.getType(), getDefaultResourceAmounts())
+          .map(learned -> learned.max(getDefaultResourceAmounts()))
+          .orElse(getDefaultResourceAmounts());
     } else {
       return getDefaultResourceAmounts();
     }
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.rules;
 
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
 import com.facebook.buck.event.ActionGraphEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.PerfEventId;
@@ -23,20 +25,30 @@ import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.event.WatchmanStatusEvent;
 import com.facebook.buck.event.listener.BroadcastEventListener;
 import com.facebook.buck.graph.AbstractBottomUpTraversal;
+import com.facebook.buck.graph.AcyclicDepthFirstPostOrderTraversal;
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.keys.ContentAgnosticRuleKeyFactory;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
 
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -44,16 +56,58 @@ import javax.annotation.Nullable;
 /**
  * Class that transforms {@link TargetGraph} to {@link ActionGraph}. It also holds a cache for the
  * last ActionGraph it generated.
+ * <p>
+ * When incremental, a new ActionGraph reuses the {@link BuildRule}s of the last one for every
+ * target node whose structural {@link TargetGraphHashing} hash is unchanged, so that only the
+ * rules of changed nodes and their rdeps are created again.
  */
 public class ActionGraphCache {
   private static final Logger LOG = Logger.get(ActionGraphCache.class);
 
+  private static final String COUNTER_CATEGORY = "buck_action_graph_cache";
+  private static final String CACHE_HIT_COUNTER_NAME = "cache_hit";
+  private static final String CACHE_MISS_COUNTER_NAME = "cache_miss";
+  private static final String RULES_REUSED_COUNTER_NAME = "rules_reused";
+  private static final String RULES_CREATED_COUNTER_NAME = "rules_created";
+
   @Nullable
   private Pair<TargetGraph, ActionGraphAndResolver> lastActionGraph;
+  @Nullable
+  private ImmutableMap<BuildTarget, HashCode> lastTargetNodeHashes;
   private BroadcastEventListener broadcastEventListener;
+  private final boolean incremental;
+
+  private final IntegerCounter cacheHitCounter;
+  private final IntegerCounter cacheMissCounter;
+  private final IntegerCounter rulesReusedCounter;
+  private final IntegerCounter rulesCreatedCounter;
 
   public ActionGraphCache(BroadcastEventListener broadcastEventListener) {
+    this(broadcastEventListener, false);
+  }
+
+  /**
+   * @param incremental whether to reuse the rules of unchanged target nodes on a cache miss.
+   */
+  public ActionGraphCache(BroadcastEventListener broadcastEventListener, boolean incremental) {
     this.broadcastEventListener = broadcastEventListener;
+    this.incremental = incremental;
+    this.cacheHitCounter = new IntegerCounter(
+        COUNTER_CATEGORY,
+        CACHE_HIT_COUNTER_NAME,
+        ImmutableMap.of());
+    this.cacheMissCounter = new IntegerCounter(
+        COUNTER_CATEGORY,
+        CACHE_MISS_COUNTER_NAME,
+        ImmutableMap.of());
+    this.rulesReusedCounter = new IntegerCounter(
+        COUNTER_CATEGORY,
+        RULES_REUSED_COUNTER_NAME,
+        ImmutableMap.of());
+    this.rulesCreatedCounter = new IntegerCounter(
+        COUNTER_CATEGORY,
+        RULES_CREATED_COUNTER_NAME,
+        ImmutableMap.of());
   }
 
   /**
@@ -69,28 +123,74 @@ public class ActionGraphCache {
       final boolean checkActionGraphs,
       final TargetGraph targetGraph,
       int keySeed) {
+    return getActionGraph(
+        eventBus,
+        checkActionGraphs,
+        targetGraph,
+        keySeed,
+        ActionGraphParallelizationMode.DISABLED,
+        /* threadCount */ 1);
+  }
+
+  /**
+   * As {@link #getActionGraph(BuckEventBus, boolean, TargetGraph, int)}, but creating a new action
+   * graph on a cache miss as specified by {@code parallelizationMode}.
+   * @param threadCount the number of threads to create build rules on, when creating them
+   *                    concurrently.
+   */
+  public ActionGraphAndResolver getActionGraph(
+      final BuckEventBus eventBus,
+      final boolean checkActionGraphs,
+      final TargetGraph targetGraph,
+      int keySeed,
+      ActionGraphParallelizationMode parallelizationMode,
+      int threadCount) {
     ActionGraphEvent.Started started = ActionGraphEvent.started();
     eventBus.post(started);
     try {
       if (lastActionGraph != null && lastActionGraph.getFirst().equals(targetGraph)) {
         eventBus.post(ActionGraphEvent.Cache.hit());
+        cacheHitCounter.inc();
         LOG.info("ActionGraph cache hit.");
         if (checkActionGraphs) {
           compareActionGraphs(eventBus, lastActionGraph.getSecond(), targetGraph, keySeed);
         }
       } else {
         eventBus.post(ActionGraphEvent.Cache.miss());
+        cacheMissCounter.inc();
         if (lastActionGraph == null) {
           LOG.info("ActionGraph cache miss. Cache was empty.");
         } else {
           LOG.info("ActionGraph cache miss. TargetGraphs mismatched.");
         }
-        lastActionGraph = new Pair<TargetGraph, ActionGraphAndResolver>(
+
+        ImmutableMap<BuildTarget, HashCode> targetNodeHashes = null;
+        ImmutableMap<BuildTarget, BuildRule> reusableRules = ImmutableMap.of();
+        if (incremental) {
+          targetNodeHashes = hashTargetGraph(eventBus, targetGraph, threadCount);
+          if (lastActionGraph != null && lastTargetNodeHashes != null) {
+            reusableRules = getReusableRules(
+                lastActionGraph.getSecond().getResolver(),
+                lastTargetNodeHashes,
+                targetNodeHashes);
+          }
+        }
+
+        ActionGraphAndResolver actionGraph = createActionGraph(
+            eventBus,
+            new DefaultTargetNodeToBuildRuleTransformer(),
             targetGraph,
-            createActionGraph(
-                eventBus,
-                new DefaultTargetNodeToBuildRuleTransformer(),
-                targetGraph));
+            parallelizationMode,
+            threadCount,
+            keySeed,
+            reusableRules);
+        updateRuleCounters(actionGraph.getResolver(), reusableRules);
+        lastActionGraph = new Pair<TargetGraph, ActionGraphAndResolver>(targetGraph, actionGraph);
+        lastTargetNodeHashes = targetNodeHashes;
+
+        if (checkActionGraphs && !reusableRules.isEmpty()) {
+          compareActionGraphs(eventBus, actionGraph, targetGraph, keySeed);
+        }
       }
     } finally {
       eventBus.post(ActionGraphEvent.finished(started));
@@ -134,11 +234,119 @@ public class ActionGraphCache {
     return actionGraph;
   }
 
+  /**
+   * @return the structural hash of every node in {@code targetGraph}, which changes whenever the
+   *     node or any of its transitive deps do.
+   */
+  private static ImmutableMap<BuildTarget, HashCode> hashTargetGraph(
+      BuckEventBus eventBus,
+      TargetGraph targetGraph,
+      int threadCount) {
+    try {
+      return TargetGraphHashing.withoutInputFileContents(
+          eventBus,
+          targetGraph,
+          targetGraph.getNodesWithNoIncomingEdges())
+          .setNumThreads(threadCount)
+          .hashTargetGraph();
+    } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
+      throw new IllegalStateException(
+          "Cycle detected despite graph which was claimed to be a DAG",
+          e);
+    }
+  }
+
+  /**
+   * @return the rules of {@code lastResolver} whose target node has the same hash in both target
+   *     graphs, keyed as they were indexed.  Flavored rules are attributed to the node of their
+   *     unflavored target, unless the flavored target is itself a node.
+   */
+  private static ImmutableMap<BuildTarget, BuildRule> getReusableRules(
+      BuildRuleResolver lastResolver,
+      ImmutableMap<BuildTarget, HashCode> lastTargetNodeHashes,
+      ImmutableMap<BuildTarget, HashCode> targetNodeHashes) {
+    ImmutableMap.Builder<BuildTarget, BuildRule> reusableRules = ImmutableMap.builder();
+    for (Map.Entry<BuildTarget, BuildRule> entry : lastResolver.getBuildRuleIndex().entrySet()) {
+      BuildTarget nodeTarget = targetNodeHashes.containsKey(entry.getKey()) ?
+          entry.getKey() :
+          BuildTarget.of(entry.getKey().getUnflavoredBuildTarget());
+      HashCode hash = targetNodeHashes.get(nodeTarget);
+      if (hash != null && hash.equals(lastTargetNodeHashes.get(nodeTarget))) {
+        reusableRules.put(entry);
+      }
+    }
+    return reusableRules.build();
+  }
+
+  private void updateRuleCounters(
+      BuildRuleResolver resolver,
+      ImmutableMap<BuildTarget, BuildRule> reusableRules) {
+    int reused = 0;
+    int created = 0;
+    for (Map.Entry<BuildTarget, BuildRule> entry : resolver.getBuildRuleIndex().entrySet()) {
+      if (reusableRules.get(entry.getKey()) == entry.getValue()) {
+        reused++;
+      } else {
+        created++;
+      }
+    }
+    LOG.debug("Reused %d rules and created %d rules.", reused, created);
+    rulesReusedCounter.inc(reused);
+    rulesCreatedCounter.inc(created);
+  }
+
+  private static ActionGraphAndResolver createActionGraph(
+      BuckEventBus eventBus,
+      TargetNodeToBuildRuleTransformer transformer,
+      TargetGraph targetGraph,
+      ActionGraphParallelizationMode parallelizationMode,
+      int threadCount,
+      int keySeed,
+      ImmutableMap<BuildTarget, BuildRule> reusableRules) {
+    switch (parallelizationMode) {
+      case DISABLED:
+        return createActionGraph(eventBus, transformer, targetGraph, reusableRules);
+      case ENABLED:
+        return createActionGraphInParallel(
+            eventBus,
+            transformer,
+            targetGraph,
+            threadCount,
+            reusableRules);
+      case COMPARE:
+        ActionGraphAndResolver parallelActionGraph = createActionGraphInParallel(
+            eventBus,
+            transformer,
+            targetGraph,
+            threadCount,
+            reusableRules);
+        ActionGraphAndResolver serialActionGraph =
+            createActionGraph(eventBus, transformer, targetGraph, reusableRules);
+        checkActionGraphsMatch(
+            eventBus,
+            "ActionGraphParallelizationCheck",
+            serialActionGraph,
+            parallelActionGraph,
+            keySeed);
+        return parallelActionGraph;
+    }
+    throw new IllegalStateException("Unknown parallelization mode: " + parallelizationMode);
+  }
+
   private static ActionGraphAndResolver createActionGraph(
       final BuckEventBus eventBus,
       TargetNodeToBuildRuleTransformer transformer,
       TargetGraph targetGraph) {
-    final BuildRuleResolver resolver = new BuildRuleResolver(targetGraph, transformer, eventBus);
+    return createActionGraph(eventBus, transformer, targetGraph, ImmutableMap.of());
+  }
+
+  private static ActionGraphAndResolver createActionGraph(
+      final BuckEventBus eventBus,
+      TargetNodeToBuildRuleTransformer transformer,
+      TargetGraph targetGraph,
+      ImmutableMap<BuildTarget, BuildRule> reusableRules) {
+    final BuildRuleResolver resolver =
+        new BuildRuleResolver(targetGraph, transformer, eventBus, reusableRules);
 
     final int numberOfNodes = targetGraph.getNodes().size();
     final AtomicInteger processedNodes = new AtomicInteger(0);
@@ -166,6 +374,67 @@ public class ActionGraphCache {
         .build();
   }
 
+  /**
+   * Creates the build rule for each target node once the rules for all of its dependencies have
+   * been created, so that rules for independent nodes are created concurrently.
+   */
+  private static ActionGraphAndResolver createActionGraphInParallel(
+      final BuckEventBus eventBus,
+      TargetNodeToBuildRuleTransformer transformer,
+      final TargetGraph targetGraph,
+      int threadCount,
+      ImmutableMap<BuildTarget, BuildRule> reusableRules) {
+    final BuildRuleResolver resolver =
+        new BuildRuleResolver(targetGraph, transformer, eventBus, reusableRules);
+
+    final int numberOfNodes = targetGraph.getNodes().size();
+    final AtomicInteger processedNodes = new AtomicInteger(0);
+
+    final ExecutorService executor =
+        MostExecutors.newMultiThreadExecutor("ActionGraph", threadCount);
+    final Map<TargetNode<?, ?>, CompletableFuture<BuildRule>> rules = new HashMap<>();
+    try {
+      // Visiting nodes bottom-up guarantees the futures of a node's deps exist before its own.
+      new AbstractBottomUpTraversal<TargetNode<?, ?>, RuntimeException>(targetGraph) {
+        @Override
+        public void visit(final TargetNode<?, ?> node) {
+          CompletableFuture<?>[] deps = targetGraph.getOutgoingNodesFor(node).stream()
+              .map(rules::get)
+              .toArray(CompletableFuture<?>[]::new);
+          rules.put(
+              node,
+              CompletableFuture.allOf(deps).thenApplyAsync(
+                  ignored -> {
+                    BuildRule rule;
+                    try {
+                      rule = resolver.requireRule(node.getBuildTarget());
+                    } catch (NoSuchBuildTargetException e) {
+                      throw new HumanReadableException(e);
+                    }
+                    eventBus.post(ActionGraphEvent.processed(
+                        processedNodes.incrementAndGet(),
+                        numberOfNodes));
+                    return rule;
+                  },
+                  executor));
+        }
+      }.traverse();
+
+      CompletableFuture.allOf(rules.values().toArray(new CompletableFuture<?>[rules.size()]))
+          .join();
+    } catch (CompletionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw e;
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return ActionGraphAndResolver.builder()
+        .setActionGraph(new ActionGraph(resolver.getBuildRules()))
+        .setResolver(resolver)
+        .build();
+  }
+
   private static Map<BuildRule, RuleKey> getRuleKeysFromBuildRules(
       Iterable<BuildRule> buildRules,
       BuildRuleResolver buildRuleResolver,
@@ -202,43 +471,84 @@ public class ActionGraphCache {
       // We check that the lastActionGraph is not null because it's possible we had a
       // invalidateCache() between the scheduling and the execution of this task.
       LOG.info("ActionGraph integrity check spawned.");
-      Pair<TargetGraph, ActionGraphAndResolver> newActionGraph =
-          new Pair<TargetGraph, ActionGraphAndResolver>(
-              targetGraph,
-              createActionGraph(
-                  eventBus,
-                  new DefaultTargetNodeToBuildRuleTransformer(),
-                  targetGraph));
+      ActionGraphAndResolver newActionGraph =
+          createActionGraph(
+              eventBus,
+              new DefaultTargetNodeToBuildRuleTransformer(),
+              targetGraph);
 
       Map<BuildRule, RuleKey> lastActionGraphRuleKeys = getRuleKeysFromBuildRules(
           lastActionGraphAndResolver.getActionGraph().getNodes(),
           lastActionGraphAndResolver.getResolver(),
           keySeed);
       Map<BuildRule, RuleKey> newActionGraphRuleKeys = getRuleKeysFromBuildRules(
-          newActionGraph.getSecond().getActionGraph().getNodes(),
-          newActionGraph.getSecond().getResolver(),
+          newActionGraph.getActionGraph().getNodes(),
+          newActionGraph.getResolver(),
           keySeed);
 
       if (!lastActionGraphRuleKeys.equals(newActionGraphRuleKeys)) {
         invalidateCache();
-        String mismatchInfo = "RuleKeys of cached and new ActionGraph don't match:\n";
-        MapDifference<BuildRule, RuleKey> mismatchedRules =
-            Maps.difference(lastActionGraphRuleKeys, newActionGraphRuleKeys);
-        mismatchInfo +=
-            "Number of nodes in common/differing: " + mismatchedRules.entriesInCommon().size() +
-                "/" + mismatchedRules.entriesDiffering().size() + "\n" +
-                "Entries only in the cached ActionGraph: " +
-                mismatchedRules.entriesOnlyOnLeft().size() +
-                "Entries only in the newly created ActionGraph: " +
-                mismatchedRules.entriesOnlyOnRight().size() +
-                "The rules that did not match:\n";
-        mismatchInfo += mismatchedRules.entriesDiffering().keySet().toString();
+        String mismatchInfo = getMismatchInfo(
+            "cached",
+            lastActionGraphRuleKeys,
+            newActionGraphRuleKeys);
+        LOG.error(mismatchInfo);
+        throw new RuntimeException(mismatchInfo);
+      }
+    }
+  }
+
+  /**
+   * Compares a serially created action graph with one created concurrently from the same target
+   * graph, by generating and comparing content agnostic RuleKeys. In case of mismatch, the
+   * mismatching BuildRules are printed and the building process is stopped.
+   */
+  private static void checkActionGraphsMatch(
+      BuckEventBus eventBus,
+      String perfEventId,
+      ActionGraphAndResolver serialActionGraphAndResolver,
+      ActionGraphAndResolver parallelActionGraphAndResolver,
+      int keySeed) {
+    try (SimplePerfEvent.Scope scope = SimplePerfEvent.scope(
+        eventBus,
+        PerfEventId.of(perfEventId))) {
+      Map<BuildRule, RuleKey> serialRuleKeys = getRuleKeysFromBuildRules(
+          serialActionGraphAndResolver.getActionGraph().getNodes(),
+          serialActionGraphAndResolver.getResolver(),
+          keySeed);
+      Map<BuildRule, RuleKey> parallelRuleKeys = getRuleKeysFromBuildRules(
+          parallelActionGraphAndResolver.getActionGraph().getNodes(),
+          parallelActionGraphAndResolver.getResolver(),
+          keySeed);
+
+      if (!serialRuleKeys.equals(parallelRuleKeys)) {
+        String mismatchInfo = getMismatchInfo("serial", serialRuleKeys, parallelRuleKeys);
         LOG.error(mismatchInfo);
         throw new RuntimeException(mismatchInfo);
       }
     }
   }
 
+  private static String getMismatchInfo(
+      String expectedActionGraphName,
+      Map<BuildRule, RuleKey> expectedRuleKeys,
+      Map<BuildRule, RuleKey> actualRuleKeys) {
+    String mismatchInfo =
+        "RuleKeys of " + expectedActionGraphName + " and new ActionGraph don't match:\n";
+    MapDifference<BuildRule, RuleKey> mismatchedRules =
+        Maps.difference(expectedRuleKeys, actualRuleKeys);
+    mismatchInfo +=
+        "Number of nodes in common/differing: " + mismatchedRules.entriesInCommon().size() +
+            "/" + mismatchedRules.entriesDiffering().size() + "\n" +
+            "Entries only in the " + expectedActionGraphName + " ActionGraph: " +
+            mismatchedRules.entriesOnlyOnLeft().size() +
+            "Entries only in the newly created ActionGraph: " +
+            mismatchedRules.entriesOnlyOnRight().size() +
+            "The rules that did not match:\n";
+    mismatchInfo += mismatchedRules.entriesDiffering().keySet().toString();
+    return mismatchInfo;
+  }
+
   @Subscribe
   public void invalidateBasedOn(WatchEvent<?> event) {
     // We invalidate in every case except a modify event.
@@ -259,6 +569,15 @@ public class ActionGraphCache {
 
   private void invalidateCache() {
     lastActionGraph = null;
+    lastTargetNodeHashes = null;
+  }
+
+  public ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(
+        cacheHitCounter,
+        cacheMissCounter,
+        rulesReusedCounter,
+        rulesCreatedCounter);
   }
 
   @VisibleForTesting
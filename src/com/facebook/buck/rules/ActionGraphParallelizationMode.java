@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+/**
+ * Controls how {@link ActionGraphCache} transforms target graphs into action graphs.
+ */
+public enum ActionGraphParallelizationMode {
+  /** Create build rules one at a time, in a bottom-up traversal of the target graph. */
+  DISABLED,
+  /**
+   * Create the build rules of independent target nodes concurrently.  Descriptions must create the
+   * rules they may share with other target nodes through
+   * {@link BuildRuleResolver#computeIfAbsent}, rather than looking them up and adding them to the
+   * index.
+   */
+  ENABLED,
+  /**
+   * Create the action graph both concurrently and serially, and fail if their content agnostic
+   * rule keys differ.
+   */
+  COMPARE,
+}
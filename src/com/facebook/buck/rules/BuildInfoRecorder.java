@@ -31,6 +31,7 @@ import com.facebook.buck.model.BuildId;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.zip.ZipCompressionLevel;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
@@ -50,6 +51,8 @@ import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
@@ -58,6 +61,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -82,6 +86,11 @@ public class BuildInfoRecorder {
 
   private static final String BUCK_CACHE_DATA_ENV_VAR = "BUCK_CACHE_DATA";
 
+  // Files which deflate would barely shrink, as their contents are already compressed.
+  private static final ImmutableSet<String> COMPRESSED_FILE_EXTENSIONS = ImmutableSet.of(
+      "7z", "aar", "apk", "bz2", "gif", "gz", "jar", "jpeg", "jpg", "png", "tgz", "war", "webp",
+      "xz", "zip");
+
   private final BuildTarget buildTarget;
   private final Path pathToMetadataDirectory;
   private final ProjectFilesystem projectFilesystem;
@@ -92,6 +101,9 @@ public class BuildInfoRecorder {
   private final Map<String, String> metadataToWrite;
   private final Map<String, String> buildMetadata;
   private final AtomicBoolean warnedUserOfCacheStoreFailure;
+  private final int artifactCompressionLevel;
+  private final int artifactCompressionThreads;
+  private final boolean artifactCompressionSkipCompressedFiles;
 
   /**
    * Every value in this set is a path relative to the project root.
@@ -103,7 +115,10 @@ public class BuildInfoRecorder {
       Clock clock,
       BuildId buildId,
       ObjectMapper objectMapper,
-      ImmutableMap<String, String> environment) {
+      ImmutableMap<String, String> environment,
+      int artifactCompressionLevel,
+      int artifactCompressionThreads,
+      boolean artifactCompressionSkipCompressedFiles) {
     this.buildTarget = buildTarget;
     this.pathToMetadataDirectory =
         BuildInfo.getPathToMetadataDirectory(buildTarget, projectFilesystem);
@@ -123,6 +138,9 @@ public class BuildInfoRecorder {
     this.buildMetadata = Maps.newLinkedHashMap();
     this.pathsToOutputs = Sets.newHashSet();
     this.warnedUserOfCacheStoreFailure = new AtomicBoolean(false);
+    this.artifactCompressionLevel = artifactCompressionLevel;
+    this.artifactCompressionThreads = artifactCompressionThreads;
+    this.artifactCompressionSkipCompressedFiles = artifactCompressionSkipCompressedFiles;
   }
 
   private String toJson(Object value) {
@@ -284,16 +302,56 @@ public class BuildInfoRecorder {
    * Creates a zip file of the metadata and recorded artifacts and stores it in the artifact cache.
    */
   public void performUploadToArtifactCache(
-      final ImmutableSet<RuleKey> ruleKeys,
+      ImmutableSet<RuleKey> ruleKeys,
       ArtifactCache artifactCache,
-      final BuckEventBus eventBus) {
+      BuckEventBus eventBus) {
+    performUploadToArtifactCache(
+        ruleKeys,
+        artifactCache,
+        eventBus,
+        MoreExecutors.newDirectExecutorService(),
+        MoreExecutors.newDirectExecutorService());
+  }
+
+  /**
+   * Like {@link #performUploadToArtifactCache(ImmutableSet, ArtifactCache, BuckEventBus)}, but
+   * creates the zip on {@code executor} and compresses it on {@code compressionExecutor}, so that
+   * large outputs don't hold up the calling thread.  The compression work must not go through
+   * anything which bounds {@code executor}, as the zip waits for it.
+   *
+   * @return a future which completes once the zip has been handed to the artifact cache.
+   */
+  public ListenableFuture<Void> performUploadToArtifactCache(
+      final ImmutableSet<RuleKey> ruleKeys,
+      final ArtifactCache artifactCache,
+      final BuckEventBus eventBus,
+      final ListeningExecutorService executor,
+      final ListeningExecutorService compressionExecutor) {
 
     // Skip all of this if caching is disabled. Although artifactCache.store() will be a noop,
     // building up the zip is wasted I/O.
     if (!artifactCache.isStoreSupported()) {
-      return;
+      return Futures.immediateFuture(null);
     }
 
+    // Capture the metadata now, as it records when the artifact was built.
+    final ImmutableMap<String, String> buildMetadata = getBuildMetadata();
+    return executor.submit(
+        () -> createZipAndUpload(
+            ruleKeys,
+            buildMetadata,
+            artifactCache,
+            eventBus,
+            compressionExecutor),
+        null);
+  }
+
+  private void createZipAndUpload(
+      final ImmutableSet<RuleKey> ruleKeys,
+      ImmutableMap<String, String> buildMetadata,
+      ArtifactCache artifactCache,
+      final BuckEventBus eventBus,
+      ListeningExecutorService compressionExecutor) {
     ArtifactCompressionEvent.Started started = ArtifactCompressionEvent.started(
         ArtifactCompressionEvent.Operation.COMPRESS,
         ruleKeys);
@@ -301,14 +359,19 @@ public class BuildInfoRecorder {
 
     final Path zip;
     ImmutableSet<Path> pathsToIncludeInZip = ImmutableSet.of();
-    ImmutableMap<String, String> buildMetadata;
     try {
       pathsToIncludeInZip = getRecordedDirsAndFiles();
       zip = Files.createTempFile(
           "buck_artifact_" + MoreFiles.sanitize(buildTarget.getShortName()),
           ".zip");
-      buildMetadata = getBuildMetadata();
-      projectFilesystem.createZip(pathsToIncludeInZip, zip, ImmutableMap.of());
+      projectFilesystem.createZip(
+          pathsToIncludeInZip,
+          zip,
+          compressionExecutor,
+          artifactCompressionThreads,
+          path -> artifactCompressionSkipCompressedFiles && isCompressedFile(path) ?
+              ZipCompressionLevel.MIN_COMPRESSION_LEVEL.getValue() :
+              artifactCompressionLevel);
     } catch (IOException e) {
       eventBus.post(ConsoleEvent.info("Failed to create zip for %s containing:\n%s",
           buildTarget,
@@ -352,6 +415,12 @@ public class BuildInfoRecorder {
         });
   }
 
+
+  private static boolean isCompressedFile(Path path) {
+    return COMPRESSED_FILE_EXTENSIONS.contains(
+        com.google.common.io.Files.getFileExtension(path.toString()).toLowerCase(Locale.US));
+  }
+
   /**
    * Fetches the artifact associated with the {@link #buildTarget} for this class and writes it to
    * the specified {@code outputFile}.
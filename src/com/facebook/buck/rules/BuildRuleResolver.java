@@ -27,10 +27,17 @@ import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Uninterruptibles;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
@@ -39,6 +46,15 @@ import javax.annotation.Nullable;
 /**
  * Provides a mechanism for mapping between a {@link BuildTarget} and the {@link BuildRule} it
  * represents. Once parsing is complete, instances of this class can be considered immutable.
+ * <p>
+ * {@link #requireRule(BuildTarget)} and {@link #computeIfAbsent} may be called concurrently: each
+ * rule is created exactly once, by the first thread to require it, and other threads requiring it
+ * meanwhile wait for it.  A thread which would wait, directly or through other waiting threads, for
+ * a rule it is creating itself fails instead, as that means the rules depend on each other.
+ * <p>
+ * A resolver may be seeded with rules from a previous action graph which are known to be
+ * unaffected by any change to the target graph since.  Those rules (and the reusable rules they
+ * depend on) are indexed, instead of being created anew, when first looked up.
  */
 public class BuildRuleResolver {
 
@@ -53,6 +69,9 @@ public class BuildRuleResolver {
   private final BuckEventBus eventBus;
 
   private final ConcurrentHashMap<BuildTarget, BuildRule> buildRuleIndex;
+  private final ConcurrentHashMap<BuildTarget, PendingRule> pendingRules;
+  private final ConcurrentHashMap<Thread, PendingRule> awaitedRules;
+  private final ImmutableMap<BuildTarget, BuildRule> reusableRules;
   private final LoadingCache<Pair<BuildTarget, Class<?>>, Optional<?>> metadataCache;
 
   public BuildRuleResolver(
@@ -65,10 +84,25 @@ public class BuildRuleResolver {
       TargetGraph targetGraph,
       TargetNodeToBuildRuleTransformer buildRuleGenerator,
       @Nullable BuckEventBus eventBus) {
+    this(targetGraph, buildRuleGenerator, eventBus, ImmutableMap.of());
+  }
+
+  /**
+   * @param reusableRules rules, keyed as they were indexed in a previous resolver, to reuse in
+   *     place of creating them again.
+   */
+  public BuildRuleResolver(
+      TargetGraph targetGraph,
+      TargetNodeToBuildRuleTransformer buildRuleGenerator,
+      @Nullable BuckEventBus eventBus,
+      ImmutableMap<BuildTarget, BuildRule> reusableRules) {
     this.targetGraph = targetGraph;
     this.buildRuleGenerator = buildRuleGenerator;
     this.eventBus = eventBus;
     this.buildRuleIndex = new ConcurrentHashMap<>();
+    this.pendingRules = new ConcurrentHashMap<>();
+    this.awaitedRules = new ConcurrentHashMap<>();
+    this.reusableRules = reusableRules;
     this.metadataCache = CacheBuilder.newBuilder()
         .build(
             new CacheLoader<Pair<BuildTarget, Class<?>>, Optional<?>>() {
@@ -109,6 +143,44 @@ public class BuildRuleResolver {
     return Iterables.unmodifiableIterable(buildRuleIndex.values());
   }
 
+  /**
+   * @return a snapshot of the index, keyed by the targets the rules were indexed under.
+   */
+  ImmutableMap<BuildTarget, BuildRule> getBuildRuleIndex() {
+    return ImmutableMap.copyOf(buildRuleIndex);
+  }
+
+  @Nullable
+  private BuildRule getIndexedRule(BuildTarget target) {
+    BuildRule rule = buildRuleIndex.get(target);
+    if (rule == null && !reusableRules.isEmpty()) {
+      rule = indexReusableRule(target);
+    }
+    return rule;
+  }
+
+  @Nullable
+  private BuildRule indexReusableRule(BuildTarget target) {
+    BuildRule reusableRule = reusableRules.get(target);
+    if (reusableRule == null) {
+      return null;
+    }
+    // Index the reusable rules this one depends on too, so that they're part of the action graph.
+    Deque<Pair<BuildTarget, BuildRule>> toIndex = new ArrayDeque<>();
+    toIndex.add(new Pair<>(target, reusableRule));
+    while (!toIndex.isEmpty()) {
+      Pair<BuildTarget, BuildRule> entry = toIndex.pop();
+      if (buildRuleIndex.putIfAbsent(entry.getFirst(), entry.getSecond()) == null) {
+        for (BuildRule dep : entry.getSecond().getDeps()) {
+          if (reusableRules.get(dep.getBuildTarget()) == dep) {
+            toIndex.add(new Pair<>(dep.getBuildTarget(), dep));
+          }
+        }
+      }
+    }
+    return buildRuleIndex.get(target);
+  }
+
   private <T> T fromNullable(BuildTarget target, @Nullable T rule) {
     if (rule == null) {
       throw new HumanReadableException("Rule for target '%s' could not be resolved.", target);
@@ -120,20 +192,114 @@ public class BuildRuleResolver {
    * Returns the {@link BuildRule} with the {@code buildTarget}.
    */
   public BuildRule getRule(BuildTarget buildTarget) {
-    return fromNullable(buildTarget, buildRuleIndex.get(buildTarget));
+    return fromNullable(buildTarget, getIndexedRule(buildTarget));
   }
 
   public Optional<BuildRule> getRuleOptional(BuildTarget buildTarget) {
-    return Optional.ofNullable(buildRuleIndex.get(buildTarget));
+    return Optional.ofNullable(getIndexedRule(buildTarget));
   }
 
   public BuildRule requireRule(BuildTarget target) throws NoSuchBuildTargetException {
-    BuildRule rule = buildRuleIndex.get(target);
+    BuildRule rule = getIndexedRule(target);
     if (rule != null) {
       return rule;
     }
+
+    PendingRule pendingRule = new PendingRule();
+    PendingRule existingPendingRule = pendingRules.putIfAbsent(target, pendingRule);
+    if (existingPendingRule != null) {
+      return await(target, existingPendingRule);
+    }
+    return createPendingRule(target, pendingRule, () -> createRule(target));
+  }
+
+  /**
+   * Returns the rule indexed under {@code target}, first creating it with {@code creator} and
+   * indexing it if there is none.
+   * <p>
+   * Unlike looking the rule up and then calling {@link #addToIndex(BuildRule)}, this is safe to
+   * call concurrently: as with {@link #requireRule(BuildTarget)}, the rule is created exactly once,
+   * by the first thread to ask for it, and other threads asking for it meanwhile wait for it.
+   * <p>
+   * As with rules created from target nodes, the created rule may carry different flavors than
+   * {@code target}, and is indexed under {@code target}.  The rule for a target which this thread
+   * is already creating, e.g. by a description for its own target, is created and indexed
+   * directly, and must be the rule the outer creation returns.
+   */
+  public <T extends BuildRule, E extends Exception> T computeIfAbsent(
+      BuildTarget target,
+      Class<T> ruleClass,
+      RuleCreator<T, E> creator) throws E {
+    BuildRule rule = getIndexedRule(target);
+    if (rule == null) {
+      PendingRule pendingRule = new PendingRule();
+      PendingRule existingPendingRule = pendingRules.putIfAbsent(target, pendingRule);
+      if (existingPendingRule != null && existingPendingRule.owner == Thread.currentThread()) {
+        rule = indexCreatedRule(target, creator);
+      } else if (existingPendingRule != null) {
+        try {
+          rule = await(target, existingPendingRule);
+        } catch (NoSuchBuildTargetException e) {
+          throw new HumanReadableException(e);
+        }
+      } else {
+        rule = createPendingRule(target, pendingRule, () -> indexCreatedRule(target, creator));
+      }
+    }
+    if (!ruleClass.isInstance(rule)) {
+      throw new HumanReadableException(
+          "Rule for target '%s' is present but not of expected type %s (got %s)",
+          target,
+          ruleClass,
+          rule.getClass());
+    }
+    return ruleClass.cast(rule);
+  }
+
+  private <E extends Exception> BuildRule createPendingRule(
+      BuildTarget target,
+      PendingRule pendingRule,
+      RuleCreator<?, E> creator) throws E {
+    try {
+      // The rule may have been indexed, and its pending entry removed, since we last checked.
+      BuildRule rule = buildRuleIndex.get(target);
+      if (rule == null) {
+        rule = creator.create();
+      }
+      pendingRule.complete(rule);
+      return rule;
+    } catch (Throwable t) {
+      pendingRule.completeExceptionally(t);
+      throw t;
+    } finally {
+      pendingRules.remove(target, pendingRule);
+    }
+  }
+
+  private <T extends BuildRule, E extends Exception> T indexCreatedRule(
+      BuildTarget target,
+      RuleCreator<T, E> creator) throws E {
+    T rule = creator.create();
+    Preconditions.checkState(
+        rule.getBuildTarget().getUnflavoredBuildTarget().equals(target.getUnflavoredBuildTarget()),
+        "Created rule for '%s' instead of '%s'.",
+        rule.getBuildTarget(),
+        target);
+    BuildRule oldRule = buildRuleIndex.putIfAbsent(target, rule);
+    Preconditions.checkState(
+        // As in createRule, the creator may have added the rule to the index itself.
+        oldRule == null || oldRule == rule,
+        "Multiple rules created for target '%s':\n" +
+            "new rule '%s' does not match existing rule '%s'.",
+        target,
+        rule,
+        oldRule);
+    return rule;
+  }
+
+  private BuildRule createRule(BuildTarget target) throws NoSuchBuildTargetException {
     TargetNode<?, ?> node = targetGraph.get(target);
-    rule = buildRuleGenerator.transform(targetGraph, this, node);
+    BuildRule rule = buildRuleGenerator.transform(targetGraph, this, node);
     Preconditions.checkState(
         // TODO(k21): This should hold for flavored build targets as well.
         rule.getBuildTarget().getUnflavoredBuildTarget().equals(target.getUnflavoredBuildTarget()),
@@ -179,7 +345,7 @@ public class BuildRuleResolver {
   public <T> Optional<T> getRuleOptionalWithType(
       BuildTarget buildTarget,
       Class<T> cls) {
-    BuildRule rule = buildRuleIndex.get(buildTarget);
+    BuildRule rule = getIndexedRule(buildTarget);
     if (rule != null) {
       if (cls.isInstance(rule)) {
         return Optional.of((T) rule);
@@ -212,7 +378,7 @@ public class BuildRuleResolver {
    */
   @VisibleForTesting
   public <T extends BuildRule> T addToIndex(T buildRule) {
-    BuildRule oldValue = buildRuleIndex.put(buildRule.getBuildTarget(), buildRule);
+    BuildRule oldValue = buildRuleIndex.putIfAbsent(buildRule.getBuildTarget(), buildRule);
     // Yuck! This is here to make it possible for a rule to depend on a flavor of itself but it
     // would be much much better if we just got rid of the BuildRuleResolver entirely.
     if (oldValue != null && oldValue != buildRule) {
@@ -236,4 +402,48 @@ public class BuildRuleResolver {
   public BuckEventBus getEventBus() {
     return eventBus;
   }
+
+  /**
+   * Creates a rule for {@link #computeIfAbsent}.
+   */
+  public interface RuleCreator<T extends BuildRule, E extends Exception> {
+    T create() throws E;
+  }
+
+  /**
+   * Waits for a rule another thread is creating, failing if that thread is itself (transitively)
+   * waiting for a rule this thread is creating.
+   */
+  private BuildRule await(
+      BuildTarget target,
+      PendingRule pendingRule) throws NoSuchBuildTargetException {
+    Thread currentThread = Thread.currentThread();
+    // Publish what we wait for before walking the chain of waiting threads, so that of two threads
+    // closing a cycle at the same time, at least the second sees the first waiting.
+    awaitedRules.put(currentThread, pendingRule);
+    try {
+      Set<Thread> visited = new HashSet<>();
+      PendingRule awaited = pendingRule;
+      while (awaited != null && visited.add(awaited.owner)) {
+        Preconditions.checkState(
+            awaited.owner != currentThread,
+            "Cycle detected while creating the rule for '%s'.",
+            target);
+        awaited = awaitedRules.get(awaited.owner);
+      }
+      return Uninterruptibles.getUninterruptibly(pendingRule);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), NoSuchBuildTargetException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      awaitedRules.remove(currentThread);
+    }
+  }
+
+  /**
+   * A rule which is being created by some thread, for other threads requiring it to wait on.
+   */
+  private static class PendingRule extends CompletableFuture<BuildRule> {
+    private final Thread owner = Thread.currentThread();
+  }
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.util.ChecksummedFiles;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An on-disk record of how long rules took to build locally, which survives daemon restarts and
+ * is used to estimate how long they will take next time. Other named work, such as the test cases
+ * of test rules, can be recorded under keys of its own in a history stored elsewhere.
+ * <p>
+ * Estimates are an exponentially weighted moving average of the recorded durations, so a rule
+ * whose cost changes converges on its new cost within a few builds. Rules which haven't been built
+ * locally for {@link #MAX_ENTRY_AGE_MILLIS} are forgotten when the history is saved.
+ */
+public class BuildRuleTimingHistory {
+
+  private static final Logger LOG = Logger.get(BuildRuleTimingHistory.class);
+
+  private static final int MAGIC = 0x4255_5254;
+  private static final int VERSION = 1;
+
+  /**
+   * The weight given to the latest duration when updating an estimate.
+   */
+  @VisibleForTesting
+  static final double SMOOTHING_FACTOR = 0.5;
+
+  private static final long MAX_ENTRY_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+  private final ProjectFilesystem projectFilesystem;
+  private final Path storePath;
+  private final ConcurrentMap<String, Entry> entries;
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+  private BuildRuleTimingHistory(
+      ProjectFilesystem projectFilesystem,
+      Path storePath,
+      ConcurrentMap<String, Entry> entries) {
+    this.projectFilesystem = projectFilesystem;
+    this.storePath = storePath;
+    this.entries = entries;
+  }
+
+  /**
+   * Loads the history from {@code storePath}, relative to the root of {@code projectFilesystem}.
+   * A missing, truncated or otherwise invalid history is discarded and an empty one is returned.
+   */
+  public static BuildRuleTimingHistory load(ProjectFilesystem projectFilesystem, Path storePath) {
+    ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    if (projectFilesystem.isFile(storePath)) {
+      try (InputStream inputStream = projectFilesystem.newFileInputStream(storePath)) {
+        entries = ChecksummedFiles.read(
+            inputStream,
+            MAGIC,
+            VERSION,
+            BuildRuleTimingHistory::readEntries);
+        LOG.debug("Loaded %d rule timings from %s", entries.size(), storePath);
+      } catch (IOException e) {
+        LOG.warn(e, "Discarding invalid rule timing history %s", storePath);
+      }
+    }
+    return new BuildRuleTimingHistory(projectFilesystem, storePath, entries);
+  }
+
+  private static ConcurrentMap<String, Entry> readEntries(DataInputStream inputStream)
+      throws IOException {
+    int count = inputStream.readInt();
+    if (count < 0) {
+      throw new IOException("Negative entry count");
+    }
+    ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    for (int i = 0; i < count; i++) {
+      String target = inputStream.readUTF();
+      long estimatedDurationMillis = inputStream.readLong();
+      long lastRecordedMillis = inputStream.readLong();
+      entries.put(target, new Entry(estimatedDurationMillis, lastRecordedMillis));
+    }
+    return entries;
+  }
+
+  /**
+   * Atomically writes the history back to disk if any durations have been recorded since it was
+   * loaded or last saved.
+   */
+  public void save() throws IOException {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    long expiry = System.currentTimeMillis() - MAX_ENTRY_AGE_MILLIS;
+    entries.values().removeIf(entry -> entry.lastRecordedMillis < expiry);
+
+    List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+    try {
+      ChecksummedFiles.write(
+          projectFilesystem.resolve(storePath),
+          MAGIC,
+          VERSION,
+          outputStream -> {
+            outputStream.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> mapEntry : snapshot) {
+              outputStream.writeUTF(mapEntry.getKey());
+              outputStream.writeLong(mapEntry.getValue().estimatedDurationMillis);
+              outputStream.writeLong(mapEntry.getValue().lastRecordedMillis);
+            }
+          });
+    } catch (IOException e) {
+      dirty.set(true);
+      throw e;
+    }
+    LOG.debug("Saved %d rule timings to %s", snapshot.size(), storePath);
+  }
+
+  /**
+   * @return how long {@code target} is expected to take to build locally, if it has been built
+   *     locally before.
+   */
+  public Optional<Long> getEstimatedDurationMillis(BuildTarget target) {
+    return getEstimatedDurationMillis(target.getFullyQualifiedName());
+  }
+
+  /**
+   * @return how long the work recorded under {@code key} is expected to take, if it has been
+   *     recorded before.
+   */
+  public Optional<Long> getEstimatedDurationMillis(String key) {
+    Entry entry = entries.get(key);
+    return entry == null ? Optional.empty() : Optional.of(entry.estimatedDurationMillis);
+  }
+
+  /**
+   * Folds the time {@code target} just took to build locally into its estimate.
+   */
+  public void record(BuildTarget target, long durationMillis) {
+    record(target.getFullyQualifiedName(), durationMillis);
+  }
+
+  /**
+   * Folds the time the work recorded under {@code key} just took into its estimate.
+   */
+  public void record(String key, long durationMillis) {
+    long now = System.currentTimeMillis();
+    entries.merge(
+        key,
+        new Entry(durationMillis, now),
+        (previous, latest) -> new Entry(
+            Math.round(
+                SMOOTHING_FACTOR * latest.estimatedDurationMillis +
+                    (1 - SMOOTHING_FACTOR) * previous.estimatedDurationMillis),
+            now));
+    dirty.set(true);
+  }
+
+  public Path getStorePath() {
+    return storePath;
+  }
+
+  private static class Entry {
+    private final long estimatedDurationMillis;
+    private final long lastRecordedMillis;
+
+    private Entry(long estimatedDurationMillis, long lastRecordedMillis) {
+      this.estimatedDurationMillis = estimatedDurationMillis;
+      this.lastRecordedMillis = lastRecordedMillis;
+    }
+  }
+}
@@ -32,6 +32,7 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.keys.DefaultDependencyFileRuleKeyFactory;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.rules.keys.DefaultRuleKeyFactory;
 import com.facebook.buck.rules.keys.DependencyFileEntry;
 import com.facebook.buck.rules.keys.DependencyFileRuleKeyFactory;
@@ -40,6 +41,7 @@ import com.facebook.buck.rules.keys.InputCountingRuleKeyFactory;
 import com.facebook.buck.rules.keys.SupportsDependencyFileRuleKey;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepFailedException;
 import com.facebook.buck.step.StepRunner;
@@ -51,7 +53,9 @@ import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.OptionalCompat;
 import com.facebook.buck.util.cache.DefaultFileHashCache;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.util.concurrent.ListeningMultiSemaphore;
 import com.facebook.buck.util.concurrent.MoreFutures;
+import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
 import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.zip.Unzip;
@@ -103,6 +107,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -123,9 +128,9 @@ public class CachingBuildEngine implements BuildEngine {
       0, 0, 1, 0);
   public static final ResourceAmounts SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS = ResourceAmounts.ZERO;
 
-  private static final String BUILD_RULE_TYPE_CONTEXT_KEY = "build_rule_type";
-  private static final String STEP_TYPE_CONTEXT_KEY = "step_type";
-  private static enum StepType {
+  static final String BUILD_RULE_TYPE_CONTEXT_KEY = "build_rule_type";
+  static final String STEP_TYPE_CONTEXT_KEY = "step_type";
+  static enum StepType {
     BUILD_STEP,
     POST_BUILD_STEP,
     ;
@@ -141,6 +146,21 @@ public class CachingBuildEngine implements BuildEngine {
   private final ConcurrentMap<BuildTarget, ListenableFuture<RuleKey>> ruleKeys =
       Maps.newConcurrentMap();
 
+  /**
+   * Artifacts fetched by {@link #prefetchArtifacts} ahead of the builds of the rules they belong
+   * to, which take them out of here when they check the cache.
+   */
+  private final ConcurrentMap<BuildTarget, PrefetchedArtifact> prefetchedArtifacts =
+      Maps.newConcurrentMap();
+
+  /**
+   * Bounds how many artifacts are zipped and uploaded at once, so that a burst of rules finishing
+   * together doesn't queue up an upload, and hold its zip on disk, for every one of them.
+   */
+  private final ListeningMultiSemaphore uploadSemaphore = new ListeningMultiSemaphore(
+      ResourceAmounts.of(Runtime.getRuntime().availableProcessors(), 0, 0, 0),
+      ResourceAllocationFairness.FAIR);
+
   private final RuleDepsCache ruleDeps;
   private final Optional<UnskippedRulesTracker> unskippedRulesTracker;
 
@@ -159,6 +179,7 @@ public class CachingBuildEngine implements BuildEngine {
   private final LoadingCache<ProjectFilesystem, FileHashCache> fileHashCaches;
   private final LoadingCache<ProjectFilesystem, RuleKeyFactories> ruleKeyFactories;
   private final ResourceAwareSchedulingInfo resourceAwareSchedulingInfo;
+  private final Optional<CriticalPathScheduler> criticalPathScheduler;
 
   public CachingBuildEngine(
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
@@ -173,6 +194,44 @@ public class CachingBuildEngine implements BuildEngine {
       final BuildRuleResolver resolver,
       final int keySeed,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo) {
+    this(
+        cachingBuildEngineDelegate,
+        service,
+        stepRunner,
+        buildMode,
+        depFiles,
+        maxDepFileCacheEntries,
+        artifactCacheSizeLimit,
+        inputRuleKeyFileSizeLimit,
+        objectMapper,
+        resolver,
+        keySeed,
+        resourceAwareSchedulingInfo,
+        Optional.empty(),
+        Optional.empty());
+  }
+
+  /**
+   * @param defaultRuleKeyCache a daemon-scoped cache of default rule keys to share across builds.
+   *     It is only consulted for rules in the cell whose filesystem it watches.
+   * @param criticalPathScheduler if present, prioritizes the rules of the build by their
+   *     estimated longest remaining path, once {@link #getNumRulesToBuild} has walked them.
+   */
+  public CachingBuildEngine(
+      CachingBuildEngineDelegate cachingBuildEngineDelegate,
+      WeightedListeningExecutorService service,
+      StepRunner stepRunner,
+      BuildMode buildMode,
+      DepFiles depFiles,
+      long maxDepFileCacheEntries,
+      Optional<Long> artifactCacheSizeLimit,
+      final long inputRuleKeyFileSizeLimit,
+      ObjectMapper objectMapper,
+      final BuildRuleResolver resolver,
+      final int keySeed,
+      ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      final Optional<DefaultRuleKeyCache> defaultRuleKeyCache,
+      Optional<CriticalPathScheduler> criticalPathScheduler) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
 
     this.ruleDeps = new RuleDepsCache(service);
@@ -196,10 +255,14 @@ public class CachingBuildEngine implements BuildEngine {
                 keySeed,
                 fileHashCaches.get(filesystem),
                 resolver,
-                inputRuleKeyFileSizeLimit);
+                inputRuleKeyFileSizeLimit,
+                defaultRuleKeyCache.filter(
+                    cache -> cache.getFilesystem().getRootPath().equals(
+                        filesystem.getRootPath())));
           }
         });
     this.resourceAwareSchedulingInfo = resourceAwareSchedulingInfo;
+    this.criticalPathScheduler = criticalPathScheduler;
   }
 
   /**
@@ -240,6 +303,7 @@ public class CachingBuildEngine implements BuildEngine {
           }
         });
     this.resourceAwareSchedulingInfo = resourceAwareSchedulingInfo;
+    this.criticalPathScheduler = Optional.empty();
   }
 
   /**
@@ -296,7 +360,10 @@ public class CachingBuildEngine implements BuildEngine {
       ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks) {
     List<ListenableFuture<BuildResult>> depResults =
         Lists.newArrayListWithExpectedSize(rule.getDeps().size());
-    for (BuildRule dep : shuffled(rule.getDeps())) {
+    List<BuildRule> deps = criticalPathScheduler.isPresent() ?
+        criticalPathScheduler.get().sortByPriority(rule.getDeps()) :
+        shuffled(rule.getDeps());
+    for (BuildRule dep : deps) {
       depResults.add(
           getBuildRuleResultWithRuntimeDeps(dep, buildContext, executionContext, asyncCallbacks));
     }
@@ -346,7 +413,10 @@ public class CachingBuildEngine implements BuildEngine {
                   cacheResult);
             }
           },
-          getRuleResourceAmounts(rule));
+          getRuleResourceAmounts(rule),
+          criticalPathScheduler.isPresent() ?
+              criticalPathScheduler.get().getPriority(rule) :
+              ListeningMultiSemaphore.DEFAULT_PRIORITY);
     };
   }
 
@@ -498,9 +568,25 @@ public class CachingBuildEngine implements BuildEngine {
       }
 
       // 3. Build deps.
+      ListenableFuture<List<BuildResult>> depResults;
+      if (buildContext.isArtifactCachePrefetchEnabled()) {
+        depResults = Futures.transformAsync(
+            prefetchArtifacts(rule.getDeps(), buildContext),
+            prefetchedTargets -> {
+              ListenableFuture<List<BuildResult>> builtDeps =
+                  getDepResults(rule, buildContext, executionContext, asyncCallbacks);
+              builtDeps.addListener(
+                  () -> discardPrefetchedArtifacts(prefetchedTargets),
+                  MoreExecutors.directExecutor());
+              return builtDeps;
+            },
+            serviceByAdjustingDefaultWeightsTo(SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS));
+      } else {
+        depResults = getDepResults(rule, buildContext, executionContext, asyncCallbacks);
+      }
       ListenableFuture<List<BuildResult>> getDepResults =
           Futures.transformAsync(
-              getDepResults(rule, buildContext, executionContext, asyncCallbacks),
+              depResults,
               input -> Futures.transform(
                   markRuleAsUsed(rule, buildContext.getEventBus()),
                   Functions.constant(input)),
@@ -805,7 +891,11 @@ public class CachingBuildEngine implements BuildEngine {
 
     // Handle either build success or failure.
     final SettableFuture<BuildResult> result = SettableFuture.create();
-    asyncCallbacks.add(
+    // Artifacts are zipped up and uploaded to the cache in the background, so that compressing
+    // large outputs doesn't tie up a build thread, but the build still waits for them to finish.
+    final AtomicReference<ListenableFuture<Void>> upload =
+        new AtomicReference<>(Futures.immediateFuture(null));
+    ListenableFuture<Void> callbackFuture =
         MoreFutures.addListenableCallback(
             buildResult,
             new FutureCallback<BuildResult>() {
@@ -871,10 +961,26 @@ public class CachingBuildEngine implements BuildEngine {
                     }
 
                     // Push to cache.
-                    buildInfoRecorder.performUploadToArtifactCache(
-                        ImmutableSet.copyOf(ruleKeys),
-                        buildContext.getArtifactCache(),
-                        buildContext.getEventBus());
+                    upload.set(
+                        Futures.catching(
+                            buildInfoRecorder.performUploadToArtifactCache(
+                                ImmutableSet.copyOf(ruleKeys),
+                                buildContext.getArtifactCache(),
+                                buildContext.getEventBus(),
+                                new WeightedListeningExecutorService(
+                                    uploadSemaphore,
+                                    ResourceAmounts.of(1, 0, 0, 0),
+                                    executionContext.getExecutorService(ExecutorPool.CPU)),
+                                executionContext.getExecutorService(ExecutorPool.CPU)),
+                            Throwable.class,
+                            t -> {
+                              buildContext.getEventBus().post(
+                                  ThrowableConsoleEvent.create(
+                                      t,
+                                      "Error uploading to cache for %s.",
+                                      rule));
+                              return null;
+                            }));
 
                   } catch (Throwable t) {
                     buildContext.getEventBus().post(
@@ -1012,7 +1118,8 @@ public class CachingBuildEngine implements BuildEngine {
                 }
               }
 
-            }));
+            });
+    asyncCallbacks.add(Futures.transformAsync(callbackFuture, ignored -> upload.get()));
     return result;
   }
 
@@ -1159,15 +1266,37 @@ public class CachingBuildEngine implements BuildEngine {
       }
     }
     Futures.getUnchecked(Futures.allAsList(results.build()));
+    if (criticalPathScheduler.isPresent()) {
+      // Every rule's deps have been loaded by the walk, so this doesn't block.
+      criticalPathScheduler.get().prepare(
+          rules,
+          rule -> Futures.getUnchecked(ruleDeps.get(rule)));
+    }
     return seen.size();
   }
 
-  private synchronized ListenableFuture<RuleKey> calculateRuleKey(
+  @VisibleForTesting
+  ListenableFuture<RuleKey> calculateRuleKey(
       final BuildRule rule,
       final BuildEngineBuildContext context) {
-    ListenableFuture<RuleKey> ruleKey = ruleKeys.get(rule.getBuildTarget());
-    if (ruleKey == null) {
+    ListenableFuture<RuleKey> existingRuleKey = ruleKeys.get(rule.getBuildTarget());
+    if (existingRuleKey != null) {
+      return existingRuleKey;
+    }
 
+    // Atomically claim this rule's slot with a placeholder future, so that only one caller sets
+    // up the computation without serializing all rule key scheduling through a single lock.  We
+    // can't use `computeIfAbsent` here, as setting up the futures below may recursively register
+    // dep rule keys on this thread when they're already available.
+    SettableFuture<RuleKey> ruleKey = SettableFuture.create();
+    existingRuleKey = ruleKeys.putIfAbsent(rule.getBuildTarget(), ruleKey);
+    if (existingRuleKey != null) {
+      return existingRuleKey;
+    }
+
+    // Every other caller now waits on the placeholder, so it must be resolved even if setting up
+    // the computation fails.
+    try {
       // Grab all the dependency rule key futures.  Since our rule key calculation depends on this
       // one, we need to wait for them to complete.
       ListenableFuture<List<RuleKey>> depKeys =
@@ -1186,25 +1315,26 @@ public class CachingBuildEngine implements BuildEngine {
       final RuleKeyFactories keyFactories =
           ruleKeyFactories.getUnchecked(rule.getProjectFilesystem());
 
-      // Setup a future to calculate this rule key once the dependencies have been calculated.
-      ruleKey = Futures.transform(
-          depKeys,
-          new Function<List<RuleKey>, RuleKey>() {
-            @Override
-            public RuleKey apply(List<RuleKey> input) {
-              try (BuildRuleEvent.Scope scope =
-                       BuildRuleEvent.startSuspendScope(
-                           context.getEventBus(),
-                           rule,
-                           keyFactories.defaultRuleKeyFactory)) {
-                return keyFactories.defaultRuleKeyFactory.build(rule);
-              }
-            }
-          },
-          serviceByAdjustingDefaultWeightsTo(RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS));
-
-      // Record the rule key future.
-      ruleKeys.put(rule.getBuildTarget(), ruleKey);
+      // Setup a future to calculate this rule key once the dependencies have been calculated, and
+      // resolve the placeholder with it.
+      ruleKey.setFuture(
+          Futures.transform(
+              depKeys,
+              new Function<List<RuleKey>, RuleKey>() {
+                @Override
+                public RuleKey apply(List<RuleKey> input) {
+                  try (BuildRuleEvent.Scope scope =
+                           BuildRuleEvent.startSuspendScope(
+                               context.getEventBus(),
+                               rule,
+                               keyFactories.defaultRuleKeyFactory)) {
+                    return keyFactories.defaultRuleKeyFactory.build(rule);
+                  }
+                }
+              },
+              serviceByAdjustingDefaultWeightsTo(RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS)));
+    } catch (RuntimeException | Error e) {
+      ruleKey.setException(e);
     }
 
     return ruleKey;
@@ -1243,9 +1373,229 @@ public class CachingBuildEngine implements BuildEngine {
       return CacheResult.ignored();
     }
 
+    final LazyPath lazyZipPath;
+    CacheResult cacheResult;
+    PrefetchedArtifact prefetchedArtifact = prefetchedArtifacts.remove(rule.getBuildTarget());
+    if (prefetchedArtifact != null &&
+        (!prefetchedArtifact.ruleKey.equals(ruleKey) ||
+            prefetchedArtifact.cacheResult.getType() == CacheResultType.ERROR)) {
+      prefetchedArtifact.discard();
+      prefetchedArtifact = null;
+    }
+    if (prefetchedArtifact != null) {
+      lazyZipPath = prefetchedArtifact.lazyZipPath;
+      cacheResult = prefetchedArtifact.cacheResult;
+    } else if (buildContext.isArtifactCacheStreamingFetchEnabled() &&
+        artifactCache.isStreamingFetchSupported()) {
+      return fetchArtifactStreamingAndOverlayOnTopOfProjectFilesystem(
+          rule,
+          ruleKey,
+          artifactCache,
+          filesystem,
+          buildContext);
+    } else {
+      lazyZipPath = createLazyZipPath(rule);
+      // TODO(bolinfest): Change ArtifactCache.fetch() so that it returns a File instead of takes
+      // one. Then we could download directly from the remote cache into the on-disk cache and
+      // unzip it from there.
+      cacheResult =
+          fetchArtifactForBuildable(ruleKey, lazyZipPath, artifactCache, buildInfoRecorder);
+    }
+
+    return unzipArtifactFromCacheResult(
+                    rule,
+                    ruleKey,
+                    lazyZipPath,
+                    buildContext,
+                    filesystem,
+                    cacheResult);
+  }
+
+  /**
+   * Unpack the artifact of {@code rule} as it is fetched from the cache, instead of saving it to a
+   * temporary zip file and unpacking it from there.
+   */
+  private CacheResult fetchArtifactStreamingAndOverlayOnTopOfProjectFilesystem(
+      final BuildRule rule,
+      final RuleKey ruleKey,
+      final ArtifactCache artifactCache,
+      final ProjectFilesystem filesystem,
+      final BuildEngineBuildContext buildContext) {
+    final Path metadataDir =
+        BuildInfo.getPathToMetadataDirectory(
+            rule.getBuildTarget(),
+            rule.getProjectFilesystem());
+    final AtomicBoolean unzipStarted = new AtomicBoolean(false);
+    CacheResult cacheResult;
+    try {
+      cacheResult = artifactCache.fetchStreaming(
+          ruleKey,
+          payload -> {
+            unzipStarted.set(true);
+            ArtifactCompressionEvent.Started started = ArtifactCompressionEvent.started(
+                ArtifactCompressionEvent.Operation.DECOMPRESS,
+                ImmutableSet.of(ruleKey));
+            buildContext.getEventBus().post(started);
+            try {
+              // As when unpacking from a file, the metadata directory has to be cleared out before
+              // unpacking the artifact, which includes files stored in it.
+              rule.getProjectFilesystem().deleteRecursivelyIfExists(metadataDir);
+              Unzip.extractZipStream(
+                  payload,
+                  filesystem,
+                  Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+            } finally {
+              buildContext.getEventBus().post(ArtifactCompressionEvent.finished(started));
+            }
+          });
+    } catch (Throwable t) {
+      LOG.error(t, "Buck internal error when downloading from the cache, will build locally.");
+      cacheResult = CacheResult.error("unknown", t.getMessage());
+    }
+
+    if (!cacheResult.getType().isSuccess() && !unzipStarted.get()) {
+      LOG.debug("Cache miss for '%s' with rulekey '%s'", rule, ruleKey);
+      return cacheResult;
+    }
+    if (cacheResult.getType() == CacheResultType.HIT && unzipStarted.get()) {
+      try {
+        writeMetadataFromCacheResult(metadataDir, filesystem, cacheResult);
+        LOG.debug("Fetched '%s' from cache with rulekey '%s'", rule, ruleKey);
+        return cacheResult;
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to write the metadata of the artifact for %s.", rule);
+      }
+    }
+
+    // Whatever was unpacked can't be trusted, so make sure the rule's metadata doesn't claim its
+    // outputs are up to date.  The rule will be built locally.
+    LOG.warn("Failed to unpack the artifact for %s: %s", rule, cacheResult);
+    try {
+      rule.getProjectFilesystem().deleteRecursivelyIfExists(metadataDir);
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to delete %s.", metadataDir);
+    }
+    return cacheResult.getType().isSuccess() ? CacheResult.miss() : cacheResult;
+  }
+
+  /**
+   * Fetch the artifacts of those of {@code rules} which are not built yet with a single
+   * {@link ArtifactCache#multiFetch} call, rather than one round trip per rule once each of them
+   * gets to check the cache.
+   *
+   * @return a future holding the targets whose artifacts were prefetched, which completes once
+   *     they are ready for their rules to take.
+   */
+  private ListenableFuture<ImmutableList<BuildTarget>> prefetchArtifacts(
+      Iterable<BuildRule> rules,
+      BuildEngineBuildContext buildContext) {
+    List<BuildRule> candidates = new ArrayList<>();
+    List<ListenableFuture<RuleKey>> candidateRuleKeys = new ArrayList<>();
+    for (BuildRule rule : rules) {
+      if (!rule.isCacheable() ||
+          results.containsKey(rule.getBuildTarget()) ||
+          prefetchedArtifacts.containsKey(rule.getBuildTarget())) {
+        continue;
+      }
+      candidates.add(rule);
+      // The keys of the deps of a rule are calculated before the rule is processed, so these
+      // futures are usually done already.
+      candidateRuleKeys.add(calculateRuleKey(rule, buildContext));
+    }
+
+    // A single artifact is fetched just as cheaply when its rule checks the cache.
+    if (candidates.size() < 2) {
+      return Futures.immediateFuture(ImmutableList.of());
+    }
+
+    ListenableFuture<ImmutableList<BuildTarget>> prefetchedTargets = Futures.transform(
+        Futures.allAsList(candidateRuleKeys),
+        (Function<List<RuleKey>, ImmutableList<BuildTarget>>)
+            ruleKeys -> fetchArtifacts(candidates, ruleKeys, buildContext),
+        serviceByAdjustingDefaultWeightsTo(CACHE_CHECK_RESOURCE_AMOUNTS));
+    // Prefetching is only an optimization, so a failure just leaves the rules to fetch their
+    // artifacts one by one.
+    return Futures.catching(
+        prefetchedTargets,
+        Throwable.class,
+        t -> {
+          LOG.error(
+              t,
+              "Buck internal error when prefetching from the cache, will fetch one by one.");
+          return ImmutableList.of();
+        });
+  }
+
+  private ImmutableList<BuildTarget> fetchArtifacts(
+      List<BuildRule> candidates,
+      List<RuleKey> candidateRuleKeys,
+      BuildEngineBuildContext buildContext) {
+    ArtifactCache artifactCache = buildContext.getArtifactCache();
+    ImmutableMap<RuleKey, CacheResult> knownResults =
+        artifactCache.multiContains(ImmutableSet.copyOf(candidateRuleKeys));
+
+    List<BuildRule> rulesToFetch = new ArrayList<>();
+    ImmutableList.Builder<Pair<RuleKey, LazyPath>> requests = ImmutableList.builder();
+    for (int i = 0; i < candidates.size(); i++) {
+      BuildRule rule = candidates.get(i);
+      RuleKey ruleKey = candidateRuleKeys.get(i);
+      // Don't bother fetching artifacts which the cache already knows it hasn't got.
+      CacheResult knownResult = knownResults.get(ruleKey);
+      if (knownResult != null && !knownResult.getType().isSuccess()) {
+        continue;
+      }
+      Optional<RuleKey> cachedRuleKey = buildContext
+          .createOnDiskBuildInfoFor(rule.getBuildTarget(), rule.getProjectFilesystem())
+          .getRuleKey(BuildInfo.MetadataKey.RULE_KEY);
+      if (ruleKey.equals(cachedRuleKey.orElse(null))) {
+        continue;
+      }
+      rulesToFetch.add(rule);
+      requests.add(new Pair<>(ruleKey, createLazyZipPath(rule)));
+    }
+    if (rulesToFetch.size() < 2) {
+      return ImmutableList.of();
+    }
+
+    ImmutableList<Pair<RuleKey, LazyPath>> builtRequests = requests.build();
+    ImmutableList<CacheResult> cacheResults = artifactCache.multiFetch(builtRequests);
+    ImmutableList.Builder<BuildTarget> prefetchedTargets = ImmutableList.builder();
+    for (int i = 0; i < rulesToFetch.size(); i++) {
+      PrefetchedArtifact prefetchedArtifact = new PrefetchedArtifact(
+          builtRequests.get(i).getFirst(),
+          builtRequests.get(i).getSecond(),
+          cacheResults.get(i));
+      BuildTarget target = rulesToFetch.get(i).getBuildTarget();
+      // The rule may have been reached through another dependent and fetched its own artifact by
+      // now, in which case nothing will ever take this one.
+      if (results.containsKey(target) ||
+          prefetchedArtifacts.putIfAbsent(target, prefetchedArtifact) != null) {
+        prefetchedArtifact.discard();
+      } else {
+        prefetchedTargets.add(target);
+      }
+    }
+    return prefetchedTargets.build();
+  }
+
+  /**
+   * Delete the artifacts prefetched for {@code targets} which their rules didn't take.  Each rule
+   * takes its artifact, if at all, while it is being processed, so this is called once all of them
+   * have been.
+   */
+  private void discardPrefetchedArtifacts(Iterable<BuildTarget> targets) {
+    for (BuildTarget target : targets) {
+      PrefetchedArtifact prefetchedArtifact = prefetchedArtifacts.remove(target);
+      if (prefetchedArtifact != null) {
+        prefetchedArtifact.discard();
+      }
+    }
+  }
+
+  private static LazyPath createLazyZipPath(final BuildRule rule) {
     // Create a temp file whose extension must be ".zip" for Filesystems.newFileSystem() to infer
     // that we are creating a zip-based FileSystem.
-    final LazyPath lazyZipPath = new LazyPath() {
+    return new LazyPath() {
       @Override
       protected Path create() throws IOException {
         return Files.createTempFile(
@@ -1253,20 +1603,6 @@ public class CachingBuildEngine implements BuildEngine {
             ".zip");
       }
     };
-
-    // TODO(bolinfest): Change ArtifactCache.fetch() so that it returns a File instead of takes one.
-    // Then we could download directly from the remote cache into the on-disk cache and unzip it
-    // from there.
-    CacheResult cacheResult =
-        fetchArtifactForBuildable(ruleKey, lazyZipPath, artifactCache, buildInfoRecorder);
-
-    return unzipArtifactFromCacheResult(
-                    rule,
-                    ruleKey,
-                    lazyZipPath,
-                    buildContext,
-                    filesystem,
-                    cacheResult);
   }
 
   private CacheResult unzipArtifactFromCacheResult(
@@ -1323,11 +1659,7 @@ public class CachingBuildEngine implements BuildEngine {
       Files.delete(zipPath);
 
       // Also write out the build metadata.
-      for (Map.Entry<String, String> ent : cacheResult.getMetadata().entrySet()) {
-        Path dest = metadataDir.resolve(ent.getKey());
-        filesystem.createParentDirs(dest);
-        filesystem.writeContentsToPath(ent.getValue(), dest);
-      }
+      writeMetadataFromCacheResult(metadataDir, filesystem, cacheResult);
 
     } catch (IOException e) {
       // In the wild, we have seen some inexplicable failures during this step. For now, we try to
@@ -1348,6 +1680,17 @@ public class CachingBuildEngine implements BuildEngine {
     return cacheResult;
   }
 
+  private static void writeMetadataFromCacheResult(
+      Path metadataDir,
+      ProjectFilesystem filesystem,
+      CacheResult cacheResult) throws IOException {
+    for (Map.Entry<String, String> ent : cacheResult.getMetadata().entrySet()) {
+      Path dest = metadataDir.resolve(ent.getKey());
+      filesystem.createParentDirs(dest);
+      filesystem.writeContentsToPath(ent.getValue(), dest);
+    }
+  }
+
   private CacheResult fetchArtifactForBuildable(
       final RuleKey ruleKey,
       final LazyPath lazyZipPath,
@@ -1379,16 +1722,19 @@ public class CachingBuildEngine implements BuildEngine {
     List<Step> steps = rule.getBuildSteps(buildContext.getBuildContext(), buildableContext);
 
     Optional<BuildTarget> optionalTarget = Optional.of(rule.getBuildTarget());
+    FileHashCache fileHashCache = fileHashCaches.getUnchecked(rule.getProjectFilesystem());
     for (Step step : steps) {
       stepRunner.runStepForBuildTarget(
-          executionContext.withProcessExecutor(
-              new ContextualProcessExecutor(
-                  executionContext.getProcessExecutor(),
-                  ImmutableMap.of(
-                      BUILD_RULE_TYPE_CONTEXT_KEY,
-                      rule.getType(),
-                      STEP_TYPE_CONTEXT_KEY,
-                      StepType.BUILD_STEP.toString()))),
+          executionContext
+              .withProcessExecutor(
+                  new ContextualProcessExecutor(
+                      executionContext.getProcessExecutor(),
+                      ImmutableMap.of(
+                          BUILD_RULE_TYPE_CONTEXT_KEY,
+                          rule.getType(),
+                          STEP_TYPE_CONTEXT_KEY,
+                          StepType.BUILD_STEP.toString())))
+              .withFileHashLoader(fileHashCache),
           step,
           optionalTarget);
 
@@ -1817,6 +2163,36 @@ public class CachingBuildEngine implements BuildEngine {
     };
   }
 
+  /**
+   * The result of fetching the artifact of a rule ahead of its build.
+   */
+  private static class PrefetchedArtifact {
+    private final RuleKey ruleKey;
+    private final LazyPath lazyZipPath;
+    private final CacheResult cacheResult;
+
+    private PrefetchedArtifact(RuleKey ruleKey, LazyPath lazyZipPath, CacheResult cacheResult) {
+      this.ruleKey = ruleKey;
+      this.lazyZipPath = lazyZipPath;
+      this.cacheResult = cacheResult;
+    }
+
+    /**
+     * Delete the temporary file the artifact was fetched into, if the cache created it.
+     */
+    private void discard() {
+      Optional<Path> zipPath = lazyZipPath.getIfCreated();
+      if (!zipPath.isPresent()) {
+        return;
+      }
+      try {
+        Files.deleteIfExists(zipPath.get());
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to delete the prefetched artifact %s.", zipPath.get());
+      }
+    }
+  }
+
   @VisibleForTesting
   static class RuleKeyFactories {
     public final RuleKeyFactory<RuleKey> defaultRuleKeyFactory;
@@ -1829,13 +2205,28 @@ public class CachingBuildEngine implements BuildEngine {
         FileHashCache fileHashCache,
         BuildRuleResolver ruleResolver,
         long inputRuleKeyFileSizeLimit) {
+      return build(
+          seed,
+          fileHashCache,
+          ruleResolver,
+          inputRuleKeyFileSizeLimit,
+          Optional.empty());
+    }
+
+    public static RuleKeyFactories build(
+        int seed,
+        FileHashCache fileHashCache,
+        BuildRuleResolver ruleResolver,
+        long inputRuleKeyFileSizeLimit,
+        Optional<DefaultRuleKeyCache> defaultRuleKeyCache) {
       SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(ruleResolver);
       SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
       DefaultRuleKeyFactory defaultRuleKeyFactory = new DefaultRuleKeyFactory(
           seed,
           fileHashCache,
           pathResolver,
-          ruleFinder);
+          ruleFinder,
+          defaultRuleKeyCache);
 
       return new RuleKeyFactories(
           defaultRuleKeyFactory,
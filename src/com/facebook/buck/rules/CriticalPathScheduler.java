@@ -0,0 +1,294 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.Subscribe;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Prioritizes the rules of a build by how much work is estimated to remain after them, so that
+ * rules on the critical path are started as soon as they are ready rather than behind rules which
+ * have plenty of slack.
+ * <p>
+ * A rule's priority is its estimated duration plus the largest priority of the rules in the build
+ * which depend on it, with estimates taken from a {@link BuildRuleTimingHistory}. The scheduler
+ * also listens for the build's rule events, so that once the build finishes it can fold the time
+ * each rule spent building locally into the history, and report how the critical path it
+ * predicted compares to the one which actually occurred.
+ */
+public class CriticalPathScheduler {
+
+  private static final Logger LOG = Logger.get(CriticalPathScheduler.class);
+
+  private final BuildRuleTimingHistory history;
+  private final BuckEventBus eventBus;
+
+  private final ConcurrentMap<BuildTarget, Long> priorities = new ConcurrentHashMap<>();
+  private volatile CriticalPath predictedCriticalPath = CriticalPath.EMPTY;
+
+  private final ConcurrentMap<BuildTarget, Long> runningSinceMillis = new ConcurrentHashMap<>();
+  private final ConcurrentMap<BuildTarget, Long> activeMillis = new ConcurrentHashMap<>();
+  private final ConcurrentMap<BuildTarget, BuildRuleEvent.Finished> finishedRules =
+      new ConcurrentHashMap<>();
+
+  public CriticalPathScheduler(BuildRuleTimingHistory history, BuckEventBus eventBus) {
+    this.history = history;
+    this.eventBus = eventBus;
+  }
+
+  /**
+   * Computes the priorities of {@code roots} and all of their transitive deps. Rules which are
+   * built without having been prepared are given the lowest priority.
+   */
+  public void prepare(
+      Iterable<BuildRule> roots,
+      Function<? super BuildRule, ? extends Iterable<BuildRule>> getDeps) {
+    CriticalPath criticalPath = findCriticalPath(roots, getDeps, this::getEstimatedDurationMillis);
+    criticalPath.remainingMillis.forEach((target, remaining) -> priorities.merge(
+        target,
+        remaining,
+        Math::max));
+    if (criticalPath.totalMillis >= predictedCriticalPath.totalMillis) {
+      predictedCriticalPath = criticalPath;
+    }
+  }
+
+  public long getPriority(BuildRule rule) {
+    return priorities.getOrDefault(rule.getBuildTarget(), 0L);
+  }
+
+  /**
+   * @return {@code rules} with the highest priority first. Rules of equal priority are shuffled,
+   *     to spread threads working on the same deps across them.
+   */
+  public List<BuildRule> sortByPriority(Iterable<BuildRule> rules) {
+    ArrayList<BuildRule> rulesList = Lists.newArrayList(rules);
+    Collections.shuffle(rulesList);
+    rulesList.sort(Comparator.comparingLong(this::getPriority).reversed());
+    return rulesList;
+  }
+
+  private long getEstimatedDurationMillis(BuildRule rule) {
+    if (rule instanceof NoopBuildRule) {
+      return 0;
+    }
+    return history.getEstimatedDurationMillis(rule.getBuildTarget()).orElse(0L);
+  }
+
+  @Subscribe
+  public void buildRuleStarted(BuildRuleEvent.Started started) {
+    runningSinceMillis.put(started.getBuildRule().getBuildTarget(), started.getTimestamp());
+  }
+
+  @Subscribe
+  public void buildRuleResumed(BuildRuleEvent.Resumed resumed) {
+    runningSinceMillis.put(resumed.getBuildRule().getBuildTarget(), resumed.getTimestamp());
+  }
+
+  @Subscribe
+  public void buildRuleSuspended(BuildRuleEvent.Suspended suspended) {
+    accumulateActiveTime(suspended);
+  }
+
+  @Subscribe
+  public void buildRuleFinished(BuildRuleEvent.Finished finished) {
+    accumulateActiveTime(finished);
+    finishedRules.put(finished.getBuildRule().getBuildTarget(), finished);
+  }
+
+  private void accumulateActiveTime(BuildRuleEvent event) {
+    BuildTarget target = event.getBuildRule().getBuildTarget();
+    Long since = runningSinceMillis.remove(target);
+    if (since != null) {
+      activeMillis.merge(target, event.getTimestamp() - since, Long::sum);
+    }
+  }
+
+  @Subscribe
+  public void buildFinished(BuildEvent.Finished finished) {
+    Map<BuildTarget, BuildRule> rules = new HashMap<>();
+    for (BuildRuleEvent.Finished ruleFinished : finishedRules.values()) {
+      rules.put(ruleFinished.getBuildRule().getBuildTarget(), ruleFinished.getBuildRule());
+    }
+    CriticalPath predicted = predictedCriticalPath;
+    CriticalPath actual = findCriticalPath(
+        rules.values(),
+        rule -> getDeps(rule).stream()
+            .filter(dep -> rules.containsKey(dep.getBuildTarget()))
+            .collect(MoreCollectors.toImmutableList()),
+        rule -> activeMillis.getOrDefault(rule.getBuildTarget(), 0L));
+    long predictedPathActualMillis = predicted.path.stream()
+        .mapToLong(rule -> activeMillis.getOrDefault(rule.getBuildTarget(), 0L))
+        .sum();
+
+    eventBus.post(ConsoleEvent.info(
+        "Critical path: predicted %d rules taking %s (actually took %s), " +
+            "actual %d rules taking %s.",
+        predicted.path.size(),
+        formatMillis(predicted.totalMillis),
+        formatMillis(predictedPathActualMillis),
+        actual.path.size(),
+        formatMillis(actual.totalMillis)));
+    LOG.info(
+        "Predicted critical path: %s%nActual critical path: %s",
+        Joiner.on(" -> ").join(predicted.path),
+        Joiner.on(" -> ").join(actual.path));
+
+    for (BuildRuleEvent.Finished ruleFinished : finishedRules.values()) {
+      BuildTarget target = ruleFinished.getBuildRule().getBuildTarget();
+      if (ruleFinished.getSuccessType().equals(Optional.of(BuildRuleSuccessType.BUILT_LOCALLY)) &&
+          activeMillis.containsKey(target)) {
+        history.record(target, activeMillis.get(target));
+      }
+    }
+    try {
+      history.save();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to save rule timing history to %s.", history.getStorePath());
+    }
+  }
+
+  private static ImmutableList<BuildRule> getDeps(BuildRule rule) {
+    ImmutableList.Builder<BuildRule> deps = ImmutableList.builder();
+    deps.addAll(rule.getDeps());
+    if (rule instanceof HasRuntimeDeps) {
+      deps.addAll(((HasRuntimeDeps) rule).getRuntimeDeps());
+    }
+    return deps.build();
+  }
+
+  private static String formatMillis(long millis) {
+    return String.format("%.1fs", millis / 1000.0);
+  }
+
+  /**
+   * Finds the longest chain of rules, weighted by {@code getDuration}, between a rule with no
+   * deps and one of {@code roots}.
+   */
+  @VisibleForTesting
+  static CriticalPath findCriticalPath(
+      Iterable<BuildRule> roots,
+      Function<? super BuildRule, ? extends Iterable<BuildRule>> getDeps,
+      ToLongFunction<? super BuildRule> getDuration) {
+    // Order the rules so each comes after all of its deps, without recursing, as chains of
+    // deps can be deep.
+    List<BuildRule> topologicalOrder = new ArrayList<>();
+    Map<BuildRule, List<BuildRule>> dependents = new HashMap<>();
+    Set<BuildRule> visited = new HashSet<>();
+    Deque<Map.Entry<BuildRule, Iterator<BuildRule>>> stack = new ArrayDeque<>();
+    for (BuildRule root : roots) {
+      if (!visited.add(root)) {
+        continue;
+      }
+      stack.push(new HashMap.SimpleEntry<>(root, getDeps.apply(root).iterator()));
+      while (!stack.isEmpty()) {
+        Map.Entry<BuildRule, Iterator<BuildRule>> top = stack.peek();
+        if (top.getValue().hasNext()) {
+          BuildRule dep = top.getValue().next();
+          dependents.computeIfAbsent(dep, rule -> new ArrayList<>()).add(top.getKey());
+          if (visited.add(dep)) {
+            stack.push(new HashMap.SimpleEntry<>(dep, getDeps.apply(dep).iterator()));
+          }
+        } else {
+          topologicalOrder.add(stack.pop().getKey());
+        }
+      }
+    }
+
+    ImmutableMap.Builder<BuildTarget, Long> remainingMillis = ImmutableMap.builder();
+    Map<BuildRule, Long> remaining = new HashMap<>();
+    Map<BuildRule, BuildRule> next = new HashMap<>();
+    Optional<BuildRule> start = Optional.empty();
+    for (BuildRule rule : Lists.reverse(topologicalOrder)) {
+      long afterRule = 0;
+      for (BuildRule dependent : dependents.getOrDefault(rule, ImmutableList.of())) {
+        long afterDependent = remaining.get(dependent);
+        if (!next.containsKey(rule) || afterDependent > afterRule) {
+          afterRule = afterDependent;
+          next.put(rule, dependent);
+        }
+      }
+      long total = getDuration.applyAsLong(rule) + afterRule;
+      remaining.put(rule, total);
+      remainingMillis.put(rule.getBuildTarget(), total);
+      if (!start.isPresent() || total > remaining.get(start.get())) {
+        start = Optional.of(rule);
+      }
+    }
+
+    ImmutableList.Builder<BuildRule> path = ImmutableList.builder();
+    for (BuildRule rule = start.orElse(null); rule != null; rule = next.get(rule)) {
+      path.add(rule);
+    }
+    return new CriticalPath(
+        remainingMillis.build(),
+        path.build(),
+        start.map(remaining::get).orElse(0L));
+  }
+
+  @VisibleForTesting
+  static class CriticalPath {
+    private static final CriticalPath EMPTY =
+        new CriticalPath(ImmutableMap.of(), ImmutableList.of(), 0);
+
+    /**
+     * The duration of each rule plus the longest chain of rules depending on it.
+     */
+    final ImmutableMap<BuildTarget, Long> remainingMillis;
+    /**
+     * The critical path, from the rule which has to be built first to the last.
+     */
+    final ImmutableList<BuildRule> path;
+    final long totalMillis;
+
+    CriticalPath(
+        ImmutableMap<BuildTarget, Long> remainingMillis,
+        ImmutableList<BuildRule> path,
+        long totalMillis) {
+      this.remainingMillis = remainingMillis;
+      this.path = path;
+      this.totalMillis = totalMillis;
+    }
+  }
+}
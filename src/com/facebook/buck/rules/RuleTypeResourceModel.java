@@ -0,0 +1,284 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.ChecksummedFiles;
+import com.facebook.buck.util.ProcessResourceConsumption;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.perf.ProcessTracker;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.Subscribe;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Learns how many resources the build steps of each rule type use, from the resource consumption
+ * the {@link ProcessTracker} measures for their subprocesses, and persists what it learned across
+ * daemon restarts.
+ * <p>
+ * Per rule type it keeps exponentially weighted moving averages of the number of cores used and of
+ * the I/O throughput, and a slowly decaying peak of the resident memory, so that a single heavy
+ * link is enough to stop the type oversubscribing RAM. Only subprocesses are measured: rule types
+ * whose build steps run in-process (e.g. javac) are never learned.
+ */
+public class RuleTypeResourceModel {
+
+  private static final Logger LOG = Logger.get(RuleTypeResourceModel.class);
+
+  private static final int MAGIC = 0x4255_5252;
+  private static final int VERSION = 1;
+
+  /**
+   * The weight given to the latest measurement when updating an estimate.
+   */
+  @VisibleForTesting
+  static final double SMOOTHING_FACTOR = 0.3;
+
+  /**
+   * The amount of memory represented by one unit of
+   * {@link ResourceAmounts#getMemory()}, as documented for {@code resources.memory}.
+   */
+  @VisibleForTesting
+  static final long MEMORY_UNIT_BYTES = 100L * 1024 * 1024;
+
+  /**
+   * The I/O throughput represented by one unit of {@link ResourceAmounts#getDiskIO()}, chosen so
+   * that the default disk I/O capacity corresponds to a typical SSD.
+   */
+  @VisibleForTesting
+  static final long DISK_IO_UNIT_BYTES_PER_SECOND = 10L * 1024 * 1024;
+
+  private static final long MAX_ENTRY_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+  private final ProjectFilesystem projectFilesystem;
+  private final Path storePath;
+  private final ConcurrentMap<String, Entry> entries;
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+  private volatile boolean buildFinished = false;
+
+  private RuleTypeResourceModel(
+      ProjectFilesystem projectFilesystem,
+      Path storePath,
+      ConcurrentMap<String, Entry> entries) {
+    this.projectFilesystem = projectFilesystem;
+    this.storePath = storePath;
+    this.entries = entries;
+  }
+
+  /**
+   * Loads the model from {@code storePath}, relative to the root of {@code projectFilesystem}.
+   * A missing, truncated or otherwise invalid model is discarded and an empty one is returned.
+   */
+  public static RuleTypeResourceModel load(ProjectFilesystem projectFilesystem, Path storePath) {
+    ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    if (projectFilesystem.isFile(storePath)) {
+      try (InputStream inputStream = projectFilesystem.newFileInputStream(storePath)) {
+        entries = ChecksummedFiles.read(
+            inputStream,
+            MAGIC,
+            VERSION,
+            RuleTypeResourceModel::readEntries);
+        LOG.debug("Loaded resource usage of %d rule types from %s", entries.size(), storePath);
+      } catch (IOException e) {
+        LOG.warn(e, "Discarding invalid rule resource model %s", storePath);
+      }
+    }
+    return new RuleTypeResourceModel(projectFilesystem, storePath, entries);
+  }
+
+  private static ConcurrentMap<String, Entry> readEntries(DataInputStream inputStream)
+      throws IOException {
+    int count = inputStream.readInt();
+    if (count < 0) {
+      throw new IOException("Negative entry count");
+    }
+    ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    for (int i = 0; i < count; i++) {
+      String ruleType = inputStream.readUTF();
+      double cpuCores = inputStream.readDouble();
+      long memResidentBytes = inputStream.readLong();
+      double ioBytesPerSecond = inputStream.readDouble();
+      long lastRecordedMillis = inputStream.readLong();
+      entries.put(
+          ruleType,
+          new Entry(cpuCores, memResidentBytes, ioBytesPerSecond, lastRecordedMillis));
+    }
+    return entries;
+  }
+
+  /**
+   * Atomically writes the model back to disk if anything has been recorded since it was loaded or
+   * last saved.
+   */
+  public synchronized void save() throws IOException {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    long expiry = System.currentTimeMillis() - MAX_ENTRY_AGE_MILLIS;
+    entries.values().removeIf(entry -> entry.lastRecordedMillis < expiry);
+
+    List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+    try {
+      ChecksummedFiles.write(
+          projectFilesystem.resolve(storePath),
+          MAGIC,
+          VERSION,
+          outputStream -> {
+            outputStream.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> mapEntry : snapshot) {
+              Entry entry = mapEntry.getValue();
+              outputStream.writeUTF(mapEntry.getKey());
+              outputStream.writeDouble(entry.cpuCores);
+              outputStream.writeLong(entry.memResidentBytes);
+              outputStream.writeDouble(entry.ioBytesPerSecond);
+              outputStream.writeLong(entry.lastRecordedMillis);
+            }
+          });
+    } catch (IOException e) {
+      dirty.set(true);
+      throw e;
+    }
+    LOG.debug("Saved resource usage of %d rule types to %s", snapshot.size(), storePath);
+  }
+
+  /**
+   * @return the resources a build step of {@code ruleType} is expected to need, if any of its
+   *     subprocesses have been measured before. Network I/O isn't measured, so it is taken from
+   *     {@code defaultAmounts}.
+   */
+  public Optional<ResourceAmounts> getResourceAmounts(
+      String ruleType,
+      ResourceAmounts defaultAmounts) {
+    Entry entry = entries.get(ruleType);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        ResourceAmounts.of(
+            // A step always occupies a build thread, so it never needs less than one core.
+            Math.max(1, (int) Math.round(entry.cpuCores)),
+            (int) Math.min(
+                Integer.MAX_VALUE,
+                (entry.memResidentBytes + MEMORY_UNIT_BYTES - 1) / MEMORY_UNIT_BYTES),
+            (int) Math.min(
+                Integer.MAX_VALUE,
+                Math.ceil(entry.ioBytesPerSecond / DISK_IO_UNIT_BYTES_PER_SECOND)),
+            defaultAmounts.getNetworkIO()));
+  }
+
+  /**
+   * Folds the resources a subprocess of a build step of {@code ruleType} used into its estimates.
+   */
+  @VisibleForTesting
+  void record(String ruleType, ProcessResourceConsumption consumption) {
+    if (consumption.getCpuReal() <= 0) {
+      return;
+    }
+    double seconds = consumption.getCpuReal() / 1000.0;
+    long now = System.currentTimeMillis();
+    entries.merge(
+        ruleType,
+        new Entry(
+            consumption.getCpuTotal() / (double) consumption.getCpuReal(),
+            consumption.getMemResident(),
+            consumption.getIoTotal() / seconds,
+            now),
+        (previous, latest) -> new Entry(
+            smooth(previous.cpuCores, latest.cpuCores),
+            Math.max(
+                latest.memResidentBytes,
+                Math.round(smooth(previous.memResidentBytes, latest.memResidentBytes))),
+            smooth(previous.ioBytesPerSecond, latest.ioBytesPerSecond),
+            now));
+    dirty.set(true);
+  }
+
+  private static double smooth(double previous, double latest) {
+    return SMOOTHING_FACTOR * latest + (1 - SMOOTHING_FACTOR) * previous;
+  }
+
+  @Subscribe
+  public void processFinished(ProcessTracker.ProcessResourceConsumptionEvent event) {
+    Optional<ImmutableMap<String, String>> context = event.getContext();
+    if (!context.isPresent() ||
+        !event.getResourceConsumption().isPresent() ||
+        !CachingBuildEngine.StepType.BUILD_STEP.toString().equals(
+            context.get().get(CachingBuildEngine.STEP_TYPE_CONTEXT_KEY))) {
+      return;
+    }
+    String ruleType = context.get().get(CachingBuildEngine.BUILD_RULE_TYPE_CONTEXT_KEY);
+    if (ruleType == null) {
+      return;
+    }
+    record(ruleType, event.getResourceConsumption().get());
+    // The tracker only notices processes have finished once a second, so the last few may be
+    // reported after the build has finished.
+    if (buildFinished) {
+      trySave();
+    }
+  }
+
+  @Subscribe
+  public void buildFinished(BuildEvent.Finished finished) {
+    buildFinished = true;
+    trySave();
+  }
+
+  private void trySave() {
+    try {
+      save();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to save rule resource model to %s.", storePath);
+    }
+  }
+
+  public Path getStorePath() {
+    return storePath;
+  }
+
+  private static class Entry {
+    private final double cpuCores;
+    private final long memResidentBytes;
+    private final double ioBytesPerSecond;
+    private final long lastRecordedMillis;
+
+    private Entry(
+        double cpuCores,
+        long memResidentBytes,
+        double ioBytesPerSecond,
+        long lastRecordedMillis) {
+      this.cpuCores = cpuCores;
+      this.memResidentBytes = memResidentBytes;
+      this.ioBytesPerSecond = ioBytesPerSecond;
+      this.lastRecordedMillis = lastRecordedMillis;
+    }
+  }
+}
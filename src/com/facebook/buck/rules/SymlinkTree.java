@@ -23,7 +23,6 @@ import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.SymlinkTreeStep;
 import com.facebook.buck.util.MoreMaps;
 import com.google.common.annotations.VisibleForTesting;
@@ -147,7 +146,6 @@ public class SymlinkTree
       BuildableContext buildableContext) {
     return ImmutableList.of(
         getVerifiyStep(),
-        new MakeCleanDirectoryStep(getProjectFilesystem(), root),
         new SymlinkTreeStep(getProjectFilesystem(), root, getResolver().getMappedPaths(links)));
   }
 
@@ -40,6 +40,7 @@ import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
@@ -57,7 +58,7 @@ public class TargetGraphHashing {
   private static final Logger LOG = Logger.get(TargetGraphHashing.class);
   private final BuckEventBus eventBus;
   private final TargetGraph targetGraph;
-  private final FileHashLoader fileHashLoader;
+  private final Optional<FileHashLoader> fileHashLoader;
   private final Iterable<TargetNode<?, ?>> roots;
   private int numThreads = 1;
 
@@ -67,12 +68,32 @@ public class TargetGraphHashing {
       final FileHashLoader fileHashLoader,
       final Iterable<TargetNode<?, ?>> roots
   ) {
+    this(eventBus, targetGraph, Optional.of(fileHashLoader), roots);
+  }
+
+  private TargetGraphHashing(
+      BuckEventBus eventBus,
+      TargetGraph targetGraph,
+      Optional<FileHashLoader> fileHashLoader,
+      Iterable<TargetNode<?, ?>> roots) {
     this.eventBus = eventBus;
     this.targetGraph = targetGraph;
     this.fileHashLoader = fileHashLoader;
     this.roots = roots;
   }
 
+  /**
+   * Hashes only the structure of the target graph: each target's build target, its raw build file
+   * input and its dependencies' hashes, but not the contents of its input files.  This is cheap
+   * enough to do on every command, so no per-node perf events are posted.
+   */
+  public static TargetGraphHashing withoutInputFileContents(
+      BuckEventBus eventBus,
+      TargetGraph targetGraph,
+      Iterable<TargetNode<?, ?>> roots) {
+    return new TargetGraphHashing(eventBus, targetGraph, Optional.empty(), roots);
+  }
+
   /**
    * Given a {@link TargetGraph} and any number of root nodes to traverse,
    * returns a map of {@code (BuildTarget, HashCode)} pairs for all root
@@ -129,6 +150,9 @@ public class TargetGraphHashing {
 
     @Override
     protected HashCode compute() {
+      if (!fileHashLoader.isPresent()) {
+        return hashNode();
+      }
       try (SimplePerfEvent.Scope scope = getHashNodeEventScope(eventBus, node.getBuildTarget())) {
         return hashNode();
       }
@@ -145,18 +169,20 @@ public class TargetGraphHashing {
 
       ProjectFilesystem cellFilesystem = node.getFilesystem();
 
-      try {
-        // Hash the contents of all input files and directories.
-        PathHashing.hashPaths(
-            hasher,
-            fileHashLoader,
-            cellFilesystem,
-            ImmutableSortedSet.copyOf(node.getInputs()));
-      } catch (IOException e) {
-        throw new HumanReadableException(
-            e, "Error reading files for rule %s",
-            node.getBuildTarget()
-        );
+      if (fileHashLoader.isPresent()) {
+        try {
+          // Hash the contents of all input files and directories.
+          PathHashing.hashPaths(
+              hasher,
+              fileHashLoader.get(),
+              cellFilesystem,
+              ImmutableSortedSet.copyOf(node.getInputs()));
+        } catch (IOException e) {
+          throw new HumanReadableException(
+              e, "Error reading files for rule %s",
+              node.getBuildTarget()
+          );
+        }
       }
 
       // hash each dependency's build target and that build target's own hash.
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.WatchEvents;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.RuleKey;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+import com.google.common.eventbus.Subscribe;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * A daemon-scoped cache of default {@link RuleKey}s which lives across commands.
+ * <p>
+ * Keys are cached for {@link com.facebook.buck.rules.BuildRule}s and
+ * {@link com.facebook.buck.rules.RuleKeyAppendable}s by identity, so they are only reused for as
+ * long as the action graph holding those objects is reused.  Alongside each key we record the
+ * files hashed and the nested rules and appendables used to compute it, so that a change to a
+ * file, reported via the file change {@link com.google.common.eventbus.EventBus}, invalidates
+ * every key which transitively depends on it.
+ * <p>
+ * Only keys whose inputs all live in the watched cell (outside of ignored paths) are cached, since
+ * changes to any other file would go unnoticed.
+ */
+public class DefaultRuleKeyCache {
+
+  private static final Logger LOG = Logger.get(DefaultRuleKeyCache.class);
+
+  private final ProjectFilesystem filesystem;
+
+  // Weak, identity-keyed maps so that cached keys don't keep stale action graphs alive.
+  private final ConcurrentMap<Object, Node> nodes = new MapMaker().weakKeys().makeMap();
+  private final ConcurrentMap<Path, Set<Object>> inputDependents = new ConcurrentHashMap<>();
+  // Every input and every directory above one, by its parent directory, so that the inputs
+  // affected by a change to a directory are found without scanning all of them.
+  private final ConcurrentMap<Path, Set<Path>> children = new ConcurrentHashMap<>();
+
+  // Bumped on every invalidation, so that keys computed concurrently with an invalidation (and
+  // which may therefore have used stale hashes) are never recorded.
+  private final AtomicLong generation = new AtomicLong();
+
+  public DefaultRuleKeyCache(ProjectFilesystem filesystem) {
+    this.filesystem = filesystem;
+  }
+
+  /**
+   * @return the filesystem of the cell whose changes invalidate this cache.
+   */
+  public ProjectFilesystem getFilesystem() {
+    return filesystem;
+  }
+
+  /**
+   * @return the cached key for {@code object}, if one was computed with the given {@code seed}
+   *     and is still valid.
+   */
+  Optional<RuleKey> get(int seed, Object object) {
+    Node node = nodes.get(object);
+    if (node == null || node.seed != seed) {
+      return Optional.empty();
+    }
+    return Optional.of(node.ruleKey);
+  }
+
+  /**
+   * @return a token to pass to {@link #put} for a key about to be computed.
+   */
+  long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Records the key computed for {@code object}, provided that no invalidation has happened since
+   * {@code startGeneration}, every input is watched and every dependency is itself cached.
+   *
+   * @param inputs absolute paths of the files hashed when computing the key.
+   * @param dependencies the rules and appendables whose keys were used when computing the key.
+   */
+  void put(
+      int seed,
+      Object object,
+      RuleKey ruleKey,
+      long startGeneration,
+      Iterable<Path> inputs,
+      Iterable<Object> dependencies) {
+    List<Path> relativeInputs = new ArrayList<>();
+    for (Path input : inputs) {
+      Optional<Path> relativeInput = getWatchedRelativePath(input);
+      if (!relativeInput.isPresent()) {
+        return;
+      }
+      relativeInputs.add(relativeInput.get());
+    }
+    List<Node> dependencyNodes = new ArrayList<>();
+    for (Object dependency : dependencies) {
+      Node dependencyNode = nodes.get(dependency);
+      if (dependencyNode == null || dependencyNode.seed != seed) {
+        return;
+      }
+      dependencyNodes.add(dependencyNode);
+    }
+
+    Node node = new Node(seed, ruleKey);
+    for (Node dependencyNode : dependencyNodes) {
+      dependencyNode.dependents.add(object);
+    }
+    for (Path input : relativeInputs) {
+      inputDependents.computeIfAbsent(input, path -> newWeakSet()).add(object);
+      for (Path child = input, parent = getParent(input);
+           parent != null;
+           child = parent, parent = getParent(parent)) {
+        children.computeIfAbsent(parent, path -> ConcurrentHashMap.newKeySet()).add(child);
+      }
+    }
+    nodes.put(object, node);
+
+    // Re-check once the node is visible to invalidation, to close the race with a concurrent one.
+    if (generation.get() != startGeneration) {
+      nodes.remove(object, node);
+    }
+  }
+
+  private Optional<Path> getWatchedRelativePath(Path path) {
+    if (!path.isAbsolute()) {
+      return Optional.empty();
+    }
+    Optional<Path> relativePath = filesystem.getPathRelativeToProjectRoot(path);
+    if (!relativePath.isPresent() ||
+        relativePath.get().startsWith(filesystem.getBuckPaths().getBuckOut()) ||
+        filesystem.isIgnored(relativePath.get())) {
+      return Optional.empty();
+    }
+    return Optional.of(relativePath.get().normalize());
+  }
+
+  /**
+   * Called when file change events are posted to the file change EventBus.  {@link Path}s
+   * contained within events must all be relative to the {@link ProjectFilesystem} root.
+   */
+  @Subscribe
+  public void onFileSystemChange(WatchEvent<?> event) {
+    generation.incrementAndGet();
+    if (!WatchEvents.isPathChangeEvent(event)) {
+      // Non-path change event, likely an overflow due to many change events: invalidate everything.
+      LOG.debug("Invalidating all");
+      invalidateAll();
+      return;
+    }
+
+    Path path = ((Path) event.context()).normalize();
+    Deque<Object> toInvalidate = new ArrayDeque<>();
+    // As with the file hash cache, an event under an input means a hashed directory has changed,
+    // and an event for a prefix of an input may be a symlink to a directory.
+    for (Path parent = getParent(path); parent != null; parent = getParent(parent)) {
+      removeInput(parent, toInvalidate);
+    }
+    Deque<Path> toVisit = new ArrayDeque<>();
+    toVisit.add(path);
+    while (!toVisit.isEmpty()) {
+      Path current = toVisit.pop();
+      removeInput(current, toInvalidate);
+      Set<Path> currentChildren = children.remove(current);
+      if (currentChildren != null) {
+        toVisit.addAll(currentChildren);
+      }
+    }
+    int invalidated = invalidateTransitively(toInvalidate);
+    LOG.verbose("Invalidated %d rule keys for %s", invalidated, path);
+  }
+
+  private void removeInput(Path input, Deque<Object> toInvalidate) {
+    Set<Object> dependents = inputDependents.remove(input);
+    if (dependents != null) {
+      toInvalidate.addAll(dependents);
+    }
+  }
+
+  private int invalidateTransitively(Deque<Object> toInvalidate) {
+    int invalidated = 0;
+    while (!toInvalidate.isEmpty()) {
+      Node node = nodes.remove(toInvalidate.pop());
+      if (node != null) {
+        invalidated++;
+        toInvalidate.addAll(node.dependents);
+      }
+    }
+    return invalidated;
+  }
+
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    nodes.clear();
+    inputDependents.clear();
+    children.clear();
+  }
+
+  @VisibleForTesting
+  int size() {
+    return nodes.size();
+  }
+
+  /**
+   * @return the directory containing {@code path}, with the empty path standing for the project
+   *     root, or {@code null} for the root itself.
+   */
+  @Nullable
+  private static Path getParent(Path path) {
+    if (path.toString().isEmpty()) {
+      return null;
+    }
+    Path parent = path.getParent();
+    return parent == null ? path.getFileSystem().getPath("") : parent;
+  }
+
+  private static Set<Object> newWeakSet() {
+    return Collections.newSetFromMap(new MapMaker().weakKeys().<Object, Boolean>makeMap());
+  }
+
+  private static class Node {
+    private final int seed;
+    private final RuleKey ruleKey;
+    private final Set<Object> dependents = newWeakSet();
+
+    private Node(int seed, RuleKey ruleKey) {
+      this.seed = seed;
+      this.ruleKey = ruleKey;
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package com.facebook.buck.rules.keys;
 
 import com.facebook.buck.hashing.FileHashLoader;
+import com.facebook.buck.io.ArchiveMemberPath;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.RuleKey;
@@ -29,6 +30,15 @@ import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
 
@@ -39,31 +49,55 @@ public class DefaultRuleKeyFactory
     extends ReflectiveRuleKeyFactory<RuleKeyBuilder<RuleKey>, RuleKey> {
 
   protected final LoadingCache<RuleKeyAppendable, RuleKey> ruleKeyCache;
+  private final int seed;
   private final FileHashLoader hashLoader;
   private final SourcePathResolver pathResolver;
   private final SourcePathRuleFinder ruleFinder;
+  private final Optional<DefaultRuleKeyCache> sharedRuleKeyCache;
 
   public DefaultRuleKeyFactory(
       int seed,
       FileHashLoader hashLoader,
       SourcePathResolver pathResolver,
       SourcePathRuleFinder ruleFinder) {
+    this(seed, hashLoader, pathResolver, ruleFinder, Optional.empty());
+  }
+
+  /**
+   * @param sharedRuleKeyCache a cache, which may outlive this factory, to consult before computing
+   *     keys and to record computed keys in.
+   */
+  public DefaultRuleKeyFactory(
+      int seed,
+      FileHashLoader hashLoader,
+      SourcePathResolver pathResolver,
+      SourcePathRuleFinder ruleFinder,
+      Optional<DefaultRuleKeyCache> sharedRuleKeyCache) {
     super(seed);
     this.ruleKeyCache = CacheBuilder.newBuilder().weakKeys().build(
         new CacheLoader<RuleKeyAppendable, RuleKey>() {
           @Override
           public RuleKey load(@Nonnull RuleKeyAppendable appendable) throws Exception {
-            RuleKeyBuilder<RuleKey> subKeyBuilder = newBuilder();
-            appendable.appendToRuleKey(subKeyBuilder);
-            return subKeyBuilder.build();
+            return buildWithSharedCache(
+                appendable,
+                () -> {
+                  RuleKeyBuilder<RuleKey> subKeyBuilder = newBuilder();
+                  appendable.appendToRuleKey(subKeyBuilder);
+                  return subKeyBuilder;
+                });
           }
         });
+    this.seed = seed;
     this.hashLoader = hashLoader;
     this.pathResolver = pathResolver;
     this.ruleFinder = ruleFinder;
+    this.sharedRuleKeyCache = sharedRuleKeyCache;
   }
 
   private RuleKeyBuilder<RuleKey> newBuilder() {
+    if (sharedRuleKeyCache.isPresent()) {
+      return new TrackingBuilder(new TrackingFileHashLoader(hashLoader));
+    }
     return new RuleKeyBuilder<RuleKey>(ruleFinder, pathResolver, hashLoader) {
       @Override
       protected RuleKeyBuilder<RuleKey> setBuildRule(BuildRule rule) {
@@ -92,6 +126,35 @@ public class DefaultRuleKeyFactory
     return builder;
   }
 
+  @Override
+  protected RuleKey buildUncached(BuildRule buildRule) {
+    return buildWithSharedCache(buildRule, () -> newInstance(buildRule));
+  }
+
+  private RuleKey buildWithSharedCache(
+      Object object,
+      Supplier<RuleKeyBuilder<RuleKey>> builderSupplier) {
+    if (!sharedRuleKeyCache.isPresent()) {
+      return builderSupplier.get().build();
+    }
+    DefaultRuleKeyCache cache = sharedRuleKeyCache.get();
+    Optional<RuleKey> cached = cache.get(seed, object);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    long generation = cache.getGeneration();
+    TrackingBuilder builder = (TrackingBuilder) builderSupplier.get();
+    RuleKey ruleKey = builder.build();
+    cache.put(
+        seed,
+        object,
+        ruleKey,
+        generation,
+        builder.hashLoader.inputs,
+        builder.dependencies);
+    return ruleKey;
+  }
+
   private void addDepsToRuleKey(RuleKeyObjectSink sink, BuildRule buildRule) {
     if (buildRule instanceof AbstractBuildRule) {
       // TODO(marcinkosiba): We really need to get rid of declared/extra deps in rules. Instead
@@ -104,4 +167,65 @@ public class DefaultRuleKeyFactory
       sink.setReflectively("buck.deps", buildRule.getDeps());
     }
   }
+
+  /**
+   * A builder which records the files and nested rules and appendables its key depends on, so
+   * that the key can be invalidated when any of them change.
+   */
+  private class TrackingBuilder extends RuleKeyBuilder<RuleKey> {
+    private final TrackingFileHashLoader hashLoader;
+    private final Set<Object> dependencies = Sets.newIdentityHashSet();
+
+    private TrackingBuilder(TrackingFileHashLoader hashLoader) {
+      super(ruleFinder, pathResolver, hashLoader);
+      this.hashLoader = hashLoader;
+    }
+
+    @Override
+    protected RuleKeyBuilder<RuleKey> setBuildRule(BuildRule rule) {
+      dependencies.add(rule);
+      return setSingleValue(DefaultRuleKeyFactory.this.build(rule));
+    }
+
+    @Override
+    public RuleKeyBuilder<RuleKey> setAppendableRuleKey(
+        String key,
+        RuleKeyAppendable appendable) {
+      dependencies.add(appendable);
+      RuleKey subKey = ruleKeyCache.getUnchecked(appendable);
+      return setAppendableRuleKey(key, subKey);
+    }
+
+    @Override
+    public RuleKey build() {
+      return buildRuleKey();
+    }
+  }
+
+  private static class TrackingFileHashLoader implements FileHashLoader {
+    private final FileHashLoader delegate;
+    private final Set<Path> inputs = new HashSet<>();
+
+    private TrackingFileHashLoader(FileHashLoader delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public HashCode get(Path path) throws IOException {
+      inputs.add(path);
+      return delegate.get(path);
+    }
+
+    @Override
+    public long getSize(Path path) throws IOException {
+      inputs.add(path);
+      return delegate.getSize(path);
+    }
+
+    @Override
+    public HashCode get(ArchiveMemberPath archiveMemberPath) throws IOException {
+      inputs.add(archiveMemberPath.getArchivePath());
+      return delegate.get(archiveMemberPath);
+    }
+  }
 }
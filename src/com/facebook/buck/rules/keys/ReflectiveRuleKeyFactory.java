@@ -50,11 +50,19 @@ public abstract class ReflectiveRuleKeyFactory<
         new CacheLoader<BuildRule, RULE_KEY>() {
           @Override
           public RULE_KEY load(BuildRule key) throws Exception {
-            return newInstance(key).build();
+            return buildUncached(key);
           }
         });
   }
 
+  /**
+   * Computes the key for a rule this factory hasn't built a key for yet.  Sub-classes may override
+   * this to consult caches which outlive the factory.
+   */
+  protected RULE_KEY buildUncached(BuildRule buildRule) {
+    return newInstance(buildRule).build();
+  }
+
   /**
    * @return sub-classes should override this to provide specialized {@link RuleKeyBuilder}s.
    */
@@ -36,10 +36,16 @@ import java.io.OutputStreamWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 public class WorkerProcess {
 
@@ -51,6 +57,18 @@ public class WorkerProcess {
   private final Path tmpPath;
   private final Path stdErr;
   private final AtomicInteger currentMessageID = new AtomicInteger();
+  private final Object responseLock = new Object();
+  @GuardedBy("responseLock")
+  private final Set<Integer> pendingMessageIDs = new HashSet<>();
+  @GuardedBy("responseLock")
+  private final Map<Integer, Integer> receivedExitCodes = new HashMap<>();
+  @GuardedBy("responseLock")
+  private boolean readingResponse = false;
+  @GuardedBy("responseLock")
+  @Nullable
+  private Exception responseFailure;
+  private final Object sendLock = new Object();
+  private volatile Semaphore jobSlots = new Semaphore(1);
   private boolean handshakePerformed = false;
   @Nullable
   private WorkerProcessProtocol protocol;
@@ -61,7 +79,8 @@ public class WorkerProcess {
    * Worker process is a process that stays alive and receives commands which describe jobs.
    * Worker processes may be combined into pools so they can perform different jobs concurrently.
    * It communicates via JSON stream and via files.
-   * Submitted job blocks the calling thread until it receives the result back.
+   * Submitted job blocks the calling thread until it receives the result back. Workers which
+   * negotiate it during the handshake may run several submitted jobs at once.
    * Worker process must understand the protocol that Buck will use to communicate with it.
    * @param executor Process executor that will start worker process.
    * @param processParams Arguments for process executor.
@@ -106,10 +125,18 @@ public class WorkerProcess {
     protocol.sendHandshake(messageID);
     LOG.debug("Receiving handshake from process %d", this.hashCode());
     protocol.receiveHandshake(messageID);
+    jobSlots = new Semaphore(protocol.getMaxConcurrentCommands());
     handshakePerformed = true;
   }
 
-  public synchronized WorkerJobResult submitAndWaitForJob(String jobArgs) throws IOException {
+  /**
+   * @return how many jobs this process agreed to run at once during the handshake.
+   */
+  public int getMaxConcurrentJobs() {
+    return protocol == null ? 1 : protocol.getMaxConcurrentCommands();
+  }
+
+  public WorkerJobResult submitAndWaitForJob(String jobArgs) throws IOException {
     Preconditions.checkState(
         protocol != null,
         "Tried to submit a job to the worker process before the handshake was performed.");
@@ -126,16 +153,38 @@ public class WorkerProcess {
         String.format("%d.err", messageID));
     filesystem.writeContentsToPath(jobArgs, argsPath);
 
-    LOG.debug("Sending job %d to process %d \n" +
-        " job arguments: \'%s\'",
-        messageID,
-        this.hashCode(),
-        jobArgs);
-    protocol.sendCommand(messageID, WorkerProcessCommand.of(argsPath, stdoutPath, stderrPath));
-    LOG.debug("Receiving response for job %d from process %d",
-        messageID,
-        this.hashCode());
-    int exitCode = protocol.receiveCommandResponse(messageID);
+    Semaphore jobSlots = this.jobSlots;
+    jobSlots.acquireUninterruptibly();
+    int exitCode;
+    try {
+      synchronized (responseLock) {
+        pendingMessageIDs.add(messageID);
+      }
+      LOG.debug("Sending job %d to process %d \n" +
+          " job arguments: \'%s\'",
+          messageID,
+          this.hashCode(),
+          jobArgs);
+      try {
+        synchronized (sendLock) {
+          protocol.sendCommand(
+              messageID,
+              WorkerProcessCommand.of(argsPath, stdoutPath, stderrPath));
+        }
+      } catch (IOException | RuntimeException e) {
+        // No response will come for a job the worker never got.
+        synchronized (responseLock) {
+          pendingMessageIDs.remove(messageID);
+        }
+        throw e;
+      }
+      LOG.debug("Receiving response for job %d from process %d",
+          messageID,
+          this.hashCode());
+      exitCode = waitForResponse(messageID);
+    } finally {
+      jobSlots.release();
+    }
     Optional<String> stdout = filesystem.readFileIfItExists(stdoutPath);
     Optional<String> stderr = filesystem.readFileIfItExists(stderrPath);
     LOG.debug(
@@ -152,6 +201,79 @@ public class WorkerProcess {
     return WorkerJobResult.of(exitCode, stdout, stderr);
   }
 
+  /**
+   * Waits for the response to the given job. Responses may arrive in any order, so rather than
+   * having a thread dedicated to reading them, whichever waiting thread finds nobody else reading
+   * reads the next response, hands it to the thread waiting for it, and then lets the next reader
+   * take over.
+   * <p>
+   * Like the blocking read it may end up doing, this isn't interruptible, as a job can't be
+   * cancelled once the worker has it.
+   */
+  private int waitForResponse(int messageID) throws IOException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        synchronized (responseLock) {
+          while (true) {
+            Integer exitCode = receivedExitCodes.remove(messageID);
+            if (exitCode != null) {
+              return exitCode;
+            }
+            if (responseFailure != null) {
+              throw new IOException(
+                  String.format(
+                      "Worker process %d failed while running job %d",
+                      this.hashCode(),
+                      messageID),
+                  responseFailure);
+            }
+            if (!readingResponse) {
+              readingResponse = true;
+              break;
+            }
+            try {
+              responseLock.wait();
+            } catch (InterruptedException e) {
+              interrupted = true;
+            }
+          }
+        }
+        readNextResponse();
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void readNextResponse() throws IOException {
+    try {
+      WorkerProcessCommandResponse response =
+          Preconditions.checkNotNull(protocol).receiveNextCommandResponse();
+      synchronized (responseLock) {
+        if (!pendingMessageIDs.remove(response.getMessageID())) {
+          throw new HumanReadableException(
+              "Received a response for job %d from a worker process, which wasn't running it.",
+              response.getMessageID());
+        }
+        receivedExitCodes.put(response.getMessageID(), response.getExitCode());
+      }
+    } catch (IOException | RuntimeException e) {
+      // The responses to any other running jobs can't be read either now.
+      synchronized (responseLock) {
+        responseFailure = e;
+      }
+      throw e;
+    } finally {
+      synchronized (responseLock) {
+        readingResponse = false;
+        responseLock.notifyAll();
+      }
+    }
+  }
+
   public void close() {
     LOG.debug("Closing process %d", this.hashCode());
     try {
@@ -179,5 +301,6 @@ public class WorkerProcess {
   @VisibleForTesting
   void setProtocol(WorkerProcessProtocol protocolMock) {
     this.protocol = protocolMock;
+    this.jobSlots = new Semaphore(protocolMock.getMaxConcurrentCommands());
   }
 }
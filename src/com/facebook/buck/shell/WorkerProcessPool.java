@@ -21,74 +21,82 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 public abstract class WorkerProcessPool {
 
   private final int capacity;
-  private final BlockingQueue<WorkerProcess> availableWorkers;
-  @GuardedBy("createdWorkers")
-  private final List<WorkerProcess> createdWorkers;
+  /**
+   * The number of jobs borrowed from each created worker that haven't been returned yet.
+   */
+  @GuardedBy("jobsInFlight")
+  private final Map<WorkerProcess, Integer> jobsInFlight;
   private final HashCode poolHash;
 
   public WorkerProcessPool(int maxWorkers, HashCode poolHash) {
     this.capacity = maxWorkers;
-    this.availableWorkers = new LinkedBlockingQueue<>();
-    this.createdWorkers = new ArrayList<>();
+    this.jobsInFlight = new LinkedHashMap<>();
     this.poolHash = poolHash;
   }
 
   /**
-   * If there are available workers, returns one. Otherwise blocks until one becomes available and
-   * returns it. You must free worker process by calling {@link #returnWorkerProcess(WorkerProcess)}
-   * method after you finish using it.
+   * Returns the created worker with the fewest jobs in flight which can take another one, starting
+   * a new worker only if none can. Otherwise blocks until a worker can take a job and returns it.
+   * Workers which can only run one job at a time are thus lent to one borrower at a time, while
+   * workers which run jobs concurrently are shared by as many borrowers as they allow. You must
+   * free worker process by calling {@link #returnWorkerProcess(WorkerProcess)} method after you
+   * finish using it.
    */
   public WorkerProcess borrowWorkerProcess()
       throws IOException, InterruptedException {
-    WorkerProcess workerProcess = availableWorkers.poll(0, TimeUnit.SECONDS);
-    if (workerProcess == null) {
-      workerProcess = createNewWorkerIfPossible();
-    }
-    if (workerProcess != null) {
-      return workerProcess;
-    }
-    return availableWorkers.take();
-  }
-
-  private @Nullable WorkerProcess createNewWorkerIfPossible() throws IOException {
-    synchronized (createdWorkers) {
-      if (createdWorkers.size() == capacity) {
-        return null;
+    synchronized (jobsInFlight) {
+      while (true) {
+        WorkerProcess leastBusy = null;
+        int leastJobs = Integer.MAX_VALUE;
+        for (Map.Entry<WorkerProcess, Integer> entry : jobsInFlight.entrySet()) {
+          int jobs = entry.getValue();
+          if (jobs < entry.getKey().getMaxConcurrentJobs() && jobs < leastJobs) {
+            leastBusy = entry.getKey();
+            leastJobs = jobs;
+          }
+        }
+        if (leastBusy == null && jobsInFlight.size() < capacity) {
+          leastBusy = Preconditions.checkNotNull(startWorkerProcess());
+          leastJobs = 0;
+        }
+        if (leastBusy != null) {
+          jobsInFlight.put(leastBusy, leastJobs + 1);
+          return leastBusy;
+        }
+        jobsInFlight.wait();
       }
-      WorkerProcess process = Preconditions.checkNotNull(startWorkerProcess());
-      createdWorkers.add(process);
-      return process;
     }
   }
 
   public void returnWorkerProcess(WorkerProcess workerProcess)
       throws InterruptedException {
-    synchronized (createdWorkers) {
+    synchronized (jobsInFlight) {
+      Integer jobs = jobsInFlight.get(workerProcess);
       Preconditions.checkArgument(
-          createdWorkers.contains(workerProcess),
+          jobs != null,
           "Trying to return a foreign WorkerProcess to the pool");
+      Preconditions.checkState(
+          jobs > 0,
+          "Trying to return a WorkerProcess more times than it was borrowed");
+      jobsInFlight.put(workerProcess, jobs - 1);
+      jobsInFlight.notifyAll();
     }
-    availableWorkers.put(workerProcess);
   }
 
   public void close() {
     ImmutableSet<WorkerProcess> processesToClose;
-    synchronized (createdWorkers) {
-      processesToClose = ImmutableSet.copyOf(createdWorkers);
+    synchronized (jobsInFlight) {
+      processesToClose = ImmutableSet.copyOf(jobsInFlight.keySet());
       Preconditions.checkState(
-          availableWorkers.size() == createdWorkers.size(),
+          jobsInFlight.values().stream().allMatch(jobs -> jobs == 0),
           "WorkerProcessPool was still running when shutdown was called.");
     }
 
@@ -29,6 +29,13 @@ public interface WorkerProcessProtocol {
    */
   void receiveHandshake(int handshakeID) throws IOException;
 
+  /**
+   * The number of commands the other end agreed in its handshake to have in flight at once. Only
+   * workers speaking protocol version 1 may accept more than one, and they may then respond to
+   * commands in any order.
+   */
+  int getMaxConcurrentCommands();
+
   /**
    * Send the given command to the other end for invocation.
    */
@@ -49,6 +56,12 @@ public interface WorkerProcessProtocol {
    */
   int receiveCommandResponse(int messageID) throws IOException;
 
+  /**
+   * This method expects to receive a response for any of the previously sent commands that
+   * haven't been responded to yet.
+   */
+  WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException;
+
   /**
    * Close connection and properly end the stream.
    */
@@ -35,12 +35,14 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
   private static final String TYPE_RESULT = "result";
   private static final String TYPE_ERROR = "error";
   private static final String PROTOCOL_VERSION = "0";
+  private static final String MULTIPLEXED_PROTOCOL_VERSION = "1";
 
   private final ProcessExecutor executor;
   private final ProcessExecutor.LaunchedProcess launchedProcess;
   private final JsonWriter processStdinWriter;
   private final JsonReader processStdoutReader;
   private final Path stdErr;
+  private int maxConcurrentCommands = 1;
 
   public WorkerProcessProtocolZero(
       ProcessExecutor executor,
@@ -86,12 +88,26 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
           protocol_version: '0',
           capabilities: []
         }
+
+    or a message that looks like this from a worker which accepts several commands at once and
+    may respond to them in any order, optionally limiting how many it accepts:
+      [
+        {
+          id: <handshakeID>,
+          type: 'handshake',
+          protocol_version: '1',
+          capabilities: [],
+          max_concurrent_commands: <maxConcurrentCommands>
+        }
+
+    Both versions otherwise exchange the same messages.
    */
   @Override
   public void receiveHandshake(int handshakeID) throws IOException {
     int id = -1;
     String type = "";
     String protocolVersion = "";
+    int maxConcurrentCommands = 0;
 
     try {
       processStdoutReader.beginArray();
@@ -104,6 +120,8 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
           type = processStdoutReader.nextString();
         } else if (property.equals("protocol_version")) {
           protocolVersion = processStdoutReader.nextString();
+        } else if (property.equals("max_concurrent_commands")) {
+          maxConcurrentCommands = processStdoutReader.nextInt();
         } else if (property.equals("capabilities")) {
           try {
             processStdoutReader.beginArray();
@@ -133,13 +151,24 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
       throw new HumanReadableException(String.format("Expected handshake response's \"type\" " +
           "to be \"%s\", got \"%s\" instead.", TYPE_HANDSHAKE, type));
     }
-    if (!protocolVersion.equals(PROTOCOL_VERSION)) {
+    if (protocolVersion.equals(PROTOCOL_VERSION)) {
+      this.maxConcurrentCommands = 1;
+    } else if (protocolVersion.equals(MULTIPLEXED_PROTOCOL_VERSION)) {
+      // Like max_workers, a missing or non-positive limit means there is none.
+      this.maxConcurrentCommands =
+          maxConcurrentCommands < 1 ? Integer.MAX_VALUE : maxConcurrentCommands;
+    } else {
       throw new HumanReadableException(String.format("Expected handshake response's " +
-          "\"protocol_version\" to be \"%s\", got \"%s\" instead.",
-          PROTOCOL_VERSION, protocolVersion));
+          "\"protocol_version\" to be \"%s\" or \"%s\", got \"%s\" instead.",
+          PROTOCOL_VERSION, MULTIPLEXED_PROTOCOL_VERSION, protocolVersion));
     }
   }
 
+  @Override
+  public int getMaxConcurrentCommands() {
+    return maxConcurrentCommands;
+  }
+
   /*
     Sends a message that looks like this:
       ,{
@@ -301,6 +330,19 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
   */
   @Override
   public int receiveCommandResponse(int messageID) throws IOException {
+    WorkerProcessCommandResponse response = receiveNextCommandResponse();
+    if (response.getMessageID() != messageID) {
+      throw new HumanReadableException(String.format("Expected response's \"id\" value to be " +
+          "\"%d\", got \"%d\" instead.", messageID, response.getMessageID()));
+    }
+    return response.getExitCode();
+  }
+
+  /*
+    Expects any of the messages receiveCommandResponse does, for whichever command it responds to.
+  */
+  @Override
+  public WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException {
     int id = -1;
     int exitCode = -1;
     String type = "";
@@ -327,15 +369,11 @@ public class WorkerProcessProtocolZero implements WorkerProcessProtocol {
           getStdErrorOutput());
     }
 
-    if (id != messageID) {
-      throw new HumanReadableException(String.format("Expected response's \"id\" value to be " +
-          "\"%d\", got \"%d\" instead.", messageID, id));
-    }
     if (!type.equals(TYPE_RESULT) && !type.equals(TYPE_ERROR)) {
       throw new HumanReadableException(String.format("Expected response's \"type\" " +
           "to be one of [\"%s\",\"%s\"], got \"%s\" instead.", TYPE_RESULT, TYPE_ERROR, type));
     }
-    return exitCode;
+    return WorkerProcessCommandResponse.of(id, exitCode);
   }
 
   /*
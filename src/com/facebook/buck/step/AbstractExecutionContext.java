@@ -21,6 +21,7 @@ import com.facebook.buck.android.NoAndroidSdkException;
 import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ThrowableConsoleEvent;
+import com.facebook.buck.hashing.FileHashLoader;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.rules.CellPathResolver;
@@ -31,6 +32,7 @@ import com.facebook.buck.util.Console;
 import com.facebook.buck.util.DefaultProcessExecutor;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.cache.JarIndexCache;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
 import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
@@ -92,6 +94,11 @@ abstract class AbstractExecutionContext implements Closeable {
   @Value.Parameter
   abstract CellPathResolver getCellPathResolver();
 
+  /**
+   * Hashes of the files steps read, when the build engine makes them available.
+   */
+  abstract Optional<FileHashLoader> getFileHashLoader();
+
   /**
    * Returns an {@link AndroidPlatformTarget} if the user specified one. If the user failed to
    * specify one, an exception will be thrown.
@@ -147,6 +154,14 @@ abstract class AbstractExecutionContext implements Closeable {
     return new ClassLoaderCache();
   }
 
+  /**
+   * Listings of the jars on compilation classpaths, shared between in-process compilations.
+   */
+  @Value.Default
+  public JarIndexCache getJarIndexCache() {
+    return new JarIndexCache();
+  }
+
   @Value.Default
   public ProcessExecutor getProcessExecutor() {
     return new DefaultProcessExecutor(getConsole());
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Steps which don't depend on each other, so that whatever runs them may run them concurrently
+ * and in any order. Executing this step itself runs them one after another, stopping at the first
+ * which fails.
+ */
+public class ConcurrentStep implements Step, Iterable<Step> {
+
+  private final ImmutableList<Step> steps;
+
+  public ConcurrentStep(List<? extends Step> steps) {
+    Preconditions.checkArgument(!steps.isEmpty(), "Must have at least one step");
+    this.steps = ImmutableList.copyOf(steps);
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    for (Step step : steps) {
+      StepExecutionResult executionResult = step.execute(context);
+      if (!executionResult.isSuccess()) {
+        return executionResult;
+      }
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getDescription(final ExecutionContext context) {
+    return Joiner.on(" & ").join(Iterables.transform(steps,
+        step -> step.getDescription(context)));
+  }
+
+  @Override
+  public String getShortName() {
+    return Joiner.on("_&_").join(Iterables.transform(steps,
+        Step::getShortName));
+  }
+
+  @Override
+  public Iterator<Step> iterator() {
+    return steps.iterator();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == null) {
+      return false;
+    } else if (this == obj) {
+      return true;
+    } else if (!(getClass() == obj.getClass())) {
+      return false;
+    }
+
+    ConcurrentStep that = (ConcurrentStep) obj;
+    return Objects.equal(this.steps, that.steps);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(steps);
+  }
+}
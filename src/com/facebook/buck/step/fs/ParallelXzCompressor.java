@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Compresses a file into a single XZ stream made of several independently compressed blocks, so
+ * that the blocks can be compressed at the same time.
+ *
+ * <p>XZ for Java only compresses on the calling thread, so each block is compressed as a stream of
+ * its own, and the blocks are then lifted out of those streams and written, in order, into one
+ * stream with an index covering all of them. The result is an ordinary .xz file which any decoder
+ * can read, though it compresses slightly worse than a single block would, since no block can
+ * refer back to the data in the blocks before it.
+ *
+ * @see <a href="http://tukaani.org/xz/xz-file-format.txt">The .xz File Format</a>
+ */
+final class ParallelXzCompressor {
+
+  /**
+   * Blocks are never made smaller than this, so that small files aren't split up into blocks
+   * which compress badly for no real gain in time.
+   */
+  static final int MIN_BLOCK_SIZE = 1024 * 1024;
+
+  private static final int HEADER_SIZE = 12;
+  private static final int FOOTER_SIZE = 12;
+  private static final byte[] FOOTER_MAGIC = {'Y', 'Z'};
+
+  private ParallelXzCompressor() {}
+
+  /**
+   * @return how many blocks a file of the given size will be split into when compressed with the
+   *     given number of threads.
+   */
+  static int getBlockCount(long size, int threads) {
+    return (int) Math.max(1, Math.min(threads, size / MIN_BLOCK_SIZE));
+  }
+
+  /**
+   * Compresses {@code source} into {@code out} as {@link #getBlockCount} blocks of roughly equal
+   * size, compressing up to {@code threads} of them at once on {@code executor}.
+   */
+  static void compress(
+      Path source,
+      OutputStream out,
+      int compressionLevel,
+      int check,
+      int threads,
+      ExecutorService executor) throws IOException, InterruptedException {
+    Preconditions.checkArgument(threads > 0);
+    List<Future<byte[]>> blocks = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+      long size = channel.size();
+      Preconditions.checkArgument(size > 0, "Cannot split an empty file into blocks.");
+      int blockCount = getBlockCount(size, threads);
+      long blockSize = (size + blockCount - 1) / blockCount;
+      for (long offset = 0; offset < size; offset += blockSize) {
+        long start = offset;
+        long length = Math.min(blockSize, size - offset);
+        blocks.add(
+            executor.submit(() -> compressBlock(channel, start, length, compressionLevel, check)));
+      }
+
+      ByteArrayOutputStream index = new ByteArrayOutputStream();
+      writeVli(index, blocks.size());
+      byte[] header = new byte[HEADER_SIZE];
+      for (Future<byte[]> future : blocks) {
+        byte[] stream = getBlock(future);
+        if (future == blocks.get(0)) {
+          // Every block was compressed with the same options, so has the same stream header.
+          System.arraycopy(stream, 0, header, 0, HEADER_SIZE);
+          out.write(header);
+        }
+        // A stream of a single block is the stream header, the block, an index with one record
+        // giving the block's unpadded and uncompressed sizes, and the stream footer.
+        int indexStart = stream.length - FOOTER_SIZE - getIndexSize(stream);
+        out.write(stream, HEADER_SIZE, indexStart - HEADER_SIZE);
+        int recordStart = indexStart + 1;
+        recordStart += getVliLength(stream, recordStart);
+        int recordLength = getVliLength(stream, recordStart);
+        recordLength += getVliLength(stream, recordStart + recordLength);
+        index.write(stream, recordStart, recordLength);
+      }
+      writeIndexAndFooter(out, index.toByteArray(), header);
+    } finally {
+      for (Future<byte[]> block : blocks) {
+        block.cancel(true);
+      }
+    }
+  }
+
+  private static byte[] compressBlock(
+      FileChannel channel,
+      long start,
+      long length,
+      int compressionLevel,
+      int check) throws IOException {
+    XzMemorySemaphore.acquireMemory(compressionLevel);
+    try {
+      ByteArrayOutputStream stream = new ByteArrayOutputStream((int) (length / 2));
+      try (InputStream in = ByteStreams.limit(
+               Channels.newInputStream(new PositionedChannel(channel, start)), length);
+           XZOutputStream xzOut =
+               new XZOutputStream(stream, new LZMA2Options(compressionLevel), check)) {
+        ByteStreams.copy(in, xzOut);
+        xzOut.finish();
+      }
+      return stream.toByteArray();
+    } finally {
+      XzMemorySemaphore.releaseMemory(compressionLevel);
+    }
+  }
+
+  private static void writeIndexAndFooter(
+      OutputStream out,
+      byte[] records,
+      byte[] streamHeader) throws IOException {
+    // The index indicator, the number of records and the records themselves, padded to a multiple
+    // of four bytes and followed by their CRC32.
+    int unpaddedSize = 1 + records.length;
+    int indexSize = (unpaddedSize + 3) / 4 * 4 + 4;
+    ByteBuffer index = ByteBuffer.allocate(indexSize).order(ByteOrder.LITTLE_ENDIAN);
+    index.put((byte) 0).put(records);
+    index.position(indexSize - 4);
+    index.putInt((int) crc32(index.array(), 0, indexSize - 4));
+    out.write(index.array());
+
+    ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    footer.position(4);
+    footer.putInt(indexSize / 4 - 1);
+    // The stream flags come straight after the magic bytes in the stream header.
+    footer.put(streamHeader, 6, 2);
+    footer.put(FOOTER_MAGIC);
+    footer.putInt(0, (int) crc32(footer.array(), 4, 6));
+    out.write(footer.array());
+  }
+
+  /**
+   * @return the size of the index of the XZ stream in {@code stream}, as recorded in its footer.
+   */
+  private static int getIndexSize(byte[] stream) {
+    int backwardSize = ByteBuffer.wrap(stream)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .getInt(stream.length - FOOTER_SIZE + 4);
+    return (backwardSize + 1) * 4;
+  }
+
+  private static int getVliLength(byte[] buffer, int offset) {
+    int length = 1;
+    while ((buffer[offset + length - 1] & 0x80) != 0) {
+      length++;
+    }
+    return length;
+  }
+
+  private static void writeVli(ByteArrayOutputStream out, long value) {
+    while (value >= 0x80) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long crc32(byte[] buffer, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(buffer, offset, length);
+    return crc.getValue();
+  }
+
+  private static byte[] getBlock(Future<byte[]> future)
+      throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Reads a {@link FileChannel} from a position of its own, so that several blocks of the same
+   * file can be read at once.
+   */
+  private static class PositionedChannel implements ReadableByteChannel {
+    private final FileChannel channel;
+    private long position;
+
+    PositionedChannel(FileChannel channel, long position) {
+      this.channel = channel;
+      this.position = position;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      int read = channel.read(dst, position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+      // The channel is shared with the other blocks, and is closed once they have all been read.
+    }
+  }
+}
@@ -16,18 +16,49 @@
 
 package com.facebook.buck.step.fs;
 
+import com.facebook.buck.io.MoreFiles;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableMap;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+/**
+ * Makes the directory {@code root} hold exactly the given symlinks.
+ *
+ * <p>Rather than deleting the whole tree and creating every link again, the tree left behind by
+ * the last build is compared with the links it should hold, so that only the links which were
+ * added, removed or now point somewhere else are touched. A tree of tens of thousands of headers
+ * only changes by a link or two from one build to the next.
+ */
 public class SymlinkTreeStep implements Step {
 
+  private static final Logger LOG = Logger.get(SymlinkTreeStep.class);
+
+  /**
+   * When at least this many links need creating, they are created in parallel.
+   */
+  private static final int PARALLEL_LINK_THRESHOLD = 1000;
+
   private final ProjectFilesystem filesystem;
   private final Path root;
   private final ImmutableMap<Path, Path> links;
@@ -50,22 +81,122 @@ public class SymlinkTreeStep implements Step {
 
   @Override
   public StepExecutionResult execute(ExecutionContext context) {
+    Path absoluteRoot = filesystem.resolve(root);
+    Map<Path, Path> targets = new HashMap<>();
     for (ImmutableMap.Entry<Path, Path> ent : links.entrySet()) {
-      Path target = filesystem.resolve(ent.getValue());
-      Path link = filesystem.resolve(root.resolve(ent.getKey()));
-      try {
-        filesystem.mkdirs(link.getParent());
-        filesystem.createSymLink(link, target, true /* force */);
-      } catch (IOException e) {
-        String msg = String.format("failed creating linking \"%s\" -> \"%s\"", link, target);
-        context.logError(e, msg);
-        e.printStackTrace(context.getStdErr());
-        return StepExecutionResult.ERROR;
+      targets.put(
+          absoluteRoot.resolve(ent.getKey()).normalize(),
+          filesystem.resolve(ent.getValue()));
+    }
+
+    Set<Path> linksToCreate;
+    try {
+      if (Platform.detect() == Platform.WINDOWS) {
+        // Links are copies or hard links on Windows, so there is no telling whether the ones
+        // already in the tree are up to date.
+        MoreFiles.deleteRecursivelyIfExists(absoluteRoot);
+        linksToCreate = targets.keySet();
+      } else {
+        linksToCreate = removeStaleEntries(absoluteRoot, targets);
       }
+      // Create each directory once, parents first, rather than once for every link inside it.
+      Set<Path> directories = new TreeSet<>();
+      directories.add(absoluteRoot);
+      for (Path link : linksToCreate) {
+        directories.add(link.getParent());
+      }
+      for (Path directory : directories) {
+        filesystem.mkdirs(directory);
+      }
+    } catch (IOException e) {
+      context.logError(e, "failed preparing link tree \"%s\"", absoluteRoot);
+      e.printStackTrace(context.getStdErr());
+      return StepExecutionResult.ERROR;
+    }
+    LOG.debug(
+        "%s: %d of %d links need creating",
+        root,
+        linksToCreate.size(),
+        targets.size());
+
+    List<Path> toCreate = new ArrayList<>(linksToCreate);
+    try {
+      (toCreate.size() >= PARALLEL_LINK_THRESHOLD ? toCreate.parallelStream() : toCreate.stream())
+          .forEach(link -> createLink(context, link, targets.get(link)));
+    } catch (UncheckedIOException e) {
+      e.getCause().printStackTrace(context.getStdErr());
+      return StepExecutionResult.ERROR;
     }
     return StepExecutionResult.SUCCESS;
   }
 
+  private void createLink(ExecutionContext context, Path link, Path target) {
+    try {
+      filesystem.createSymLink(link, target, true /* force */);
+    } catch (IOException e) {
+      String msg = String.format("failed creating linking \"%s\" -> \"%s\"", link, target);
+      context.logError(e, msg);
+      throw new UncheckedIOException(msg, e);
+    }
+  }
+
+  /**
+   * Deletes everything under {@code absoluteRoot} which isn't one of the wanted links or a
+   * directory holding one of them, along with links which point at the wrong target.
+   *
+   * @return the links which still need to be created.
+   */
+  private static Set<Path> removeStaleEntries(
+      Path absoluteRoot,
+      Map<Path, Path> targets) throws IOException {
+    final Set<Path> linksToCreate = new HashSet<>(targets.keySet());
+    if (!Files.exists(absoluteRoot, LinkOption.NOFOLLOW_LINKS)) {
+      return linksToCreate;
+    }
+    if (!Files.isDirectory(absoluteRoot, LinkOption.NOFOLLOW_LINKS)) {
+      Files.delete(absoluteRoot);
+      return linksToCreate;
+    }
+
+    final Set<Path> directories = new HashSet<>();
+    for (Path link : targets.keySet()) {
+      // Stop at the first parent which has been seen before, as its parents have been too.
+      Path parent = link.getParent();
+      while (parent != null && parent.startsWith(absoluteRoot) && directories.add(parent)) {
+        parent = parent.getParent();
+      }
+    }
+
+    Files.walkFileTree(
+        absoluteRoot,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            if (directories.contains(dir) || dir.equals(absoluteRoot)) {
+              return FileVisitResult.CONTINUE;
+            }
+            MoreFiles.deleteRecursively(dir);
+            return FileVisitResult.SKIP_SUBTREE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            Path target = targets.get(file);
+            if (target != null &&
+                attrs.isSymbolicLink() &&
+                target.equals(Files.readSymbolicLink(file))) {
+              linksToCreate.remove(file);
+            } else {
+              Files.delete(file);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return linksToCreate;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (!(obj instanceof SymlinkTreeStep)) {
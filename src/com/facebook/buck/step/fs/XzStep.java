@@ -21,10 +21,12 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.tukaani.xz.LZMA2Options;
 import org.tukaani.xz.XZ;
@@ -35,6 +37,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A {@link Step} to compress a file with XZ / LZMA2.
@@ -47,12 +50,21 @@ public class XzStep implements Step {
   public static final int DEFAULT_COMPRESSION_LEVEL = 4;
   private static final Logger LOG = Logger.get(XzStep.class);
 
+  /**
+   * Compresses the blocks of every {@link XzStep} running with more than one thread, so that
+   * several of them running at once don't use more threads between them than there are cores.
+   */
+  private static final ExecutorService BLOCK_EXECUTOR = MostExecutors.newMultiThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("xz-%d").setDaemon(true).build(),
+      Runtime.getRuntime().availableProcessors());
+
   private final ProjectFilesystem filesystem;
   private final Path sourceFile;
   private final Path destinationFile;
   private final int compressionLevel;
   private final boolean keep;
   private final int check;
+  private final int threads;
 
   /**
    * Create an {@link XzStep} to compress a file using XZ.
@@ -64,6 +76,8 @@ public class XzStep implements Step {
    * @param check integrity check to use. Must be one of {@link XZ#CHECK_CRC32},
    *     {@link XZ#CHECK_CRC64}, {@link XZ#CHECK_SHA256}, {@link XZ#CHECK_NONE}
    *     (Note: XZ Embedded can only verify CRC32).
+   * @param threads how many threads to compress with. With more than one, the file is split into
+   *     that many independently compressed blocks, which compress slightly less well.
    */
   @VisibleForTesting
   XzStep(
@@ -72,7 +86,8 @@ public class XzStep implements Step {
       Path destinationFile,
       int compressionLevel,
       boolean keep,
-      int check) {
+      int check,
+      int threads) {
     this.filesystem = filesystem;
     this.sourceFile = sourceFile;
     this.destinationFile = destinationFile;
@@ -81,6 +96,8 @@ public class XzStep implements Step {
     this.compressionLevel = compressionLevel;
     this.keep = keep;
     this.check = check;
+    Preconditions.checkArgument(threads > 0, "threads must be positive.");
+    this.threads = threads;
   }
 
   /**
@@ -121,7 +138,32 @@ public class XzStep implements Step {
       Path sourceFile,
       Path outputPath,
       int compressionLevel) {
-    this(filesystem, sourceFile, outputPath, compressionLevel, /* keep */ false, XZ.CHECK_CRC32);
+    this(filesystem, sourceFile, outputPath, compressionLevel, /* threads */ 1);
+  }
+
+  /**
+   * Creates an XzStep to compress a file with the given XZ compression level and output path,
+   * using up to {@code threads} threads.
+   *
+   * @param sourceFile file to compress
+   * @param outputPath the desired output path.
+   * @param compressionLevel level of compression (from 0-9)
+   * @param threads how many blocks to split the file into and compress at the same time
+   */
+  public XzStep(
+      ProjectFilesystem filesystem,
+      Path sourceFile,
+      Path outputPath,
+      int compressionLevel,
+      int threads) {
+    this(
+        filesystem,
+        sourceFile,
+        outputPath,
+        compressionLevel,
+        /* keep */ false,
+        XZ.CHECK_CRC32,
+        threads);
   }
 
   /**
@@ -136,17 +178,45 @@ public class XzStep implements Step {
    * to decompress.
    */
   public XzStep(ProjectFilesystem filesystem, Path sourceFile, int compressionLevel) {
+    this(filesystem, sourceFile, compressionLevel, /* threads */ 1);
+  }
+
+  /**
+   * Creates an XzStep to compress a file with XZ at a user supplied compression level, using up to
+   * {@code threads} threads.
+   *
+   * <p> The destination file will be {@code sourceFile} with the added {@code .xz} extension.
+   *
+   * @param sourceFile file to compress
+   * @param compressionLevel value from 0 to 9.
+   * @param threads how many blocks to split the file into and compress at the same time
+   */
+  public XzStep(
+      ProjectFilesystem filesystem,
+      Path sourceFile,
+      int compressionLevel,
+      int threads) {
     this(
         filesystem,
         sourceFile,
         Paths.get(sourceFile + ".xz"),
         compressionLevel,
         /* keep */ false,
-        XZ.CHECK_CRC32);
+        XZ.CHECK_CRC32,
+        threads);
   }
 
   @Override
   public StepExecutionResult execute(ExecutionContext context) {
+    try {
+      if (threads > 1 &&
+          ParallelXzCompressor.getBlockCount(filesystem.getFileSize(sourceFile), threads) > 1) {
+        return executeInParallel();
+      }
+    } catch (IOException e) {
+      LOG.error(e);
+      return StepExecutionResult.ERROR;
+    }
     try (
         InputStream in = filesystem.newFileInputStream(sourceFile);
         OutputStream out = filesystem.newFileOutputStream(destinationFile);
@@ -167,6 +237,28 @@ public class XzStep implements Step {
     return StepExecutionResult.SUCCESS;
   }
 
+  private StepExecutionResult executeInParallel() {
+    try (OutputStream out = filesystem.newFileOutputStream(destinationFile)) {
+      ParallelXzCompressor.compress(
+          filesystem.resolve(sourceFile),
+          out,
+          compressionLevel,
+          check,
+          threads,
+          BLOCK_EXECUTOR);
+      if (!keep) {
+        filesystem.deleteFileAtPath(sourceFile);
+      }
+    } catch (IOException e) {
+      LOG.error(e);
+      return StepExecutionResult.ERROR;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return StepExecutionResult.ERROR;
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
   public Path getDestinationFile() {
     return destinationFile;
   }
@@ -174,7 +266,13 @@ public class XzStep implements Step {
   @Override
   public String getDescription(ExecutionContext context) {
     return Joiner.on(" ").skipNulls().join(
-     "xz", "-z", "-" + compressionLevel, (keep ? "--keep" : null), "--check=crc32", sourceFile);
+        "xz",
+        "-z",
+        "-" + compressionLevel,
+        (threads > 1 ? "-T" + threads : null),
+        (keep ? "--keep" : null),
+        "--check=crc32",
+        sourceFile);
   }
 
   @Override
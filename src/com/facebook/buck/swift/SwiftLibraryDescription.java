@@ -20,6 +20,7 @@ import com.facebook.buck.cxx.CxxBuckConfig;
 import com.facebook.buck.cxx.CxxDescriptionEnhancer;
 import com.facebook.buck.cxx.CxxLibrary;
 import com.facebook.buck.cxx.CxxLibraryDescription;
+import com.facebook.buck.cxx.CxxLink;
 import com.facebook.buck.cxx.CxxLinkableEnhancer;
 import com.facebook.buck.cxx.CxxPlatform;
 import com.facebook.buck.cxx.Linker;
@@ -301,25 +302,28 @@ public class SwiftLibraryDescription implements
         .withAppendedFlavors(SWIFT_COMPILE_FLAVOR);
     SwiftCompile rule = (SwiftCompile) resolver.requireRule(requiredBuildTarget);
     inputBuilder.addAllArgs(rule.getLinkArgs());
-    return resolver.addToIndex(CxxLinkableEnhancer.createCxxLinkableBuildRule(
-        cxxBuckConfig,
-        cxxPlatform,
-        LinkerMapMode.restoreLinkerMapModeFlavorInParams(params, flavoredLinkerMapMode),
-        resolver,
-        sourcePathResolver,
-        ruleFinder,
+    return resolver.computeIfAbsent(
         buildTarget,
-        Linker.LinkType.SHARED,
-        Optional.of(sharedLibrarySoname),
-        sharedLibOutput,
-        Linker.LinkableDepType.SHARED,
-        FluentIterable.from(params.getDeps())
-            .filter(NativeLinkable.class)
-            .append(swiftRuntimeLinkable),
-        Optional.empty(),
-        Optional.empty(),
-        ImmutableSet.of(),
-        inputBuilder.build()));
+        CxxLink.class,
+        () -> CxxLinkableEnhancer.createCxxLinkableBuildRule(
+            cxxBuckConfig,
+            cxxPlatform,
+            LinkerMapMode.restoreLinkerMapModeFlavorInParams(params, flavoredLinkerMapMode),
+            resolver,
+            sourcePathResolver,
+            ruleFinder,
+            buildTarget,
+            Linker.LinkType.SHARED,
+            Optional.of(sharedLibrarySoname),
+            sharedLibOutput,
+            Linker.LinkableDepType.SHARED,
+            FluentIterable.from(params.getDeps())
+                .filter(NativeLinkable.class)
+                .append(swiftRuntimeLinkable),
+            Optional.empty(),
+            Optional.empty(),
+            ImmutableSet.of(),
+            inputBuilder.build()));
   }
 
   public <A extends CxxLibraryDescription.Arg> Optional<BuildRule> createCompanionBuildRule(
@@ -345,8 +349,10 @@ public class SwiftLibraryDescription implements
         buildTarget);
     if (!delegateArgs.srcs.isEmpty()) {
       return Optional.of(
-          resolver.addToIndex(
-              createBuildRule(targetGraph, params, resolver, delegateArgs)));
+          resolver.computeIfAbsent(
+              buildTarget,
+              BuildRule.class,
+              () -> createBuildRule(targetGraph, params, resolver, delegateArgs)));
     } else {
       return Optional.empty();
     }
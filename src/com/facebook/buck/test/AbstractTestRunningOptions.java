@@ -79,6 +79,32 @@ abstract class AbstractTestRunningOptions {
 
   public abstract ImmutableMap<String, String> getEnvironmentOverrides();
 
+  /**
+   * How many persistent JVMs JUnit tests may be run in. 0 means each test rule runs its tests in a
+   * JVM of its own.
+   */
+  @Value.Default
+  public int getMaxPersistentJUnitRunners() {
+    return 0;
+  }
+
+  /**
+   * The most shards the test cases of a single test rule may be split into, to be run
+   * concurrently. 1 means each test rule runs its test cases one after another.
+   */
+  @Value.Default
+  public int getMaxShardsPerTestRule() {
+    return 1;
+  }
+
+  /**
+   * Used to balance the test cases of test rules between their shards.
+   */
+  @Value.Default
+  public TestCaseDurationEstimator getTestCaseDurationEstimator() {
+    return TestCaseDurationEstimator.NONE;
+  }
+
   public abstract Optional<String> getCoverageExcludes();
 
   public abstract Optional<String> getCoverageIncludes();
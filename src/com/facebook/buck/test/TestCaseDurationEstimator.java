@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.test;
+
+import com.facebook.buck.model.BuildTarget;
+
+import java.util.Optional;
+
+/**
+ * Estimates how long the test cases of test rules take to run, from their previous runs.
+ */
+public interface TestCaseDurationEstimator {
+
+  TestCaseDurationEstimator NONE = (target, testCaseName) -> Optional.empty();
+
+  /**
+   * @return How long the test case named {@code testCaseName} of the rule {@code target} is
+   * expected to take to run, if it has been run before.
+   */
+  Optional<Long> getEstimatedDurationMillis(BuildTarget target, String testCaseName);
+}
@@ -265,11 +265,8 @@ public abstract class BaseRunner {
   }
 
   protected void runAndExit() {
-    // Run the tests.
     try {
-      run();
-    } catch (Throwable e){
-      e.printStackTrace();
+      runAndReportFailure();
     } finally {
       // Explicitly exit to force the test runner to complete even if tests have sloppily left
       // behind non-daemon threads that would have otherwise forced the process to wait and
@@ -281,4 +278,16 @@ public abstract class BaseRunner {
       System.exit(0);
     }
   }
+
+  /**
+   * Runs the tests, printing rather than throwing anything that escapes them, as the results of
+   * the tests that did run have been written regardless.
+   */
+  protected void runAndReportFailure() {
+    try {
+      run();
+    } catch (Throwable e) {
+      e.printStackTrace();
+    }
+  }
 }
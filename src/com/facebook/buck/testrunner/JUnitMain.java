@@ -38,12 +38,25 @@ public class JUnitMain {
   }
 
   public static void main(String[] args) {
+    createRunner(args).runAndExit();
+  }
+
+  /**
+   * Runs the tests like {@link #main(String[])}, but returns once they have run rather than
+   * exiting. {@link JUnitWorkerMain} calls this reflectively, from the class loader it loads each
+   * job's tests in.
+   */
+  public static void runTests(String[] args) {
+    createRunner(args).runAndReportFailure();
+  }
+
+  private static JUnitRunner createRunner(String[] args) {
     // Ensure that both junit and hamcrest are on the classpath
     CheckDependency.isPresent("junit", "org.junit.Test");
     CheckDependency.isPresent("hamcrest", "org.hamcrest.Description");
 
     JUnitRunner runner = new JUnitRunner();
     runner.parseArgs(args);
-    runner.runAndExit();
+    return runner;
   }
 }
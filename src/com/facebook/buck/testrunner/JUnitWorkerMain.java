@@ -0,0 +1,426 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.testrunner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * A persistent JVM which runs the JUnit tests of successive test rules, so that each rule doesn't
+ * pay for starting a JVM and loading the test runner. It speaks the protocol of
+ * {@code worker_tool()} on stdin and stdout, and runs one job at a time, as tests are free to
+ * change global state.
+ * <p>
+ * The args file of each job holds NUL-separated arguments: the path of the file listing the
+ * classpath of the tests, then the system properties to set as {@code -Dname=value}, then the
+ * arguments for {@link JUnitMain}. Each job's tests, along with JUnit and the test runner, are
+ * loaded in a class loader of their own, which is discarded once they have run, and the system
+ * properties are restored afterwards. Their results are written just as a forked
+ * {@link JUnitMain} writes them.
+ * <p>
+ * A test calling {@link System#exit(int)} fails, rather than ending the JVM and the jobs of any
+ * other rules with it. Threads a job leaves behind are interrupted before its class loader is
+ * closed, though they may ignore that and keep running.
+ * <p>
+ * IMPORTANT! Like {@link JUnitMain}, this class limits itself to types that are available in the
+ * JDK, as it shares the JVM with the tests.
+ */
+public class JUnitWorkerMain {
+
+  private static final String MAIN_CLASS = "com.facebook.buck.testrunner.JUnitMain";
+
+  private final PrintStream protocolOut;
+  private final MessageReader protocolIn;
+  private final PrintStream workerErr;
+  private final List<URL> testRunnerClasspath;
+  private final ExitGuard exitGuard;
+
+  private JUnitWorkerMain(
+      PrintStream protocolOut,
+      MessageReader protocolIn,
+      PrintStream workerErr,
+      List<URL> testRunnerClasspath,
+      ExitGuard exitGuard) {
+    this.protocolOut = protocolOut;
+    this.protocolIn = protocolIn;
+    this.workerErr = workerErr;
+    this.testRunnerClasspath = testRunnerClasspath;
+    this.exitGuard = exitGuard;
+  }
+
+  public static void main(String[] args) throws IOException {
+    // Only the protocol may be written to stdout, so anything else printed outside of a job goes
+    // to stderr instead.
+    PrintStream protocolOut = System.out;
+    System.setOut(System.err);
+
+    List<URL> testRunnerClasspath = new ArrayList<>();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        testRunnerClasspath.add(Paths.get(entry).toUri().toURL());
+      }
+    }
+
+    ExitGuard exitGuard = new ExitGuard();
+    System.setSecurityManager(exitGuard);
+
+    new JUnitWorkerMain(
+        protocolOut,
+        new MessageReader(
+            new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))),
+        System.err,
+        testRunnerClasspath,
+        exitGuard).serve();
+    System.exit(0);
+  }
+
+  private void serve() throws IOException {
+    protocolIn.expect('[');
+    Map<String, String> handshake = protocolIn.readObject();
+    protocolOut.print(
+        "[{\"id\":" + handshake.get("id") + ",\"type\":\"handshake\"," +
+            "\"protocol_version\":\"0\",\"capabilities\":[]}");
+    protocolOut.flush();
+
+    while (protocolIn.nextSeparator() == ',') {
+      Map<String, String> command = protocolIn.readObject();
+      String type;
+      int exitCode;
+      if (!"command".equals(command.get("type"))) {
+        type = "error";
+        exitCode = 1;
+      } else if (command.get("args_path") == null ||
+          command.get("stdout_path") == null ||
+          command.get("stderr_path") == null) {
+        type = "error";
+        exitCode = 2;
+      } else {
+        type = "result";
+        exitCode = runJob(
+            Paths.get(command.get("args_path")),
+            Paths.get(command.get("stdout_path")),
+            Paths.get(command.get("stderr_path")));
+      }
+      protocolOut.print(
+          ",{\"id\":" + command.get("id") + ",\"type\":\"" + type + "\"," +
+              "\"exit_code\":" + exitCode + "}");
+      protocolOut.flush();
+    }
+
+    protocolOut.print("]");
+    protocolOut.flush();
+  }
+
+  private int runJob(Path argsPath, Path stdOutPath, Path stdErrPath) throws IOException {
+    String[] jobArgs =
+        new String(Files.readAllBytes(argsPath), StandardCharsets.UTF_8).split("\0", -1);
+
+    List<URL> classpath = new ArrayList<>();
+    StringBuilder classpathProperty = new StringBuilder();
+    for (String line : Files.readAllLines(Paths.get(jobArgs[0]), StandardCharsets.UTF_8)) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      Path entry = Paths.get(line);
+      classpath.add(entry.toUri().toURL());
+      classpathProperty.append(entry).append(File.pathSeparatorChar);
+    }
+    classpath.addAll(testRunnerClasspath);
+
+    int argIndex = 1;
+    Map<String, String> properties = new HashMap<>();
+    properties.put("java.class.path", classpathProperty + System.getProperty("java.class.path"));
+    for (; argIndex < jobArgs.length && jobArgs[argIndex].startsWith("-D"); argIndex++) {
+      String property = jobArgs[argIndex].substring(2);
+      int equals = property.indexOf('=');
+      if (equals < 0) {
+        properties.put(property, "");
+      } else {
+        properties.put(property.substring(0, equals), property.substring(equals + 1));
+      }
+    }
+    String[] runnerArgs = Arrays.copyOfRange(jobArgs, argIndex, jobArgs.length);
+
+    Properties originalProperties = (Properties) System.getProperties().clone();
+    Logger rootLogger = LogManager.getLogManager().getLogger("");
+    Level originalRootLevel = rootLogger == null ? null : rootLogger.getLevel();
+    Thread thread = Thread.currentThread();
+    ClassLoader originalContextClassLoader = thread.getContextClassLoader();
+    Set<Thread> originalThreads = Thread.getAllStackTraces().keySet();
+
+    try (PrintStream stdOut = new PrintStream(
+             new FileOutputStream(stdOutPath.toFile()), true, StandardCharsets.UTF_8.name());
+         PrintStream stdErr = new PrintStream(
+             new FileOutputStream(stdErrPath.toFile()), true, StandardCharsets.UTF_8.name());
+         // Parent the tests' class loader to the extension class loader, so that they don't see
+         // the classes of this JVM's own copy of the test runner.
+         URLClassLoader loader = new URLClassLoader(
+             classpath.toArray(new URL[classpath.size()]),
+             ClassLoader.getSystemClassLoader().getParent())) {
+      for (Map.Entry<String, String> property : properties.entrySet()) {
+        System.setProperty(property.getKey(), property.getValue());
+      }
+      System.setOut(stdOut);
+      System.setErr(stdErr);
+      thread.setContextClassLoader(loader);
+      exitGuard.setEnabled(true);
+      try {
+        Class.forName(MAIN_CLASS, true, loader)
+            .getMethod("runTests", String[].class)
+            .invoke(null, (Object) runnerArgs);
+        return 0;
+      } catch (InvocationTargetException e) {
+        // The runner exits when it is given arguments it can't use.
+        if (e.getCause() instanceof ExitException) {
+          return ((ExitException) e.getCause()).status;
+        }
+        e.getCause().printStackTrace();
+        return 1;
+      } catch (ReflectiveOperationException | LinkageError e) {
+        e.printStackTrace();
+        return 1;
+      } finally {
+        exitGuard.setEnabled(false);
+        thread.setContextClassLoader(originalContextClassLoader);
+        System.setOut(workerErr);
+        System.setErr(workerErr);
+        System.setProperties(originalProperties);
+        if (rootLogger != null) {
+          rootLogger.setLevel(originalRootLevel);
+        }
+        interruptLeftoverThreads(originalThreads, loader);
+      }
+    }
+  }
+
+  /**
+   * Interrupts the threads the tests started, which inherited {@code loader} as their context class
+   * loader, so that executors and timers they didn't shut down don't pile up across jobs.
+   */
+  private void interruptLeftoverThreads(Set<Thread> originalThreads, ClassLoader loader) {
+    for (Thread leftover : Thread.getAllStackTraces().keySet()) {
+      if (!originalThreads.contains(leftover) &&
+          leftover.isAlive() &&
+          leftover.getContextClassLoader() == loader) {
+        workerErr.println("Interrupting thread left behind by tests: " + leftover.getName());
+        leftover.interrupt();
+      }
+    }
+  }
+
+  /**
+   * Turns {@link System#exit(int)} into an {@link ExitException} while a job is running, and
+   * otherwise permits everything.
+   */
+  private static class ExitGuard extends SecurityManager {
+    private volatile boolean enabled;
+
+    void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    @Override
+    public void checkPermission(Permission perm) {
+      // Everything else is permitted.
+    }
+
+    @Override
+    public void checkPermission(Permission perm, Object context) {
+      // Everything else is permitted.
+    }
+
+    @Override
+    public void checkExit(int status) {
+      if (enabled) {
+        throw new ExitException(status);
+      }
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static class ExitException extends SecurityException {
+    private final int status;
+
+    ExitException(int status) {
+      super("System.exit(" + status + ") is not allowed while running tests in a persistent JVM");
+      this.status = status;
+    }
+  }
+
+  /**
+   * Reads the messages Buck sends: a JSON array of flat objects, whose values are strings, numbers
+   * or arrays. Values are returned as strings, and arrays are skipped.
+   */
+  private static class MessageReader {
+    private final Reader reader;
+
+    MessageReader(Reader reader) {
+      this.reader = reader;
+    }
+
+    void expect(char expected) throws IOException {
+      char c = nextNonWhitespace();
+      if (c != expected) {
+        throw new IOException("Expected '" + expected + "' but got '" + c + "'");
+      }
+    }
+
+    /**
+     * @return The next ',' or ']' between the messages.
+     */
+    char nextSeparator() throws IOException {
+      char c = nextNonWhitespace();
+      if (c != ',' && c != ']') {
+        throw new IOException("Expected ',' or ']' but got '" + c + "'");
+      }
+      return c;
+    }
+
+    Map<String, String> readObject() throws IOException {
+      Map<String, String> values = new HashMap<>();
+      expect('{');
+      char c = nextNonWhitespace();
+      while (c != '}') {
+        if (c != '"') {
+          throw new IOException("Expected a property name but got '" + c + "'");
+        }
+        String name = readString();
+        expect(':');
+        String value = readValue();
+        if (value != null) {
+          values.put(name, value);
+        }
+        c = nextNonWhitespace();
+        if (c == ',') {
+          c = nextNonWhitespace();
+        } else if (c != '}') {
+          throw new IOException("Expected ',' or '}' but got '" + c + "'");
+        }
+      }
+      return values;
+    }
+
+    private String readValue() throws IOException {
+      char c = nextNonWhitespace();
+      if (c == '"') {
+        return readString();
+      } else if (c == '[') {
+        skipArray();
+        return null;
+      }
+      StringBuilder literal = new StringBuilder().append(c);
+      reader.mark(1);
+      for (int next = reader.read(); next != -1; next = reader.read()) {
+        if (next == ',' || next == '}' || Character.isWhitespace(next)) {
+          reader.reset();
+          break;
+        }
+        literal.append((char) next);
+        reader.mark(1);
+      }
+      return literal.toString();
+    }
+
+    private void skipArray() throws IOException {
+      int depth = 1;
+      while (depth > 0) {
+        char c = next();
+        if (c == '"') {
+          readString();
+        } else if (c == '[') {
+          depth++;
+        } else if (c == ']') {
+          depth--;
+        }
+      }
+    }
+
+    private String readString() throws IOException {
+      StringBuilder value = new StringBuilder();
+      for (char c = next(); c != '"'; c = next()) {
+        if (c != '\\') {
+          value.append(c);
+          continue;
+        }
+        char escaped = next();
+        switch (escaped) {
+          case 'b':
+            value.append('\b');
+            break;
+          case 'f':
+            value.append('\f');
+            break;
+          case 'n':
+            value.append('\n');
+            break;
+          case 'r':
+            value.append('\r');
+            break;
+          case 't':
+            value.append('\t');
+            break;
+          case 'u':
+            char[] hex = {next(), next(), next(), next()};
+            value.append((char) Integer.parseInt(new String(hex), 16));
+            break;
+          default:
+            value.append(escaped);
+        }
+      }
+      return value.toString();
+    }
+
+    private char nextNonWhitespace() throws IOException {
+      char c = next();
+      while (Character.isWhitespace(c)) {
+        c = next();
+      }
+      return c;
+    }
+
+    private char next() throws IOException {
+      int c = reader.read();
+      if (c == -1) {
+        throw new IOException("Unexpected end of input");
+      }
+      return (char) c;
+    }
+  }
+}
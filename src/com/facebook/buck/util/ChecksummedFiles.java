@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes files of state persisted across runs, which start with a magic number and a
+ * version and end with a CRC32 of everything before it. A file that is truncated, corrupt or from
+ * another version fails to read with an {@link IOException}, rather than being misread.
+ */
+public class ChecksummedFiles {
+
+  private ChecksummedFiles() {}
+
+  /**
+   * Reads the contents of a file, between its header and its checksum.
+   */
+  @FunctionalInterface
+  public interface ContentReader<T> {
+    T read(DataInputStream inputStream) throws IOException;
+  }
+
+  /**
+   * Writes the contents of a file, between its header and its checksum.
+   */
+  @FunctionalInterface
+  public interface ContentWriter {
+    void write(DataOutputStream outputStream) throws IOException;
+  }
+
+  /**
+   * Reads a file written by {@link #write}. {@code reader} must read all of the contents, as
+   * nothing it returns should be trusted until the checksum after them has been verified.
+   */
+  public static <T> T read(
+      InputStream rawInputStream,
+      int magic,
+      int version,
+      ContentReader<T> reader) throws IOException {
+    CRC32 checksum = new CRC32();
+    DataInputStream inputStream = new DataInputStream(
+        new CheckedInputStream(new BufferedInputStream(rawInputStream), checksum));
+    if (inputStream.readInt() != magic) {
+      throw new IOException("Bad magic number");
+    }
+    int actualVersion = inputStream.readInt();
+    if (actualVersion != version) {
+      throw new IOException(String.format("Unsupported version %d", actualVersion));
+    }
+    T contents = reader.read(inputStream);
+
+    long expectedChecksum = checksum.getValue();
+    long actualChecksum;
+    try {
+      actualChecksum = inputStream.readLong();
+    } catch (EOFException e) {
+      throw new IOException("Missing checksum", e);
+    }
+    if (expectedChecksum != actualChecksum) {
+      throw new IOException("Checksum mismatch");
+    }
+    return contents;
+  }
+
+  /**
+   * Atomically replaces the file at {@code path} with one holding what {@code writer} writes. The
+   * file is written to a unique temporary file next to it first, so concurrent writers never write
+   * into each other's files, and readers see either the old file or the new one.
+   */
+  public static void write(
+      Path path,
+      int magic,
+      int version,
+      ContentWriter writer) throws IOException {
+    Path parent = path.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path tempPath = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream rawOutputStream = Files.newOutputStream(tempPath)) {
+        CRC32 checksum = new CRC32();
+        DataOutputStream outputStream = new DataOutputStream(
+            new CheckedOutputStream(new BufferedOutputStream(rawOutputStream), checksum));
+        outputStream.writeInt(magic);
+        outputStream.writeInt(version);
+        writer.write(outputStream);
+        outputStream.flush();
+        outputStream.writeLong(checksum.getValue());
+        outputStream.flush();
+      }
+      Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+}
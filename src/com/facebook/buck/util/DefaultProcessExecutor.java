@@ -19,17 +19,25 @@ package com.facebook.buck.util;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.Optional;
 import java.util.function.Consumer;
@@ -48,6 +56,7 @@ public class DefaultProcessExecutor implements ProcessExecutor {
   private final Ansi ansi;
   private final ProcessHelper processHelper;
   private final ProcessRegistry processRegistry;
+  private final Optional<ListeningProcessExecutor> listeningProcessExecutor;
 
   /**
    * Creates a new {@link DefaultProcessExecutor} with the specified parameters used for writing the output
@@ -59,20 +68,42 @@ public class DefaultProcessExecutor implements ProcessExecutor {
         console.getStdErr(),
         console.getAnsi(),
         ProcessHelper.getInstance(),
-        ProcessRegistry.getInstance());
+        ProcessRegistry.getInstance(),
+        Optional.of(new ListeningProcessExecutor(ProcessRegistry.getInstance())));
   }
 
+  /**
+   * Creates an executor which launches every process through
+   * {@link #launchProcess(ProcessExecutorParams, ImmutableMap)}, for subclasses which override it.
+   */
   protected DefaultProcessExecutor(
       PrintStream stdOutStream,
       PrintStream stdErrStream,
       Ansi ansi,
       ProcessHelper processHelper,
       ProcessRegistry processRegistry) {
+    this(
+        stdOutStream,
+        stdErrStream,
+        ansi,
+        processHelper,
+        processRegistry,
+        Optional.empty());
+  }
+
+  private DefaultProcessExecutor(
+      PrintStream stdOutStream,
+      PrintStream stdErrStream,
+      Ansi ansi,
+      ProcessHelper processHelper,
+      ProcessRegistry processRegistry,
+      Optional<ListeningProcessExecutor> listeningProcessExecutor) {
     this.stdOutStream = stdOutStream;
     this.stdErrStream = stdErrStream;
     this.ansi = ansi;
     this.processHelper = processHelper;
     this.processRegistry = processRegistry;
+    this.listeningProcessExecutor = listeningProcessExecutor;
   }
 
   @Override
@@ -84,7 +115,8 @@ public class DefaultProcessExecutor implements ProcessExecutor {
         newStdErrStream,
         ansi,
         processHelper,
-        processRegistry);
+        processRegistry,
+        listeningProcessExecutor);
   }
 
   @Override
@@ -126,9 +158,132 @@ public class DefaultProcessExecutor implements ProcessExecutor {
       Optional<Long> timeOutMs,
       Optional<Consumer<Process>> timeOutHandler)
       throws InterruptedException, IOException {
+    if (listeningProcessExecutor.isPresent() &&
+        canExecuteWithListeningProcessExecutor(params, timeOutMs, timeOutHandler)) {
+      return executeWithListeningProcessExecutor(
+          listeningProcessExecutor.get(),
+          params,
+          context,
+          options,
+          stdin,
+          timeOutMs);
+    }
     return execute(launchProcess(params, context), options, stdin, timeOutMs, timeOutHandler);
   }
 
+  /**
+   * NuProcess can't redirect the streams of a process, and has no {@link Process} to hand to a
+   * timeout handler, so those processes still get threads of their own.  So do programs which
+   * can't be found, as NuProcess reports that they exited successfully rather than failing to
+   * start them.
+   */
+  private static boolean canExecuteWithListeningProcessExecutor(
+      ProcessExecutorParams params,
+      Optional<Long> timeOutMs,
+      Optional<Consumer<Process>> timeOutHandler) {
+    return !params.getRedirectInput().isPresent() &&
+        !params.getRedirectOutput().isPresent() &&
+        !params.getRedirectError().isPresent() &&
+        !params.getRedirectErrorStream().orElse(false) &&
+        !(timeOutMs.isPresent() && timeOutHandler.isPresent()) &&
+        isProgramFound(params);
+  }
+
+  /**
+   * Looks for the program the way the process would be started: relative to the directory it runs
+   * in if the program has a path, or else on this process's {@code PATH}.
+   */
+  private static boolean isProgramFound(ProcessExecutorParams params) {
+    if (params.getCommand().isEmpty()) {
+      return false;
+    }
+    String program = params.getCommand().get(0);
+    ImmutableList<String> extensions = ImmutableList.of("");
+    if (Platform.detect() == Platform.WINDOWS) {
+      extensions = ImmutableList.<String>builder()
+          .add("")
+          .addAll(Splitter.on(';').omitEmptyStrings().split(
+              Optional.ofNullable(System.getenv("PATHEXT")).orElse(".COM;.EXE;.BAT;.CMD")))
+          .build();
+    }
+
+    ImmutableList<Path> searchPath;
+    if (program.contains(File.separator) || program.contains("/")) {
+      searchPath = ImmutableList.of(
+          params.getDirectory().orElse(Paths.get("")).toAbsolutePath());
+    } else {
+      searchPath = ImmutableList.copyOf(
+          Iterables.transform(
+              Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(
+                  Optional.ofNullable(System.getenv("PATH")).orElse("")),
+              Paths::get));
+    }
+    for (Path directory : searchPath) {
+      for (String extension : extensions) {
+        try {
+          Path candidate = directory.resolve(program + extension);
+          if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+            return true;
+          }
+        } catch (InvalidPathException e) {
+          // Leave it to the process to fail to start.
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Executes a process as {@link #execute(LaunchedProcess, Set, Optional, Optional, Optional)}
+   * does, but with its output handled on NuProcess's small, shared pool of I/O threads instead of
+   * on threads started for each of its streams.
+   */
+  private Result executeWithListeningProcessExecutor(
+      ListeningProcessExecutor executor,
+      ProcessExecutorParams params,
+      ImmutableMap<String, String> context,
+      Set<Option> options,
+      Optional<String> stdin,
+      Optional<Long> timeOutMs) throws InterruptedException, IOException {
+    PrintStream stdOutToWriteTo = options.contains(Option.PRINT_STD_OUT) ?
+        stdOutStream : new CapturingPrintStream();
+    PrintStream stdErrToWriteTo = options.contains(Option.PRINT_STD_ERR) ?
+        stdErrStream : new CapturingPrintStream();
+    LineHandlingProcessListener listener = new LineHandlingProcessListener(
+        Charset.defaultCharset(),
+        stdin,
+        InputStreamConsumer.createAnsiHighlightingHandler(
+            /* flagOutputWrittenToStream */ !options.contains(Option.PRINT_STD_OUT) &&
+                !options.contains(Option.EXPECTING_STD_OUT),
+            stdOutToWriteTo,
+            ansi),
+        InputStreamConsumer.createAnsiHighlightingHandler(
+            /* flagOutputWrittenToStream */ !options.contains(Option.PRINT_STD_ERR) &&
+                !options.contains(Option.EXPECTING_STD_ERR),
+            stdErrToWriteTo,
+            ansi));
+
+    ListeningProcessExecutor.LaunchedProcess process =
+        executor.launchProcess(params, context, listener);
+    boolean timedOut = false;
+    int exitCode;
+    try {
+      // A timeout of zero waits for as long as the process runs.
+      exitCode = executor.waitForProcess(process, timeOutMs.orElse(0L), TimeUnit.MILLISECONDS);
+      if (exitCode == Integer.MIN_VALUE && timeOutMs.isPresent()) {
+        timedOut = true;
+        executor.destroyProcess(process, /* force */ false);
+        exitCode = executor.waitForProcess(process);
+      }
+    } finally {
+      if (process.isRunning()) {
+        executor.destroyProcess(process, /* force */ false);
+      }
+    }
+
+    return createResult(options, exitCode, timedOut, stdOutToWriteTo, stdErrToWriteTo);
+  }
+
   @Override
   public LaunchedProcess launchProcess(ProcessExecutorParams params) throws IOException {
     return launchProcess(params, ImmutableMap.of());
@@ -334,12 +489,21 @@ public class DefaultProcessExecutor implements ProcessExecutor {
       process.waitFor();
     }
 
+    // Report the exit code of the Process.
+    return createResult(options, process.exitValue(), timedOut, stdOutToWriteTo, stdErrToWriteTo);
+  }
+
+  private Result createResult(
+      Set<Option> options,
+      int exitCode,
+      boolean timedOut,
+      PrintStream stdOutToWriteTo,
+      PrintStream stdErrToWriteTo) {
+    boolean shouldPrintStdOut = options.contains(Option.PRINT_STD_OUT);
+    boolean shouldPrintStdErr = options.contains(Option.PRINT_STD_ERR);
     Optional<String> stdoutText = getDataIfNotPrinted(stdOutToWriteTo, shouldPrintStdOut);
     Optional<String> stderrText = getDataIfNotPrinted(stdErrToWriteTo, shouldPrintStdErr);
 
-    // Report the exit code of the Process.
-    int exitCode = process.exitValue();
-
     // If the command has failed and we're not being explicitly quiet, ensure everything gets
     // printed.
     if (exitCode != 0 && !options.contains(Option.IS_SILENT)) {
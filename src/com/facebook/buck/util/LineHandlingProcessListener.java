@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Optional;
+
+/**
+ * Implementation of {@link ListeningProcessExecutor.ProcessListener} which hands each line the
+ * process writes to stdout or stderr to a {@link InputStreamConsumer.Handler}, splitting lines the
+ * same way an {@link InputStreamConsumer} does, but without a thread blocked reading each stream.
+ * <p>
+ * Any stdin given is written to the process, then stdin is closed.
+ */
+public class LineHandlingProcessListener extends AbstractCharsetProcessListener {
+  private final Charset charset;
+  private final Optional<String> stdin;
+  private final LineSplitter stdout;
+  private final LineSplitter stderr;
+
+  public LineHandlingProcessListener(
+      Charset charset,
+      Optional<String> stdin,
+      InputStreamConsumer.Handler stdoutHandler,
+      InputStreamConsumer.Handler stderrHandler) {
+    // Like an InputStreamReader, replace anything which can't be decoded rather than failing.
+    super(
+        charset.newEncoder(),
+        charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE),
+        charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
+    this.charset = charset;
+    this.stdin = stdin;
+    this.stdout = new LineSplitter(stdoutHandler);
+    this.stderr = new LineSplitter(stderrHandler);
+  }
+
+  @Override
+  public void onStart(ListeningProcessExecutor.LaunchedProcess process) {
+    if (stdin.isPresent()) {
+      process.writeStdin(charset.encode(stdin.get()));
+      process.closeStdin(/* force */ false);
+    } else {
+      process.closeStdin(/* force */ true);
+    }
+  }
+
+  @Override
+  protected void onStdoutChars(CharBuffer buffer, boolean closed, CoderResult coderResult) {
+    stdout.split(buffer, closed);
+  }
+
+  @Override
+  protected void onStderrChars(CharBuffer buffer, boolean closed, CoderResult coderResult) {
+    stderr.split(buffer, closed);
+  }
+
+  /**
+   * Ends lines at {@code \n}, {@code \r} or {@code \r\n}, and hands any unterminated last line to
+   * the handler once the stream is closed.
+   */
+  private static class LineSplitter {
+    private final InputStreamConsumer.Handler handler;
+    private final StringBuilder line = new StringBuilder();
+    private boolean lastWasCarriageReturn = false;
+
+    public LineSplitter(InputStreamConsumer.Handler handler) {
+      this.handler = handler;
+    }
+
+    public void split(CharBuffer buffer, boolean closed) {
+      while (buffer.hasRemaining()) {
+        char c = buffer.get();
+        if (c == '\n' && lastWasCarriageReturn) {
+          lastWasCarriageReturn = false;
+        } else if (c == '\n' || c == '\r') {
+          handler.handleLine(line.toString());
+          line.setLength(0);
+          lastWasCarriageReturn = c == '\r';
+        } else {
+          line.append(c);
+          lastWasCarriageReturn = false;
+        }
+      }
+      if (closed && line.length() > 0) {
+        handler.handleLine(line.toString());
+        line.setLength(0);
+      }
+    }
+  }
+}
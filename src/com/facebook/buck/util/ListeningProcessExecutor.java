@@ -244,7 +244,11 @@ public class ListeningProcessExecutor {
   private final ProcessRegistry processRegistry;
 
   public ListeningProcessExecutor() {
-    processRegistry = ProcessRegistry.getInstance();
+    this(ProcessRegistry.getInstance());
+  }
+
+  ListeningProcessExecutor(ProcessRegistry processRegistry) {
+    this.processRegistry = processRegistry;
   }
 
   /**
@@ -253,6 +257,17 @@ public class ListeningProcessExecutor {
    */
   public LaunchedProcess launchProcess(ProcessExecutorParams params, final ProcessListener listener)
     throws IOException {
+    return launchProcess(params, ImmutableMap.of(), listener);
+  }
+
+  /**
+   * As {@link #launchProcess(ProcessExecutorParams, ProcessListener)}, registering the process
+   * with the given {@code context}.
+   */
+  public LaunchedProcess launchProcess(
+      ProcessExecutorParams params,
+      ImmutableMap<String, String> context,
+      final ProcessListener listener) throws IOException {
     LOG.debug("Launching process with params %s", params);
 
     ListeningProcessHandler processHandler = new ListeningProcessHandler(listener, params);
@@ -275,7 +290,7 @@ public class ListeningProcessExecutor {
 
     // This should be set by onPreStart().
     Preconditions.checkState(processHandler.process != null);
-    processRegistry.registerProcess(processHandler.process.nuProcess, params, ImmutableMap.of());
+    processRegistry.registerProcess(processHandler.process.nuProcess, params, context);
     return processHandler.process;
   }
 
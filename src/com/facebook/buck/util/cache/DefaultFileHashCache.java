@@ -50,6 +50,7 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
 
   private final ProjectFilesystem projectFilesystem;
   private final Optional<Path> buckOutPath;
+  private final Optional<PersistentFileHashStore> fileHashStore;
 
   @VisibleForTesting
   final LoadingCache<Path, HashCodeAndFileType> loadingCache;
@@ -61,8 +62,17 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   DefaultFileHashCache(
       ProjectFilesystem projectFilesystem,
       Optional<Path> buckOutPath) {
+    this(projectFilesystem, buckOutPath, Optional.empty());
+  }
+
+  @VisibleForTesting
+  DefaultFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      Optional<Path> buckOutPath,
+      Optional<PersistentFileHashStore> fileHashStore) {
     this.projectFilesystem = projectFilesystem;
     this.buckOutPath = buckOutPath;
+    this.fileHashStore = fileHashStore;
 
     this.loadingCache =
         CacheBuilder.newBuilder().build(
@@ -93,6 +103,19 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
     return new DefaultFileHashCache(projectFilesystem, Optional.empty());
   }
 
+  /**
+   * @return a cache which consults {@code fileHashStore} before hashing files, so that hashes
+   *     computed by previous runs can be reused.
+   */
+  public static FileHashCache createPersistentFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      PersistentFileHashStore fileHashStore) {
+    return new DefaultFileHashCache(
+        projectFilesystem,
+        Optional.empty(),
+        Optional.of(fileHashStore));
+  }
+
   private HashCodeAndFileType getHashCodeAndFileType(Path path) throws IOException {
     if (projectFilesystem.isDirectory(path)) {
       return getDirHashCode(path);
@@ -107,6 +130,9 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   }
 
   private HashCode getFileHashCode(Path path) throws IOException {
+    if (fileHashStore.isPresent()) {
+      return fileHashStore.get().get(path);
+    }
     return projectFilesystem.computeSha1(path).asHashCode();
   }
 
@@ -278,9 +304,17 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
         errors.add(path.toString());
       }
     }
+    int cachesExamined = 1;
+    int filesExamined = cacheMap.size();
+    if (fileHashStore.isPresent()) {
+      FileHashCacheVerificationResult storeResult = fileHashStore.get().verify();
+      cachesExamined += storeResult.getCachesExamined();
+      filesExamined += storeResult.getFilesExamined();
+      errors.addAll(storeResult.getVerificationErrors());
+    }
     return FileHashCacheVerificationResult.builder()
-        .setCachesExamined(1)
-        .setFilesExamined(cacheMap.size())
+        .setCachesExamined(cachesExamined)
+        .setFilesExamined(filesExamined)
         .addAllVerificationErrors(errors)
         .build();
   }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.hashing.FileHashLoader;
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Caches the listings of the jars on compilation classpaths, so that in-process compilations which
+ * share third-party jars don't each re-open and re-index them.
+ * <p>
+ * Listings are keyed by the absolute path of the jar and are only reused while the jar's hash, as
+ * reported by the build's {@link FileHashLoader}, is unchanged. The cache is bounded by the total
+ * number of jar entries it holds, evicting the least recently used listings first.
+ */
+public class JarIndexCache {
+
+  private static final Logger LOG = Logger.get(JarIndexCache.class);
+
+  public static final long DEFAULT_MAX_ENTRIES = 500_000;
+
+  private final Cache<Path, JarIndex> indexes;
+
+  public JarIndexCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  @VisibleForTesting
+  JarIndexCache(long maxEntries) {
+    this.indexes = CacheBuilder.newBuilder()
+        .maximumWeight(maxEntries)
+        .weigher((Path path, JarIndex index) -> index.size())
+        .build();
+  }
+
+  /**
+   * @return the listing of the jar at {@code absolutePath}, reading it if it isn't cached or the
+   *     jar has changed since it was cached, or {@link Optional#empty()} if the jar can't be hashed
+   *     or read.
+   */
+  public Optional<JarIndex> get(Path absolutePath, FileHashLoader hashLoader) {
+    Preconditions.checkArgument(absolutePath.isAbsolute());
+    try {
+      HashCode hashCode = hashLoader.get(absolutePath);
+      JarIndex index = indexes.getIfPresent(absolutePath);
+      if (index == null || !index.hashCode.equals(hashCode)) {
+        index = JarIndex.read(absolutePath, hashCode);
+        indexes.put(absolutePath, index);
+      }
+      return Optional.of(index);
+    } catch (IOException | RuntimeException e) {
+      LOG.debug(e, "Unable to index %s", absolutePath);
+      return Optional.empty();
+    }
+  }
+
+  @VisibleForTesting
+  long size() {
+    return indexes.size();
+  }
+
+  /**
+   * The names of the files in a jar, grouped by the package they are in.
+   */
+  public static class JarIndex {
+    private final HashCode hashCode;
+    private final ImmutableListMultimap<String, String> fileNamesByPackage;
+
+    private JarIndex(HashCode hashCode, ImmutableListMultimap<String, String> fileNamesByPackage) {
+      this.hashCode = hashCode;
+      this.fileNamesByPackage = fileNamesByPackage;
+    }
+
+    private static JarIndex read(Path absolutePath, HashCode hashCode) throws IOException {
+      ImmutableListMultimap.Builder<String, String> fileNamesByPackage =
+          ImmutableListMultimap.builder();
+      try (ZipFile zipFile = new ZipFile(absolutePath.toFile())) {
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          if (entry.isDirectory()) {
+            continue;
+          }
+          String name = entry.getName();
+          int lastSlash = name.lastIndexOf('/');
+          fileNamesByPackage.put(
+              lastSlash == -1 ? "" : name.substring(0, lastSlash).replace('/', '.'),
+              name.substring(lastSlash + 1));
+        }
+      }
+      return new JarIndex(hashCode, fileNamesByPackage.build());
+    }
+
+    /**
+     * @return the names, without their directories, of the files directly in the package
+     *     {@code packageName}, e.g. {@code "com.example"}.
+     */
+    public ImmutableList<String> getFileNames(String packageName) {
+      return fileNamesByPackage.get(packageName);
+    }
+
+    public int size() {
+      return fileNamesByPackage.size();
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.ChecksummedFiles;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashCode;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An on-disk store of file content hashes which survives daemon restarts.
+ * <p>
+ * Entries are keyed by the project-relative path of the file and are only considered valid while
+ * the size, modification time and file key (i.e. device/inode, where the platform provides one)
+ * of the file match what was recorded when it was hashed.  This lets a fresh daemon, or a run
+ * without a daemon, skip re-reading files whose contents cannot have changed since they were last
+ * hashed.
+ */
+public class PersistentFileHashStore {
+
+  private static final Logger LOG = Logger.get(PersistentFileHashStore.class);
+
+  private static final int MAGIC = 0x4255_4648;
+  private static final int VERSION = 1;
+
+  /**
+   * Files modified this recently before being hashed are not recorded, as a subsequent write
+   * within the filesystem's timestamp granularity would leave the recorded stat data unchanged.
+   */
+  @VisibleForTesting
+  static final long RACY_MODIFICATION_WINDOW_MILLIS = 2000;
+
+  private final ProjectFilesystem projectFilesystem;
+  private final Path storePath;
+  private final ConcurrentMap<Path, Entry> entries;
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+  private PersistentFileHashStore(
+      ProjectFilesystem projectFilesystem,
+      Path storePath,
+      ConcurrentMap<Path, Entry> entries) {
+    this.projectFilesystem = projectFilesystem;
+    this.storePath = storePath;
+    this.entries = entries;
+  }
+
+  /**
+   * Loads the store from {@code storePath}, relative to the root of {@code projectFilesystem}.
+   * A missing, truncated or otherwise invalid store is discarded and an empty one is returned.
+   */
+  public static PersistentFileHashStore load(ProjectFilesystem projectFilesystem, Path storePath) {
+    ConcurrentMap<Path, Entry> entries = new ConcurrentHashMap<>();
+    if (projectFilesystem.isFile(storePath)) {
+      try (InputStream inputStream = projectFilesystem.newFileInputStream(storePath)) {
+        entries = ChecksummedFiles.read(
+            inputStream,
+            MAGIC,
+            VERSION,
+            PersistentFileHashStore::readEntries);
+        LOG.debug("Loaded %d file hashes from %s", entries.size(), storePath);
+      } catch (IOException e) {
+        LOG.warn(e, "Discarding invalid file hash store %s", storePath);
+      }
+    }
+    return new PersistentFileHashStore(projectFilesystem, storePath, entries);
+  }
+
+  private static ConcurrentMap<Path, Entry> readEntries(DataInputStream inputStream)
+      throws IOException {
+    int count = inputStream.readInt();
+    if (count < 0) {
+      throw new IOException("Negative entry count");
+    }
+    ConcurrentMap<Path, Entry> entries = new ConcurrentHashMap<>();
+    for (int i = 0; i < count; i++) {
+      Path path = Paths.get(inputStream.readUTF());
+      long size = inputStream.readLong();
+      long lastModifiedTime = inputStream.readLong();
+      String fileKey = inputStream.readUTF();
+      byte[] hash = new byte[inputStream.readUnsignedShort()];
+      inputStream.readFully(hash);
+      entries.put(
+          path,
+          new Entry(size, lastModifiedTime, fileKey, HashCode.fromBytes(hash)));
+    }
+    return entries;
+  }
+
+  /**
+   * Atomically writes the store back to disk if any entries have changed since it was loaded or
+   * last saved.
+   */
+  public void save() throws IOException {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    List<Map.Entry<Path, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+    try {
+      ChecksummedFiles.write(
+          projectFilesystem.resolve(storePath),
+          MAGIC,
+          VERSION,
+          outputStream -> {
+            outputStream.writeInt(snapshot.size());
+            for (Map.Entry<Path, Entry> mapEntry : snapshot) {
+              Entry entry = mapEntry.getValue();
+              byte[] hash = entry.hashCode.asBytes();
+              outputStream.writeUTF(MorePaths.pathWithUnixSeparators(mapEntry.getKey()));
+              outputStream.writeLong(entry.size);
+              outputStream.writeLong(entry.lastModifiedTime);
+              outputStream.writeUTF(entry.fileKey);
+              outputStream.writeShort(hash.length);
+              outputStream.write(hash);
+            }
+          });
+    } catch (IOException e) {
+      dirty.set(true);
+      throw e;
+    }
+    LOG.debug("Saved %d file hashes to %s", snapshot.size(), storePath);
+  }
+
+  /**
+   * @return the SHA-1 of the file at {@code path}, relative to the project root, reusing the
+   *     stored hash if the file has not changed since it was recorded.
+   */
+  public HashCode get(Path path) throws IOException {
+    BasicFileAttributes attributes =
+        projectFilesystem.readAttributes(path, BasicFileAttributes.class);
+    Entry entry = entries.get(path);
+    if (entry != null && entry.matches(attributes)) {
+      return entry.hashCode;
+    }
+
+    long hashingStartTime = System.currentTimeMillis();
+    HashCode hashCode = projectFilesystem.computeSha1(path).asHashCode();
+    if (hashingStartTime - attributes.lastModifiedTime().toMillis() >
+        RACY_MODIFICATION_WINDOW_MILLIS) {
+      entries.put(path, Entry.of(attributes, hashCode));
+      dirty.set(true);
+    } else if (entry != null) {
+      entries.remove(path);
+      dirty.set(true);
+    }
+    return hashCode;
+  }
+
+  /**
+   * Re-hashes every stored file whose stat data still matches its entry and reports those whose
+   * contents no longer match the stored hash.  Entries for files which have since changed or been
+   * removed are stale rather than inconsistent, and are dropped.
+   */
+  public FileHashCacheVerificationResult verify() throws IOException {
+    List<String> errors = new ArrayList<>();
+    int filesExamined = 0;
+    for (Map.Entry<Path, Entry> mapEntry : entries.entrySet()) {
+      Path path = mapEntry.getKey();
+      Entry entry = mapEntry.getValue();
+      Optional<BasicFileAttributes> attributes = readAttributesIfExists(path);
+      if (!attributes.isPresent() || !entry.matches(attributes.get())) {
+        entries.remove(path, entry);
+        dirty.set(true);
+        continue;
+      }
+      filesExamined++;
+      HashCode current = projectFilesystem.computeSha1(path).asHashCode();
+      if (!current.equals(entry.hashCode)) {
+        errors.add(path + " (persistent file hash store)");
+      }
+    }
+    return FileHashCacheVerificationResult.builder()
+        .setCachesExamined(1)
+        .setFilesExamined(filesExamined)
+        .addAllVerificationErrors(errors)
+        .build();
+  }
+
+  private Optional<BasicFileAttributes> readAttributesIfExists(Path path) throws IOException {
+    if (!projectFilesystem.isFile(path)) {
+      return Optional.empty();
+    }
+    return Optional.of(projectFilesystem.readAttributes(path, BasicFileAttributes.class));
+  }
+
+  public Path getStorePath() {
+    return storePath;
+  }
+
+  @VisibleForTesting
+  int size() {
+    return entries.size();
+  }
+
+  private static class Entry {
+    private final long size;
+    private final long lastModifiedTime;
+    private final String fileKey;
+    private final HashCode hashCode;
+
+    private Entry(long size, long lastModifiedTime, String fileKey, HashCode hashCode) {
+      this.size = size;
+      this.lastModifiedTime = lastModifiedTime;
+      this.fileKey = fileKey;
+      this.hashCode = hashCode;
+    }
+
+    static Entry of(BasicFileAttributes attributes, HashCode hashCode) {
+      return new Entry(
+          attributes.size(),
+          attributes.lastModifiedTime().toMillis(),
+          fileKeyOf(attributes),
+          hashCode);
+    }
+
+    boolean matches(BasicFileAttributes attributes) {
+      return size == attributes.size() &&
+          lastModifiedTime == attributes.lastModifiedTime().toMillis() &&
+          fileKey.equals(fileKeyOf(attributes));
+    }
+
+    private static String fileKeyOf(BasicFileAttributes attributes) {
+      return Objects.toString(attributes.fileKey(), "");
+    }
+  }
+}
@@ -54,6 +54,17 @@ abstract class AbstractResourceAmounts {
         getNetworkIO() - amounts.getNetworkIO());
   }
 
+  /**
+   * @return the larger of each of the amounts of this and {@code amounts}.
+   */
+  public ResourceAmounts max(ResourceAmounts amounts) {
+    return ResourceAmounts.of(
+        Math.max(getCpu(), amounts.getCpu()),
+        Math.max(getMemory(), amounts.getMemory()),
+        Math.max(getDiskIO(), amounts.getDiskIO()),
+        Math.max(getNetworkIO(), amounts.getNetworkIO()));
+  }
+
   public boolean containsValuesLessThan(ResourceAmounts amounts) {
     return getCpu() < amounts.getCpu() ||
         getMemory() < amounts.getMemory() ||
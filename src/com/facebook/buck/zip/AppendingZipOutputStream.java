@@ -67,12 +67,21 @@ class AppendingZipOutputStream extends CustomZipOutputStream {
 
   @Override
   protected void actuallyPutNextEntry(ZipEntry entry) throws IOException {
+    putEntry(entry, /* alreadyDeflated */ false);
+  }
+
+  @Override
+  protected void actuallyPutNextDeflatedEntry(ZipEntry entry) throws IOException {
+    putEntry(entry, /* alreadyDeflated */ true);
+  }
+
+  private void putEntry(ZipEntry entry, boolean alreadyDeflated) throws IOException {
     if (throwExceptionsOnDuplicate && !seenNames.add(entry.getName())) {
       // Same exception as ZipOutputStream.
       throw new ZipException("duplicate entry: " + entry.getName());
     }
 
-    currentEntry = new EntryAccounting(clock, entry, currentOffset);
+    currentEntry = new EntryAccounting(clock, entry, currentOffset, alreadyDeflated);
     entries.add(currentEntry);
 
     currentOffset += currentEntry.writeLocalFileHeader(delegate);
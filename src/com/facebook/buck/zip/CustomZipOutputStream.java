@@ -48,6 +48,24 @@ public abstract class CustomZipOutputStream extends OutputStream {
     entryOpen = true;
   }
 
+  /**
+   * Begins an entry whose data has already been compressed with raw deflate, for example by a
+   * {@link ParallelZipWriter}. Bytes subsequently written to the entry are copied verbatim into the
+   * zip. The CRC and uncompressed size must be set on {@code entry} before the entry is closed.
+   */
+  public final void putNextDeflatedEntry(ZipEntry entry) throws IOException {
+    Preconditions.checkState(state != State.CLOSED, "Stream has been closed.");
+    Preconditions.checkArgument(
+        entry.getMethod() == ZipEntry.DEFLATED,
+        "Entry %s is not DEFLATED.",
+        entry.getName());
+
+    state = State.OPEN;
+    closeEntry();
+    actuallyPutNextDeflatedEntry(entry);
+    entryOpen = true;
+  }
+
   private void validateEntry(ZipEntry entry) {
     if (entry.getMethod() == ZipEntry.STORED) {
       Preconditions.checkState(
@@ -65,6 +83,14 @@ public abstract class CustomZipOutputStream extends OutputStream {
    */
   protected abstract void actuallyPutNextEntry(ZipEntry entry) throws IOException;
 
+  /**
+   * Called by {@link #putNextDeflatedEntry(ZipEntry)} with the same guarantees as
+   * {@link #actuallyPutNextEntry(ZipEntry)}.
+   *
+   * @param entry The {@link ZipEntry} to write.
+   */
+  protected abstract void actuallyPutNextDeflatedEntry(ZipEntry entry) throws IOException;
+
   public final void closeEntry() throws IOException {
     Preconditions.checkState(state != State.CLOSED, "Stream has been closed");
     if (!entryOpen) {
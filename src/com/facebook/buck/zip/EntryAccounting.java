@@ -53,6 +53,7 @@ class EntryAccounting {
 
   private final ZipEntry entry;
   private final Method method;
+  private final boolean alreadyDeflated;
   private Hasher crc = Hashing.crc32().newHasher();
   private long offset;
   private long length = 0;
@@ -82,9 +83,26 @@ class EntryAccounting {
   private final byte[] buffer = new byte[ARBITRARY_SIZE];
 
   public EntryAccounting(Clock clock, ZipEntry entry, long currentOffset) {
+    this(clock, entry, currentOffset, /* alreadyDeflated */ false);
+  }
+
+  /**
+   * @param alreadyDeflated whether the bytes written to this entry have already been compressed
+   *     with raw deflate. If so, they're copied verbatim and the entry's CRC and size must be set
+   *     by the time the entry is finished.
+   */
+  public EntryAccounting(
+      Clock clock,
+      ZipEntry entry,
+      long currentOffset,
+      boolean alreadyDeflated) {
     this.entry = entry;
     this.method = Method.detect(entry.getMethod());
+    this.alreadyDeflated = alreadyDeflated;
     this.offset = currentOffset;
+    Preconditions.checkArgument(
+        !alreadyDeflated || method == Method.DEFLATE,
+        "Only DEFLATED entries can be written already deflated.");
 
     if (entry.getTime() == -1) {
       entry.setTime(clock.currentTimeMillis());
@@ -254,6 +272,13 @@ class EntryAccounting {
     if (len == 0) {
       return;
     }
+
+    if (alreadyDeflated) {
+      out.write(b, off, len);
+      length += len;
+      return;
+    }
+
     updateCrc(b, off, len);
 
     if (method == Method.STORE) {
@@ -281,6 +306,11 @@ class EntryAccounting {
       Preconditions.checkState(
           entry.getCrc() == calculateCrc(),
           "CRC of bytes written differs from what is specified in the entry.");
+    } else if (alreadyDeflated) {
+      Preconditions.checkState(
+          entry.getSize() != -1 && entry.getCrc() != -1,
+          "The size and CRC of an already deflated entry must be set before it is finished.");
+      entry.setCompressedSize(length);
     } else if (method == Method.DEFLATE) {
       deflater.finish();
       while (!deflater.finished()) {
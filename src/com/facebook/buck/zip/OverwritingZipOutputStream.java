@@ -71,8 +71,17 @@ public class OverwritingZipOutputStream extends CustomZipOutputStream {
 
   @Override
   protected void actuallyPutNextEntry(ZipEntry entry) throws IOException {
+    putEntry(entry, /* alreadyDeflated */ false);
+  }
+
+  @Override
+  protected void actuallyPutNextDeflatedEntry(ZipEntry entry) throws IOException {
+    putEntry(entry, /* alreadyDeflated */ true);
+  }
+
+  private void putEntry(ZipEntry entry, boolean alreadyDeflated) throws IOException {
     // We calculate the actual offset when closing the stream, so 0 is fine.
-    currentEntry = new EntryAccounting(clock, entry, /* currentOffset */ 0);
+    currentEntry = new EntryAccounting(clock, entry, /* currentOffset */ 0, alreadyDeflated);
 
     long md5 = Hashing.md5().hashUnencodedChars(entry.getName()).asLong();
     String name = String.valueOf(md5);
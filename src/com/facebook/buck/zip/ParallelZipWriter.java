@@ -0,0 +1,272 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.Nullable;
+
+/**
+ * Writes entries to a {@link CustomZipOutputStream}, deflating them on an executor.
+ * <p>
+ * The contents of each entry are split into fixed size blocks which are deflated concurrently,
+ * each using the tail of the previous block as its dictionary and ending on a byte boundary (as
+ * pigz does), so the concatenated blocks form a single valid deflate stream. The deflated blocks
+ * are appended to the zip in the order they were added, so the output doesn't depend on how the
+ * work was scheduled. Only {@code parallelism} blocks are in flight at a time, which bounds the
+ * memory used.
+ * <p>
+ * Like the streams it writes to, instances of this class are not thread-safe.
+ */
+public class ParallelZipWriter implements Closeable {
+
+  @VisibleForTesting
+  static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+  // The size of the deflate window, and so the most of the previous block a block can refer to.
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+  private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+  private static final byte[] EMPTY_BLOCK = new byte[0];
+
+  private final CustomZipOutputStream out;
+  private final ListeningExecutorService executor;
+  private final int parallelism;
+  private final int blockSize;
+  private final Deque<ListenableFuture<PendingWrite>> pendingWrites = new ArrayDeque<>();
+
+  /**
+   * @param out the stream to write the zip to. It must support
+   *     {@link CustomZipOutputStream#putNextDeflatedEntry}, and is closed when this writer is.
+   * @param executor the executor to deflate blocks and hash stored entries on.
+   * @param parallelism the maximum number of blocks to deflate concurrently.
+   */
+  public ParallelZipWriter(
+      CustomZipOutputStream out,
+      ListeningExecutorService executor,
+      int parallelism) {
+    this(out, executor, parallelism, DEFAULT_BLOCK_SIZE);
+  }
+
+  @VisibleForTesting
+  ParallelZipWriter(
+      CustomZipOutputStream out,
+      ListeningExecutorService executor,
+      int parallelism,
+      int blockSize) {
+    Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive.");
+    Preconditions.checkArgument(blockSize > 0, "Block size must be positive.");
+    this.out = out;
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Adds an entry to the zip. Directory entries are written with no contents, and entries which
+   * are {@link ZipEntry#STORED} are written uncompressed, with their CRC calculated on the
+   * executor. Otherwise the {@code contents} are deflated at the entry's compression level.
+   */
+  public void putNextEntry(CustomZipEntry entry, ByteSource contents) throws IOException {
+    if (entry.isDirectory()) {
+      enqueue(Futures.immediateFuture(zip -> {
+        zip.putNextEntry(entry);
+        zip.closeEntry();
+      }));
+    } else if (entry.getMethod() == ZipEntry.STORED) {
+      enqueue(executor.submit(() -> hashStoredEntry(entry, contents)));
+    } else {
+      deflateEntry(entry, contents);
+    }
+  }
+
+  private void deflateEntry(CustomZipEntry entry, ByteSource contents) throws IOException {
+    int level = entry.getCompressionLevel();
+    Hasher crc = Hashing.crc32().newHasher();
+    long size = 0;
+
+    try (InputStream in = contents.openBufferedStream()) {
+      byte[] previous = null;
+      byte[] current = readBlock(in);
+      while (true) {
+        byte[] next = current.length < blockSize ? EMPTY_BLOCK : readBlock(in);
+        boolean first = previous == null;
+        boolean last = next.length == 0;
+
+        crc.putBytes(current);
+        size += current.length;
+        long finalCrc = last ? crc.hash().padToLong() : -1;
+        long finalSize = size;
+
+        byte[] dictionary = previous;
+        byte[] block = current;
+        enqueue(
+            executor.submit(
+                () -> {
+                  byte[] deflated = deflateBlock(level, dictionary, block, last);
+                  return (PendingWrite) zip -> {
+                    if (first) {
+                      zip.putNextDeflatedEntry(entry);
+                    }
+                    zip.write(deflated);
+                    if (last) {
+                      entry.setCrc(finalCrc);
+                      entry.setSize(finalSize);
+                      zip.closeEntry();
+                    }
+                  };
+                }));
+
+        if (last) {
+          break;
+        }
+        previous = current;
+        current = next;
+      }
+    }
+  }
+
+  private byte[] readBlock(InputStream in) throws IOException {
+    byte[] block = new byte[blockSize];
+    int read = ByteStreams.read(in, block, 0, blockSize);
+    return read == blockSize ? block : Arrays.copyOf(block, read);
+  }
+
+  /**
+   * Deflates a single block. Every block but the last is ended with a sync flush, which pads the
+   * output to a byte boundary without marking the end of the stream.
+   */
+  @VisibleForTesting
+  static byte[] deflateBlock(
+      int level,
+      @Nullable byte[] dictionary,
+      byte[] block,
+      boolean last) {
+    Deflater deflater = new Deflater(level, /* nowrap */ true);
+    try {
+      if (dictionary != null) {
+        int dictionaryLength = Math.min(DICTIONARY_SIZE, dictionary.length);
+        deflater.setDictionary(
+            dictionary,
+            dictionary.length - dictionaryLength,
+            dictionaryLength);
+      }
+      deflater.setInput(block);
+
+      ByteArrayOutputStream deflated = new ByteArrayOutputStream(block.length / 2 + 64);
+      byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          deflated.write(buffer, 0, deflater.deflate(buffer));
+        }
+      } else {
+        int written;
+        do {
+          written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          deflated.write(buffer, 0, written);
+        } while (written == buffer.length);
+      }
+      return deflated.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static PendingWrite hashStoredEntry(CustomZipEntry entry, ByteSource contents)
+      throws IOException {
+    long crc = contents.hash(Hashing.crc32()).padToLong();
+    long size = contents.size();
+    return zip -> {
+      entry.setCrc(crc);
+      entry.setSize(size);
+      entry.setCompressedSize(size);
+      zip.putNextEntry(entry);
+      try (InputStream in = contents.openStream()) {
+        long copied = ByteStreams.copy(in, zip);
+        if (copied != size) {
+          throw new IOException(
+              String.format("%s changed while it was being zipped.", entry.getName()));
+        }
+      }
+      zip.closeEntry();
+    };
+  }
+
+  private void enqueue(ListenableFuture<PendingWrite> write) throws IOException {
+    pendingWrites.add(write);
+
+    // Write out whatever is ready, and block on the oldest write once we've got as much
+    // outstanding work as we're allowed.
+    while (!pendingWrites.isEmpty() &&
+        (pendingWrites.size() > parallelism || pendingWrites.peek().isDone())) {
+      writeOldest();
+    }
+  }
+
+  private void writeOldest() throws IOException {
+    ListenableFuture<PendingWrite> write = pendingWrites.remove();
+    try {
+      Futures.getChecked(write, IOException.class).writeTo(out);
+    } catch (IOException | RuntimeException e) {
+      // The zip is unusable now, so don't bother with the rest of it.
+      cancelPendingWrites();
+      throw e;
+    }
+  }
+
+  private void cancelPendingWrites() {
+    for (ListenableFuture<PendingWrite> write : pendingWrites) {
+      write.cancel(true);
+    }
+    pendingWrites.clear();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      while (!pendingWrites.isEmpty()) {
+        writeOldest();
+      }
+    } finally {
+      cancelPendingWrites();
+      out.close();
+    }
+  }
+
+  @FunctionalInterface
+  private interface PendingWrite {
+    void writeTo(CustomZipOutputStream zip) throws IOException;
+  }
+}
@@ -24,20 +24,45 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteStreams;
 
+import org.apache.commons.compress.archivers.zip.UnixStat;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 public class Unzip {
 
+  /** Size of the fixed-length part of a central directory file header. */
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  /** Size of the end of central directory record, without its comment. */
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final long CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50L;
+  private static final long END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50L;
+  /** Size of the zip64 end of central directory record, without its extensible data. */
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+  /** Size of the zip64 end of central directory locator. */
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+  private static final long ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50L;
+  private static final long ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50L;
+  /** Largest zip64 extra field a central directory file header can have. */
+  private static final int ZIP64_EXTRA_FIELD_MAX_SIZE = 32;
+  private static final int MIN_RECORDED_TAIL_SIZE = 64 * 1024;
+  private static final int UNIX_PLATFORM = 3;
+
   /** Utility class: do not instantiate. */
   private Unzip() {}
 
@@ -184,6 +209,103 @@ public class Unzip {
     return filesWritten.build();
   }
 
+  /**
+   * Unzips a zip archive to a destination as it is read from {@code zipStream}, without storing it
+   * to a file first, and returns the paths of the written files.
+   * <p>
+   * File permissions and symlinks are only recorded in the central directory at the end of the
+   * archive, so they are applied once the whole stream has been read.  The stream is read to its
+   * end, but not closed.
+   */
+  public static ImmutableList<Path> extractZipStream(
+      InputStream zipStream,
+      ProjectFilesystem filesystem,
+      Path relativePath,
+      ExistingFileMode existingFileMode) throws IOException {
+    TailRecordingInputStream recordingStream = new TailRecordingInputStream(zipStream);
+    // Entries are only cleaned the first time they are seen, so that the contents of a directory
+    // aren't removed by a later entry for the directory itself.
+    Set<Path> extractedPaths = new HashSet<>();
+    Map<String, Path> filesWritten = new LinkedHashMap<>();
+    int centralDirectorySizeEstimate = 0;
+    try (ZipArchiveInputStream zip = new ZipArchiveInputStream(
+        recordingStream,
+        Charsets.UTF_8.name(),
+        /* useUnicodeExtraFields */ true,
+        /* allowStoredEntriesWithDataDescriptor */ true)) {
+      for (ZipArchiveEntry entry = zip.getNextZipEntry();
+           entry != null;
+           entry = zip.getNextZipEntry()) {
+        String fileName = entry.getName();
+        Path target = relativePath.resolve(fileName);
+
+        if (existingFileMode == ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES &&
+            !extractedPaths.contains(target)) {
+          filesystem.deleteRecursivelyIfExists(target);
+        }
+        for (Path path = target; path != null; path = path.getParent()) {
+          extractedPaths.add(path);
+        }
+
+        if (entry.isDirectory()) {
+          filesystem.mkdirs(target);
+        } else {
+          filesystem.createParentDirs(target);
+          filesWritten.put(fileName, target);
+          try (OutputStream out = filesystem.newFileOutputStream(target)) {
+            ByteStreams.copy(zip, out);
+          }
+          filesystem.resolve(target).toFile().setLastModified(entry.getTime());
+        }
+
+        // Make sure the central directory entry of every file is still around once we get to it.
+        centralDirectorySizeEstimate +=
+            CENTRAL_DIRECTORY_HEADER_SIZE + 2 * fileName.getBytes(Charsets.UTF_8).length +
+                ZIP64_EXTRA_FIELD_MAX_SIZE;
+        recordingStream.ensureCapacity(centralDirectorySizeEstimate + MIN_RECORDED_TAIL_SIZE);
+      }
+      // The central directory is only read once the rest of the archive has been consumed.
+      ByteStreams.copy(recordingStream, ByteStreams.nullOutputStream());
+    }
+
+    Map<String, CentralDirectoryRecord> centralDirectory =
+        readCentralDirectory(recordingStream.getTail(), recordingStream.getTailPosition());
+    for (Map.Entry<String, Path> file : filesWritten.entrySet()) {
+      CentralDirectoryRecord record = centralDirectory.get(file.getKey());
+      if (record == null) {
+        throw new IOException(
+            String.format("%s is missing from the central directory of the zip.", file.getKey()));
+      }
+      Path target = file.getValue();
+      if (record.isUnixSymlink()) {
+        filesystem.createSymLink(
+            target,
+            filesystem.getRootPath().getFileSystem().getPath(
+                new String(Files.readAllBytes(filesystem.resolve(target)), Charsets.UTF_8)),
+            /* force */ true);
+      } else {
+        // Only the executable bit is honored, as in extractZipFile().
+        Set<PosixFilePermission> permissions =
+            MorePosixFilePermissions.fromMode(record.externalAttributes >> 16);
+        if (permissions.contains(PosixFilePermission.OWNER_EXECUTE)) {
+          MoreFiles.makeExecutable(filesystem.resolve(target));
+        }
+      }
+    }
+    return ImmutableList.copyOf(filesWritten.values());
+  }
+
+  public static ImmutableList<Path> extractZipStream(
+      InputStream zipStream,
+      ProjectFilesystem filesystem,
+      ExistingFileMode existingFileMode) throws IOException {
+    return extractZipStream(
+        zipStream,
+        filesystem,
+        filesystem.getRootPath().getFileSystem().getPath(""),
+        existingFileMode);
+  }
+
   public static ImmutableList<Path> extractZipFile(
       Path zipFile,
       ProjectFilesystem filesystem,
@@ -210,4 +332,187 @@ public class Unzip {
         .collect(MoreCollectors.toImmutableList());
   }
 
+  /** The parts of a central directory file header needed to restore permissions and symlinks. */
+  private static class CentralDirectoryRecord {
+    private final int versionMadeBy;
+    private final long externalAttributes;
+
+    private CentralDirectoryRecord(int versionMadeBy, long externalAttributes) {
+      this.versionMadeBy = versionMadeBy;
+      this.externalAttributes = externalAttributes;
+    }
+
+    /** Same as {@link ZipArchiveEntry#isUnixSymlink()}. */
+    private boolean isUnixSymlink() {
+      return (versionMadeBy >> 8) == UNIX_PLATFORM &&
+          ((externalAttributes >> 16) & UnixStat.LINK_FLAG) == UnixStat.LINK_FLAG;
+    }
+  }
+
+  /**
+   * Reads the central directory of a zip archive from the last bytes of the archive.
+   *
+   * @param tailPosition the position of the first byte of {@code tail} in the archive.
+   * @return the central directory file header of each entry, by entry name.
+   */
+  private static Map<String, CentralDirectoryRecord> readCentralDirectory(
+      byte[] tail,
+      long tailPosition) throws IOException {
+    int end = -1;
+    for (int i = tail.length - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+      if (readInt(tail, i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        end = i;
+        break;
+      }
+    }
+    if (end == -1) {
+      throw new IOException("Could not find the end of the central directory of the zip.");
+    }
+    long entryCount = readShort(tail, end + 10);
+    long size = readInt(tail, end + 12);
+
+    // Archives with more than 65535 entries, or more than 4GB of them, keep the real counts in a
+    // zip64 end of central directory record, which a locator just before this record points to.
+    int locator = end - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE;
+    if (locator >= 0 &&
+        readInt(tail, locator) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+      long zip64End = readLong(tail, locator + 8) - tailPosition;
+      if (zip64End < 0 ||
+          zip64End > locator - ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE ||
+          readInt(tail, (int) zip64End) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        throw new IOException("Could not find the zip64 end of the central directory of the zip.");
+      }
+      end = (int) zip64End;
+      entryCount = readLong(tail, end + 32);
+      size = readLong(tail, end + 40);
+    }
+
+    if (size > end) {
+      throw new IOException(
+          String.format("The central directory of the zip is too large (%d bytes).", size));
+    }
+
+    Map<String, CentralDirectoryRecord> records = new HashMap<>();
+    int offset = (int) (end - size);
+    for (long i = 0; i < entryCount; i++) {
+      if (readInt(tail, offset) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+        throw new IOException("Corrupt central directory in zip.");
+      }
+      int nameLength = readShort(tail, offset + 28);
+      int extraLength = readShort(tail, offset + 30);
+      int commentLength = readShort(tail, offset + 32);
+      records.put(
+          new String(
+              tail,
+              offset + CENTRAL_DIRECTORY_HEADER_SIZE,
+              nameLength,
+              Charsets.UTF_8),
+          new CentralDirectoryRecord(readShort(tail, offset + 4), readInt(tail, offset + 38)));
+      offset += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    return records;
+  }
+
+  private static int readShort(byte[] buffer, int offset) {
+    return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8);
+  }
+
+  private static long readInt(byte[] buffer, int offset) {
+    return readShort(buffer, offset) | ((long) readShort(buffer, offset + 2) << 16);
+  }
+
+  private static long readLong(byte[] buffer, int offset) {
+    return readInt(buffer, offset) | (readInt(buffer, offset + 4) << 32);
+  }
+
+  /**
+   * Remembers the last bytes read from a stream, which is where a zip archive keeps its central
+   * directory.
+   */
+  private static class TailRecordingInputStream extends FilterInputStream {
+    private byte[] tail = new byte[MIN_RECORDED_TAIL_SIZE];
+    private int end = 0;
+    private int size = 0;
+    private long position = 0;
+
+    private TailRecordingInputStream(InputStream in) {
+      super(in);
+    }
+
+    /** Keep at least the last {@code capacity} bytes read from now on. */
+    public void ensureCapacity(int capacity) {
+      if (capacity <= tail.length) {
+        return;
+      }
+      byte[] current = getTail();
+      tail = Arrays.copyOf(current, Math.max(capacity, 2 * tail.length));
+      end = current.length;
+    }
+
+    public byte[] getTail() {
+      byte[] result = new byte[size];
+      int start = end - size;
+      if (start >= 0) {
+        System.arraycopy(tail, start, result, 0, size);
+      } else {
+        System.arraycopy(tail, tail.length + start, result, 0, -start);
+        System.arraycopy(tail, 0, result, -start, end);
+      }
+      return result;
+    }
+
+    /** The position in the stream of the first byte returned by {@link #getTail()}. */
+    public long getTailPosition() {
+      return position - size;
+    }
+
+    private void record(byte[] buffer, int offset, int length) {
+      position += length;
+      if (length >= tail.length) {
+        System.arraycopy(buffer, offset + length - tail.length, tail, 0, tail.length);
+        end = 0;
+        size = tail.length;
+        return;
+      }
+      int firstPart = Math.min(length, tail.length - end);
+      System.arraycopy(buffer, offset, tail, end, firstPart);
+      System.arraycopy(buffer, offset + firstPart, tail, 0, length - firstPart);
+      end = (end + length) % tail.length;
+      size = Math.min(size + length, tail.length);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result = super.read();
+      if (result != -1) {
+        record(new byte[] {(byte) result}, 0, 1);
+      }
+      return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int result = super.read(buffer, offset, length);
+      if (result > 0) {
+        record(buffer, offset, result);
+      }
+      return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // Skipped bytes still need recording.
+      return ByteStreams.copy(ByteStreams.limit(this, n), ByteStreams.nullOutputStream());
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+      // The caller owns the underlying stream.
+    }
+  }
 }
@@ -127,4 +127,9 @@ public class AndroidBinaryBuilder
     return this;
   }
 
+  public AndroidBinaryBuilder setXzCompressionThreads(int threads) {
+    arg.xzCompressionThreads = Optional.of(threads);
+    return this;
+  }
+
 }
@@ -34,6 +34,7 @@ import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.TargetGraphFactory;
+import com.facebook.buck.util.HumanReadableException;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 
@@ -79,6 +80,26 @@ public class AndroidBinaryDescriptionTest {
     assertThat(androidBinary.getDeps(), Matchers.hasItem(transitiveDep));
   }
 
+  @Test(expected = HumanReadableException.class)
+  public void xzCompressionThreadsMustBePositive() throws Exception {
+    BuildRuleResolver ruleResolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver =
+        new SourcePathResolver(new SourcePathRuleFinder(ruleResolver));
+    Keystore keystore =
+        ruleResolver.addToIndex(
+            new Keystore(
+                new FakeBuildRuleParamsBuilder("//:keystore").build(),
+                pathResolver,
+                new FakeSourcePath("store"),
+                new FakeSourcePath("properties")));
+    AndroidBinaryBuilder.createBuilder(BuildTargetFactory.newInstance("//:rule"))
+        .setManifest(new FakeSourcePath("manifest.xml"))
+        .setKeystore(keystore.getBuildTarget())
+        .setXzCompressionThreads(0)
+        .build(ruleResolver, new FakeProjectFilesystem(), TargetGraph.EMPTY);
+  }
+
   @Test
   public void turkishCaseRulesDoNotCrashConstructor() throws Exception {
     BuildRuleResolver ruleResolver =
@@ -149,6 +149,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFile */ Optional.empty(),
         /* xzCompressionLevel */ Optional.empty(),
+        /* xzCompressionThreads */ Optional.empty(),
         /* trimResourceIds */ false,
         /* keepResourcePattern */ Optional.empty(),
         /* nativePlatforms */ ImmutableMap.of(),
@@ -304,6 +305,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFiles */ Optional.empty(),
         /* xzCompressionLevel */ Optional.empty(),
+        /* xzCompressionThreads */ Optional.empty(),
         /* trimResourceIds */ false,
         /* keepResourcePattern */ Optional.empty(),
         /* nativePlatforms */ ImmutableMap.of(),
@@ -448,6 +450,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFiles */ Optional.empty(),
         /* xzCompressionLevel */ Optional.empty(),
+        /* xzCompressionThreads */ Optional.empty(),
         /* trimResourceIds */ false,
         /* keepResourcePattern */ Optional.empty(),
         /* nativePlatforms */ ImmutableMap.of(),
@@ -508,6 +511,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFiles */ Optional.empty(),
         /* xzCompressionLevel */ Optional.empty(),
+        /* xzCompressionThreads */ Optional.empty(),
         /* trimResourceIds */ false,
         /* keepResourcePattern */ Optional.empty(),
         /* nativePlatforms */ ImmutableMap.of(),
@@ -597,6 +601,7 @@ public class AndroidBinaryGraphEnhancerTest {
         /* buildConfigValues */ BuildConfigFields.empty(),
         /* buildConfigValuesFiles */ Optional.empty(),
         /* xzCompressionLevel */ Optional.empty(),
+        /* xzCompressionThreads */ Optional.empty(),
         /* trimResourceIds */ false,
         /* keepResourcePattern */ Optional.empty(),
         /* nativePlatforms */ ImmutableMap.of(),
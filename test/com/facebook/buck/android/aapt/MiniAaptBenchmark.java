@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeSourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how long {@link MiniAapt} takes to generate the R.txt of a synthetic {@code res}
+ * directory shaped roughly like that of a large app module, with its files parsed on different
+ * numbers of threads.
+ */
+public class MiniAaptBenchmark {
+  @Param({"1000", "10000"})
+  private int layoutCount = 10000;
+
+  @Param({"1", "4", "8"})
+  private int threads = 4;
+
+  private TemporaryPaths tempDir = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private SourcePathResolver resolver;
+  private ExecutionContext context;
+  private ForkJoinPool pool;
+
+  @Before
+  public void setUpTest() throws Exception {
+    layoutCount = 100;
+    threads = 4;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tempDir.before();
+    filesystem = new ProjectFilesystem(tempDir.getRoot());
+    resolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())));
+    context = TestExecutionContext.newInstance();
+    // Parallel streams run on the pool of the task which starts them.
+    pool = new ForkJoinPool(threads);
+
+    Path res = tempDir.getRoot().resolve("res");
+    Files.createDirectories(res.resolve("layout"));
+    Files.createDirectories(res.resolve("drawable"));
+    Files.createDirectories(res.resolve("values"));
+    for (int i = 0; i < layoutCount; i++) {
+      // Neighbouring layouts share some of their ids, as the screens of an app tend to.
+      StringBuilder layout = new StringBuilder()
+          .append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+          .append("<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n")
+          .append("    android:layout_width=\"match_parent\">\n");
+      for (int j = 0; j < 10; j++) {
+        layout.append(String.format(
+            "  <TextView android:id=\"@+id/view%d\" android:text=\"@string/text%d\"\n" +
+                "      android:background=\"@drawable/image%d\" />\n",
+            i / 2 + j,
+            i,
+            i));
+      }
+      layout.append("</LinearLayout>\n");
+      write(res.resolve("layout/layout" + i + ".xml"), layout.toString());
+      Files.createFile(res.resolve("drawable/image" + i + ".png"));
+    }
+    for (int i = 0; i < layoutCount / 100; i++) {
+      StringBuilder values = new StringBuilder()
+          .append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+          .append("<resources>\n");
+      for (int j = i * 100; j < (i + 1) * 100; j++) {
+        values.append(String.format("  <string name=\"text%d\">Text number %d</string>\n", j, j))
+            .append(String.format("  <declare-styleable name=\"Styleable%d\">\n", j))
+            .append(String.format("    <attr name=\"attr%d\" format=\"string\" />\n", j))
+            .append("    <attr name=\"android:text\" />\n")
+            .append("  </declare-styleable>\n");
+      }
+      values.append("</resources>\n");
+      write(res.resolve("values/strings" + i + ".xml"), values.toString());
+    }
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() throws Exception {
+    pool.shutdownNow();
+    context.close();
+    tempDir.after();
+  }
+
+  @Test
+  public void generateRDotTxtCorrectness() throws Exception {
+    assertEquals(0, generateRDotTxt());
+    byte[] rDotTxt = Files.readAllBytes(tempDir.getRoot().resolve("R.txt"));
+
+    // Whichever order the files are parsed in, resources must be given the same ids.
+    pool.shutdownNow();
+    pool = new ForkJoinPool(1);
+    assertEquals(0, generateRDotTxt());
+    assertArrayEquals(rDotTxt, Files.readAllBytes(tempDir.getRoot().resolve("R.txt")));
+  }
+
+  @Benchmark
+  public int generateRDotTxt() throws Exception {
+    MiniAapt aapt = new MiniAapt(
+        resolver,
+        filesystem,
+        new FakeSourcePath(filesystem, "res"),
+        Paths.get("R.txt"),
+        ImmutableSet.of());
+    return pool.submit(() -> aapt.execute(context)).get().getExitCode();
+  }
+
+  private static void write(Path path, String contents) throws Exception {
+    Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -349,6 +349,34 @@ public class ArtifactCacheBuckConfigTest {
     assertThat(defaultConfig.getScheduleType(), Matchers.equalTo("none"));
   }
 
+  @Test
+  public void testArtifactCompressionSettings() throws IOException {
+    ArtifactCacheBuckConfig config = createFromText(
+        "[cache]",
+        "artifact_compression_level = 1",
+        "artifact_compression_threads = 4",
+        "artifact_compression_skip_compressed_files = true");
+
+    assertThat(config.getArtifactCompressionLevel(), Matchers.equalTo(1));
+    assertThat(config.getArtifactCompressionThreads(), Matchers.equalTo(4));
+    assertThat(config.getArtifactCompressionSkipCompressedFiles(), Matchers.is(true));
+
+    ArtifactCacheBuckConfig defaultConfig = createFromText(
+        "[cache]");
+    assertThat(defaultConfig.getArtifactCompressionLevel(), Matchers.equalTo(6));
+    assertThat(defaultConfig.getArtifactCompressionThreads(), Matchers.equalTo(1));
+    assertThat(defaultConfig.getArtifactCompressionSkipCompressedFiles(), Matchers.is(false));
+  }
+
+  @Test(expected = HumanReadableException.class)
+  public void testMalformedArtifactCompressionLevel() throws IOException {
+    ArtifactCacheBuckConfig config = createFromText(
+        "[cache]",
+        "artifact_compression_level = 10");
+
+    config.getArtifactCompressionLevel();
+  }
+
   @Test
   public void errorMessageFormatter() throws IOException {
     final String testText = "this is a test";
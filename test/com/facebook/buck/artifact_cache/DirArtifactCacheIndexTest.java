@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DirArtifactCacheIndexTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void missingJournalIsRebuiltFromScan() throws IOException {
+    Path journal = tmp.getRoot().resolve("index").resolve("journal");
+    AtomicInteger scans = new AtomicInteger();
+    DirArtifactCacheIndex index = new DirArtifactCacheIndex(
+        journal,
+        () -> {
+          scans.incrementAndGet();
+          return ImmutableList.of(
+              new DirArtifactCacheIndex.Entry("old", 10, 0),
+              new DirArtifactCacheIndex.Entry("new", 20, 1000));
+        });
+
+    // Fetches from a cache without a journal don't start one.
+    index.recordAccess("old");
+    assertFalse(index.isLoaded());
+    assertFalse(Files.exists(journal));
+
+    assertEquals(30, index.getTotalSizeBytes());
+    assertEquals(1, scans.get());
+    assertTrue(Files.exists(journal));
+    assertEquals(ImmutableList.of("old", "new"), index.getKeysLeastRecentlyUsedFirst());
+    index.close();
+  }
+
+  @Test
+  public void journalIsReplayedInsteadOfScanning() throws IOException {
+    Path journal = tmp.getRoot().resolve("index").resolve("journal");
+    try (DirArtifactCacheIndex index = new DirArtifactCacheIndex(journal, ImmutableList::of)) {
+      index.recordStore("a", 1);
+      index.recordStore("b", 2);
+      index.recordStore("c", 4);
+      index.recordRemoval("b");
+    }
+
+    // Accesses are journalled without loading the index.
+    try (DirArtifactCacheIndex index = new DirArtifactCacheIndex(journal, this::failScan)) {
+      index.recordAccess("a");
+      assertFalse(index.isLoaded());
+    }
+
+    try (DirArtifactCacheIndex index = new DirArtifactCacheIndex(journal, this::failScan)) {
+      assertEquals(5, index.getTotalSizeBytes());
+      assertEquals(ImmutableList.of("c", "a"), index.getKeysLeastRecentlyUsedFirst());
+    }
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedFirst() throws IOException {
+    Path journal = tmp.getRoot().resolve("index").resolve("journal");
+    try (DirArtifactCacheIndex index = new DirArtifactCacheIndex(journal, ImmutableList::of)) {
+      index.recordStore("a", 3);
+      index.recordStore("b", 3);
+      index.recordStore("c", 3);
+      index.recordAccess("a");
+
+      assertEquals(ImmutableList.of("b", "c"), index.evictLeastRecentlyUsed(3));
+      assertEquals(3, index.getTotalSizeBytes());
+      assertEquals(ImmutableList.of(), index.evictLeastRecentlyUsed(3));
+    }
+
+    try (DirArtifactCacheIndex index = new DirArtifactCacheIndex(journal, this::failScan)) {
+      assertEquals(ImmutableList.of("a"), index.getKeysLeastRecentlyUsedFirst());
+    }
+  }
+
+  @Test
+  public void uncleanOrTruncatedJournalIsRebuiltFromScan() throws IOException {
+    Path journal = tmp.getRoot().resolve("index").resolve("journal");
+    ImmutableList<DirArtifactCacheIndex.Entry> scanned =
+        ImmutableList.of(new DirArtifactCacheIndex.Entry("scanned", 7, 0));
+
+    DirArtifactCacheIndex unclosed = new DirArtifactCacheIndex(journal, ImmutableList::of);
+    unclosed.recordStore("a", 1);
+    try (DirArtifactCacheIndex index = new DirArtifactCacheIndex(journal, () -> scanned)) {
+      assertEquals(ImmutableList.of("scanned"), index.getKeysLeastRecentlyUsedFirst());
+      index.recordStore("b", 1);
+    }
+    unclosed.close();
+
+    byte[] bytes = Files.readAllBytes(journal);
+    Files.write(journal, Arrays.copyOf(bytes, bytes.length - 3));
+    try (DirArtifactCacheIndex index = new DirArtifactCacheIndex(journal, () -> scanned)) {
+      assertEquals(7, index.getTotalSizeBytes());
+    }
+  }
+
+  @Test
+  public void rebuildingKeepsRecordsAppendedByOthers() throws IOException {
+    Path journal = tmp.getRoot().resolve("index").resolve("journal");
+    try (DirArtifactCacheIndex index = new DirArtifactCacheIndex(journal, ImmutableList::of)) {
+      index.recordStore("a", 1);
+    }
+
+    try (DirArtifactCacheIndex appender = new DirArtifactCacheIndex(journal, this::failScan)) {
+      appender.recordAccess("a");
+      try (DirArtifactCacheIndex rebuilder = new DirArtifactCacheIndex(
+          journal,
+          () -> ImmutableList.of(new DirArtifactCacheIndex.Entry("a", 1, 0)))) {
+        rebuilder.rebuild();
+      }
+      appender.recordStore("b", 2);
+    }
+
+    try (DirArtifactCacheIndex index = new DirArtifactCacheIndex(journal, this::failScan)) {
+      assertEquals(3, index.getTotalSizeBytes());
+      assertEquals(ImmutableList.of("a", "b"), index.getKeysLeastRecentlyUsedFirst());
+    }
+  }
+
+  private ImmutableList<DirArtifactCacheIndex.Entry> failScan() {
+    throw new AssertionError("The index should have been loaded from the journal.");
+  }
+}
@@ -165,6 +165,61 @@ public class DirArtifactCacheTest {
     assertEquals(CacheResultType.HIT, dirArtifactCache.fetch(ruleKeyX, LazyPath.ofInstance(fileX))
             .getType());
     assertEquals(inputRuleX, new BuildRuleForTest(fileX));
+
+    // Without a max size, there's nothing to index.
+    assertFalse(Files.exists(cacheDir.resolve("index")));
+  }
+
+  @Test
+  public void testMultiContains() throws IOException {
+    Path cacheDir = tmpDir.newFolder();
+    Path fileX = tmpDir.newFile("x");
+
+    dirArtifactCache = new DirArtifactCache(
+        "dir",
+        new ProjectFilesystem(cacheDir),
+        Paths.get("."),
+        /* doStore */ true,
+        /* maxCacheSizeBytes */ Optional.empty());
+
+    RuleKey ruleKeyX = new RuleKey("1111111111111111111111111111111111111111");
+    RuleKey ruleKeyY = new RuleKey("2222222222222222222222222222222222222222");
+    dirArtifactCache.store(
+        ArtifactInfo.builder().addRuleKeys(ruleKeyX).build(),
+        BorrowablePath.notBorrowablePath(fileX));
+
+    ImmutableMap<RuleKey, CacheResult> results =
+        dirArtifactCache.multiContains(ImmutableSet.of(ruleKeyX, ruleKeyY));
+    assertEquals(CacheResultType.HIT, results.get(ruleKeyX).getType());
+    assertEquals(CacheResultType.MISS, results.get(ruleKeyY).getType());
+  }
+
+  @Test
+  public void testFetchLocalFindsTheFileInTheCache() throws IOException {
+    Path cacheDir = tmpDir.newFolder();
+    Path fileX = tmpDir.newFile("x");
+    Files.write(fileX, "x".getBytes(UTF_8));
+
+    dirArtifactCache = new DirArtifactCache(
+        "dir",
+        new ProjectFilesystem(cacheDir),
+        Paths.get("."),
+        /* doStore */ true,
+        /* maxCacheSizeBytes */ Optional.empty());
+
+    RuleKey ruleKeyX = new RuleKey("1111111111111111111111111111111111111111");
+    RuleKey ruleKeyY = new RuleKey("2222222222222222222222222222222222222222");
+    dirArtifactCache.store(
+        ArtifactInfo.builder().addRuleKeys(ruleKeyX).putMetadata("key", "value").build(),
+        BorrowablePath.notBorrowablePath(fileX));
+
+    assertTrue(dirArtifactCache.isLocalFetchSupported());
+    Optional<LocalArtifact> artifact = dirArtifactCache.fetchLocal(ruleKeyX);
+    assertTrue(artifact.isPresent());
+    assertTrue(artifact.get().getPath().isAbsolute());
+    assertEquals("x", new String(Files.readAllBytes(artifact.get().getPath()), UTF_8));
+    assertEquals(ImmutableMap.of("key", "value"), artifact.get().getMetadata());
+    assertFalse(dirArtifactCache.fetchLocal(ruleKeyY).isPresent());
   }
 
   @Test
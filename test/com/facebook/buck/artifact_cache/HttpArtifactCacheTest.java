@@ -38,6 +38,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 
@@ -270,6 +271,73 @@ public class HttpArtifactCacheTest {
     cache.close();
   }
 
+  @Test
+  public void testFetchStreaming() throws Exception {
+    final String data = "test";
+    final RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    final List<Response> responseList = Lists.newArrayList();
+    argsBuilder.setFetchClient(withMakeRequest((path, requestBuilder) -> {
+      Request request = requestBuilder.url(SERVER + path).build();
+      Response response =
+          new Response.Builder()
+              .request(request)
+              .protocol(Protocol.HTTP_1_1)
+              .code(HttpURLConnection.HTTP_OK)
+              .body(
+                  createResponseBody(
+                      ImmutableSet.of(ruleKey),
+                      ImmutableMap.of(),
+                      ByteSource.wrap(data.getBytes(Charsets.UTF_8)),
+                      data))
+              .build();
+      responseList.add(response);
+      return new OkHttpResponseWrapper(response);
+    }));
+
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    assertTrue(cache.isStreamingFetchSupported());
+    final byte[] consumed = new byte[2];
+    // The consumer doesn't need to read the whole payload for it to be checksummed.
+    CacheResult result = cache.fetchStreaming(
+        ruleKey,
+        payload -> ByteStreams.readFully(payload, consumed));
+    assertEquals(result.cacheError().orElse(""), CacheResultType.HIT, result.getType());
+    assertEquals("te", new String(consumed, Charsets.UTF_8));
+    assertEquals(Optional.of((long) data.length()), result.artifactSizeBytes());
+    assertTrue(
+        "response wasn't fully read!",
+        responseList.get(0).body().source().exhausted());
+    cache.close();
+  }
+
+  @Test
+  public void testFetchStreamingBadChecksum() throws Exception {
+    final RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    argsBuilder.setFetchClient(withMakeRequest((path, requestBuilder) -> {
+      Request request = requestBuilder.url(SERVER + path).build();
+      return new OkHttpResponseWrapper(
+          new Response.Builder()
+              .request(request)
+              .protocol(Protocol.HTTP_1_1)
+              .code(HttpURLConnection.HTTP_OK)
+              .body(
+                  createResponseBody(
+                      ImmutableSet.of(ruleKey),
+                      ImmutableMap.of(),
+                      ByteSource.wrap(new byte[0]),
+                      "data"))
+              .build());
+    }));
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    ByteArrayOutputStream consumed = new ByteArrayOutputStream();
+    CacheResult result = cache.fetchStreaming(
+        ruleKey,
+        payload -> ByteStreams.copy(payload, consumed));
+    assertEquals(CacheResultType.ERROR, result.getType());
+    assertEquals("data", consumed.toString(Charsets.UTF_8.name()));
+    cache.close();
+  }
+
   @Test
   public void testFetchExtraPayload() throws Exception {
     FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
@@ -21,11 +21,13 @@ import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.rules.RuleKey;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -57,6 +59,34 @@ public class InMemoryArtifactCache implements ArtifactCache {
     return CacheResult.hit("in-memory", artifact.metadata, artifact.data.length);
   }
 
+  @Override
+  public CacheResult fetchStreaming(RuleKey ruleKey, ArtifactPayloadConsumer consumer) {
+    Artifact artifact = artifacts.get(ruleKey);
+    if (artifact == null) {
+      return CacheResult.miss();
+    }
+    try {
+      consumer.consume(new ByteArrayInputStream(artifact.data));
+    } catch (IOException e) {
+      return CacheResult.error("in-memory", e.getMessage());
+    }
+    return CacheResult.hit("in-memory", artifact.metadata, artifact.data.length);
+  }
+
+  @Override
+  public boolean isStreamingFetchSupported() {
+    return true;
+  }
+
+  @Override
+  public ImmutableMap<RuleKey, CacheResult> multiContains(ImmutableSet<RuleKey> ruleKeys) {
+    return Maps.toMap(
+        ruleKeys,
+        ruleKey -> artifacts.containsKey(ruleKey) ?
+            CacheResult.hit("in-memory") :
+            CacheResult.miss());
+  }
+
   public void store(
       ArtifactInfo info,
       byte[] data) {
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.artifact_cache;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
@@ -23,11 +24,16 @@ import static org.junit.Assert.assertThat;
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
@@ -35,6 +41,7 @@ import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -234,4 +241,102 @@ public class MultiArtifactCacheTest {
     multiArtifactCache.close();
   }
 
+  @Test
+  public void cacheFetchStreamingPushesArtifactToHigherCache() throws Exception {
+    InMemoryArtifactCache cache1 = new InMemoryArtifactCache();
+    InMemoryArtifactCache cache2 = new InMemoryArtifactCache();
+    MultiArtifactCache multiArtifactCache =
+        new MultiArtifactCache(ImmutableList.of(
+            cache1,
+            cache2));
+    assertThat(multiArtifactCache.isStreamingFetchSupported(), Matchers.is(true));
+
+    ImmutableMap<String, String> metadata = ImmutableMap.of("hello", "world");
+    byte[] data = "data".getBytes(Charsets.UTF_8);
+    cache2.store(
+        ArtifactInfo.builder().addRuleKeys(dummyRuleKey).setMetadata(metadata).build(),
+        data);
+    ByteArrayOutputStream consumed = new ByteArrayOutputStream();
+    CacheResult result = multiArtifactCache.fetchStreaming(
+        dummyRuleKey,
+        payload -> ByteStreams.copy(payload, consumed));
+
+    assertThat(result.getType(), Matchers.equalTo(CacheResultType.HIT));
+    assertArrayEquals(data, consumed.toByteArray());
+    assertThat(cache1.hasArtifact(dummyRuleKey), Matchers.is(true));
+    ByteArrayOutputStream propagated = new ByteArrayOutputStream();
+    CacheResult propagatedResult = cache1.fetchStreaming(
+        dummyRuleKey,
+        payload -> ByteStreams.copy(payload, propagated));
+    assertThat(propagatedResult.getMetadata(), Matchers.equalTo(metadata));
+    assertArrayEquals(data, propagated.toByteArray());
+
+    multiArtifactCache.close();
+  }
+
+  @Test
+  public void multiFetchAsksLaterCachesOnlyForMissedKeys() throws Exception {
+    RuleKey otherRuleKey = new RuleKey("1111111111111111111111111111111111111111");
+    RuleKey missingRuleKey = new RuleKey("2222222222222222222222222222222222222222");
+    InMemoryArtifactCache cache1 = new InMemoryArtifactCache();
+    InMemoryArtifactCache cache2 = new InMemoryArtifactCache() {
+      @Override
+      public CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+        assertThat(ruleKey, Matchers.not(Matchers.equalTo(dummyRuleKey)));
+        return super.fetch(ruleKey, output);
+      }
+    };
+    MultiArtifactCache multiArtifactCache =
+        new MultiArtifactCache(ImmutableList.of(cache1, cache2));
+
+    cache1.store(ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(), new byte[0]);
+    cache2.store(ArtifactInfo.builder().addRuleKeys(otherRuleKey).build(), new byte[0]);
+
+    ImmutableList<CacheResult> results = multiArtifactCache.multiFetch(
+        ImmutableList.of(
+            new Pair<>(dummyRuleKey, LazyPath.ofInstance(tmp.newFile())),
+            new Pair<>(otherRuleKey, LazyPath.ofInstance(tmp.newFile())),
+            new Pair<>(missingRuleKey, LazyPath.ofInstance(tmp.newFile()))));
+
+    assertThat(
+        Lists.transform(results, CacheResult::getType),
+        Matchers.contains(CacheResultType.HIT, CacheResultType.HIT, CacheResultType.MISS));
+    assertThat(
+        "Artifacts found in later caches should be propagated to earlier ones.",
+        cache1.hasArtifact(otherRuleKey),
+        Matchers.is(true));
+
+    multiArtifactCache.close();
+  }
+
+  @Test
+  public void multiContainsOnlyMissesKeysWhichAllCachesMiss() throws Exception {
+    RuleKey otherRuleKey = new RuleKey("1111111111111111111111111111111111111111");
+    RuleKey missingRuleKey = new RuleKey("2222222222222222222222222222222222222222");
+    InMemoryArtifactCache cache1 = new InMemoryArtifactCache();
+    MultiArtifactCache multiArtifactCache =
+        new MultiArtifactCache(ImmutableList.of(cache1, new NoopArtifactCache()));
+
+    cache1.store(ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(), new byte[0]);
+    ImmutableMap<RuleKey, CacheResult> results = multiArtifactCache.multiContains(
+        ImmutableSet.of(dummyRuleKey, missingRuleKey));
+    assertThat(results.get(dummyRuleKey).getType(), Matchers.equalTo(CacheResultType.HIT));
+    assertThat(results.get(missingRuleKey).getType(), Matchers.equalTo(CacheResultType.MISS));
+
+    // A cache which can't tell whether it contains an artifact makes the result unknown.
+    MultiArtifactCache withUnknownCache =
+        new MultiArtifactCache(ImmutableList.of(cache1, new ErroringArtifactCache() {
+          @Override
+          public ImmutableMap<RuleKey, CacheResult> multiContains(ImmutableSet<RuleKey> keys) {
+            return ImmutableMap.of();
+          }
+        }));
+    assertThat(
+        withUnknownCache.multiContains(ImmutableSet.of(dummyRuleKey, otherRuleKey)).keySet(),
+        Matchers.contains(dummyRuleKey));
+
+    multiArtifactCache.close();
+    withUnknownCache.close();
+  }
+
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.artifact_cache.thrift.ArtifactMetadata;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheRequestType;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheResponse;
+import com.facebook.buck.artifact_cache.thrift.PayloadInfo;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.Pair;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.slb.HttpResponse;
+import com.facebook.buck.slb.HttpService;
+import com.facebook.buck.slb.OkHttpResponseWrapper;
+import com.facebook.buck.slb.ThriftUtil;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+public class ThriftArtifactCacheTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final String SERVER = "http://localhost";
+
+  @Test
+  public void multiFetchSendsSingleRequestAndReadsPayloadsInOrder() throws Exception {
+    ImmutableList<RuleKey> ruleKeys = ImmutableList.of(
+        new RuleKey("00000000000000000000000000000000"),
+        new RuleKey("11111111111111111111111111111111"),
+        new RuleKey("22222222222222222222222222222222"));
+    byte[] firstArtifact = "first".getBytes(Charsets.UTF_8);
+    byte[] lastArtifact = "last".getBytes(Charsets.UTF_8);
+
+    BuckCacheMultiFetchResponse multiFetchResponse = new BuckCacheMultiFetchResponse();
+    multiFetchResponse.addToResponses(createFetchResponse(ruleKeys.get(0), firstArtifact));
+    multiFetchResponse.addToResponses(new BuckCacheFetchResponse().setArtifactExists(false));
+    multiFetchResponse.addToResponses(createFetchResponse(ruleKeys.get(2), lastArtifact));
+    BuckCacheResponse cacheResponse = new BuckCacheResponse()
+        .setWasSuccessful(true)
+        .setType(BuckCacheRequestType.MULTI_FETCH)
+        .setMultiFetchResponse(multiFetchResponse);
+    cacheResponse.addToPayloads(new PayloadInfo().setSizeBytes(firstArtifact.length));
+    cacheResponse.addToPayloads(new PayloadInfo().setSizeBytes(lastArtifact.length));
+    byte[] responseBody = serialize(cacheResponse, firstArtifact, lastArtifact);
+
+    List<BuckCacheRequest> requests = Lists.newArrayList();
+    ThriftArtifactCache cache = createCache(responseBody, requests);
+
+    Path firstOutput = tmp.getRoot().resolve("first");
+    Path lastOutput = tmp.getRoot().resolve("last");
+    ImmutableList<CacheResult> results = cache.multiFetch(
+        ImmutableList.of(
+            new Pair<>(ruleKeys.get(0), LazyPath.ofInstance(firstOutput)),
+            new Pair<>(ruleKeys.get(1), LazyPath.ofInstance(tmp.getRoot().resolve("missing"))),
+            new Pair<>(ruleKeys.get(2), LazyPath.ofInstance(lastOutput))));
+
+    assertEquals(1, requests.size());
+    assertEquals(BuckCacheRequestType.MULTI_FETCH, requests.get(0).getType());
+    assertEquals(3, requests.get(0).getMultiFetchRequest().getRuleKeysSize());
+    assertThat(
+        Lists.transform(results, CacheResult::getType),
+        Matchers.contains(CacheResultType.HIT, CacheResultType.MISS, CacheResultType.HIT));
+    assertEquals(
+        Optional.of((long) firstArtifact.length),
+        results.get(0).artifactSizeBytes());
+    assertEquals("first", new String(Files.readAllBytes(firstOutput), Charsets.UTF_8));
+    assertEquals("last", new String(Files.readAllBytes(lastOutput), Charsets.UTF_8));
+    cache.close();
+  }
+
+  @Test
+  public void fetchStreamingHandsPayloadToConsumerAndVerifiesIt() throws Exception {
+    RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    byte[] artifact = "artifact".getBytes(Charsets.UTF_8);
+    List<BuckCacheRequest> requests = Lists.newArrayList();
+    ThriftArtifactCache cache = createCache(
+        serializeFetchResponse(createFetchResponse(ruleKey, artifact), artifact),
+        requests);
+
+    assertTrue(cache.isStreamingFetchSupported());
+    ByteArrayOutputStream consumed = new ByteArrayOutputStream();
+    CacheResult result = cache.fetchStreaming(
+        ruleKey,
+        payload -> ByteStreams.copy(payload, consumed));
+    assertEquals(CacheResultType.HIT, result.getType());
+    assertEquals(BuckCacheRequestType.FETCH, requests.get(0).getType());
+    assertArrayEquals(artifact, consumed.toByteArray());
+    cache.close();
+  }
+
+  @Test
+  public void fetchStreamingOfCorruptPayloadIsAnError() throws Exception {
+    RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    byte[] artifact = "artifact".getBytes(Charsets.UTF_8);
+    byte[] corruptArtifact = "artefact".getBytes(Charsets.UTF_8);
+    ThriftArtifactCache cache = createCache(
+        serializeFetchResponse(createFetchResponse(ruleKey, artifact), corruptArtifact),
+        Lists.newArrayList());
+
+    CacheResult result = cache.fetchStreaming(
+        ruleKey,
+        payload -> ByteStreams.copy(payload, ByteStreams.nullOutputStream()));
+    assertEquals(CacheResultType.ERROR, result.getType());
+    cache.close();
+  }
+
+  private ThriftArtifactCache createCache(
+      final byte[] responseBody,
+      final List<BuckCacheRequest> requests) {
+    HttpService fetchClient = new HttpService() {
+      @Override
+      public HttpResponse makeRequest(String path, Request.Builder requestBuilder)
+          throws IOException {
+        Request request = requestBuilder.url(SERVER + path).build();
+        requests.add(deserialize(request));
+        Response response = new Response.Builder()
+            .request(request)
+            .protocol(Protocol.HTTP_1_1)
+            .code(HttpURLConnection.HTTP_OK)
+            .body(
+                ResponseBody.create(
+                    ThriftArtifactCache.HYBRID_THRIFT_STREAM_CONTENT_TYPE,
+                    responseBody))
+            .build();
+        return new OkHttpResponseWrapper(response);
+      }
+
+      @Override
+      public void close() {}
+    };
+
+    return new ThriftArtifactCache(
+        NetworkCacheArgs.builder()
+            .setThriftEndpointPath("/hybrid_thrift")
+            .setCacheName("thrift")
+            .setRepository("some_repository")
+            .setScheduleType("some_schedule")
+            .setFetchClient(fetchClient)
+            .setStoreClient(fetchClient)
+            .setDoStore(true)
+            .setProjectFilesystem(new ProjectFilesystem(tmp.getRoot()))
+            .setBuckEventBus(BuckEventBusFactory.newInstance())
+            .setHttpWriteExecutorService(MoreExecutors.newDirectExecutorService())
+            .setErrorTextTemplate("unused")
+            .setDistributedBuildModeEnabled(false)
+            .build());
+  }
+
+  private static byte[] serializeFetchResponse(
+      BuckCacheFetchResponse fetchResponse,
+      byte[] payload) throws IOException {
+    BuckCacheResponse cacheResponse = new BuckCacheResponse()
+        .setWasSuccessful(true)
+        .setType(BuckCacheRequestType.FETCH)
+        .setFetchResponse(fetchResponse);
+    cacheResponse.addToPayloads(new PayloadInfo().setSizeBytes(payload.length));
+    return serialize(cacheResponse, payload);
+  }
+
+  private static BuckCacheFetchResponse createFetchResponse(RuleKey ruleKey, byte[] artifact)
+      throws IOException {
+    com.facebook.buck.artifact_cache.thrift.RuleKey thriftRuleKey =
+        new com.facebook.buck.artifact_cache.thrift.RuleKey();
+    thriftRuleKey.setHashString(ruleKey.toString());
+    ArtifactMetadata metadata = new ArtifactMetadata();
+    metadata.addToRuleKeys(thriftRuleKey);
+    metadata.setMetadata(ImmutableMap.of());
+    metadata.setArtifactPayloadMd5(
+        ThriftArtifactCacheProtocol.computeMd5Hash(ByteSource.wrap(artifact)));
+    return new BuckCacheFetchResponse()
+        .setArtifactExists(true)
+        .setMetadata(metadata);
+  }
+
+  private static byte[] serialize(BuckCacheResponse cacheResponse, byte[]... payloads)
+      throws IOException {
+    try (ByteArrayOutputStream out = new ByteArrayOutputStream();
+         DataOutputStream dataOut = new DataOutputStream(out)) {
+      byte[] header = ThriftUtil.serialize(ThriftArtifactCache.PROTOCOL, cacheResponse);
+      dataOut.writeInt(header.length);
+      dataOut.write(header);
+      for (byte[] payload : payloads) {
+        dataOut.write(payload);
+      }
+      dataOut.flush();
+      return out.toByteArray();
+    }
+  }
+
+  private static BuckCacheRequest deserialize(Request request) throws IOException {
+    Buffer buffer = new Buffer();
+    request.body().writeTo(buffer);
+    try (DataInputStream in = new DataInputStream(buffer.inputStream())) {
+      byte[] header = new byte[in.readInt()];
+      in.readFully(header);
+      BuckCacheRequest cacheRequest = new BuckCacheRequest();
+      ThriftUtil.deserialize(ThriftArtifactCache.PROTOCOL, header, cacheRequest);
+      return cacheRequest;
+    }
+  }
+}
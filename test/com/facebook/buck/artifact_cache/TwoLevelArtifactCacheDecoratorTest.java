@@ -24,8 +24,10 @@ import com.facebook.buck.event.BuckEventBusFactory;
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import org.hamcrest.Matchers;
@@ -82,6 +84,36 @@ public class TwoLevelArtifactCacheDecoratorTest {
     }
   }
 
+  @Test
+  public void testCacheMultiFetch() throws InterruptedException, IOException {
+    try (InMemoryArtifactCache inMemoryArtifactCache = new InMemoryArtifactCache();
+         TwoLevelArtifactCacheDecorator twoLevelCache = new TwoLevelArtifactCacheDecorator(
+             inMemoryArtifactCache,
+             new ProjectFilesystem(tmp.getRoot()),
+             BuckEventBusFactory.newInstance(),
+             /* performTwoLevelStores */ true,
+             /* minimumTwoLevelStoredArtifactSize */ 0L,
+             /* maximumTwoLevelStoredArtifactSize */ Optional.empty())) {
+      LazyPath dummyFile = LazyPath.ofInstance(tmp.newFile());
+      Files.write(dummyFile.get(), "contents".getBytes());
+      twoLevelCache.store(
+          ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(),
+          BorrowablePath.notBorrowablePath(dummyFile.get()));
+
+      LazyPath output = LazyPath.ofInstance(tmp.newFile());
+      ImmutableList<CacheResult> results = twoLevelCache.multiFetch(
+          ImmutableList.of(
+              new Pair<>(dummyRuleKey, output),
+              new Pair<>(dummyRuleKey2, LazyPath.ofInstance(tmp.newFile()))));
+      assertThat(results.get(0).getType(), Matchers.equalTo(CacheResultType.HIT));
+      assertThat(results.get(1).getType(), Matchers.equalTo(CacheResultType.MISS));
+      assertThat(
+          "The second-level artifact should be fetched to the output.",
+          new String(Files.readAllBytes(output.get())),
+          Matchers.equalTo("contents"));
+    }
+  }
+
   private void testStoreThresholds(
       int artifactSize,
       int expectedArtifactsInCache) throws InterruptedException, IOException {
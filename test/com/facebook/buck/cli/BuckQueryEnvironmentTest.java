@@ -18,12 +18,15 @@ package com.facebook.buck.cli;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusFactory;
 import com.facebook.buck.event.listener.BroadcastEventListener;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.JavaLibrary;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserConfig;
@@ -34,6 +37,7 @@ import com.facebook.buck.query.QueryException;
 import com.facebook.buck.query.QueryTarget;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.ConstructorArgMarshaller;
+import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TestCellBuilder;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.testutil.TestConsole;
@@ -61,6 +65,7 @@ public class BuckQueryEnvironmentTest {
   public TemporaryPaths tmp = new TemporaryPaths();
 
   private BuckQueryEnvironment buckQueryEnvironment;
+  private ProjectWorkspace workspace;
   private Path cellRoot;
   private ListeningExecutorService executor;
   private PerBuildState parserState;
@@ -71,7 +76,7 @@ public class BuckQueryEnvironmentTest {
 
   @Before
   public void setUp() throws IOException, InterruptedException {
-    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+    workspace = TestDataHelper.createProjectWorkspaceForScenario(
         this,
         "query_command",
         tmp);
@@ -88,6 +93,7 @@ public class BuckQueryEnvironmentTest {
         cell.getBuckConfig().getView(ParserConfig.class),
         typeCoercerFactory, new ConstructorArgMarshaller(typeCoercerFactory));
     BuckEventBus eventBus = BuckEventBusFactory.newInstance();
+    executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
     parserState =
         new PerBuildState(
             parser,
@@ -104,9 +110,13 @@ public class BuckQueryEnvironmentTest {
     OwnersReport.Builder ownersReportBuilder =
         OwnersReport.builder(cell, parser, eventBus, console);
     buckQueryEnvironment =
-        BuckQueryEnvironment.from(cell, ownersReportBuilder, parserState, targetPatternEvaluator);
+        BuckQueryEnvironment.from(
+            cell,
+            ownersReportBuilder,
+            parserState,
+            eventBus,
+            targetPatternEvaluator);
     cellRoot = workspace.getDestPath();
-    executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
   }
 
   @After
@@ -147,4 +157,95 @@ public class BuckQueryEnvironmentTest {
         buckQueryEnvironment.getTargetsMatchingPattern("//example:", executor),
         is(equalTo(expectedTargets)));
   }
+
+  @Test
+  public void testBuildTransitiveClosureExtendsTheGraph()
+      throws QueryException, InterruptedException {
+    buckQueryEnvironment.buildTransitiveClosure(
+        ImmutableSet.of(createQueryBuildTarget("//example", "two")),
+        Integer.MAX_VALUE,
+        executor);
+    assertThat(
+        buckQueryEnvironment.getReverseDeps(
+            ImmutableSet.of(createQueryBuildTarget("//example", "four"))),
+        is(equalTo(ImmutableSet.of(createQueryBuildTarget("//example", "two")))));
+
+    buckQueryEnvironment.buildTransitiveClosure(
+        ImmutableSet.of(createQueryBuildTarget("//example", "three")),
+        Integer.MAX_VALUE,
+        executor);
+    assertThat(
+        buckQueryEnvironment.getReverseDeps(
+            ImmutableSet.of(createQueryBuildTarget("//example", "four"))),
+        is(equalTo(
+            ImmutableSet.of(
+                createQueryBuildTarget("//example", "two"),
+                createQueryBuildTarget("//example", "three")))));
+    assertThat(
+        buckQueryEnvironment.getTransitiveClosure(
+            ImmutableSet.of(createQueryBuildTarget("//example", "three"))),
+        is(equalTo(
+            ImmutableSortedSet.of(
+                createQueryBuildTarget("//example", "three"),
+                createQueryBuildTarget("//example", "four"),
+                createQueryBuildTarget("//example", "five"),
+                createQueryBuildTarget("//example", "six")))));
+    assertThat(buckQueryEnvironment.getTargetGraph().getNodes().size(), is(equalTo(5)));
+  }
+
+  @Test
+  public void testBuildTransitiveClosureIndexesFlavoredTargetsUnderTheirUnflavoredTarget()
+      throws Exception {
+    workspace.writeContentsToPath(
+        "java_library(name = 'foo')\n" +
+            "java_library(name = 'bar', deps = [':foo'])\n",
+        "BUCK");
+    QueryTarget flavoredBar = QueryBuildTarget.of(
+        BuildTarget.builder(cellRoot, "//", "bar").addFlavors(JavaLibrary.SRC_JAR).build());
+
+    buckQueryEnvironment.buildTransitiveClosure(
+        ImmutableSet.of(flavoredBar),
+        Integer.MAX_VALUE,
+        executor);
+    TargetGraph targetGraph = buckQueryEnvironment.getTargetGraph();
+    assertTrue(
+        targetGraph.getOptional(BuildTarget.builder(cellRoot, "//", "bar").build()).isPresent());
+    assertThat(targetGraph.getNodes().size(), is(equalTo(2)));
+
+    // The unflavored target is only indexed, so asking for it still loads it into the graph.
+    buckQueryEnvironment.buildTransitiveClosure(
+        ImmutableSet.of(createQueryBuildTarget("//", "bar")),
+        Integer.MAX_VALUE,
+        executor);
+    assertThat(
+        buckQueryEnvironment.getFwdDeps(ImmutableSet.of(createQueryBuildTarget("//", "bar"))),
+        is(equalTo(ImmutableSet.of(createQueryBuildTarget("//", "foo")))));
+    assertThat(buckQueryEnvironment.getTargetGraph().getNodes().size(), is(equalTo(3)));
+  }
+
+  @Test
+  public void testBuildTransitiveClosureExpandsNestedTargetGroups() throws Exception {
+    workspace.writeContentsToPath(
+        "java_library(name = 'foo')\n" +
+            "java_library(name = 'bar', deps = [':foo'])\n" +
+            "target_group(name = 'group_two', targets = [':bar', ':group_one'])\n" +
+            "target_group(\n" +
+            "  name = 'group_one',\n" +
+            "  targets = [':foo'],\n" +
+            "  restrict_outbound_visibility = True,\n" +
+            ")\n",
+        "BUCK");
+    BuildTarget fooTarget = BuildTarget.builder(cellRoot, "//", "foo").build();
+    BuildTarget barTarget = BuildTarget.builder(cellRoot, "//", "bar").build();
+
+    buckQueryEnvironment.buildTransitiveClosure(
+        ImmutableSet.of(createQueryBuildTarget("//", "bar")),
+        Integer.MAX_VALUE,
+        executor);
+    TargetGraph targetGraph = buckQueryEnvironment.getTargetGraph();
+
+    assertThat(targetGraph.getGroupsContainingTarget(fooTarget).size(), is(equalTo(2)));
+    assertTrue(targetGraph.get(fooTarget).isVisibleTo(targetGraph, targetGraph.get(barTarget)));
+    assertFalse(targetGraph.get(barTarget).isVisibleTo(targetGraph, targetGraph.get(fooTarget)));
+  }
 }
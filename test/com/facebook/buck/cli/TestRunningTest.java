@@ -54,9 +54,13 @@ import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TestRule;
 import com.facebook.buck.shell.GenruleBuilder;
 import com.facebook.buck.shell.GenruleDescription;
+import com.facebook.buck.step.AbstractExecutionStep;
+import com.facebook.buck.step.ConcurrentStep;
 import com.facebook.buck.step.DefaultStepRunner;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.ExecutionOrderAwareFakeStep;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.test.FakeTestResults;
 import com.facebook.buck.test.TestCaseSummary;
@@ -89,8 +93,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -1182,4 +1188,62 @@ public class TestRunningTest {
 
     assertThat(ret, equalTo(TestRunning.TEST_FAILURES_EXIT_CODE));
   }
+
+  @Test
+  public void stepsOfAConcurrentStepRunAtTheSameTime() throws Exception {
+    CommandRunnerParams commandRunnerParams = CommandRunnerParamsForTesting
+        .builder()
+        .build();
+    BuildTarget shardedTestTarget = BuildTargetFactory.newInstance("//:shardedtest");
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(
+        new BuildRuleResolver(
+            TargetGraph.EMPTY,
+            new DefaultTargetNodeToBuildRuleTransformer()));
+    SourcePathResolver resolver = new SourcePathResolver(ruleFinder);
+
+    // Each shard waits for the other to start, so this only succeeds if they run concurrently.
+    final CountDownLatch shardsStarted = new CountDownLatch(2);
+    Step shard = new AbstractExecutionStep("shard") {
+      @Override
+      public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
+        shardsStarted.countDown();
+        return shardsStarted.await(10, TimeUnit.SECONDS) ?
+            StepExecutionResult.SUCCESS :
+            StepExecutionResult.ERROR;
+      }
+    };
+    FakeTestRule shardedTest = new FakeTestRule(
+        new FakeBuildRuleParamsBuilder(shardedTestTarget).build(),
+        resolver,
+        ImmutableSet.of(),
+        Optional.of(Paths.get("shardedTestOutputDir")),
+        false, // runTestSeparately
+        ImmutableList.of(new ConcurrentStep(ImmutableList.of(shard, shard))),
+        () -> FakeTestResults.of(ImmutableList.of()));
+
+    ListeningExecutorService service =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(3));
+    FakeBuildEngine fakeBuildEngine = new FakeBuildEngine(
+        ImmutableMap.of(
+            shardedTestTarget, BuildResult.success(shardedTest, BUILT_LOCALLY, CacheResult.miss())
+        ),
+        ImmutableMap.of(
+            shardedTestTarget, new RuleKey("00")
+        ));
+    ExecutionContext fakeExecutionContext = TestExecutionContext.newInstance();
+    DefaultStepRunner stepRunner = new DefaultStepRunner();
+    int ret = TestRunning.runTests(
+        commandRunnerParams,
+        ImmutableList.of(shardedTest),
+        fakeExecutionContext,
+        DEFAULT_OPTIONS,
+        service,
+        fakeBuildEngine,
+        stepRunner,
+        resolver,
+        ruleFinder);
+    service.shutdown();
+
+    assertThat(ret, equalTo(0));
+  }
 }
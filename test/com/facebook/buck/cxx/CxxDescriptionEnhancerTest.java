@@ -20,6 +20,7 @@ import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.model.BuildTarget;
@@ -30,12 +31,14 @@ import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.rules.FakeBuildRule;
 import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
+import com.facebook.buck.rules.FakeSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
@@ -44,10 +47,16 @@ import com.google.common.collect.Iterables;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class CxxDescriptionEnhancerTest {
 
@@ -249,6 +258,39 @@ public class CxxDescriptionEnhancerTest {
     assertThat(soname("libfoo.$(ext 2.3)", "bad", "windows"), equalTo("libfoo.windows"));
   }
 
+  @Test
+  public void headerSymlinkTreeRequiredConcurrentlyIsCreatedOnce() throws Exception {
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(resolver));
+    BuildRuleParams params =
+        new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:lib")).build();
+    ImmutableMap<Path, SourcePath> headers = ImmutableMap.of(
+        Paths.get("lib.h"),
+        new FakeSourcePath("lib.h"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<HeaderSymlinkTree>> trees = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        trees.add(executor.submit(() -> CxxDescriptionEnhancer.requireHeaderSymlinkTree(
+            params,
+            resolver,
+            pathResolver,
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            headers,
+            HeaderVisibility.PUBLIC,
+            true)));
+      }
+      HeaderSymlinkTree first = trees.get(0).get();
+      for (Future<HeaderSymlinkTree> tree : trees) {
+        assertThat(tree.get(), sameInstance(first));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   /**
    * Just a helper to make this shorter to write.
    */
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.util.ObjectMappers;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class BinaryChromeTraceWriterTest {
+
+  private static final ImmutableList<ChromeTraceEvent> EVENTS = ImmutableList.of(
+      new ChromeTraceEvent(
+          "buck",
+          "build",
+          ChromeTraceEvent.Phase.BEGIN,
+          0,
+          12,
+          1000000,
+          500,
+          ImmutableMap.of("command_args", "//foo:bar")),
+      new ChromeTraceEvent(
+          "buck",
+          "//foo:bar",
+          ChromeTraceEvent.Phase.BEGIN,
+          0,
+          13,
+          1000200,
+          0,
+          ImmutableMap.of()),
+      // Events may arrive slightly out of order.
+      new ChromeTraceEvent(
+          "buck",
+          "//foo:bar",
+          ChromeTraceEvent.Phase.END,
+          0,
+          13,
+          1000100,
+          70,
+          ImmutableMap.of("cache_result", "miss", "success_type", "built_locally")),
+      new ChromeTraceEvent(
+          "perf",
+          "ünicode",
+          ChromeTraceEvent.Phase.COUNTER,
+          0,
+          Long.MAX_VALUE,
+          2000000,
+          0,
+          ImmutableMap.of("cache_result", "miss")));
+
+  @Test
+  public void eventsAreReadBackAsTheyWereWritten() throws IOException {
+    List<ChromeTraceEvent> events = readEvents(writeEvents(EVENTS));
+
+    assertEquals(EVENTS.size(), events.size());
+    for (int i = 0; i < EVENTS.size(); i++) {
+      assertEventEquals(EVENTS.get(i), events.get(i));
+    }
+  }
+
+  @Test
+  public void truncatedTraceReadsAsTheEventsWrittenInFull() throws IOException {
+    byte[] trace = writeEvents(EVENTS);
+    byte[] truncated = Arrays.copyOf(trace, trace.length - 20);
+
+    List<ChromeTraceEvent> events = readEvents(truncated);
+
+    assertTrue(events.size() < EVENTS.size());
+    for (int i = 0; i < events.size(); i++) {
+      assertEventEquals(EVENTS.get(i), events.get(i));
+    }
+  }
+
+  @Test
+  public void binaryTracesAreToldApartFromJsonTraces() throws IOException {
+    assertTrue(
+        BinaryChromeTraceReader.isBinaryTrace(
+            new BufferedInputStream(new ByteArrayInputStream(writeEvents(EVENTS)))));
+    assertFalse(
+        BinaryChromeTraceReader.isBinaryTrace(
+            new BufferedInputStream(
+                new ByteArrayInputStream("[{\"name\":\"build\"}]".getBytes(Charsets.UTF_8)))));
+  }
+
+  @Test
+  public void binaryTraceIsConvertedToJson() throws IOException {
+    StringWriter json = new StringWriter();
+    BinaryChromeTraceReader.convertToJson(
+        new ByteArrayInputStream(writeEvents(EVENTS)),
+        ObjectMappers.newDefaultInstance(),
+        json);
+
+    List<?> elements = new Gson().fromJson(json.toString(), List.class);
+    assertEquals(EVENTS.size(), elements.size());
+    Map<?, ?> first = (Map<?, ?>) elements.get(0);
+    assertEquals("build", first.get("name"));
+    assertEquals("B", first.get("ph"));
+    assertEquals(ImmutableMap.of("command_args", "//foo:bar"), first.get("args"));
+  }
+
+  private static byte[] writeEvents(List<ChromeTraceEvent> events) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (BinaryChromeTraceWriter writer = new BinaryChromeTraceWriter(output)) {
+      for (ChromeTraceEvent event : events) {
+        writer.writeEvent(event);
+      }
+    }
+    return output.toByteArray();
+  }
+
+  private static List<ChromeTraceEvent> readEvents(byte[] trace) throws IOException {
+    List<ChromeTraceEvent> events = new ArrayList<>();
+    try (BinaryChromeTraceReader reader =
+             new BinaryChromeTraceReader(new ByteArrayInputStream(trace))) {
+      for (Optional<ChromeTraceEvent> event = reader.readEvent();
+           event.isPresent();
+           event = reader.readEvent()) {
+        events.add(event.get());
+      }
+    }
+    return events;
+  }
+
+  private static void assertEventEquals(ChromeTraceEvent expected, ChromeTraceEvent actual) {
+    assertEquals(expected.getCategory(), actual.getCategory());
+    assertEquals(expected.getName(), actual.getName());
+    assertEquals(expected.getPhase(), actual.getPhase());
+    assertEquals(expected.getProcessId(), actual.getProcessId());
+    assertEquals(expected.getThreadId(), actual.getThreadId());
+    assertEquals(expected.getMicroTime(), actual.getMicroTime());
+    assertEquals(expected.getMicroThreadUserTime(), actual.getMicroThreadUserTime());
+    assertEquals(expected.getArgs(), actual.getArgs());
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleEvent;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.timing.DefaultClock;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.eventbus.Subscribe;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long an asynchronous {@link BuckEventBus} takes to post a large number of
+ * {@link BuildRuleEvent}s and deliver them to its listeners, optionally with one listener which is
+ * slow to handle each event.
+ */
+public class BuckEventBusBenchmark {
+  @Param({"1", "8"})
+  private int listenerCount = 8;
+
+  @Param({"100000", "1000000"})
+  private int eventCount = 1000000;
+
+  @Param({"false", "true"})
+  private boolean withSlowListener = true;
+
+  private BuildRule rule;
+  private List<CountingListener> listeners;
+
+  @Before
+  public void setUpTest() {
+    listenerCount = 4;
+    eventCount = 1000;
+    withSlowListener = true;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() {
+    SourcePathResolver resolver = new SourcePathResolver(
+        new SourcePathRuleFinder(
+            new BuildRuleResolver(
+                TargetGraph.EMPTY,
+                new DefaultTargetNodeToBuildRuleTransformer())));
+    rule = new FakeBuildRule(BuildTargetFactory.newInstance("//benchmark:rule"), resolver);
+  }
+
+  @Test
+  public void postEventsCorrectness() throws Exception {
+    postEvents();
+
+    for (CountingListener listener : listeners) {
+      assertEquals(eventCount, listener.events.get());
+    }
+  }
+
+  @Benchmark
+  public void postBuildRuleEvents() throws Exception {
+    postEvents();
+  }
+
+  private void postEvents() throws Exception {
+    listeners = new ArrayList<>(listenerCount);
+    try (BuckEventBus eventBus = new BuckEventBus(
+        new DefaultClock(),
+        true,
+        BuckEventBusFactory.BUILD_ID_FOR_TEST,
+        // Wait for as long as it takes the listeners to catch up.
+        Integer.MAX_VALUE)) {
+      for (int i = 0; i < listenerCount; i++) {
+        CountingListener listener = withSlowListener && i == 0 ?
+            new SlowListener() :
+            new CountingListener();
+        listeners.add(listener);
+        eventBus.register(listener);
+      }
+      for (int i = 0; i < eventCount; i++) {
+        eventBus.post(BuildRuleEvent.started(rule));
+      }
+    }
+  }
+
+  public static class CountingListener {
+    public final AtomicLong events = new AtomicLong();
+
+    @Subscribe
+    public void count(BuildRuleEvent event) {
+      events.incrementAndGet();
+    }
+  }
+
+  /**
+   * Stands in for a listener which does some work for every event, such as formatting it.
+   */
+  public static class SlowListener extends CountingListener {
+    @Subscribe
+    public void format(BuildRuleEvent.Started event) {
+      String.format("%s %s", event.getEventName(), event.getBuildRule().getFullyQualifiedName());
+    }
+  }
+}
@@ -20,15 +20,22 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.facebook.buck.timing.DefaultClock;
 import com.facebook.buck.timing.SettableFakeClock;
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.Subscribe;
 
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 public class BuckEventBusTest {
@@ -123,6 +130,117 @@ public class BuckEventBusTest {
     assertEquals(event.getNanoTime(), 64738);
   }
 
+  @Test
+  public void slowListenerDoesNotHoldUpOtherListeners() throws Exception {
+    BuckEventBus eb = new BuckEventBus(
+        new DefaultClock(),
+        true,
+        BuckEventBusFactory.BUILD_ID_FOR_TEST,
+        timeoutMillis);
+    BlockingSubscriber slowSubscriber = new BlockingSubscriber();
+    RecordingSubscriber otherSubscriber = new RecordingSubscriber();
+    eb.register(slowSubscriber);
+    eb.register(otherSubscriber);
+
+    TestEvent event = new TestEvent();
+    eb.post(event);
+    assertTrue(otherSubscriber.received.await(1, TimeUnit.SECONDS));
+    slowSubscriber.release.countDown();
+    eb.close();
+
+    assertEquals(Collections.singletonList(event), slowSubscriber.events);
+    assertEquals(Collections.singletonList(event), otherSubscriber.events);
+  }
+
+  @Test
+  public void eventsAreDeliveredToEachListenerInOrder() throws IOException {
+    BuckEventBus eb = new BuckEventBus(
+        new DefaultClock(),
+        true,
+        BuckEventBusFactory.BUILD_ID_FOR_TEST,
+        timeoutMillis,
+        16);
+    RecordingSubscriber first = new RecordingSubscriber();
+    RecordingSubscriber second = new RecordingSubscriber();
+    eb.register(first);
+    eb.register(second);
+
+    List<TestEvent> events = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      TestEvent event = new TestEvent();
+      events.add(event);
+      eb.post(event);
+    }
+    eb.close();
+
+    assertEquals(events, first.events);
+    assertEquals(events, second.events);
+  }
+
+  @Test
+  public void eventsAreDroppedForListenersWhichFallBehind() throws Exception {
+    BuckEventBus eb = new BuckEventBus(
+        new DefaultClock(),
+        true,
+        BuckEventBusFactory.BUILD_ID_FOR_TEST,
+        timeoutMillis,
+        1);
+    BlockingSubscriber slowSubscriber = new BlockingSubscriber();
+    eb.register(slowSubscriber, BuckEventBus.OverflowPolicy.DROP);
+
+    TestEvent delivered = new TestEvent();
+    eb.post(delivered);
+    assertTrue(slowSubscriber.entered.await(1, TimeUnit.SECONDS));
+    TestEvent queued = new TestEvent();
+    eb.post(queued);
+    eb.post(new TestEvent());
+    eb.post(new TestEvent());
+    slowSubscriber.release.countDown();
+    eb.close();
+
+    assertEquals(ImmutableList.of(delivered, queued), slowSubscriber.events);
+  }
+
+  @Test
+  public void listenersAreOnlySentEventsTheySubscribeTo() throws IOException {
+    BuckEventBus eb = new BuckEventBus(
+        new DefaultClock(),
+        true,
+        BuckEventBusFactory.BUILD_ID_FOR_TEST,
+        timeoutMillis,
+        1);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    eb.register(subscriber);
+
+    // The queue only has space for one event, so this would block if sleep events were queued.
+    for (int i = 0; i < 100; i++) {
+      eb.post(new SleepEvent(0));
+    }
+    TestEvent event = new TestEvent();
+    eb.post(event);
+    eb.close();
+
+    assertEquals(Collections.singletonList(event), subscriber.events);
+  }
+
+  @Test
+  public void eventsWhoseDeliveryIsRejectedAreDeliveredByThePoster() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    ListenerEventQueue queue = new ListenerEventQueue(
+        subscriber,
+        16,
+        BuckEventBus.OverflowPolicy.BLOCK,
+        command -> {
+          throw new RejectedExecutionException();
+        });
+
+    TestEvent event = new TestEvent();
+    queue.add(event);
+
+    assertEquals(Collections.singletonList(event), subscriber.events);
+    assertTrue(queue.awaitDelivery(System.nanoTime()));
+  }
+
   private static class SleepEvent extends AbstractBuckEvent {
     public final long milliseconds;
 
@@ -149,6 +267,30 @@ public class BuckEventBusTest {
     }
   }
 
+  private static class RecordingSubscriber {
+    public final List<TestEvent> events = Collections.synchronizedList(new ArrayList<>());
+    public final CountDownLatch received = new CountDownLatch(1);
+
+    @Subscribe
+    public void record(TestEvent event) {
+      events.add(event);
+      received.countDown();
+    }
+  }
+
+  private static class BlockingSubscriber {
+    public final List<TestEvent> events = Collections.synchronizedList(new ArrayList<>());
+    public final CountDownLatch entered = new CountDownLatch(1);
+    public final CountDownLatch release = new CountDownLatch(1);
+
+    @Subscribe
+    public void block(TestEvent event) throws InterruptedException {
+      entered.countDown();
+      release.await();
+      events.add(event);
+    }
+  }
+
   private static class TestEvent extends AbstractBuckEvent {
 
     public TestEvent() {
@@ -29,6 +29,7 @@ import com.facebook.buck.artifact_cache.HttpArtifactCacheEvent;
 import com.facebook.buck.event.CommandEvent;
 import com.facebook.buck.artifact_cache.HttpArtifactCacheEventFetchData;
 import com.facebook.buck.event.ArtifactCompressionEvent;
+import com.facebook.buck.event.BinaryChromeTraceReader;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusFactory;
 import com.facebook.buck.event.ChromeTraceEvent;
@@ -140,7 +141,8 @@ public class ChromeTraceBuildListenerTest {
         Locale.US,
         TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 3,
-        false);
+        false,
+        /* binaryTraces */ false);
 
     listener.outputTrace(invocationInfo.getBuildId());
 
@@ -174,7 +176,8 @@ public class ChromeTraceBuildListenerTest {
         Locale.US,
         TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 42,
-        false);
+        false,
+        /* binaryTraces */ false);
 
     BuildTarget target = BuildTargetFactory.newInstance("//fake:rule");
 
@@ -536,7 +539,8 @@ public class ChromeTraceBuildListenerTest {
           Locale.US,
           TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 3,
-          false);
+          false,
+          /* binaryTraces */ false);
       listener.outputTrace(invocationInfo.getBuildId());
       fail("Expected an exception.");
     } catch (HumanReadableException e) {
@@ -561,7 +565,8 @@ public class ChromeTraceBuildListenerTest {
         Locale.US,
         TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 1,
-        false);
+        false,
+        /* binaryTraces */ false);
     listener.outputTrace(invocationInfo.getBuildId());
     assertTrue(
         projectFilesystem.exists(
@@ -580,7 +585,8 @@ public class ChromeTraceBuildListenerTest {
         Locale.US,
         TimeZone.getTimeZone("America/Los_Angeles"),
         /* tracesToKeep */ 1,
-        true);
+        true,
+        /* binaryTraces */ false);
     listener.outputTrace(invocationInfo.getBuildId());
 
     Path tracePath = Paths.get(EXPECTED_DIR + "build.2014-09-02.16-55-51.BUILD_ID.trace.gz");
@@ -594,4 +600,35 @@ public class ChromeTraceBuildListenerTest {
     List<?> elements = new Gson().fromJson(reader, List.class);
     assertThat(elements, notNullValue());
   }
+
+  @Test
+  public void canWriteBinaryTraces() throws IOException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+
+    ChromeTraceBuildListener listener = new ChromeTraceBuildListener(
+        projectFilesystem,
+        invocationInfo,
+        new FakeClock(TIMESTAMP_NANOS),
+        ObjectMappers.newDefaultInstance(),
+        Locale.US,
+        TimeZone.getTimeZone("America/Los_Angeles"),
+        /* tracesToKeep */ 1,
+        true,
+        /* binaryTraces */ true);
+    listener.outputTrace(invocationInfo.getBuildId());
+
+    // Binary traces are compressed anyway, and keep the name the web server looks for.
+    Path tracePath = Paths.get(EXPECTED_DIR + "build.2014-09-02.16-55-51.BUILD_ID.trace");
+
+    assertTrue(projectFilesystem.exists(tracePath));
+
+    try (BinaryChromeTraceReader reader =
+             new BinaryChromeTraceReader(projectFilesystem.newFileInputStream(tracePath))) {
+      ChromeTraceEvent event = reader.readEvent().get();
+      assertEquals("process_name", event.getName());
+      assertEquals(ChromeTraceEvent.Phase.METADATA, event.getPhase());
+      assertEquals(ImmutableMap.of("name", "buck"), event.getArgs());
+      assertEquals(Optional.empty(), reader.readEvent());
+    }
+  }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.graph;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Iterables;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Compares a {@link CompactDirectedGraph} with the hash multimaps of nodes which graphs used to
+ * be kept in, for a random DAG shaped roughly like a large target graph. Run with
+ * {@code -i allocation} to compare how much memory each representation of the graph takes up, and
+ * with {@code -i runtime} to compare how long it takes to walk every node of the graph from the
+ * bottom up.
+ */
+public class CompactDirectedGraphBenchmark {
+  @Param({"10000", "300000"})
+  private int nodeCount = 300000;
+
+  @Param({"8"})
+  private int averageDeps = 8;
+
+  private MutableDirectedGraph<String> mutableGraph;
+  private CompactDirectedGraph<String> compactGraph;
+  private ImmutableSetMultimap<String, String> outgoingEdges;
+
+  @Before
+  public void setUpTest() {
+    nodeCount = 1000;
+    averageDeps = 4;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() {
+    Random random = new Random(0);
+    String[] nodes = new String[nodeCount];
+    mutableGraph = new MutableDirectedGraph<>();
+    for (int i = 0; i < nodeCount; i++) {
+      nodes[i] = "//benchmark/package" + (i / 10) + ":target" + i;
+      mutableGraph.addNode(nodes[i]);
+      // Only depend on nodes added earlier, so that the graph stays acyclic.
+      for (int j = 0; i > 0 && j < averageDeps; j++) {
+        mutableGraph.addEdge(nodes[i], nodes[random.nextInt(i)]);
+      }
+    }
+    compactGraph = CompactDirectedGraph.copyOf(mutableGraph);
+    outgoingEdges = copyEdgesToMultimaps().get(0);
+  }
+
+  @Test
+  public void bottomUpTraversalCorrectness() {
+    assertEquals(nodeCount, traverseCompactGraph());
+    assertEquals(nodeCount, traverseMultimap());
+  }
+
+  @Benchmark
+  public CompactDirectedGraph<String> copyToCompactGraph() {
+    return CompactDirectedGraph.copyOf(mutableGraph);
+  }
+
+  @Benchmark
+  public ImmutableList<ImmutableSetMultimap<String, String>> copyToMultimaps() {
+    return copyEdgesToMultimaps();
+  }
+
+  @Benchmark
+  public int bottomUpTraversalOfCompactGraph() {
+    return traverseCompactGraph();
+  }
+
+  @Benchmark
+  public int bottomUpTraversalOfMultimap() {
+    return traverseMultimap();
+  }
+
+  /**
+   * What {@link DirectedAcyclicGraph} used to keep: a multimap of edges in each direction.
+   */
+  private ImmutableList<ImmutableSetMultimap<String, String>> copyEdgesToMultimaps() {
+    ImmutableSetMultimap.Builder<String, String> outgoing = ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<String, String> incoming = ImmutableSetMultimap.builder();
+    for (String node : mutableGraph.getNodes()) {
+      for (String sink : mutableGraph.getOutgoingNodesFor(node)) {
+        outgoing.put(node, sink);
+        incoming.put(sink, node);
+      }
+    }
+    return ImmutableList.of(outgoing.build(), incoming.build());
+  }
+
+  private int traverseCompactGraph() {
+    final int[] visited = {0};
+    new AbstractBottomUpTraversal<String, RuntimeException>(compactGraph) {
+      @Override
+      public void visit(String node) {
+        visited[0]++;
+      }
+    }.traverse();
+    return visited[0];
+  }
+
+  private int traverseMultimap() {
+    try {
+      return Iterables.size(
+          new AcyclicDepthFirstPostOrderTraversal<String>(
+              node -> outgoingEdges.get(node).iterator())
+              .traverse(compactGraph.getNodesWithNoIncomingEdges()));
+    } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+public class CompactDirectedGraphTest {
+
+  @Test
+  public void testEdgesAreCopiedInBothDirections() {
+    MutableDirectedGraph<String> mutableGraph = new MutableDirectedGraph<>();
+    mutableGraph.addEdge("A", "B");
+    mutableGraph.addEdge("A", "C");
+    mutableGraph.addEdge("B", "C");
+    mutableGraph.addNode("D");
+
+    CompactDirectedGraph<String> graph = CompactDirectedGraph.copyOf(mutableGraph);
+
+    assertEquals(4, graph.getNodeCount());
+    assertEquals(3, graph.getEdgeCount());
+    assertEquals(ImmutableSet.of("A", "B", "C", "D"), graph.getNodes());
+    assertEquals(ImmutableSet.of("B", "C"), graph.getOutgoingNodesFor("A"));
+    assertEquals(ImmutableSet.of("A", "B"), graph.getIncomingNodesFor("C"));
+    assertEquals(ImmutableSet.of(), graph.getOutgoingNodesFor("D"));
+    assertEquals(ImmutableSet.of(), graph.getOutgoingNodesFor("E"));
+    assertEquals(ImmutableSet.of("A", "D"), graph.getNodesWithNoIncomingEdges());
+    assertEquals(ImmutableSet.of("C", "D"), graph.getNodesWithNoOutgoingEdges());
+
+    int a = graph.getId("A");
+    assertEquals("A", graph.getNode(a));
+    assertEquals(2, graph.getOutgoingEdgeCount(a));
+    assertEquals(0, graph.getIncomingEdgeCount(a));
+    assertEquals(-1, graph.getId("E"));
+  }
+
+  @Test
+  public void testEdgeSetsAreOnlyBuiltOnce() {
+    MutableDirectedGraph<String> mutableGraph = new MutableDirectedGraph<>();
+    mutableGraph.addEdge("A", "B");
+    CompactDirectedGraph<String> graph = CompactDirectedGraph.copyOf(mutableGraph);
+
+    assertSame(graph.getOutgoingNodesFor("A"), graph.getOutgoingNodesFor("A"));
+    assertSame(graph.getIncomingNodesFor("B"), graph.getIncomingNodesFor("B"));
+  }
+
+  @Test
+  public void testIsAcyclic() {
+    MutableDirectedGraph<String> mutableGraph = new MutableDirectedGraph<>();
+    mutableGraph.addEdge("A", "B");
+    mutableGraph.addEdge("B", "C");
+    assertTrue(CompactDirectedGraph.copyOf(mutableGraph).isAcyclic());
+
+    mutableGraph.addEdge("C", "A");
+    assertFalse(CompactDirectedGraph.copyOf(mutableGraph).isAcyclic());
+
+    MutableDirectedGraph<String> selfLoop = new MutableDirectedGraph<>();
+    selfLoop.addEdge("A", "A");
+    assertFalse(CompactDirectedGraph.copyOf(selfLoop).isAcyclic());
+  }
+
+  @Test
+  public void testStronglyConnectedComponentsComeBeforeTheComponentsWhichDependOnThem() {
+    // A -> B <-> C -> D <-> E, where D is a long chain back to E so that a recursive search
+    // would run out of stack.
+    MutableDirectedGraph<String> mutableGraph = new MutableDirectedGraph<>();
+    mutableGraph.addEdge("A", "B");
+    mutableGraph.addEdge("B", "C");
+    mutableGraph.addEdge("C", "B");
+    mutableGraph.addEdge("C", "D");
+    String previous = "D";
+    ImmutableSet.Builder<String> chain = ImmutableSet.builder();
+    chain.add("D");
+    for (int i = 0; i < 100000; i++) {
+      String next = "D" + i;
+      mutableGraph.addEdge(previous, next);
+      chain.add(next);
+      previous = next;
+    }
+    mutableGraph.addEdge(previous, "D");
+
+    assertEquals(
+        ImmutableList.of(chain.build(), ImmutableSet.of("B", "C"), ImmutableSet.of("A")),
+        CompactDirectedGraph.copyOf(mutableGraph).findStronglyConnectedComponents());
+  }
+
+  @Test
+  public void testGraphsWithTheSameEdgesAreEqualWhateverTheirOrder() {
+    MutableDirectedGraph<String> first = new MutableDirectedGraph<>();
+    first.addEdge("A", "B");
+    first.addEdge("B", "C");
+    MutableDirectedGraph<String> second = new MutableDirectedGraph<>();
+    second.addNode("C");
+    second.addEdge("B", "C");
+    second.addEdge("A", "B");
+
+    assertEquals(CompactDirectedGraph.copyOf(first), CompactDirectedGraph.copyOf(second));
+    assertEquals(
+        CompactDirectedGraph.copyOf(first).hashCode(),
+        CompactDirectedGraph.copyOf(second).hashCode());
+
+    second.addEdge("A", "C");
+    assertNotEquals(CompactDirectedGraph.copyOf(first), CompactDirectedGraph.copyOf(second));
+  }
+}
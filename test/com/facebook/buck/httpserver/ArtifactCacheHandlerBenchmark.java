@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.ArtifactInfo;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.DirArtifactCache;
+import com.facebook.buck.io.BorrowablePath;
+import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.ObjectMappers;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures how long a local {@link WebServer} takes to serve a batch of concurrent fetches from
+ * the cache it serves, comparing artifacts sent straight from the files the cache keeps them in
+ * with artifacts which are copied out to a scratch file before being sent.
+ */
+public class ArtifactCacheHandlerBenchmark {
+  @Param({"true", "false"})
+  private boolean fetchLocal = true;
+
+  @Param({"65536", "16777216"})
+  private int artifactBytes = 65536;
+
+  @Param({"16", "64"})
+  private int concurrentFetches = 16;
+
+  private TemporaryPaths tempDir;
+
+  private byte[] payload;
+  private List<RuleKey> ruleKeys;
+  private WebServer webServer;
+  private ListeningExecutorService executorService;
+
+  @Before
+  public void setUpTest() throws Exception {
+    fetchLocal = true;
+    artifactBytes = 4096;
+    concurrentFetches = 4;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tempDir = new TemporaryPaths();
+    tempDir.before();
+    ProjectFilesystem filesystem = new ProjectFilesystem(tempDir.getRoot());
+    payload = new byte[artifactBytes];
+    new Random(0).nextBytes(payload);
+    Path artifact = tempDir.newFile("artifact");
+    Files.write(artifact, payload);
+
+    ArtifactCache cache = new DirArtifactCache(
+        "dir",
+        filesystem,
+        Paths.get("cache"),
+        /* doStore */ true,
+        /* maxCacheSizeBytes */ Optional.empty());
+    ruleKeys = new ArrayList<>(concurrentFetches);
+    for (int i = 0; i < concurrentFetches; i++) {
+      RuleKey ruleKey = new RuleKey(Hashing.sha1().hashInt(i).toString());
+      cache.store(
+          ArtifactInfo.builder().addRuleKeys(ruleKey).build(),
+          BorrowablePath.notBorrowablePath(artifact)).get();
+      ruleKeys.add(ruleKey);
+    }
+
+    webServer = new WebServer(
+        /* port */ 0,
+        filesystem,
+        "/static/",
+        ObjectMappers.newDefaultInstance());
+    webServer.updateAndStartIfNeeded(
+        Optional.of(fetchLocal ? cache : withoutLocalFetch(cache)));
+    executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(concurrentFetches));
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() throws Exception {
+    executorService.shutdown();
+    webServer.stop();
+    tempDir.after();
+  }
+
+  @Test
+  public void fetchConcurrentlyCorrectness() throws Exception {
+    assertPayloadsWereSent(fetchAll());
+
+    cleanup();
+    fetchLocal = false;
+    setUpBenchmark();
+    assertPayloadsWereSent(fetchAll());
+  }
+
+  @Benchmark
+  public void fetchConcurrently() throws Exception {
+    fetchAll();
+  }
+
+  private List<byte[]> fetchAll() throws Exception {
+    List<ListenableFuture<byte[]>> responses = new ArrayList<>(concurrentFetches);
+    for (final RuleKey ruleKey : ruleKeys) {
+      responses.add(executorService.submit(() -> fetch(ruleKey)));
+    }
+    return Futures.allAsList(responses).get();
+  }
+
+  private byte[] fetch(RuleKey ruleKey) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(
+        String.format(
+            "http://127.0.0.1:%d/artifacts/key/%s",
+            webServer.getPort().get(),
+            ruleKey)).openConnection();
+    try (InputStream input = connection.getInputStream()) {
+      return ByteStreams.toByteArray(input);
+    }
+  }
+
+  private void assertPayloadsWereSent(List<byte[]> responses) {
+    assertEquals(concurrentFetches, responses.size());
+    for (byte[] response : responses) {
+      // The payload comes last, after the rule keys, metadata and checksum.
+      assertArrayEquals(
+          payload,
+          Arrays.copyOfRange(response, response.length - payload.length, response.length));
+    }
+  }
+
+  /** Hides that {@code delegate} can fetch locally, so that the server copies artifacts out. */
+  private static ArtifactCache withoutLocalFetch(final ArtifactCache delegate) {
+    return new ArtifactCache() {
+      @Override
+      public CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+        return delegate.fetch(ruleKey, output);
+      }
+
+      @Override
+      public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
+        return delegate.store(info, output);
+      }
+
+      @Override
+      public boolean isStoreSupported() {
+        return delegate.isStoreSupported();
+      }
+
+      @Override
+      public void close() {
+        delegate.close();
+      }
+    };
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import java.util.Optional;
+
+public class ArtifactCacheHandlerTest {
+
+  @Test
+  public void testParseRange() {
+    assertEquals(
+        Optional.of(Range.closedOpen(10L, 21L)),
+        ArtifactCacheHandler.parseRange("bytes=10-20", 100));
+    assertEquals(
+        Optional.of(Range.closedOpen(10L, 100L)),
+        ArtifactCacheHandler.parseRange("bytes=10-", 100));
+    assertEquals(
+        Optional.of(Range.closedOpen(10L, 100L)),
+        ArtifactCacheHandler.parseRange("bytes=10-1000", 100));
+    assertEquals(
+        Optional.of(Range.closedOpen(70L, 100L)),
+        ArtifactCacheHandler.parseRange("bytes=-30", 100));
+    assertEquals(
+        Optional.of(Range.closedOpen(0L, 100L)),
+        ArtifactCacheHandler.parseRange("bytes=-1000", 100));
+  }
+
+  @Test
+  public void testRangesOutsideTheResponseAreEmpty() {
+    assertEquals(
+        Optional.of(Range.closedOpen(100L, 100L)),
+        ArtifactCacheHandler.parseRange("bytes=100-", 100));
+    assertEquals(
+        Optional.of(Range.closedOpen(100L, 100L)),
+        ArtifactCacheHandler.parseRange("bytes=-0", 100));
+  }
+
+  @Test
+  public void testWholeResponseIsSentForRangesWhichCannotBeServedAlone() {
+    assertEquals(Optional.empty(), ArtifactCacheHandler.parseRange(null, 100));
+    assertEquals(Optional.empty(), ArtifactCacheHandler.parseRange("bytes=0-1,5-6", 100));
+    assertEquals(Optional.empty(), ArtifactCacheHandler.parseRange("bytes=20-10", 100));
+    assertEquals(Optional.empty(), ArtifactCacheHandler.parseRange("bytes=a-b", 100));
+    assertEquals(Optional.empty(), ArtifactCacheHandler.parseRange("lines=0-1", 100));
+  }
+}
@@ -17,6 +17,8 @@
 package com.facebook.buck.httpserver;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -43,6 +45,7 @@ import com.facebook.buck.util.environment.Platform;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -59,8 +62,11 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Optional;
 
 public class ServedCacheIntegrationTest {
@@ -150,6 +156,39 @@ public class ServedCacheIntegrationTest {
         Matchers.equalTo(A_FILE_DATA));
   }
 
+  private HttpURLConnection openArtifactConnection(RuleKey ruleKey) throws IOException {
+    return (HttpURLConnection) new URL(
+        String.format(
+            "http://127.0.0.1:%d/artifacts/key/%s",
+            webServer.getPort().get(),
+            ruleKey)).openConnection();
+  }
+
+  /** Hides that {@code delegate} can fetch locally, so that the server copies artifacts out. */
+  private static ArtifactCache withoutLocalFetch(final ArtifactCache delegate) {
+    return new ArtifactCache() {
+      @Override
+      public CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+        return delegate.fetch(ruleKey, output);
+      }
+
+      @Override
+      public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
+        return delegate.store(info, output);
+      }
+
+      @Override
+      public boolean isStoreSupported() {
+        return delegate.isStoreSupported();
+      }
+
+      @Override
+      public void close() {
+        delegate.close();
+      }
+    };
+  }
+
   private static class ThrowAfterXBytesStream extends FilterInputStream {
     private final long bytesToThrowAfter;
     private long bytesRead = 0L;
@@ -205,7 +244,8 @@ public class ServedCacheIntegrationTest {
         throwingStreamFilesystem,
         "/static/",
         MAPPER);
-    webServer.updateAndStartIfNeeded(Optional.of(dirCache));
+    // Only artifacts which are copied out of the cache before being sent go through the filesystem.
+    webServer.updateAndStartIfNeeded(Optional.of(withoutLocalFetch(dirCache)));
 
     ArtifactCache serverBackedCache = createArtifactCache(
         createMockLocalHttpCacheConfig(webServer.getPort().get()));
@@ -219,6 +259,65 @@ public class ServedCacheIntegrationTest {
     assertThat(cacheResult.getType(), Matchers.equalTo(CacheResultType.HIT));
   }
 
+  @Test
+  public void testHeadRequestsCheckTheCacheWithoutFetching() throws Exception {
+    webServer = new WebServer(
+        /* port */ 0,
+        projectFilesystem,
+        "/static/",
+        MAPPER);
+    webServer.updateAndStartIfNeeded(Optional.of(dirCache));
+
+    HttpURLConnection hit = openArtifactConnection(A_FILE_RULE_KEY);
+    hit.setRequestMethod("HEAD");
+    assertEquals(HttpURLConnection.HTTP_OK, hit.getResponseCode());
+
+    HttpURLConnection miss = openArtifactConnection(new RuleKey("baadbeef"));
+    miss.setRequestMethod("HEAD");
+    assertEquals(HttpURLConnection.HTTP_NOT_FOUND, miss.getResponseCode());
+  }
+
+  @Test
+  public void testRangeRequestsAreServedASliceOfTheResponse() throws Exception {
+    webServer = new WebServer(
+        /* port */ 0,
+        projectFilesystem,
+        "/static/",
+        MAPPER);
+    webServer.updateAndStartIfNeeded(Optional.of(dirCache));
+
+    HttpURLConnection full = openArtifactConnection(A_FILE_RULE_KEY);
+    assertEquals(HttpURLConnection.HTTP_OK, full.getResponseCode());
+    assertEquals("bytes", full.getHeaderField("Accept-Ranges"));
+    byte[] fullResponse;
+    try (InputStream input = full.getInputStream()) {
+      fullResponse = ByteStreams.toByteArray(input);
+    }
+    assertEquals(full.getContentLengthLong(), fullResponse.length);
+
+    // Straddle the end of the metadata and the start of the payload.
+    int start = fullResponse.length - A_FILE_DATA.length() - 3;
+    int end = fullResponse.length - 2;
+    HttpURLConnection partial = openArtifactConnection(A_FILE_RULE_KEY);
+    partial.setRequestProperty("Range", String.format("bytes=%d-%d", start, end - 1));
+    assertEquals(HttpURLConnection.HTTP_PARTIAL, partial.getResponseCode());
+    assertEquals(
+        String.format("bytes %d-%d/%d", start, end - 1, fullResponse.length),
+        partial.getHeaderField("Content-Range"));
+    try (InputStream input = partial.getInputStream()) {
+      assertArrayEquals(
+          Arrays.copyOfRange(fullResponse, start, end),
+          ByteStreams.toByteArray(input));
+    }
+
+    HttpURLConnection unsatisfiable = openArtifactConnection(A_FILE_RULE_KEY);
+    unsatisfiable.setRequestProperty("Range", String.format("bytes=%d-", fullResponse.length));
+    assertEquals(416, unsatisfiable.getResponseCode());
+    assertEquals(
+        String.format("bytes */%d", fullResponse.length),
+        unsatisfiable.getHeaderField("Content-Range"));
+  }
+
   @Test
   public void testMalformedDirCacheMetaData() throws Exception {
     ArtifactCache cache = TestArtifactCaches.createDirCacheForTest(
@@ -21,18 +21,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import com.facebook.buck.event.BinaryChromeTraceWriter;
+import com.facebook.buck.event.ChromeTraceEvent;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
 
 import org.easymock.EasyMockSupport;
 import org.eclipse.jetty.server.Request;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 
 import javax.servlet.ServletException;
@@ -197,4 +204,55 @@ public class TraceDataHandlerTest extends EasyMockSupport {
         "my.callback([{\"foo\":\"bar\"},{\"baz\":\"blech\"}]);\n",
         stringWriter.toString());
   }
+
+  @Test
+  public void testHandleGetConvertsBinaryTraces() throws IOException, ServletException {
+    Request baseRequest = createMock(Request.class);
+    expect(baseRequest.getMethod()).andReturn("GET");
+    expect(baseRequest.getPathInfo()).andReturn("/abcdef");
+    expect(baseRequest.getParameter("callback")).andReturn(null);
+    baseRequest.setHandled(true);
+    HttpServletRequest request = createMock(HttpServletRequest.class);
+
+    HttpServletResponse response = createMock(HttpServletResponse.class);
+    response.setStatus(200);
+    response.setContentType("application/javascript; charset=utf-8");
+    StringWriter stringWriter = new StringWriter();
+    PrintWriter printWriter = new PrintWriter(stringWriter);
+    expect(response.getWriter()).andReturn(printWriter);
+    response.flushBuffer();
+
+    ByteArrayOutputStream binaryTrace = new ByteArrayOutputStream();
+    try (BinaryChromeTraceWriter writer = new BinaryChromeTraceWriter(binaryTrace)) {
+      writer.writeEvent(
+          new ChromeTraceEvent(
+              "buck",
+              "build",
+              ChromeTraceEvent.Phase.BEGIN,
+              0,
+              1,
+              10,
+              0,
+              ImmutableMap.of()));
+    }
+    TracesHelper tracesHelper = createMock(TracesHelper.class);
+    Iterable<InputStream> traces = Arrays.asList(
+        new ByteArrayInputStream("{\"foo\":\"bar\"}".getBytes(Charsets.UTF_8)),
+        new ByteArrayInputStream(binaryTrace.toByteArray()));
+    expect(tracesHelper.getInputsForTraces("abcdef")).andReturn(traces);
+    TraceDataHandler traceDataHandler = new TraceDataHandler(tracesHelper);
+
+    replayAll();
+    traceDataHandler.handle("/trace/abcdef",
+        baseRequest,
+        request,
+        response);
+    verifyAll();
+
+    List<?> elements = new Gson().fromJson(stringWriter.toString(), List.class);
+    assertEquals(ImmutableMap.of("foo", "bar"), elements.get(0));
+    Map<?, ?> event = (Map<?, ?>) ((List<?>) elements.get(1)).get(0);
+    assertEquals("build", event.get("name"));
+    assertEquals("B", event.get("ph"));
+  }
 }
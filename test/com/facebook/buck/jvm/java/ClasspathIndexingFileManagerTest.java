@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.cache.JarIndexCache;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+public class ClasspathIndexingFileManagerTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private JavaCompiler compiler;
+  private Path depJar;
+  private Path depClasses;
+
+  @Before
+  public void setUp() throws IOException {
+    compiler = ToolProvider.getSystemJavaCompiler();
+
+    // Build a jar containing dep.Dep to compile against.
+    Path depSource = tmp.newFolder("dep_src").resolve("Dep.java");
+    Files.write(
+        depSource,
+        "package dep; public class Dep { public static int value() { return 1; } }"
+            .getBytes(Charsets.UTF_8));
+    depClasses = tmp.newFolder("dep_classes");
+    assertEquals(
+        0,
+        compiler.run(null, null, null, "-d", depClasses.toString(), depSource.toString()));
+    depJar = tmp.getRoot().resolve("dep.jar");
+    try (OutputStream outputStream = Files.newOutputStream(depJar);
+         ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+      zipOutputStream.putNextEntry(new ZipEntry("dep/Dep.class"));
+      zipOutputStream.write(Files.readAllBytes(depClasses.resolve("dep/Dep.class")));
+      zipOutputStream.closeEntry();
+    }
+  }
+
+  @Test
+  public void compilesAgainstIndexedJarsAndTracksTheClassesUsed() throws IOException {
+    JarIndexCache jarIndexCache = new JarIndexCache();
+    ClassUsageTracker tracker = new ClassUsageTracker();
+
+    assertTrue(compile(depJar, jarIndexCache, tracker));
+    assertEquals(
+        ImmutableSet.of(Paths.get("dep/Dep.class")),
+        tracker.getClassUsageMap().get(depJar));
+  }
+
+  @Test
+  public void classpathJarsAreListedFromTheIndex() throws IOException {
+    try (StandardJavaFileManager fileManager = new ClasspathIndexingFileManager(
+        compiler.getStandardFileManager(null, null, null),
+        new JarIndexCache(),
+        new FakeFileHashCache(ImmutableMap.of(depJar, HashCode.fromString("aa"))))) {
+      fileManager.setLocation(StandardLocation.CLASS_PATH, ImmutableList.of(depJar.toFile()));
+      JavaFileObject depClass = Iterables.getOnlyElement(
+          fileManager.list(
+              StandardLocation.CLASS_PATH,
+              "dep",
+              EnumSet.of(JavaFileObject.Kind.CLASS),
+              /* recurse */ false));
+
+      assertEquals(
+          URI.create("jar:" + depJar.toUri() + "!/dep/Dep.class"),
+          depClass.toUri());
+      assertEquals("dep.Dep", fileManager.inferBinaryName(StandardLocation.CLASS_PATH, depClass));
+      assertTrue(depClass.isNameCompatible("Dep", JavaFileObject.Kind.CLASS));
+      try (InputStream inputStream = depClass.openInputStream()) {
+        assertArrayEquals(
+            Files.readAllBytes(depClasses.resolve("dep/Dep.class")),
+            ByteStreams.toByteArray(inputStream));
+      }
+    }
+  }
+
+  @Test
+  public void compilesAgainstClassDirectories() throws IOException {
+    assertTrue(compile(depClasses, new JarIndexCache(), new ClassUsageTracker()));
+  }
+
+  private boolean compile(
+      Path classpathEntry,
+      JarIndexCache jarIndexCache,
+      ClassUsageTracker tracker) throws IOException {
+    Path source = tmp.getRoot().resolve("Example.java");
+    Files.write(
+        source,
+        "package com.example; public class Example { int x = dep.Dep.value(); }"
+            .getBytes(Charsets.UTF_8));
+    Path out = tmp.getRoot().resolve("out");
+    Files.createDirectories(out);
+
+    try (StandardJavaFileManager fileManager = new ClasspathIndexingFileManager(
+        compiler.getStandardFileManager(null, null, null),
+        jarIndexCache,
+        new FakeFileHashCache(ImmutableMap.of(depJar, HashCode.fromString("aa"))))) {
+      return compiler.getTask(
+          null,
+          tracker.wrapFileManager(fileManager),
+          null,
+          ImmutableList.of("-classpath", classpathEntry.toString(), "-d", out.toString()),
+          null,
+          fileManager.getJavaFileObjects(source.toFile()))
+          .call();
+    }
+  }
+}
@@ -19,6 +19,8 @@ package com.facebook.buck.jvm.java;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -87,7 +89,8 @@ public class JUnitStepTest {
         /* testCaseTimeoutMs */ Optional.empty(),
         ImmutableMap.of(),
         new ExternalJavaRuntimeLauncher("/foo/bar/custom/java"),
-        args);
+        args,
+        /* maxPersistentRunners */ 0);
 
     ExecutionContext executionContext = TestExecutionContext.newBuilder()
         .setConsole(new TestConsole(Verbosity.ALL))
@@ -149,7 +152,8 @@ public class JUnitStepTest {
         /* testCaseTimeoutMs */ Optional.empty(),
         ImmutableMap.of("FOO", "BAR"),
         new ExternalJavaRuntimeLauncher("/foo/bar/custom/java"),
-        args);
+        args,
+        /* maxPersistentRunners */ 0);
 
     ImmutableMap<String, String> observedEnvironment =
         junit.getEnvironmentVariables(TestExecutionContext.newInstance());
@@ -199,7 +203,8 @@ public class JUnitStepTest {
         /* testCaseTimeoutMs */ Optional.empty(),
         ImmutableMap.of(),
         new ExternalJavaRuntimeLauncher("/foo/bar/custom/java"),
-        args);
+        args,
+        /* maxPersistentRunners */ 0);
 
     TestConsole console = new TestConsole(Verbosity.ALL);
     ExecutionContext executionContext = TestExecutionContext.newBuilder()
@@ -236,4 +241,77 @@ public class JUnitStepTest {
     assertEquals("Debugging. Suspending JVM. Connect a JDWP debugger to port 5005 to proceed.",
         console.getTextWrittenToStdErr().trim());
   }
+
+  @Test
+  public void persistentRunnerIsStartedWithoutTheTestsAndSentThemAsAJob() {
+    String testClass = "com.facebook.buck.shell.JUnitCommandTest";
+    BuildId pretendBuildId = new BuildId("pretend-build-id");
+    Path modulePath = Paths.get("module/submodule");
+    Path directoryForTestResults = Paths.get("buck-out/gen/theresults/");
+    Path testRunnerClasspath = Paths.get("build/classes/junit");
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    Path classpathFile = Paths.get("foo");
+
+    JUnitJvmArgs args = JUnitJvmArgs.builder()
+        .setBuildId(pretendBuildId)
+        .setBuckModuleBaseSourceCodePath(modulePath)
+        .setClasspathFile(classpathFile)
+        .setTestRunnerClasspath(testRunnerClasspath)
+        .setExtraJvmArgs(ImmutableList.of("-Xmx1g"))
+        .setTestType(TestType.JUNIT)
+        .setDirectoryForTestResults(directoryForTestResults)
+        .addTestClasses(testClass)
+        .build();
+
+    ImmutableList.Builder<String> command = ImmutableList.builder();
+    args.formatPersistentRunnerCommandToList(command, Verbosity.STANDARD_INFORMATION);
+    MoreAsserts.assertListEquals(
+        ImmutableList.of(
+            "-Dbuck.testrunner_classes=" + testRunnerClasspath,
+            "-Dapple.awt.UIElement=true",
+            "-Xmx1g",
+            "-classpath",
+            testRunnerClasspath.toString(),
+            "com.facebook.buck.testrunner.JUnitWorkerMain"),
+        command.build());
+
+    ImmutableList.Builder<String> jobArgs = ImmutableList.builder();
+    args.formatPersistentRunnerJobArgsToList(jobArgs, filesystem, 5000L);
+    MoreAsserts.assertListEquals(
+        ImmutableList.of(
+            filesystem.resolve(classpathFile).toString(),
+            "-Dcom.facebook.buck.buildId=" + pretendBuildId,
+            "-Dcom.facebook.buck.moduleBasePath=" + modulePath,
+            "--output",
+            directoryForTestResults.toString(),
+            "--default-test-timeout",
+            "5000",
+            testClass),
+        jobArgs.build());
+
+    assertTrue(createJUnitStep(filesystem, args, ImmutableMap.of(), 2).canUsePersistentRunner());
+    assertFalse(createJUnitStep(filesystem, args, ImmutableMap.of(), 0).canUsePersistentRunner());
+    assertFalse(
+        createJUnitStep(filesystem, args, ImmutableMap.of("FOO", "BAR"), 2)
+            .canUsePersistentRunner());
+    assertFalse(
+        createJUnitStep(filesystem, args.withDebugEnabled(true), ImmutableMap.of(), 2)
+            .canUsePersistentRunner());
+  }
+
+  private static JUnitStep createJUnitStep(
+      ProjectFilesystem filesystem,
+      JUnitJvmArgs args,
+      ImmutableMap<String, String> env,
+      int maxPersistentRunners) {
+    return new JUnitStep(
+        filesystem,
+        /* nativeLibsEnvironment */ ImmutableMap.of(),
+        /* testRuleTimeoutMs */ Optional.empty(),
+        /* testCaseTimeoutMs */ Optional.empty(),
+        env,
+        new ExternalJavaRuntimeLauncher("/foo/bar/custom/java"),
+        args,
+        maxPersistentRunners);
+  }
 }
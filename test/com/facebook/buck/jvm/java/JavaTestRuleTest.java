@@ -29,6 +29,8 @@ import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.step.TargetDevice;
 import com.facebook.buck.testutil.MoreAsserts;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 
 import org.hamcrest.Matchers;
@@ -128,4 +130,37 @@ public class JavaTestRuleTest {
                 new DefaultTargetNodeToBuildRuleTransformer()));
   }
 
+  @Test
+  public void testClassesAreShardedByEstimatedDuration() {
+    ImmutableMap<String, Long> durations = ImmutableMap.of(
+        "com.example.SlowTest", 90L,
+        "com.example.MediumTest", 50L,
+        "com.example.QuickTest", 40L);
+
+    ImmutableList<ImmutableSet<String>> shards = JavaTest.shardTestClasses(
+        ImmutableSortedSet.of(
+            "com.example.MediumTest",
+            "com.example.QuickTest",
+            "com.example.SlowTest",
+            "com.example.UnknownTest"),
+        2,
+        testClass -> Optional.ofNullable(durations.get(testClass)));
+
+    // The test which hasn't run before is assumed to take the average time of those which have.
+    assertEquals(
+        ImmutableList.of(
+            ImmutableSet.of("com.example.SlowTest", "com.example.QuickTest"),
+            ImmutableSet.of("com.example.UnknownTest", "com.example.MediumTest")),
+        shards);
+  }
+
+  @Test
+  public void testClassesAreNotShardedWhenOnlyOneShardIsAllowed() {
+    ImmutableSortedSet<String> testClasses =
+        ImmutableSortedSet.of("com.example.FirstTest", "com.example.SecondTest");
+
+    assertEquals(
+        ImmutableList.of(testClasses),
+        JavaTest.shardTestClasses(testClasses, 1, testClass -> Optional.of(10L)));
+  }
 }
@@ -27,6 +27,7 @@ import com.facebook.buck.util.ContextualProcessExecutor;
 import com.facebook.buck.util.DefaultProcessExecutor;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.cache.JarIndexCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -94,7 +95,9 @@ public class JavacExecutionContextSerializerTest {
         environment,
         processExecutor,
         pathToInputs,
-        Optional.of(directToJarOutputSettings));
+        Optional.of(directToJarOutputSettings),
+        new JarIndexCache(),
+        Optional.empty());
     Map<String, Object> data = JavacExecutionContextSerializer.serialize(input);
     JavacExecutionContext output = JavacExecutionContextSerializer.deserialize(
         data,
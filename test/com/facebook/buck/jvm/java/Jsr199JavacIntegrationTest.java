@@ -128,6 +128,8 @@ public class Jsr199JavacIntegrationTest {
         executionContext.getEnvironment(),
         executionContext.getProcessExecutor(),
         ImmutableList.of(),
+        Optional.empty(),
+        executionContext.getJarIndexCache(),
         Optional.empty());
 
     int exitCode = javac.buildWithClasspath(
@@ -177,6 +179,8 @@ public class Jsr199JavacIntegrationTest {
         executionContext.getEnvironment(),
         executionContext.getProcessExecutor(),
         ImmutableList.of(),
+        Optional.empty(),
+        executionContext.getJarIndexCache(),
         Optional.empty());
 
     int exitCode = javac.buildWithClasspath(
@@ -279,6 +283,8 @@ public class Jsr199JavacIntegrationTest {
         executionContext.getEnvironment(),
         executionContext.getProcessExecutor(),
         ImmutableList.of(fakeJavacJar),
+        Optional.empty(),
+        executionContext.getJarIndexCache(),
         Optional.empty());
 
     boolean caught = false;
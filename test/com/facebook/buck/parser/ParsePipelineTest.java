@@ -444,6 +444,7 @@ public class ParsePipelineTest {
       this.rawNodeParsePipeline = new RawNodeParsePipeline(
           this.rawNodeParsePipelineCache,
           this.projectBuildFileParserPool,
+          new PersistentRawNodeCache(/* ignoreBuckAutodepsFiles */ false),
           executorService);
       this.targetNodeParsePipeline = new TargetNodeParsePipeline(
           this.targetNodeParsePipelineCache,
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TestCellBuilder;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+
+public class PersistentRawNodeCacheTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path buildFile;
+  private Path include;
+  private ImmutableSet<Map<String, Object>> rawNodes;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    buildFile = tmp.getRoot().resolve("foo/BUCK");
+    include = tmp.getRoot().resolve("DEFS");
+    Files.createDirectories(buildFile.getParent());
+    writeUnracily(buildFile, "include_defs('//DEFS')\njava_library(name = 'foo')\n");
+    writeUnracily(include, "FOO = 1\n");
+    Files.write(tmp.getRoot().resolve("foo/Foo.java"), new byte[0]);
+
+    rawNodes = ImmutableSet.of(
+        ImmutableMap.of(
+            "buck.base_path", "foo",
+            "buck.type", "java_library",
+            "name", "foo",
+            "srcs", ImmutableList.of("Foo.java"),
+            "exported", true),
+        ImmutableMap.of(
+            DaemonicParserState.INCLUDES_META_RULE,
+            ImmutableList.of(buildFile.toString(), include.toString())),
+        ImmutableMap.of(
+            DaemonicParserState.CONFIGS_META_RULE,
+            ImmutableMap.of("foo", ImmutableMap.of("bar", "baz"))),
+        ImmutableMap.of(
+            DaemonicParserState.ENV_META_RULE,
+            Collections.singletonMap("FOO_UNSET", null)));
+  }
+
+  @Test
+  public void storedRawNodesAreFoundByLaterRuns() throws Exception {
+    Cell cell = createCell(ImmutableMap.of());
+    PersistentRawNodeCache.Lookup lookup = lookup(cell);
+    assertFalse(lookup.getRawNodes().isPresent());
+    lookup.store(rawNodes);
+
+    assertEquals(rawNodes, lookup(cell).getRawNodes().get());
+    assertFalse(
+        "Parser options are part of the key.",
+        new PersistentRawNodeCache(true).lookup(cell, buildFile).getRawNodes().isPresent());
+  }
+
+  @Test
+  public void changedIncludeIsAMiss() throws Exception {
+    Cell cell = createCell(ImmutableMap.of());
+    lookup(cell).store(rawNodes);
+
+    writeUnracily(include, "FOO = 2\n");
+    assertFalse(lookup(cell).getRawNodes().isPresent());
+  }
+
+  @Test
+  public void filesAddedToThePackageButNotSubpackagesAreAMiss() throws Exception {
+    Path subpackage = tmp.getRoot().resolve("foo/bar");
+    Files.createDirectories(subpackage);
+    Files.write(subpackage.resolve("BUCK"), new byte[0]);
+    Cell cell = createCell(ImmutableMap.of());
+    lookup(cell).store(rawNodes);
+
+    Files.write(subpackage.resolve("Bar.java"), new byte[0]);
+    Files.write(tmp.getRoot().resolve("foo/Foo.java~"), new byte[0]);
+    assertTrue(lookup(cell).getRawNodes().isPresent());
+
+    Files.write(tmp.getRoot().resolve("foo/Bar.java"), new byte[0]);
+    assertFalse(lookup(cell).getRawNodes().isPresent());
+  }
+
+  @Test
+  public void changesToConfigAndEnvironmentReadByTheBuildFileAreAMiss() throws Exception {
+    new PersistentRawNodeCache(false).lookup(createCell(ImmutableMap.of()), buildFile)
+        .store(rawNodes);
+
+    assertTrue(
+        new PersistentRawNodeCache(false)
+            .lookup(
+                createCell(ImmutableMap.of("other", ImmutableMap.of("key", "value"))),
+                buildFile)
+            .getRawNodes()
+            .isPresent());
+    assertFalse(
+        new PersistentRawNodeCache(false)
+            .lookup(createCell(ImmutableMap.of("foo", ImmutableMap.of("bar", "qux"))), buildFile)
+            .getRawNodes()
+            .isPresent());
+    assertFalse(
+        new PersistentRawNodeCache(false)
+            .lookup(
+                createCell(
+                    ImmutableMap.of(),
+                    ImmutableMap.of("FOO_UNSET", "set")),
+                buildFile)
+            .getRawNodes()
+            .isPresent());
+  }
+
+  @Test
+  public void recentlyModifiedBuildFilesAreNotStored() throws Exception {
+    Cell cell = createCell(ImmutableMap.of());
+    Files.write(buildFile, "java_library(name = 'foo')\n".getBytes(UTF_8));
+    lookup(cell).store(rawNodes);
+    assertFalse(lookup(cell).getRawNodes().isPresent());
+  }
+
+  private PersistentRawNodeCache.Lookup lookup(Cell cell) {
+    return new PersistentRawNodeCache(/* ignoreBuckAutodepsFiles */ false).lookup(cell, buildFile);
+  }
+
+  private Cell createCell(ImmutableMap<String, ImmutableMap<String, String>> extraSections)
+      throws Exception {
+    return createCell(extraSections, ImmutableMap.of());
+  }
+
+  private Cell createCell(
+      ImmutableMap<String, ImmutableMap<String, String>> extraSections,
+      ImmutableMap<String, String> environment) throws Exception {
+    return new TestCellBuilder()
+        .setFilesystem(filesystem)
+        .setBuckConfig(
+            FakeBuckConfig.builder()
+                .setFilesystem(filesystem)
+                .setEnvironment(
+                    ImmutableMap.<String, String>builder()
+                        .putAll(Maps.filterKeys(System.getenv(), k -> !environment.containsKey(k)))
+                        .putAll(environment)
+                        .build())
+                .setSections(
+                    ImmutableMap.<String, ImmutableMap<String, String>>builder()
+                        .put(
+                            "parser",
+                            ImmutableMap.of("persistent_raw_node_cache_enabled", "true"))
+                        .put("project", ImmutableMap.of("temp_files", ".*~$"))
+                        .put(
+                            "foo",
+                            extraSections.getOrDefault("foo", ImmutableMap.of("bar", "baz")))
+                        .putAll(Maps.filterKeys(extraSections, k -> !k.equals("foo")))
+                        .build())
+                .build())
+        .build();
+  }
+
+  private static void writeUnracily(Path path, String contents) throws IOException {
+    Files.write(path, contents.getBytes(UTF_8));
+    Files.setLastModifiedTime(
+        path,
+        FileTime.fromMillis(
+            System.currentTimeMillis() -
+                2 * PersistentRawNodeCache.RACY_MODIFICATION_WINDOW_MILLIS));
+  }
+}
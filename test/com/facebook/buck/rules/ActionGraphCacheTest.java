@@ -18,9 +18,13 @@ package com.facebook.buck.rules;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
 import com.facebook.buck.event.ActionGraphEvent;
 import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBus;
@@ -35,6 +39,7 @@ import com.facebook.buck.testutil.WatchEventsForTests;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.timing.IncrementingFakeClock;
 import com.facebook.buck.util.WatchmanWatcher;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.Subscribe;
 
@@ -191,6 +196,46 @@ public class ActionGraphCacheTest {
     assertThat(resultRun1RuleKeys, Matchers.equalTo(resultRun2RuleKeys));
   }
 
+  @Test
+  public void parallelActionGraphMatchesSerialActionGraph() {
+    // Creates a wider graph, with several nodes depending on several others:
+    //      C   D
+    //     / \ / \
+    //    A   B   E
+    TargetNode<?, ?> nodeC = createTargetNode("C", nodeA, nodeB);
+    TargetNode<?, ?> nodeE = createTargetNode("E");
+    TargetNode<?, ?> nodeD = createTargetNode("D", nodeB, nodeE);
+    TargetGraph widerTargetGraph =
+        TargetGraphFactory.newInstance(nodeA, nodeB, nodeC, nodeD, nodeE);
+
+    ActionGraphAndResolver serial =
+        new ActionGraphCache(broadcastEventListener).getActionGraph(
+            eventBus,
+            NOT_CHECK_GRAPHS,
+            widerTargetGraph,
+            0,
+            ActionGraphParallelizationMode.DISABLED,
+            1);
+    // The compare mode builds both graphs and fails if they differ.
+    ActionGraphAndResolver parallel =
+        new ActionGraphCache(broadcastEventListener).getActionGraph(
+            eventBus,
+            NOT_CHECK_GRAPHS,
+            widerTargetGraph,
+            0,
+            ActionGraphParallelizationMode.COMPARE,
+            4);
+
+    Map<BuildRule, RuleKey> serialRuleKeys = getRuleKeysFromBuildRules(
+        serial.getActionGraph().getNodes(),
+        serial.getResolver());
+    Map<BuildRule, RuleKey> parallelRuleKeys = getRuleKeysFromBuildRules(
+        parallel.getActionGraph().getNodes(),
+        parallel.getResolver());
+    assertEquals(5, parallelRuleKeys.size());
+    assertThat(parallelRuleKeys, Matchers.equalTo(serialRuleKeys));
+  }
+
   @Test
   public void cacheInvalidationBasedOnEvents() throws IOException, InterruptedException {
     ActionGraphCache cache = new ActionGraphCache(broadcastEventListener);
@@ -230,6 +275,74 @@ public class ActionGraphCacheTest {
     assertEquals(countEventsOf(ActionGraphEvent.Cache.Miss.class), 4);
   }
 
+  @Test
+  public void incrementalCacheReusesRulesOfUnchangedTargets() {
+    ActionGraphCache cache = new ActionGraphCache(broadcastEventListener, true);
+    ActionGraphAndResolver resultRun1 =
+        cache.getActionGraph(eventBus, CHECK_GRAPHS, targetGraph, 0);
+
+    // Adding a node on top of the graph should not affect the rules of A and B.
+    //      C
+    //     /
+    //    A
+    //   /
+    //  B
+    TargetNode<?, ?> nodeC = createTargetNode("C", nodeA);
+    ActionGraphAndResolver resultRun2 = cache.getActionGraph(
+        eventBus,
+        CHECK_GRAPHS,
+        TargetGraphFactory.newInstance(nodeA, nodeB, nodeC),
+        0);
+    assertSame(
+        resultRun1.getResolver().getRule(nodeA.getBuildTarget()),
+        resultRun2.getResolver().getRule(nodeA.getBuildTarget()));
+    assertSame(
+        resultRun1.getResolver().getRule(nodeB.getBuildTarget()),
+        resultRun2.getResolver().getRule(nodeB.getBuildTarget()));
+
+    // Changing the deps of B means that B and everything depending on it has to be re-created.
+    //      C
+    //     /
+    //    A
+    //   /
+    //  B
+    //   \
+    //    D
+    TargetNode<?, ?> nodeD = createTargetNode("D");
+    TargetNode<?, ?> newNodeB = createTargetNode("B", nodeD);
+    ActionGraphAndResolver resultRun3 = cache.getActionGraph(
+        eventBus,
+        CHECK_GRAPHS,
+        TargetGraphFactory.newInstance(nodeA, newNodeB, nodeC, nodeD),
+        0);
+    for (TargetNode<?, ?> node : ImmutableList.of(nodeA, nodeB, nodeC)) {
+      assertNotSame(
+          resultRun2.getResolver().getRule(node.getBuildTarget()),
+          resultRun3.getResolver().getRule(node.getBuildTarget()));
+    }
+
+    assertEquals(countEventsOf(ActionGraphEvent.Cache.Miss.class), 3);
+    Map<String, Long> counters = getCounterValues(cache);
+    assertEquals(Long.valueOf(3), counters.get("cache_miss"));
+    assertEquals(Long.valueOf(0), counters.get("cache_hit"));
+    assertEquals(Long.valueOf(2), counters.get("rules_reused"));
+    assertEquals(Long.valueOf(2 + 1 + 4), counters.get("rules_created"));
+  }
+
+  @Test
+  public void cacheCountsHitsAndMisses() {
+    ActionGraphCache cache = new ActionGraphCache(broadcastEventListener);
+    cache.getActionGraph(eventBus, NOT_CHECK_GRAPHS, targetGraph, 0);
+    cache.getActionGraph(eventBus, NOT_CHECK_GRAPHS, targetGraph, 0);
+    cache.getActionGraph(eventBus, NOT_CHECK_GRAPHS, targetGraph, 0);
+
+    Map<String, Long> counters = getCounterValues(cache);
+    assertEquals(Long.valueOf(2), counters.get("cache_hit"));
+    assertEquals(Long.valueOf(1), counters.get("cache_miss"));
+    assertEquals(Long.valueOf(0), counters.get("rules_reused"));
+    assertEquals(Long.valueOf(2), counters.get("rules_created"));
+  }
+
   private TargetNode<?, ?> createTargetNode(String name, TargetNode<?, ?>... deps) {
     BuildTarget buildTarget = BuildTargetFactory.newInstance("//foo:" + name);
     JavaLibraryBuilder targetNodeBuilder = JavaLibraryBuilder.createBuilder(buildTarget);
@@ -249,6 +362,14 @@ public class ActionGraphCacheTest {
     return i;
   }
 
+  private Map<String, Long> getCounterValues(ActionGraphCache cache) {
+    Map<String, Long> values = new HashMap<>();
+    for (Counter counter : cache.getCounters()) {
+      values.put(counter.getName(), ((IntegerCounter) counter).get());
+    }
+    return values;
+  }
+
   private Map<BuildRule, RuleKey> getRuleKeysFromBuildRules(
       Iterable<BuildRule> buildRules,
       BuildRuleResolver buildRuleResolver) {
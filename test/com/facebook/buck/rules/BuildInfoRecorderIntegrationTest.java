@@ -29,6 +29,7 @@ import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.timing.DefaultClock;
 import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.zip.ZipCompressionLevel;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -39,7 +40,6 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collection;
 import java.util.Optional;
 
 public class BuildInfoRecorderIntegrationTest {
@@ -49,17 +49,7 @@ public class BuildInfoRecorderIntegrationTest {
 
   @Test
   public void testPerformUploadToArtifactCache() throws IOException, InterruptedException {
-    BuildInfoRecorder buildInfoRecorder = createBuildInfoRecorder(
-        new FakeProjectFilesystem() {
-            @Override
-            public void createZip(
-                Collection<Path> pathsToIncludeInZip,
-                Path out,
-                ImmutableMap<Path, String> additionalFileContents) throws IOException {
-              // For this test, nothing really cares about the content, so just write out the name.
-              writeBytesToPath(out.toString().getBytes(), out);
-            }
-        });
+    BuildInfoRecorder buildInfoRecorder = createBuildInfoRecorder(new FakeProjectFilesystem());
     Path cacheDir = Files.createTempDirectory("root");
     ArtifactCache artifactCache = TestArtifactCaches
         .createDirCacheForTest(cacheDir, Paths.get("cache"));
@@ -85,6 +75,9 @@ public class BuildInfoRecorderIntegrationTest {
         new DefaultClock(),
         new BuildId(),
         ObjectMappers.newDefaultInstance(),
-        ImmutableMap.of());
+        ImmutableMap.of(),
+        ZipCompressionLevel.DEFAULT_COMPRESSION_LEVEL.getValue(),
+        /* artifactCompressionThreads */ 1,
+        /* artifactCompressionSkipCompressedFiles */ false);
   }
 }
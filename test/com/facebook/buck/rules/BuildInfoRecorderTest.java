@@ -27,6 +27,7 @@ import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactInfo;
 import com.facebook.buck.artifact_cache.NoopArtifactCache;
 import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.MorePathsForTests;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -41,14 +42,20 @@ import com.facebook.buck.timing.DefaultClock;
 import com.facebook.buck.timing.FakeClock;
 import com.facebook.buck.util.cache.DefaultFileHashCache;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.zip.ZipCompressionLevel;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -58,7 +65,10 @@ import org.junit.rules.ExpectedException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class BuildInfoRecorderTest {
 
@@ -216,6 +226,69 @@ public class BuildInfoRecorderTest {
     assertTrue(stored.get());
   }
 
+  @Test
+  public void testPerformUploadToArtifactCacheInBackgroundStoresCompressedFiles()
+      throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    BuildInfoRecorder buildInfoRecorder = new BuildInfoRecorder(
+        BUILD_TARGET,
+        filesystem,
+        new DefaultClock(),
+        new BuildId(),
+        new ObjectMapper(),
+        ImmutableMap.of(),
+        ZipCompressionLevel.MAX_COMPRESSION_LEVEL.getValue(),
+        /* artifactCompressionThreads */ 2,
+        /* artifactCompressionSkipCompressedFiles */ true);
+
+    byte[] contents = Strings.repeat("contents", 1000).getBytes(Charsets.UTF_8);
+    filesystem.writeBytesToPath(contents, Paths.get("lib.jar"));
+    buildInfoRecorder.recordArtifact(Paths.get("lib.jar"));
+    filesystem.writeBytesToPath(contents, Paths.get("file"));
+    buildInfoRecorder.recordArtifact(Paths.get("file"));
+
+    final AtomicBoolean stored = new AtomicBoolean(false);
+    ArtifactCache cache =
+        new NoopArtifactCache() {
+          @Override
+          public boolean isStoreSupported() {
+            return true;
+          }
+
+          @Override
+          public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
+            stored.set(true);
+            try (ZipFile zip = new ZipFile(output.getPath().toFile())) {
+              assertEquals(ZipEntry.STORED, zip.getEntry("lib.jar").getMethod());
+              assertEquals(ZipEntry.DEFLATED, zip.getEntry("file").getMethod());
+              assertArrayEquals(
+                  contents,
+                  ByteStreams.toByteArray(zip.getInputStream(zip.getEntry("lib.jar"))));
+              assertArrayEquals(
+                  contents,
+                  ByteStreams.toByteArray(zip.getInputStream(zip.getEntry("file"))));
+            } catch (IOException e) {
+              throw Throwables.propagate(e);
+            }
+            return Futures.immediateFuture(null);
+          }
+        };
+
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
+    try {
+      buildInfoRecorder.performUploadToArtifactCache(
+          ImmutableSet.of(new RuleKey("aa")),
+          cache,
+          BuckEventBusFactory.newInstance(),
+          executor,
+          executor).get();
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(stored.get());
+  }
+
   @Test
   public void testGetOutputSize() throws IOException {
     FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
@@ -319,6 +392,9 @@ public class BuildInfoRecorderTest {
         new DefaultClock(),
         new BuildId(),
         new ObjectMapper(),
-        ImmutableMap.of());
+        ImmutableMap.of(),
+        ZipCompressionLevel.DEFAULT_COMPRESSION_LEVEL.getValue(),
+        /* artifactCompressionThreads */ 1,
+        /* artifactCompressionSkipCompressedFiles */ false);
   }
 }
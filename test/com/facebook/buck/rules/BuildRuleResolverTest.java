@@ -19,6 +19,7 @@ package com.facebook.buck.rules;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -27,15 +28,28 @@ import com.facebook.buck.jvm.java.JavaBinary;
 import com.facebook.buck.jvm.java.JavaLibraryBuilder;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.testutil.TargetGraphFactory;
 import com.facebook.buck.util.HumanReadableException;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class BuildRuleResolverTest {
 
   @Rule
@@ -106,6 +120,179 @@ public class BuildRuleResolverTest {
     assertThat(rule.getBuildTarget(), is(equalTo(target)));
   }
 
+  @Test
+  public void testConcurrentlyRequiredBuildRuleIsCreatedOnce() throws Exception {
+    final BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    TargetNode<?, ?> library = JavaLibraryBuilder.createBuilder(target).build();
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(library);
+    final AtomicInteger transformations = new AtomicInteger();
+    final BuildRuleResolver resolver = new BuildRuleResolver(
+        targetGraph,
+        new TargetNodeToBuildRuleTransformer() {
+          @Override
+          public <T, U extends Description<T>> BuildRule transform(
+              TargetGraph targetGraph,
+              BuildRuleResolver ruleResolver,
+              TargetNode<T, U> targetNode) throws NoSuchBuildTargetException {
+            transformations.incrementAndGet();
+            // Give the other threads a chance to require the rule while it is being created.
+            Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+            return new DefaultTargetNodeToBuildRuleTransformer()
+                .transform(targetGraph, ruleResolver, targetNode);
+          }
+        });
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<BuildRule>> rules = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        rules.add(executor.submit(() -> resolver.requireRule(target)));
+      }
+      for (Future<BuildRule> rule : rules) {
+        assertThat(rule.get(), is(sameInstance(resolver.getRule(target))));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(1, transformations.get());
+  }
+
+  @Test
+  public void testConcurrentlyComputedBuildRuleIsCreatedOnce() throws Exception {
+    final BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    final BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    final AtomicInteger creations = new AtomicInteger();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<FakeBuildRule>> rules = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        rules.add(executor.submit(() -> resolver.computeIfAbsent(
+            target,
+            FakeBuildRule.class,
+            () -> {
+              creations.incrementAndGet();
+              // Give the other threads a chance to ask for the rule while it is being created.
+              Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+              return new FakeBuildRule(target, new SourcePathResolver(
+                  new SourcePathRuleFinder(resolver)));
+            })));
+      }
+      for (Future<FakeBuildRule> rule : rules) {
+        assertThat(rule.get(), is(sameInstance(resolver.getRule(target))));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(1, creations.get());
+  }
+
+  @Test
+  public void computeIfAbsentReturnsExistingRule() throws Exception {
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    JavaLibraryBuilder builder = JavaLibraryBuilder.createBuilder(target);
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(builder.build());
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(targetGraph, new DefaultTargetNodeToBuildRuleTransformer());
+    BuildRule existing = builder.build(resolver);
+
+    BuildRule rule = resolver.computeIfAbsent(
+        target,
+        BuildRule.class,
+        () -> {
+          throw new AssertionError("An existing rule should not be created again.");
+        });
+    assertThat(rule, is(sameInstance(existing)));
+  }
+
+  @Test
+  public void computeIfAbsentWrongType() throws Exception {
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    JavaLibraryBuilder builder = JavaLibraryBuilder.createBuilder(target);
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(builder.build());
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(targetGraph, new DefaultTargetNodeToBuildRuleTransformer());
+    builder.build(resolver);
+    expectedException.expect(HumanReadableException.class);
+    expectedException.expectMessage(Matchers.containsString("not of expected type"));
+    resolver.computeIfAbsent(
+        target,
+        JavaBinary.class,
+        () -> {
+          throw new AssertionError("An existing rule should not be created again.");
+        });
+  }
+
+  @Test
+  public void computeIfAbsentForTheTargetBeingCreated() throws Exception {
+    final BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    TargetGraph targetGraph =
+        TargetGraphFactory.newInstance(JavaLibraryBuilder.createBuilder(target).build());
+    BuildRuleResolver resolver = new BuildRuleResolver(
+        targetGraph,
+        new TargetNodeToBuildRuleTransformer() {
+          @Override
+          public <T, U extends Description<T>> BuildRule transform(
+              TargetGraph targetGraph,
+              BuildRuleResolver ruleResolver,
+              TargetNode<T, U> targetNode) {
+            return ruleResolver.computeIfAbsent(
+                targetNode.getBuildTarget(),
+                FakeBuildRule.class,
+                () -> new FakeBuildRule(
+                    targetNode.getBuildTarget(),
+                    new SourcePathResolver(new SourcePathRuleFinder(ruleResolver))));
+          }
+        });
+
+    BuildRule rule = resolver.requireRule(target);
+    assertThat(rule, is(sameInstance(resolver.getRule(target))));
+  }
+
+  @Test
+  public void rulesComputedOnDifferentThreadsWhichDependOnEachOtherFail() throws Exception {
+    final BuildTarget first = BuildTargetFactory.newInstance("//foo:first");
+    final BuildTarget second = BuildTargetFactory.newInstance("//foo:second");
+    final BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    // Make sure each thread has started creating its rule before asking for the other one.
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<FakeBuildRule>> rules = new ArrayList<>();
+      for (BuildTarget[] targets : ImmutableList.of(
+          new BuildTarget[] {first, second},
+          new BuildTarget[] {second, first})) {
+        rules.add(executor.submit(() -> resolver.computeIfAbsent(
+            targets[0],
+            FakeBuildRule.class,
+            () -> {
+              barrier.await();
+              resolver.computeIfAbsent(
+                  targets[1],
+                  FakeBuildRule.class,
+                  () -> {
+                    throw new AssertionError("The rule should not be created twice.");
+                  });
+              throw new AssertionError("The cycle should have been detected.");
+            })));
+      }
+      for (Future<FakeBuildRule> rule : rules) {
+        try {
+          rule.get(10, TimeUnit.SECONDS);
+          fail("Expected the cycle to be detected.");
+        } catch (ExecutionException e) {
+          assertThat(e.getCause(), Matchers.instanceOf(IllegalStateException.class));
+          assertThat(e.getCause().getMessage(), Matchers.containsString("Cycle detected"));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Test
   public void testRequireExistingBuildRule() throws Exception {
     BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
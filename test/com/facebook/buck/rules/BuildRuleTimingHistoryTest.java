@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+public class BuildRuleTimingHistoryTest {
+
+  private static final Path STORE = Paths.get("buck-out/.ruletimings");
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:bar");
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws Exception {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+  }
+
+  @Test
+  public void recordedDurationsSurviveReloading() throws Exception {
+    BuildRuleTimingHistory history = BuildRuleTimingHistory.load(filesystem, STORE);
+    assertEquals(Optional.empty(), history.getEstimatedDurationMillis(TARGET));
+    history.record(TARGET, 1000);
+    history.save();
+
+    assertEquals(
+        Optional.of(1000L),
+        BuildRuleTimingHistory.load(filesystem, STORE).getEstimatedDurationMillis(TARGET));
+  }
+
+  @Test
+  public void estimatesConvergeOnTheLatestDurations() throws Exception {
+    BuildRuleTimingHistory history = BuildRuleTimingHistory.load(filesystem, STORE);
+    history.record(TARGET, 1000);
+    history.record(TARGET, 3000);
+    assertEquals(
+        Optional.of(Math.round(
+            BuildRuleTimingHistory.SMOOTHING_FACTOR * 3000 +
+                (1 - BuildRuleTimingHistory.SMOOTHING_FACTOR) * 1000)),
+        history.getEstimatedDurationMillis(TARGET));
+  }
+
+  @Test
+  public void corruptHistoryIsDiscarded() throws Exception {
+    filesystem.mkdirs(STORE.getParent());
+    filesystem.writeContentsToPath("garbage", STORE);
+    assertEquals(
+        Optional.empty(),
+        BuildRuleTimingHistory.load(filesystem, STORE).getEstimatedDurationMillis(TARGET));
+  }
+}
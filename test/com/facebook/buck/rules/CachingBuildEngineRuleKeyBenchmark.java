@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.artifact_cache.NoopArtifactCache;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.timing.DefaultClock;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.cache.NullFileHashCache;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures how long {@link CachingBuildEngine} takes to schedule and compute rule keys for a
+ * synthetic action graph, across varying numbers of threads.
+ */
+public class CachingBuildEngineRuleKeyBenchmark {
+  @Param({"10000", "100000"})
+  private int ruleCount = 100;
+
+  @Param({"1", "4", "16", "40"})
+  private int threadCount = 1;
+
+  /** The maximum number of deps each rule has on rules created before it. */
+  private static final int MAX_DEPS_PER_RULE = 4;
+
+  private ImmutableList<BuildRule> rules;
+  private BuildRuleResolver resolver;
+  private BuildEngineBuildContext buildContext;
+  private ListeningExecutorService executorService;
+
+  @Before
+  public void setUpTest() throws Exception {
+    ruleCount = 100;
+    threadCount = 4;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(resolver));
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+
+    // Build a layered DAG where every rule depends on a few randomly chosen earlier rules.  The
+    // seed is fixed so every experiment sees the same graph.
+    Random random = new Random(ruleCount);
+    List<BuildRule> created = new ArrayList<>(ruleCount);
+    for (int i = 0; i < ruleCount; i++) {
+      ImmutableSortedSet.Builder<BuildRule> deps = ImmutableSortedSet.naturalOrder();
+      for (int j = 0; i > 0 && j < MAX_DEPS_PER_RULE; j++) {
+        deps.add(created.get(random.nextInt(i)));
+      }
+      BuildTarget target = BuildTargetFactory.newInstance("//synthetic:rule_" + i);
+      BuildRule rule = new FakeBuildRule(
+          new FakeBuildRuleParamsBuilder(target)
+              .setProjectFilesystem(filesystem)
+              .setDeclaredDeps(deps.build())
+              .build(),
+          pathResolver);
+      resolver.addToIndex(rule);
+      created.add(rule);
+    }
+    rules = ImmutableList.copyOf(created);
+
+    buildContext = BuildEngineBuildContext.builder()
+        .setBuildContext(FakeBuildContext.NOOP_CONTEXT)
+        .setArtifactCache(new NoopArtifactCache())
+        .setBuildId(new BuildId())
+        .setClock(new DefaultClock())
+        .setObjectMapper(ObjectMappers.newDefaultInstance())
+        .build();
+    executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threadCount));
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() {
+    executorService.shutdown();
+  }
+
+  @Test
+  public void calculateRuleKeysCorrectness() throws Exception {
+    List<RuleKey> parallelKeys = calculateRuleKeys();
+
+    executorService.shutdown();
+    executorService = MoreExecutors.newDirectExecutorService();
+    List<RuleKey> serialKeys = calculateRuleKeys();
+
+    assertEquals(ruleCount, parallelKeys.size());
+    assertEquals(serialKeys, parallelKeys);
+  }
+
+  @Benchmark
+  public void calculateAllRuleKeys() throws Exception {
+    calculateRuleKeys();
+  }
+
+  private List<RuleKey> calculateRuleKeys() throws Exception {
+    // Use a fresh engine each time, so that no rule keys are memoized across repetitions.
+    CachingBuildEngine engine = newEngine();
+    List<ListenableFuture<RuleKey>> ruleKeys = new ArrayList<>(rules.size());
+    for (BuildRule rule : rules) {
+      ruleKeys.add(engine.calculateRuleKey(rule, buildContext));
+    }
+    return Futures.allAsList(ruleKeys).get();
+  }
+
+  private CachingBuildEngine newEngine() {
+    CachingBuildEngine.RuleKeyFactories ruleKeyFactories =
+        CachingBuildEngine.RuleKeyFactories.build(
+            /* seed */ 0,
+            new NullFileHashCache(),
+            resolver,
+            /* inputRuleKeyFileSizeLimit */ Long.MAX_VALUE);
+    return new CachingBuildEngineFactory(resolver)
+        .setExecutorService(executorService)
+        .setRuleKeyFactoriesFunction(filesystem -> ruleKeyFactories)
+        .build();
+  }
+}
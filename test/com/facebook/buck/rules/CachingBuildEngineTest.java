@@ -28,9 +28,11 @@ import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactInfo;
+import com.facebook.buck.artifact_cache.ArtifactPayloadConsumer;
 import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
 import com.facebook.buck.artifact_cache.InMemoryArtifactCache;
@@ -464,6 +466,61 @@ public class CachingBuildEngineTest {
           filesystem.exists(Paths.get("buck-out/gen/src/com/facebook/orca/orca.jar")));
     }
 
+    @Test
+    public void testArtifactUnpackedWhileStreamingFromCache() throws Exception {
+      Step step = new AbstractExecutionStep("exploding step") {
+        @Override
+        public StepExecutionResult execute(ExecutionContext context) {
+          throw new UnsupportedOperationException("build step should not be executed");
+        }
+      };
+      BuildRule buildRule = createRule(
+          filesystem,
+          pathResolver,
+          /* deps */ ImmutableSet.of(),
+          ImmutableList.of(step),
+          /* postBuildSteps */ ImmutableList.of(),
+          /* pathToOutputFile */ null);
+
+      Map<Path, String> desiredZipEntries = ImmutableMap.of(
+          Paths.get("buck-out/gen/src/com/facebook/orca/orca.jar"),
+          "Imagine this is the contents of a valid JAR file.",
+          BuildInfo.getPathToMetadataDirectory(buildRule.getBuildTarget(), filesystem)
+              .resolve(BuildInfo.MetadataKey.RECORDED_PATHS),
+          MAPPER.writeValueAsString(ImmutableList.of()));
+      ArtifactCache artifactCache = new FakeArtifactCacheThatWritesAZipFile(desiredZipEntries) {
+        @Override
+        public CacheResult fetch(RuleKey ruleKey, LazyPath file) {
+          throw new AssertionError("The artifact should be streamed, not saved to a file.");
+        }
+      };
+
+      BuckEventBus buckEventBus = BuckEventBusFactory.newInstance();
+      BuildEngineBuildContext buildContext = BuildEngineBuildContext.builder()
+          .setBuildContext(
+              BuildContext.builder()
+                  .setActionGraph(new ActionGraph(ImmutableList.of(buildRule)))
+                  .setSourcePathResolver(pathResolver)
+                  .setJavaPackageFinder(createMock(JavaPackageFinder.class))
+                  .setEventBus(buckEventBus)
+                  .build())
+          .setClock(new DefaultClock())
+          .setBuildId(new BuildId())
+          .setArtifactCache(artifactCache)
+          .setArtifactCacheStreamingFetchEnabled(true)
+          .setObjectMapper(ObjectMappers.newDefaultInstance())
+          .build();
+
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory().build();
+      BuildResult result =
+          cachingBuildEngine.build(buildContext, TestExecutionContext.newInstance(), buildRule)
+              .get();
+      assertEquals(BuildRuleSuccessType.FETCHED_FROM_CACHE, result.getSuccess());
+      assertTrue(
+          "The entries in the zip should be extracted as a result of building the rule.",
+          filesystem.exists(Paths.get("buck-out/gen/src/com/facebook/orca/orca.jar")));
+    }
+
     @Test
     public void testArtifactFetchedFromCacheStillRunsPostBuildSteps()
         throws InterruptedException, ExecutionException, IOException {
@@ -1160,6 +1217,134 @@ public class CachingBuildEngineTest {
           equalTo(BuildRuleStatus.SUCCESS));
     }
 
+    @Test
+    public void artifactsOfDepsArePrefetchedInASingleBatch() throws Exception {
+      final List<RuleKey> fetchedRuleKeys = new ArrayList<>();
+      final List<ImmutableList<RuleKey>> multiFetchedRuleKeys = new ArrayList<>();
+      InMemoryArtifactCache cache = new InMemoryArtifactCache() {
+        @Override
+        public CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+          fetchedRuleKeys.add(ruleKey);
+          return super.fetch(ruleKey, output);
+        }
+
+        @Override
+        public ImmutableList<CacheResult> multiFetch(
+            ImmutableList<Pair<RuleKey, LazyPath>> requests) {
+          multiFetchedRuleKeys.add(
+              ImmutableList.copyOf(Lists.transform(requests, Pair::getFirst)));
+          ImmutableList.Builder<CacheResult> results = ImmutableList.builder();
+          for (Pair<RuleKey, LazyPath> request : requests) {
+            results.add(super.fetch(request.getFirst(), request.getSecond()));
+          }
+          return results.build();
+        }
+
+        @Override
+        public ImmutableMap<RuleKey, CacheResult> multiContains(ImmutableSet<RuleKey> ruleKeys) {
+          // Like a remote cache, which can't tell whether it has an artifact without fetching it.
+          return ImmutableMap.of();
+        }
+      };
+      buildContext = BuildEngineBuildContext.builder()
+          .from(this.buildContext)
+          .setArtifactCache(cache)
+          .setArtifactCachePrefetchEnabled(true)
+          .build();
+
+      BuildRule dep1 =
+          new RuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep1"))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver,
+              ImmutableList.of(new SleepStep(0)),
+              /* output */ null);
+      BuildRule dep2 =
+          new RuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep2"))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver,
+              ImmutableList.of(new SleepStep(0)),
+              /* output */ null);
+      BuildRule rule =
+          new RuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:rule"))
+                  .setDeclaredDeps(ImmutableSortedSet.of(dep1, dep2))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver,
+              ImmutableList.of(new SleepStep(0)),
+              /* output */ null);
+
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory().build();
+      BuildResult result =
+          cachingBuildEngine.build(buildContext, TestExecutionContext.newInstance(), rule).get();
+      assertThat(result.getStatus(), equalTo(BuildRuleStatus.SUCCESS));
+
+      // Only the top-level rule is fetched on its own, its deps are fetched in one batch.
+      assertThat(fetchedRuleKeys, Matchers.hasSize(1));
+      assertThat(multiFetchedRuleKeys, Matchers.hasSize(1));
+      assertThat(multiFetchedRuleKeys.get(0), Matchers.hasSize(2));
+      assertThat(
+          multiFetchedRuleKeys.get(0),
+          Matchers.not(Matchers.hasItem(fetchedRuleKeys.get(0))));
+    }
+
+    @Test
+    public void artifactsWhichTheCacheKnowsItMissesAreNotPrefetched() throws Exception {
+      final List<ImmutableList<RuleKey>> multiFetchedRuleKeys = new ArrayList<>();
+      InMemoryArtifactCache cache = new InMemoryArtifactCache() {
+        @Override
+        public ImmutableList<CacheResult> multiFetch(
+            ImmutableList<Pair<RuleKey, LazyPath>> requests) {
+          multiFetchedRuleKeys.add(
+              ImmutableList.copyOf(Lists.transform(requests, Pair::getFirst)));
+          return super.multiFetch(requests);
+        }
+      };
+      buildContext = BuildEngineBuildContext.builder()
+          .from(this.buildContext)
+          .setArtifactCache(cache)
+          .setArtifactCachePrefetchEnabled(true)
+          .build();
+
+      BuildRule dep1 =
+          new RuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep1"))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver,
+              ImmutableList.of(new SleepStep(0)),
+              /* output */ null);
+      BuildRule dep2 =
+          new RuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:dep2"))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver,
+              ImmutableList.of(new SleepStep(0)),
+              /* output */ null);
+      BuildRule rule =
+          new RuleWithSteps(
+              new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//:rule"))
+                  .setDeclaredDeps(ImmutableSortedSet.of(dep1, dep2))
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver,
+              ImmutableList.of(new SleepStep(0)),
+              /* output */ null);
+
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory().build();
+      BuildResult result =
+          cachingBuildEngine.build(buildContext, TestExecutionContext.newInstance(), rule).get();
+      assertThat(result.getStatus(), equalTo(BuildRuleStatus.SUCCESS));
+
+      // The in-memory cache can tell that it has neither artifact without fetching them.
+      assertThat(multiFetchedRuleKeys, Matchers.empty());
+    }
+
     @Test
     public void getNumRulesToBuild() throws Exception {
       BuildRule rule3 =
@@ -1261,6 +1446,29 @@ public class CachingBuildEngineTest {
       assertTrue(fakeFileHashCache.contains(filesystem.resolve(output)));
     }
 
+    @Test
+    public void ruleKeyFailsRatherThanHangsWhenItsSetupFails() throws Exception {
+      BuildRule rule = new FakeBuildRule(BUILD_TARGET, pathResolver);
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory()
+          .setRuleKeyFactoriesFunction(
+              ruleFilesystem -> {
+                throw new IllegalStateException("no rule key factories");
+              })
+          .build();
+
+      ListenableFuture<RuleKey> ruleKey = cachingBuildEngine.calculateRuleKey(rule, buildContext);
+      assertTrue(ruleKey.isDone());
+      try {
+        ruleKey.get();
+        fail("Rule key should have failed.");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause().getMessage(), Matchers.containsString("no rule key factories"));
+      }
+
+      // Callers which find the placeholder see the same failure.
+      assertTrue(cachingBuildEngine.calculateRuleKey(rule, buildContext).isDone());
+    }
+
   }
 
   public static class InputBasedRuleKeyTests extends CommonFixture {
@@ -3070,6 +3278,26 @@ public class CachingBuildEngineTest {
       return CacheResult.hit("dir");
     }
 
+    @Override
+    public CacheResult fetchStreaming(RuleKey ruleKey, ArtifactPayloadConsumer consumer) {
+      try {
+        Path zip = Files.createTempFile("streamed_artifact", ".zip");
+        writeEntriesToZip(zip, ImmutableMap.copyOf(desiredEntries));
+        try (InputStream payload = Files.newInputStream(zip)) {
+          consumer.consume(payload);
+        }
+        Files.delete(zip);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return CacheResult.hit("dir");
+    }
+
+    @Override
+    public boolean isStreamingFetchSupported() {
+      return true;
+    }
+
     @Override
     public ListenableFuture<Void> store(
         ArtifactInfo info,
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.TargetGraphFactory;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+public class CriticalPathSchedulerTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private SourcePathResolver pathResolver;
+
+  @Before
+  public void setUp() {
+    pathResolver = new SourcePathResolver(
+        new SourcePathRuleFinder(
+            new BuildRuleResolver(
+                TargetGraphFactory.newInstance(),
+                new DefaultTargetNodeToBuildRuleTransformer())));
+  }
+
+  @Test
+  public void criticalPathFollowsTheLongestChainOfDurations() {
+    // //:binary depends on a slow and a fast library, and the slow one on a tiny codegen rule.
+    BuildRule codegen = new FakeBuildRule("//:codegen", pathResolver);
+    BuildRule slow = new FakeBuildRule("//:slow", pathResolver, codegen);
+    BuildRule fast = new FakeBuildRule("//:fast", pathResolver);
+    BuildRule binary = new FakeBuildRule("//:binary", pathResolver, slow, fast);
+    ImmutableMap<BuildRule, Long> durations = ImmutableMap.of(
+        codegen, 1L,
+        slow, 100L,
+        fast, 50L,
+        binary, 10L);
+
+    CriticalPathScheduler.CriticalPath criticalPath = CriticalPathScheduler.findCriticalPath(
+        ImmutableList.of(binary),
+        BuildRule::getDeps,
+        durations::get);
+
+    assertEquals(ImmutableList.of(codegen, slow, binary), criticalPath.path);
+    assertEquals(111, criticalPath.totalMillis);
+    assertEquals(
+        ImmutableMap.of(
+            binary.getBuildTarget(), 10L,
+            slow.getBuildTarget(), 110L,
+            fast.getBuildTarget(), 60L,
+            codegen.getBuildTarget(), 111L),
+        criticalPath.remainingMillis);
+  }
+
+  @Test
+  public void depsOnTheCriticalPathArePrioritized() throws Exception {
+    BuildRule slow = new FakeBuildRule("//:slow", pathResolver);
+    BuildRule fast = new FakeBuildRule("//:fast", pathResolver);
+    BuildRule unknown = new FakeBuildRule("//:unknown", pathResolver);
+    BuildRule binary = new FakeBuildRule("//:binary", pathResolver, fast, unknown, slow);
+
+    BuildRuleTimingHistory history = BuildRuleTimingHistory.load(
+        new ProjectFilesystem(tmp.getRoot()),
+        Paths.get("buck-out/.ruletimings"));
+    history.record(BuildTargetFactory.newInstance("//:slow"), 100);
+    history.record(BuildTargetFactory.newInstance("//:fast"), 10);
+    CriticalPathScheduler scheduler =
+        new CriticalPathScheduler(history, BuckEventBusFactory.newInstance());
+    scheduler.prepare(ImmutableList.of(binary), BuildRule::getDeps);
+
+    assertEquals(100, scheduler.getPriority(slow));
+    assertEquals(0, scheduler.getPriority(unknown));
+    assertEquals(
+        ImmutableList.of(slow, fast, unknown),
+        scheduler.sortByPriority(binary.getDeps()));
+  }
+}
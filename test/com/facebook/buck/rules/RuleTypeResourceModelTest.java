@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.ProcessResourceConsumption;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.perf.ProcessTracker;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class RuleTypeResourceModelTest {
+
+  private static final Path STORE = Paths.get("buck-out/.ruleresources");
+  private static final ResourceAmounts DEFAULT_AMOUNTS = ResourceAmounts.of(1, 1, 1, 1);
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws Exception {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+  }
+
+  @Test
+  public void measuredBuildStepsAreLearnedAndSurviveReloading() throws Exception {
+    RuleTypeResourceModel model = RuleTypeResourceModel.load(filesystem, STORE);
+    assertEquals(Optional.empty(), model.getResourceAmounts("cxx_link", DEFAULT_AMOUNTS));
+
+    // A link using four cores and 1GB for ten seconds, reading and writing 400MB.
+    model.processFinished(
+        buildStepFinished(
+            "cxx_link",
+            consumption(
+                10_000,
+                40_000,
+                1024L * 1024 * 1024,
+                400L * 1024 * 1024)));
+    model.save();
+
+    assertEquals(
+        Optional.of(ResourceAmounts.of(4, 11, 4, 1)),
+        RuleTypeResourceModel.load(filesystem, STORE)
+            .getResourceAmounts("cxx_link", DEFAULT_AMOUNTS));
+  }
+
+  @Test
+  public void memoryFollowsPeaksImmediatelyAndDecaysSlowly() throws Exception {
+    RuleTypeResourceModel model = RuleTypeResourceModel.load(filesystem, STORE);
+    long unit = RuleTypeResourceModel.MEMORY_UNIT_BYTES;
+    model.record("genrule", consumption(1000, 1000, unit, 0));
+    model.record("genrule", consumption(1000, 1000, 10 * unit, 0));
+    assertEquals(10, model.getResourceAmounts("genrule", DEFAULT_AMOUNTS).get().getMemory());
+
+    model.record("genrule", consumption(1000, 1000, unit, 0));
+    assertEquals(
+        (int) Math.ceil(
+            RuleTypeResourceModel.SMOOTHING_FACTOR * 1 +
+                (1 - RuleTypeResourceModel.SMOOTHING_FACTOR) * 10),
+        model.getResourceAmounts("genrule", DEFAULT_AMOUNTS).get().getMemory());
+  }
+
+  @Test
+  public void lightStepsStillNeedACore() throws Exception {
+    RuleTypeResourceModel model = RuleTypeResourceModel.load(filesystem, STORE);
+    model.record("export_file", consumption(1000, 0, 0, 0));
+    assertEquals(
+        Optional.of(ResourceAmounts.of(1, 0, 0, 1)),
+        model.getResourceAmounts("export_file", DEFAULT_AMOUNTS));
+  }
+
+  @Test
+  public void processesOutsideBuildStepsAreIgnored() throws Exception {
+    RuleTypeResourceModel model = RuleTypeResourceModel.load(filesystem, STORE);
+    model.processFinished(
+        new ProcessTracker.ProcessResourceConsumptionEvent(
+            "buck",
+            Optional.empty(),
+            Optional.empty(),
+            Optional.of(consumption(1000, 1000, 0, 0))));
+    model.processFinished(
+        new ProcessTracker.ProcessResourceConsumptionEvent(
+            "clang",
+            Optional.empty(),
+            Optional.of(
+                ImmutableMap.of(
+                    CachingBuildEngine.BUILD_RULE_TYPE_CONTEXT_KEY, "cxx_library",
+                    CachingBuildEngine.STEP_TYPE_CONTEXT_KEY,
+                    CachingBuildEngine.StepType.POST_BUILD_STEP.toString())),
+            Optional.of(consumption(1000, 1000, 0, 0))));
+    assertEquals(Optional.empty(), model.getResourceAmounts("cxx_library", DEFAULT_AMOUNTS));
+  }
+
+  @Test
+  public void concurrentSavesLeaveAValidModel() throws Exception {
+    RuleTypeResourceModel model = RuleTypeResourceModel.load(filesystem, STORE);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> saves = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        String ruleType = "genrule" + i;
+        saves.add(executor.submit(() -> {
+          model.record(ruleType, consumption(1000, 1000, 0, 0));
+          model.save();
+          return null;
+        }));
+      }
+      for (Future<?> save : saves) {
+        save.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    RuleTypeResourceModel reloaded = RuleTypeResourceModel.load(filesystem, STORE);
+    for (int i = 0; i < 16; i++) {
+      assertTrue(reloaded.getResourceAmounts("genrule" + i, DEFAULT_AMOUNTS).isPresent());
+    }
+  }
+
+  @Test
+  public void configuredAmountsTakePrecedenceOverLearnedOnes() throws Exception {
+    RuleTypeResourceModel model = RuleTypeResourceModel.load(filesystem, STORE);
+    model.record("cxx_link", consumption(1000, 4000, 0, 0));
+    model.record("genrule", consumption(1000, 2000, 0, 0));
+    ResourceAwareSchedulingInfo info = ResourceAwareSchedulingInfo.of(
+        true,
+        DEFAULT_AMOUNTS,
+        ImmutableMap.of("cxx_link", ResourceAmounts.of(8, 8, 8, 8)),
+        Optional.of(model));
+
+    assertEquals(
+        ResourceAmounts.of(8, 8, 8, 8),
+        info.getResourceAmountsForRule(new FakeRule("cxx_link")));
+    // Learned amounts only ever raise the defaults.
+    assertEquals(
+        ResourceAmounts.of(2, 1, 1, 1),
+        info.getResourceAmountsForRule(new FakeRule("genrule")));
+    assertEquals(
+        DEFAULT_AMOUNTS,
+        info.getResourceAmountsForRule(new FakeRule("java_library")));
+  }
+
+  private static ProcessTracker.ProcessResourceConsumptionEvent buildStepFinished(
+      String ruleType,
+      ProcessResourceConsumption consumption) {
+    return new ProcessTracker.ProcessResourceConsumptionEvent(
+        "tool",
+        Optional.empty(),
+        Optional.of(
+            ImmutableMap.of(
+                CachingBuildEngine.BUILD_RULE_TYPE_CONTEXT_KEY, ruleType,
+                CachingBuildEngine.STEP_TYPE_CONTEXT_KEY,
+                CachingBuildEngine.StepType.BUILD_STEP.toString())),
+        Optional.of(consumption));
+  }
+
+  private static ProcessResourceConsumption consumption(
+      long realMillis,
+      long cpuMillis,
+      long residentBytes,
+      long ioBytes) {
+    return ProcessResourceConsumption.builder()
+        .setMemResident(residentBytes)
+        .setMemSize(residentBytes)
+        .setCpuReal(realMillis)
+        .setCpuUser(cpuMillis)
+        .setCpuSys(0)
+        .setCpuTotal(cpuMillis)
+        .setIoBytesRead(ioBytes / 2)
+        .setIoBytesWritten(ioBytes / 2)
+        .setIoTotal(ioBytes)
+        .build();
+  }
+
+  private static class FakeRule extends FakeBuildRule {
+    private final String type;
+
+    FakeRule(String type) {
+      super(
+          "//:" + type,
+          new SourcePathResolver(
+              new SourcePathRuleFinder(
+                  new BuildRuleResolver(
+                      TargetGraph.EMPTY,
+                      new DefaultTargetNodeToBuildRuleTransformer()))));
+      this.type = type;
+    }
+
+    @Override
+    public String getType() {
+      return type;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.WatchEventsForTests;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class DefaultRuleKeyCacheTest {
+
+  private ProjectFilesystem filesystem;
+  private SourcePathRuleFinder ruleFinder;
+  private SourcePathResolver pathResolver;
+  private Map<Path, HashCode> hashes;
+  private DefaultRuleKeyCache cache;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    ruleFinder = new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+    pathResolver = new SourcePathResolver(ruleFinder);
+    hashes = new HashMap<>();
+    cache = new DefaultRuleKeyCache(filesystem);
+  }
+
+  @Test
+  public void keysAreReusedAcrossFactories() {
+    BuildRule rule = newRule("//:lib", Paths.get("Lib.java"), "lib");
+
+    RuleKey first = newFactory().build(rule);
+    assertEquals(1, cache.size());
+
+    // Without a file change event, the cached key is used rather than the input being rehashed.
+    setHash(Paths.get("Lib.java"), "lib changed");
+    RuleKey second = newFactory().build(rule);
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void changedInputInvalidatesDependentKeysTransitively() {
+    Path libSource = Paths.get("Lib.java");
+    BuildRule lib = newRule("//:lib", libSource, "lib");
+    BuildRule bin = newRule("//:bin", Paths.get("Bin.java"), "bin", lib);
+    BuildRule other = newRule("//:other", Paths.get("Other.java"), "other");
+
+    RuleKey libKey = newFactory().build(lib);
+    RuleKey binKey = newFactory().build(bin);
+    newFactory().build(other);
+    assertEquals(3, cache.size());
+
+    setHash(libSource, "lib changed");
+    cache.onFileSystemChange(
+        WatchEventsForTests.createPathEvent(libSource, StandardWatchEventKinds.ENTRY_MODIFY));
+    assertEquals(1, cache.size());
+
+    DefaultRuleKeyFactory factory = newFactory();
+    assertNotEquals(libKey, factory.build(lib));
+    assertNotEquals(binKey, factory.build(bin));
+  }
+
+  @Test
+  public void changedDirectoryInvalidatesOnlyKeysOfInputsUnderIt() {
+    Path libSource = Paths.get("java/lib/Lib.java");
+    Path otherSource = Paths.get("java/lib-other/Other.java");
+    newFactory().build(newRule("//java/lib:lib", libSource, "lib"));
+    newFactory().build(newRule("//java/lib-other:other", otherSource, "other"));
+    assertEquals(2, cache.size());
+
+    cache.onFileSystemChange(
+        WatchEventsForTests.createPathEvent(
+            Paths.get("java/lib"),
+            StandardWatchEventKinds.ENTRY_DELETE));
+    assertEquals(1, cache.size());
+
+    // A change under an input, which may be a hashed directory, invalidates it as well.
+    cache.onFileSystemChange(
+        WatchEventsForTests.createPathEvent(
+            otherSource.resolve("nested"),
+            StandardWatchEventKinds.ENTRY_CREATE));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void overflowInvalidatesEverything() {
+    newFactory().build(newRule("//:lib", Paths.get("Lib.java"), "lib"));
+    assertEquals(1, cache.size());
+
+    cache.onFileSystemChange(WatchEventsForTests.createOverflowEvent());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void keysWithUnwatchedInputsAreNotCached() {
+    BuildRule generated = newRule(
+        "//:generated",
+        filesystem.getBuckPaths().getGenDir().resolve("Gen.java"),
+        "generated");
+    BuildRule dependent = newRule("//:dependent", Paths.get("Dep.java"), "dependent", generated);
+
+    DefaultRuleKeyFactory factory = newFactory();
+    factory.build(generated);
+    factory.build(dependent);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void keysComputedWithDifferentSeedsAreNotShared() {
+    BuildRule rule = newRule("//:lib", Paths.get("Lib.java"), "lib");
+
+    RuleKey first = newFactory().build(rule);
+    RuleKey second =
+        new DefaultRuleKeyFactory(
+            1,
+            new FakeFileHashCache(hashes),
+            pathResolver,
+            ruleFinder,
+            Optional.of(cache))
+            .build(rule);
+    assertNotEquals(first, second);
+  }
+
+  private DefaultRuleKeyFactory newFactory() {
+    return new DefaultRuleKeyFactory(
+        0,
+        new FakeFileHashCache(hashes),
+        pathResolver,
+        ruleFinder,
+        Optional.of(cache));
+  }
+
+  private BuildRule newRule(String target, Path source, String contents, BuildRule... deps) {
+    setHash(source, contents);
+    return new RuleWithSource(target, new PathSourcePath(filesystem, source), deps);
+  }
+
+  private void setHash(Path source, String contents) {
+    hashes.put(
+        filesystem.resolve(source),
+        Hashing.sha1().hashString(contents, StandardCharsets.UTF_8));
+  }
+
+  private class RuleWithSource extends FakeBuildRule {
+    @AddToRuleKey
+    private final SourcePath source;
+
+    private RuleWithSource(String target, SourcePath source, BuildRule... deps) {
+      super(BuildTargetFactory.newInstance(target), filesystem, pathResolver, deps);
+      this.source = source;
+    }
+  }
+}
@@ -21,6 +21,7 @@ import java.nio.file.Paths;
 public class FakeWorkerProcessProtocol implements WorkerProcessProtocol {
 
   private boolean isClosed = false;
+  private int lastMessageID = -1;
 
   @Override
   public void sendHandshake(int handshakeID) throws IOException {}
@@ -29,7 +30,14 @@ public class FakeWorkerProcessProtocol implements WorkerProcessProtocol {
   public void receiveHandshake(int handshakeID) throws IOException {}
 
   @Override
-  public void sendCommand(int messageID, WorkerProcessCommand command) throws IOException {}
+  public int getMaxConcurrentCommands() {
+    return 1;
+  }
+
+  @Override
+  public void sendCommand(int messageID, WorkerProcessCommand command) throws IOException {
+    lastMessageID = messageID;
+  }
 
   @Override
   public WorkerProcessCommand receiveCommand(int messageID) throws IOException {
@@ -44,6 +52,11 @@ public class FakeWorkerProcessProtocol implements WorkerProcessProtocol {
     return 0;
   }
 
+  @Override
+  public WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException {
+    return WorkerProcessCommandResponse.of(lastMessageID, 0);
+  }
+
   @Override
   public void close() throws IOException {
     isClosed = true;
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.shell;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.Ansi;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.DefaultProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.Verbosity;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how long a {@link WorkerProcessPool} takes to run a batch of concurrent jobs on a
+ * stand-in worker which echoes its job args back after a fixed delay, comparing workers which run
+ * one job at a time with workers which run all their jobs at once.
+ */
+public class WorkerProcessBenchmark {
+  @Param({"0", "1"})
+  private String protocolVersion = "1";
+
+  @Param({"1", "4"})
+  private int maxWorkers = 1;
+
+  @Param({"16", "64"})
+  private int concurrentJobs = 16;
+
+  /** How long the stand-in worker takes to run each job. */
+  private static final int JOB_MILLIS = 20;
+
+  private TemporaryPaths tempDir = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private AtomicInteger workersStarted;
+  private WorkerProcessPool pool;
+  private ListeningExecutorService executorService;
+
+  @Before
+  public void setUpTest() throws Exception {
+    protocolVersion = "1";
+    maxWorkers = 1;
+    concurrentJobs = 8;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tempDir.before();
+    filesystem = new ProjectFilesystem(tempDir.getRoot());
+    final ProcessExecutorParams processParams = ProcessExecutorParams.builder()
+        .setCommand(
+            ImmutableList.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                EchoWorker.class.getName(),
+                protocolVersion,
+                Integer.toString(JOB_MILLIS)))
+        .build();
+    final DefaultProcessExecutor processExecutor = new DefaultProcessExecutor(
+        new Console(Verbosity.SILENT, System.out, System.err, Ansi.withoutTty()));
+
+    workersStarted = new AtomicInteger();
+    pool = new WorkerProcessPool(maxWorkers, Hashing.sha1().hashInt(0)) {
+      @Override
+      protected WorkerProcess startWorkerProcess() throws IOException {
+        Path tmpDir = tempDir.getRoot().resolve(Integer.toString(workersStarted.getAndIncrement()));
+        Files.createDirectories(tmpDir);
+        WorkerProcess process =
+            new WorkerProcess(processExecutor, processParams, filesystem, tmpDir);
+        process.ensureLaunchAndHandshake();
+        return process;
+      }
+    };
+    executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(concurrentJobs));
+
+    // Start the workers up front, so that only running jobs is measured.
+    runJobs();
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() {
+    executorService.shutdown();
+    pool.close();
+    tempDir.after();
+  }
+
+  @Test
+  public void runJobsCorrectness() throws Exception {
+    List<WorkerJobResult> results = runJobs();
+
+    for (int i = 0; i < concurrentJobs; i++) {
+      assertEquals(0, results.get(i).getExitCode());
+      assertEquals(Optional.of("job " + i), results.get(i).getStdout());
+    }
+    // A worker running jobs concurrently takes all of them, rather than more workers starting.
+    assertEquals(1, workersStarted.get());
+  }
+
+  @Benchmark
+  public void runConcurrentJobs() throws Exception {
+    runJobs();
+  }
+
+  private List<WorkerJobResult> runJobs() throws Exception {
+    List<ListenableFuture<WorkerJobResult>> results = new ArrayList<>(concurrentJobs);
+    for (int i = 0; i < concurrentJobs; i++) {
+      final String jobArgs = "job " + i;
+      results.add(
+          executorService.submit(
+              () -> {
+                WorkerProcess process = pool.borrowWorkerProcess();
+                try {
+                  return process.submitAndWaitForJob(jobArgs);
+                } finally {
+                  pool.returnWorkerProcess(process);
+                }
+              }));
+    }
+    return Futures.allAsList(results).get();
+  }
+
+  /**
+   * A worker which sleeps for the given number of milliseconds for each job and then writes the
+   * job's args to its stdout. Speaking protocol version 1, it runs all the jobs it is sent at once
+   * and responds to them as they finish.
+   */
+  public static class EchoWorker {
+    public static void main(String[] args) throws Exception {
+      String protocolVersion = args[0];
+      final long jobMillis = Long.parseLong(args[1]);
+      JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(System.in)));
+      final JsonWriter writer =
+          new JsonWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+      ExecutorService jobs = Executors.newCachedThreadPool();
+
+      reader.beginArray();
+      int handshakeID = readMessage(reader).id;
+      writer.beginArray();
+      writer.beginObject();
+      writer.name("id").value(handshakeID);
+      writer.name("type").value("handshake");
+      writer.name("protocol_version").value(protocolVersion);
+      writer.name("capabilities").beginArray().endArray();
+      writer.endObject();
+      writer.flush();
+
+      while (reader.hasNext()) {
+        final Message command = readMessage(reader);
+        Runnable job = () -> {
+          try {
+            Thread.sleep(jobMillis);
+            Files.write(
+                Paths.get(command.stdoutPath),
+                Files.readAllBytes(Paths.get(command.argsPath)));
+            synchronized (writer) {
+              writer.beginObject();
+              writer.name("id").value(command.id);
+              writer.name("type").value("result");
+              writer.name("exit_code").value(0);
+              writer.endObject();
+              writer.flush();
+            }
+          } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        };
+        if (protocolVersion.equals("1")) {
+          jobs.execute(job);
+        } else {
+          job.run();
+        }
+      }
+      reader.endArray();
+      jobs.shutdown();
+      jobs.awaitTermination(1, TimeUnit.MINUTES);
+      writer.endArray();
+      writer.close();
+    }
+
+    private static Message readMessage(JsonReader reader) throws IOException {
+      Message message = new Message();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String property = reader.nextName();
+        if (property.equals("id")) {
+          message.id = reader.nextInt();
+        } else if (property.equals("args_path")) {
+          message.argsPath = reader.nextString();
+        } else if (property.equals("stdout_path")) {
+          message.stdoutPath = reader.nextString();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return message;
+    }
+
+    private static class Message {
+      int id;
+      String argsPath = "";
+      String stdoutPath = "";
+    }
+  }
+}
@@ -132,6 +132,34 @@ public class WorkerProcessPoolTest {
 
   }
 
+  @Test
+  public void testSharesConcurrentWorkersByTheirNumberOfJobs() throws Exception {
+    WorkerProcessPool pool = new WorkerProcessPool(2, Hashing.sha1().hashLong(0)) {
+      @Override
+      protected WorkerProcess startWorkerProcess() throws IOException {
+        return new FakeWorkerProcess(ImmutableMap.of()) {
+          @Override
+          public int getMaxConcurrentJobs() {
+            return 2;
+          }
+        };
+      }
+    };
+
+    WorkerProcess first = pool.borrowWorkerProcess();
+    // The first worker can take another job, so no more are started until it is busy.
+    assertThat(pool.borrowWorkerProcess(), Matchers.sameInstance(first));
+    WorkerProcess second = pool.borrowWorkerProcess();
+    assertThat(second, Matchers.not(Matchers.sameInstance(first)));
+
+    // Jobs go to whichever worker is running the fewest.
+    pool.returnWorkerProcess(first);
+    pool.returnWorkerProcess(first);
+    assertThat(pool.borrowWorkerProcess(), Matchers.sameInstance(first));
+    assertThat(pool.borrowWorkerProcess(), Matchers.sameInstance(first));
+    assertThat(pool.borrowWorkerProcess(), Matchers.sameInstance(second));
+  }
+
   private static WorkerProcessPool createPool(int maxWorkers) {
     return new WorkerProcessPool(maxWorkers, Hashing.sha1().hashLong(0)) {
       @Override
@@ -131,6 +131,38 @@ public class WorkerProcessProtocolZeroTest {
     protocol.receiveHandshake(handshakeID);
   }
 
+  @Test
+  public void testReceiveHandshakeNegotiatesConcurrentCommands() throws IOException {
+    int handshakeID = 123;
+    assertThat(
+        receiveHandshake(createMockJsonReaderForReceiveHandshake(handshakeID, "handshake", "0"))
+            .getMaxConcurrentCommands(),
+        Matchers.is(1));
+    assertThat(
+        receiveHandshake(createMockJsonReaderForReceiveHandshake(handshakeID, "handshake", "1"))
+            .getMaxConcurrentCommands(),
+        Matchers.is(Integer.MAX_VALUE));
+    assertThat(
+        receiveHandshake(
+            new JsonReader(
+                new StringReader(
+                    "[{\"id\":123,\"type\":\"handshake\",\"protocol_version\":\"1\"," +
+                        "\"capabilities\":[],\"max_concurrent_commands\":4}")))
+            .getMaxConcurrentCommands(),
+        Matchers.is(4));
+  }
+
+  private WorkerProcessProtocol receiveHandshake(JsonReader jsonReader) throws IOException {
+    WorkerProcessProtocol protocol = new WorkerProcessProtocolZero(
+        fakeProcessExecutor,
+        fakeLaunchedProcess,
+        dummyJsonWriter,
+        jsonReader,
+        newTempFile());
+    protocol.receiveHandshake(123);
+    return protocol;
+  }
+
   @Test
   public void testReceiveHandshakeWithMalformedJSON() throws IOException {
     String malformedJson = "=^..^= meow";
@@ -37,6 +37,7 @@ import com.facebook.buck.util.ProcessExecutorParams;
 import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -46,7 +47,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class WorkerProcessTest {
 
@@ -87,6 +93,99 @@ public class WorkerProcessTest {
     assertThat(filesystem.readFileIfItExists(argsPath).get(), Matchers.equalTo(jobArgs));
   }
 
+  @Test(timeout = 20 * 1000)
+  public void testConcurrentJobsReceiveResponsesInAnyOrder() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    WorkerProcess process = new WorkerProcess(
+        new FakeProcessExecutor(),
+        createDummyParams(),
+        filesystem,
+        Files.createTempDirectory("tmp").toAbsolutePath().normalize());
+    // Holds back every response until both jobs have been sent, then answers the newest first.
+    process.setProtocol(
+        new FakeWorkerProcessProtocol() {
+          private final Deque<Integer> sent = new ArrayDeque<>();
+          private boolean responded = false;
+
+          @Override
+          public int getMaxConcurrentCommands() {
+            return 2;
+          }
+
+          @Override
+          public synchronized void sendCommand(int messageID, WorkerProcessCommand command) {
+            sent.push(messageID);
+            notifyAll();
+          }
+
+          @Override
+          public synchronized WorkerProcessCommandResponse receiveNextCommandResponse()
+              throws IOException {
+            try {
+              while (sent.size() < 2 && !(sent.size() == 1 && responded)) {
+                wait();
+              }
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+            responded = true;
+            int messageID = sent.pop();
+            return WorkerProcessCommandResponse.of(messageID, messageID + 10);
+          }
+        });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<WorkerJobResult> first = executor.submit(() -> process.submitAndWaitForJob("first"));
+      Future<WorkerJobResult> second = executor.submit(() -> process.submitAndWaitForJob("second"));
+      assertThat(
+          ImmutableSet.of(first.get().getExitCode(), second.get().getExitCode()),
+          Matchers.equalTo(ImmutableSet.of(10, 11)));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 20 * 1000)
+  public void testJobWhichFailedToSendIsNotAwaited() throws IOException {
+    WorkerProcess process = new WorkerProcess(
+        new FakeProcessExecutor(),
+        createDummyParams(),
+        new FakeProjectFilesystem(),
+        Files.createTempDirectory("tmp").toAbsolutePath().normalize());
+    // Fails to send the first job, and then answers it before answering the second one.
+    process.setProtocol(
+        new FakeWorkerProcessProtocol() {
+          private int nextResponseID = 0;
+
+          @Override
+          public void sendCommand(int messageID, WorkerProcessCommand command)
+              throws IOException {
+            if (messageID == 0) {
+              throw new IOException("Broken pipe");
+            }
+          }
+
+          @Override
+          public WorkerProcessCommandResponse receiveNextCommandResponse() {
+            return WorkerProcessCommandResponse.of(nextResponseID++, 0);
+          }
+        });
+
+    try {
+      process.submitAndWaitForJob("first");
+      fail("Expected sending the first job to fail.");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), Matchers.equalTo("Broken pipe"));
+    }
+    try {
+      process.submitAndWaitForJob("second");
+      fail("Expected the response to the first job to be rejected.");
+    } catch (HumanReadableException e) {
+      assertThat(e.getMessage(), Matchers.containsString("job 0"));
+    }
+  }
+
   @Test
   public void testClose() throws IOException {
     FakeWorkerProcessProtocol protocol = new FakeWorkerProcessProtocol();
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+/**
+ * Compares tearing down and recreating a header symlink tree with updating it in place, for a
+ * change to a handful of its headers and for a change to many of them.
+ */
+public class SymlinkTreeStepBenchmark {
+  @Param({"50000"})
+  private int linkCount = 50000;
+
+  @Param({"1", "1000"})
+  private int changedLinks = 1;
+
+  private TemporaryPaths tempDir = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+  private Path root;
+  private ImmutableMap<Path, Path> links;
+  private ImmutableMap<Path, Path> changed;
+  private boolean useChanged;
+
+  @Before
+  public void setUpTest() throws Exception {
+    linkCount = 2000;
+    changedLinks = 10;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tempDir.before();
+    filesystem = new ProjectFilesystem(tempDir.getRoot());
+    context = TestExecutionContext.newInstance();
+    root = Paths.get("buck-out/gen/lib/headers");
+
+    // Headers spread across packages of 100, as exported by a large C++ library. The links don't
+    // need their targets to exist, so no headers are written.
+    ImmutableMap.Builder<Path, Path> linksBuilder = ImmutableMap.builder();
+    ImmutableMap.Builder<Path, Path> changedBuilder = ImmutableMap.builder();
+    for (int i = 0; i < linkCount; i++) {
+      Path link = Paths.get("lib", "package" + (i / 100), "header" + i + ".h");
+      Path target = tempDir.getRoot().resolve("src").resolve(link);
+      linksBuilder.put(link, target);
+      changedBuilder.put(
+          link,
+          i < changedLinks ? target.resolveSibling("moved" + i + ".h") : target);
+    }
+    links = linksBuilder.build();
+    changed = changedBuilder.build();
+    useChanged = false;
+
+    new SymlinkTreeStep(filesystem, root, links).execute(context);
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() throws Exception {
+    context.close();
+    tempDir.after();
+  }
+
+  @Test
+  public void updateCorrectness() throws Exception {
+    assertEquals(0, updateInPlace());
+    for (Path link : changed.keySet()) {
+      assertEquals(
+          changed.get(link),
+          Files.readSymbolicLink(filesystem.resolve(root.resolve(link))));
+    }
+    try (Stream<Path> files = Files.walk(filesystem.resolve(root))) {
+      assertEquals(linkCount, files.filter(Files::isSymbolicLink).count());
+    }
+  }
+
+  @Benchmark
+  public int rebuildFromScratch() throws Exception {
+    useChanged = !useChanged;
+    new MakeCleanDirectoryStep(filesystem, root).execute(context);
+    return new SymlinkTreeStep(filesystem, root, useChanged ? changed : links)
+        .execute(context)
+        .getExitCode();
+  }
+
+  @Benchmark
+  public int updateInPlace() {
+    useChanged = !useChanged;
+    return new SymlinkTreeStep(filesystem, root, useChanged ? changed : links)
+        .execute(context)
+        .getExitCode();
+  }
+}
@@ -17,11 +17,14 @@
 package com.facebook.buck.step.fs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.util.environment.Platform;
 import com.google.common.collect.ImmutableMap;
 
 import org.junit.Rule;
@@ -29,7 +32,10 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.Paths;
 import java.util.Optional;
 
@@ -76,4 +82,61 @@ public class SymlinkTreeStepTest {
 
   }
 
+  @Test
+  public void testOnlyChangedLinksAreUpdated() throws IOException {
+    assumeFalse(Platform.detect() == Platform.WINDOWS);
+
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+    ExecutionContext context = TestExecutionContext.newInstance();
+    Path root = Paths.get("symlink-tree-root");
+
+    Path source1 = Paths.get("source1");
+    projectFilesystem.writeContentsToPath("foo", source1);
+    Path source2 = Paths.get("source2");
+    projectFilesystem.writeContentsToPath("bar", source2);
+
+    Path unchanged = Paths.get("unchanged");
+    Path retargeted = Paths.get("dir", "retargeted");
+    Path removed = Paths.get("removed", "link");
+    Path added = Paths.get("added", "link");
+
+    assertEquals(
+        0,
+        new SymlinkTreeStep(
+            projectFilesystem,
+            root,
+            ImmutableMap.of(
+                unchanged, source1,
+                retargeted, source1,
+                removed, source1))
+            .execute(context)
+            .getExitCode());
+    Object unchangedKey = getFileKey(projectFilesystem.resolve(root.resolve(unchanged)));
+    projectFilesystem.writeContentsToPath("stray", root.resolve("dir").resolve("stray"));
+
+    assertEquals(
+        0,
+        new SymlinkTreeStep(
+            projectFilesystem,
+            root,
+            ImmutableMap.of(
+                unchanged, source1,
+                retargeted, source2,
+                added, source2))
+            .execute(context)
+            .getExitCode());
+
+    assertEquals(
+        unchangedKey,
+        getFileKey(projectFilesystem.resolve(root.resolve(unchanged))));
+    assertEquals(Optional.of("bar"), projectFilesystem.readFirstLine(root.resolve(retargeted)));
+    assertEquals(Optional.of("bar"), projectFilesystem.readFirstLine(root.resolve(added)));
+    assertFalse(projectFilesystem.exists(root.resolve("removed")));
+    assertFalse(projectFilesystem.exists(root.resolve("dir").resolve("stray")));
+  }
+
+  private static Object getFileKey(Path path) throws IOException {
+    return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+        .fileKey();
+  }
 }
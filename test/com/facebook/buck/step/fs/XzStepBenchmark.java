@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.io.ByteStreams;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tukaani.xz.XZ;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Measures how long {@link XzStep} takes to compress a blob shaped roughly like the concatenated
+ * native libraries or secondary dexes of a large app, across compression levels and numbers of
+ * threads.
+ */
+public class XzStepBenchmark {
+  @Param({"4", "9"})
+  private int compressionLevel = 9;
+
+  @Param({"1", "2", "4", "8"})
+  private int threads = 4;
+
+  @Param({"64"})
+  private int sizeMegabytes = 64;
+
+  private TemporaryPaths tempDir = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path source;
+  private Path destination;
+  private ExecutionContext context;
+
+  @Before
+  public void setUpTest() throws Exception {
+    compressionLevel = 1;
+    threads = 2;
+    sizeMegabytes = 3;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tempDir.before();
+    filesystem = new ProjectFilesystem(tempDir.getRoot());
+    source = tempDir.getRoot().resolve("blob");
+    destination = tempDir.getRoot().resolve("blob.xz");
+    Files.write(source, createBlob(sizeMegabytes * 1024 * 1024));
+    context = TestExecutionContext.newInstance();
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() throws Exception {
+    context.close();
+    tempDir.after();
+  }
+
+  @Test
+  public void compressCorrectness() throws Exception {
+    assertEquals(0, compress());
+    try (InputStream in = new XZInputStream(Files.newInputStream(destination))) {
+      assertArrayEquals(Files.readAllBytes(source), ByteStreams.toByteArray(in));
+    }
+  }
+
+  @Benchmark
+  public int compress() {
+    return new XzStep(
+        filesystem,
+        source,
+        destination,
+        compressionLevel,
+        /* keep */ true,
+        XZ.CHECK_CRC32,
+        threads)
+        .execute(context)
+        .getExitCode();
+  }
+
+  /**
+   * Machine code and dex files repeat short runs of bytes a lot, with little repetition across
+   * long distances, so the blob is random records drawn from a small vocabulary of random chunks.
+   */
+  private static byte[] createBlob(int size) {
+    Random random = new Random(0);
+    byte[][] vocabulary = new byte[4096][];
+    for (int i = 0; i < vocabulary.length; i++) {
+      vocabulary[i] = new byte[4 + random.nextInt(28)];
+      random.nextBytes(vocabulary[i]);
+    }
+    byte[] blob = new byte[size];
+    int offset = 0;
+    while (offset < size) {
+      byte[] chunk = vocabulary[random.nextInt(vocabulary.length)];
+      int length = Math.min(chunk.length, size - offset);
+      System.arraycopy(chunk, 0, blob, offset, length);
+      offset += length;
+    }
+    return blob;
+  }
+}
@@ -29,6 +29,8 @@ import com.google.common.io.ByteSource;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
 import org.tukaani.xz.XZ;
 import org.tukaani.xz.XZInputStream;
 
@@ -36,8 +38,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Random;
 
 public class XzStepTest {
 
@@ -63,7 +68,8 @@ public class XzStepTest {
         destinationFile.toPath(),
         /* compressionLevel -- for faster testing */ 1,
         /* keep */ true,
-        XZ.CHECK_CRC32);
+        XZ.CHECK_CRC32,
+        /* threads */ 1);
 
     ExecutionContext context = TestExecutionContext.newInstance();
 
@@ -81,4 +87,50 @@ public class XzStepTest {
         "Decompressed file must be identical to original.",
         original.contentEquals(decompressed));
   }
+
+  @Test
+  public void testXzStepSplitsLargeFilesIntoBlocksWhenUsingThreads() throws IOException {
+    final Path sourceFile = tmp.newFile("xzstep.blocks").toPath();
+    Random random = new Random(0);
+    StringBuilder builder = new StringBuilder();
+    while (builder.length() < 3 * ParallelXzCompressor.MIN_BLOCK_SIZE + 12345) {
+      builder.append("line ").append(random.nextInt(1000)).append('\n');
+    }
+    Files.write(sourceFile, builder.toString().getBytes(StandardCharsets.UTF_8));
+    final File destinationFile = tmp.newFile("xzstep.blocks.xz");
+
+    XzStep step = new XzStep(
+        new ProjectFilesystem(tmp.getRoot().toPath()),
+        sourceFile,
+        destinationFile.toPath(),
+        /* compressionLevel -- for faster testing */ 1,
+        /* keep */ true,
+        XZ.CHECK_CRC32,
+        /* threads */ 4);
+
+    ExecutionContext context = TestExecutionContext.newInstance();
+
+    assertEquals(0, step.execute(context).getExitCode());
+    assertEquals("xz -z -1 -T4 --keep --check=crc32 " + sourceFile, step.getDescription(context));
+
+    // Reading the file back from its index checks that the index and footer are well formed.
+    try (SeekableXZInputStream in =
+             new SeekableXZInputStream(new SeekableFileInputStream(destinationFile))) {
+      assertEquals(1, in.getStreamCount());
+      assertEquals(3, in.getBlockCount());
+      assertEquals(Files.size(sourceFile), in.length());
+    }
+
+    ByteSource original = PathByteSource.asByteSource(sourceFile);
+    ByteSource decompressed = new ByteSource() {
+      @Override
+      public InputStream openStream() throws IOException {
+        return new XZInputStream(new FileInputStream(destinationFile));
+      }
+    };
+
+    assertTrue(
+        "Decompressed file must be identical to original.",
+        original.contentEquals(decompressed));
+  }
 }
@@ -44,6 +44,12 @@ public class TestCustomZipOutputStream extends CustomZipOutputStream {
     currentEntryContent.reset();
   }
 
+  @Override
+  protected void actuallyPutNextDeflatedEntry(ZipEntry entry) throws IOException {
+    // The content of the entry is recorded as it is written, without inflating it.
+    actuallyPutNextEntry(entry);
+  }
+
   @Override
   protected void actuallyCloseEntry() throws IOException {
     zipEntries.add(currentEntry);
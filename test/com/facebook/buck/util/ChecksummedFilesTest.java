@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class ChecksummedFilesTest {
+
+  private static final int MAGIC = 0x1234_5678;
+  private static final int VERSION = 3;
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void writtenContentsAreReadBack() throws IOException {
+    Path path = tmp.getRoot().resolve("state/file");
+    ChecksummedFiles.write(path, MAGIC, VERSION, outputStream -> outputStream.writeUTF("first"));
+    ChecksummedFiles.write(path, MAGIC, VERSION, outputStream -> outputStream.writeUTF("second"));
+
+    assertEquals("second", read(path, VERSION));
+    // Only the file itself is left behind.
+    assertEquals(1, path.getParent().toFile().listFiles().length);
+  }
+
+  @Test
+  public void truncatedCorruptOrOtherVersionFilesFailToRead() throws IOException {
+    Path path = tmp.getRoot().resolve("file");
+    ChecksummedFiles.write(path, MAGIC, VERSION, outputStream -> outputStream.writeUTF("value"));
+    byte[] bytes = Files.readAllBytes(path);
+
+    assertReadFails(path, VERSION + 1, "Unsupported version");
+
+    Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+    assertReadFails(path, VERSION, "Missing checksum");
+
+    bytes[bytes.length - 9] ^= 1;
+    Files.write(path, bytes);
+    assertReadFails(path, VERSION, "Checksum mismatch");
+  }
+
+  private static String read(Path path, int version) throws IOException {
+    try (InputStream rawInputStream = Files.newInputStream(path)) {
+      return ChecksummedFiles.read(
+          rawInputStream,
+          MAGIC,
+          version,
+          inputStream -> inputStream.readUTF());
+    }
+  }
+
+  private static void assertReadFails(Path path, int version, String message) {
+    try {
+      read(path, version);
+      fail("Expected reading " + path + " to fail.");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), Matchers.containsString(message));
+    }
+  }
+}
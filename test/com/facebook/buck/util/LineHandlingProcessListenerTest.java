@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class LineHandlingProcessListenerTest {
+
+  @Test
+  public void linesAreSplitLikeAnInputStreamConsumerSplitsThem() {
+    List<String> stdout = new ArrayList<>();
+    List<String> stderr = new ArrayList<>();
+    LineHandlingProcessListener listener = new LineHandlingProcessListener(
+        UTF_8,
+        Optional.empty(),
+        stdout::add,
+        stderr::add);
+
+    // Lines and line endings split across reads are put back together.
+    listener.onStdout(ByteBuffer.wrap("one\ntw".getBytes(UTF_8)), /* closed */ false);
+    listener.onStdout(ByteBuffer.wrap("o\r".getBytes(UTF_8)), /* closed */ false);
+    listener.onStdout(ByteBuffer.wrap("\nthree\r\rfour".getBytes(UTF_8)), /* closed */ true);
+    listener.onStderr(ByteBuffer.wrap("\n\nerror\n".getBytes(UTF_8)), /* closed */ true);
+
+    assertEquals(ImmutableList.of("one", "two", "three", "", "four"), stdout);
+    assertEquals(ImmutableList.of("", "", "error"), stderr);
+  }
+
+  @Test
+  public void charactersSplitAcrossReadsAreDecoded() {
+    List<String> stdout = new ArrayList<>();
+    LineHandlingProcessListener listener = new LineHandlingProcessListener(
+        UTF_8,
+        Optional.empty(),
+        stdout::add,
+        line -> { });
+
+    byte[] snowman = "☃\n".getBytes(UTF_8);
+    ByteBuffer first = ByteBuffer.allocate(snowman.length);
+    first.put(snowman, 0, 2).flip();
+    listener.onStdout(first, /* closed */ false);
+    // Whatever wasn't decoded is left in the buffer to be passed back in with the next read.
+    first.compact();
+    first.put(snowman, 2, snowman.length - 2).flip();
+    listener.onStdout(first, /* closed */ true);
+
+    assertEquals(ImmutableList.of("☃"), stdout);
+  }
+}
@@ -18,7 +18,9 @@ package com.facebook.buck.util;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 import com.facebook.buck.testutil.TestConsole;
 import com.facebook.buck.util.environment.Platform;
@@ -130,6 +132,47 @@ public class ProcessExecutorTest {
         result.isTimedOut());
   }
 
+  @Test
+  public void testStdinIsWrittenAndStderrIsCaptured() throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+    ProcessExecutor executor = new DefaultProcessExecutor(new TestConsole(Verbosity.ALL));
+    ProcessExecutorParams params = ProcessExecutorParams.ofCommand(
+        "sh", "-c", "cat; printf 'one\\r\\ntwo' >&2");
+    ProcessExecutor.Result result = executor.launchAndExecute(
+        params,
+        EnumSet.of(
+            ProcessExecutor.Option.EXPECTING_STD_OUT,
+            ProcessExecutor.Option.EXPECTING_STD_ERR),
+        /* stdin */ Optional.of("first\nsecond"),
+        /* timeOutMs */ Optional.empty(),
+        /* timeOutHandler */ Optional.empty());
+    assertEquals(0, result.getExitCode());
+    assertEquals(String.format("first%nsecond%n"), result.getStdout().get());
+    assertEquals(String.format("one%ntwo%n"), result.getStderr().get());
+  }
+
+  @Test
+  public void testProcessTimeoutWithoutHandler() throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+    ProcessExecutor executor = new DefaultProcessExecutor(new TestConsole(Verbosity.ALL));
+    ProcessExecutor.Result result = executor.launchAndExecute(
+        ProcessExecutorParams.ofCommand("sleep", "50"),
+        /* options */ ImmutableSet.of(),
+        /* stdin */ Optional.empty(),
+        /* timeOutMs */ Optional.of((long) 100),
+        /* timeOutHandler */ Optional.empty());
+    assertTrue("process was reported as timed out", result.isTimedOut());
+    assertNotEquals(0, result.getExitCode());
+  }
+
+  @Test(expected = IOException.class)
+  public void testProgramWhichCannotBeFoundFailsToStart()
+      throws IOException, InterruptedException {
+    ProcessExecutor executor = new DefaultProcessExecutor(new TestConsole(Verbosity.ALL));
+    executor.launchAndExecute(
+        ProcessExecutorParams.ofCommand("this-better-not-be-a-process-on-your-system-for-real"));
+  }
+
   private static String[] makeCommandArray(String command) {
     StringTokenizer st = new StringTokenizer(command);
     String[] cmdarray = new String[st.countTokens()];
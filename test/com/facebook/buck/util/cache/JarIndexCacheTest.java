@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class JarIndexCacheTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void listsFilesByPackage() throws IOException {
+    Path jar = writeJar("lib.jar", "com/example/A.class", "com/example/B.class",
+        "com/example/sub/C.class", "Root.class", "META-INF/MANIFEST.MF");
+    JarIndexCache.JarIndex index = new JarIndexCache()
+        .get(jar, hashes(jar, "aa"))
+        .get();
+
+    assertEquals(ImmutableList.of("A.class", "B.class"), index.getFileNames("com.example"));
+    assertEquals(ImmutableList.of("C.class"), index.getFileNames("com.example.sub"));
+    assertEquals(ImmutableList.of("Root.class"), index.getFileNames(""));
+    assertEquals(ImmutableList.of(), index.getFileNames("com"));
+  }
+
+  @Test
+  public void jarsAreReindexedWhenTheirHashChanges() throws IOException {
+    Path jar = writeJar("lib.jar", "com/example/A.class");
+    JarIndexCache cache = new JarIndexCache();
+    JarIndexCache.JarIndex first = cache.get(jar, hashes(jar, "aa")).get();
+    assertSame(first, cache.get(jar, hashes(jar, "aa")).get());
+
+    writeJar("lib.jar", "com/example/A.class", "com/example/B.class");
+    assertSame(first, cache.get(jar, hashes(jar, "aa")).get());
+    assertEquals(
+        ImmutableList.of("A.class", "B.class"),
+        cache.get(jar, hashes(jar, "bb")).get().getFileNames("com.example"));
+  }
+
+  @Test
+  public void cacheIsBoundedByTheNumberOfEntries() throws IOException {
+    Path first = writeJar("first.jar", "A.class", "B.class");
+    Path second = writeJar("second.jar", "C.class", "D.class");
+    JarIndexCache cache = new JarIndexCache(3);
+    cache.get(first, hashes(first, "aa"));
+    cache.get(second, hashes(second, "bb"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void unhashableOrUnreadableJarsAreNotIndexed() throws IOException {
+    Path jar = writeJar("lib.jar", "A.class");
+    Path notAJar = tmp.newFile("not_a.jar");
+    Files.write(notAJar, "garbage".getBytes());
+    JarIndexCache cache = new JarIndexCache();
+
+    assertFalse(cache.get(jar, new FakeFileHashCache(ImmutableMap.of())).isPresent());
+    assertFalse(cache.get(notAJar, hashes(notAJar, "aa")).isPresent());
+  }
+
+  private Path writeJar(String name, String... entries) throws IOException {
+    Path jar = tmp.getRoot().resolve(name);
+    try (OutputStream outputStream = Files.newOutputStream(jar);
+         ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+      for (String entry : entries) {
+        zipOutputStream.putNextEntry(new ZipEntry(entry));
+        zipOutputStream.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  private static FakeFileHashCache hashes(Path path, String hash) {
+    return new FakeFileHashCache(ImmutableMap.of(path, HashCode.fromString(hash)));
+  }
+}
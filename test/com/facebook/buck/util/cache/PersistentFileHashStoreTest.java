@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+public class PersistentFileHashStoreTest {
+
+  private static final Path STORE = Paths.get("buck-out/.filehashes");
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws Exception {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+  }
+
+  @Test
+  public void storedHashIsReusedAfterReloadWhileStatDataIsUnchanged() throws IOException {
+    Path path = Paths.get("Foo.java");
+    FileTime oldTime = writeOldFile(path, "original");
+
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem, STORE);
+    assertEquals(sha1("original"), store.get(path));
+    store.save();
+
+    // Same length, same mtime, same inode: the stored hash is trusted without reading the file.
+    filesystem.writeContentsToPath("modified", path);
+    Files.setLastModifiedTime(filesystem.resolve(path), oldTime);
+
+    PersistentFileHashStore reloaded = PersistentFileHashStore.load(filesystem, STORE);
+    assertEquals(1, reloaded.size());
+    assertEquals(sha1("original"), reloaded.get(path));
+  }
+
+  @Test
+  public void fileIsRehashedWhenModificationTimeChanges() throws IOException {
+    Path path = Paths.get("Foo.java");
+    writeOldFile(path, "original");
+
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem, STORE);
+    assertEquals(sha1("original"), store.get(path));
+    store.save();
+
+    writeOldFile(path, "modified", TimeUnit.HOURS.toMillis(1));
+
+    PersistentFileHashStore reloaded = PersistentFileHashStore.load(filesystem, STORE);
+    assertEquals(sha1("modified"), reloaded.get(path));
+  }
+
+  @Test
+  public void recentlyModifiedFilesAreNotRecorded() throws IOException {
+    Path path = Paths.get("Foo.java");
+    filesystem.writeContentsToPath("contents", path);
+
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem, STORE);
+    assertEquals(sha1("contents"), store.get(path));
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  public void corruptStoreIsDiscardedOnLoad() throws IOException {
+    Path path = Paths.get("Foo.java");
+    writeOldFile(path, "contents");
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem, STORE);
+    store.get(path);
+    store.save();
+
+    byte[] bytes = Files.readAllBytes(filesystem.resolve(STORE));
+    bytes[bytes.length - 1] ^= 0xFF;
+    Files.write(filesystem.resolve(STORE), bytes);
+
+    PersistentFileHashStore reloaded = PersistentFileHashStore.load(filesystem, STORE);
+    assertEquals(0, reloaded.size());
+    assertEquals(sha1("contents"), reloaded.get(path));
+  }
+
+  @Test
+  public void verifyReportsEntriesWhoseContentsNoLongerMatch() throws IOException {
+    Path path = Paths.get("Foo.java");
+    FileTime oldTime = writeOldFile(path, "original");
+    Path other = Paths.get("Bar.java");
+    writeOldFile(other, "other");
+
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem, STORE);
+    store.get(path);
+    store.get(other);
+
+    filesystem.writeContentsToPath("modified", path);
+    Files.setLastModifiedTime(filesystem.resolve(path), oldTime);
+    filesystem.deleteFileAtPath(other);
+
+    FileHashCacheVerificationResult result = store.verify();
+    assertEquals(1, result.getFilesExamined());
+    assertThat(
+        result.getVerificationErrors(),
+        Matchers.contains(Matchers.startsWith(path.toString())));
+    assertEquals(1, store.size());
+  }
+
+  @Test
+  public void defaultFileHashCacheConsultsStore() throws IOException {
+    Path path = Paths.get("Foo.java");
+    writeOldFile(path, "contents");
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem, STORE);
+
+    DefaultFileHashCache cache =
+        new DefaultFileHashCache(filesystem, Optional.empty(), Optional.of(store));
+    assertEquals(sha1("contents"), cache.get(filesystem.resolve(path)));
+    assertEquals(1, store.size());
+  }
+
+  private FileTime writeOldFile(Path path, String contents) throws IOException {
+    return writeOldFile(path, contents, 0);
+  }
+
+  private FileTime writeOldFile(Path path, String contents, long offsetMillis)
+      throws IOException {
+    filesystem.writeContentsToPath(contents, path);
+    FileTime time = FileTime.fromMillis(
+        TimeUnit.SECONDS.toMillis(1234567890) + offsetMillis);
+    Files.setLastModifiedTime(filesystem.resolve(path), time);
+    return time;
+  }
+
+  private static HashCode sha1(String contents) {
+    return Hashing.sha1().hashString(contents, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+public class ParallelZipWriterTest {
+
+  private static final int BLOCK_SIZE = 1024;
+
+  private ListeningExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void entriesSplitIntoBlocksAreReadableByJavaUtilZip() throws IOException {
+    byte[] large = createCompressibleBytes(20 * BLOCK_SIZE + 17);
+    byte[] exactlyOneBlock = createCompressibleBytes(BLOCK_SIZE);
+    byte[] stored = createCompressibleBytes(3 * BLOCK_SIZE);
+    byte[] zip = writeZip(executor, 4, large, exactlyOneBlock, stored);
+
+    try (ZipInputStream in = new ZipInputStream(ByteSource.wrap(zip).openStream())) {
+      assertEntry(in, "dir/", new byte[0]);
+      assertEntry(in, "dir/large", large);
+      assertEntry(in, "exactly-one-block", exactlyOneBlock);
+      assertEntry(in, "empty", new byte[0]);
+      ZipEntry entry = assertEntry(in, "stored", stored);
+      assertEquals(ZipEntry.STORED, entry.getMethod());
+      assertNull(in.getNextEntry());
+    }
+
+    // Check the central directory too, which records the sizes and CRCs we computed.
+    Path path = Files.createTempFile("parallel", ".zip");
+    try {
+      Files.write(path, zip);
+      try (ZipFile zipFile = new ZipFile(path.toFile())) {
+        ZipEntry entry = zipFile.getEntry("dir/large");
+        assertEquals(large.length, entry.getSize());
+        assertEquals(Hashing.crc32().hashBytes(large).padToLong(), entry.getCrc());
+        assertTrue(entry.getCompressedSize() < large.length);
+        try (InputStream entryIn = zipFile.getInputStream(entry)) {
+          assertArrayEquals(large, ByteStreams.toByteArray(entryIn));
+        }
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void outputDoesNotDependOnParallelism() throws IOException {
+    byte[] large = createCompressibleBytes(50 * BLOCK_SIZE);
+    byte[] oneBlock = createCompressibleBytes(BLOCK_SIZE);
+    byte[] stored = createCompressibleBytes(10);
+
+    assertArrayEquals(
+        writeZip(MoreExecutors.newDirectExecutorService(), 1, large, oneBlock, stored),
+        writeZip(executor, 3, large, oneBlock, stored));
+  }
+
+  @Test
+  public void blocksDeflatedSeparatelyFormOneStream() throws IOException {
+    byte[] data = createCompressibleBytes(3 * BLOCK_SIZE);
+    byte[] first = Arrays.copyOfRange(data, 0, BLOCK_SIZE);
+    byte[] second = Arrays.copyOfRange(data, BLOCK_SIZE, 3 * BLOCK_SIZE);
+
+    ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+    deflated.write(
+        ParallelZipWriter.deflateBlock(Deflater.DEFAULT_COMPRESSION, null, first, false));
+    deflated.write(
+        ParallelZipWriter.deflateBlock(Deflater.DEFAULT_COMPRESSION, first, second, true));
+
+    Inflater inflater = new Inflater(/* nowrap */ true);
+    try (InputStream in = new InflaterInputStream(
+             ByteSource.wrap(deflated.toByteArray()).openStream(),
+             inflater)) {
+      assertArrayEquals(data, ByteStreams.toByteArray(in));
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static byte[] writeZip(
+      ListeningExecutorService executor,
+      int parallelism,
+      byte[] large,
+      byte[] oneBlock,
+      byte[] stored) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ParallelZipWriter writer = new ParallelZipWriter(
+             ZipOutputStreams.newOutputStream(out),
+             executor,
+             parallelism,
+             BLOCK_SIZE)) {
+      writer.putNextEntry(new CustomZipEntry("dir/"), ByteSource.empty());
+      writer.putNextEntry(new CustomZipEntry("dir/large"), ByteSource.wrap(large));
+      writer.putNextEntry(new CustomZipEntry("exactly-one-block"), ByteSource.wrap(oneBlock));
+      writer.putNextEntry(new CustomZipEntry("empty"), ByteSource.empty());
+      CustomZipEntry storedEntry = new CustomZipEntry("stored");
+      storedEntry.setCompressionLevel(Deflater.NO_COMPRESSION);
+      writer.putNextEntry(storedEntry, ByteSource.wrap(stored));
+    }
+    return out.toByteArray();
+  }
+
+  private static ZipEntry assertEntry(ZipInputStream in, String name, byte[] contents)
+      throws IOException {
+    ZipEntry entry = in.getNextEntry();
+    assertEquals(name, entry.getName());
+    assertArrayEquals(contents, ByteStreams.toByteArray(in));
+    return entry;
+  }
+
+  private static byte[] createCompressibleBytes(int length) {
+    Random random = new Random(length);
+    String[] words = {"able ", "baker ", "charlie ", "dog ", "easy ", "fox "};
+    StringBuilder builder = new StringBuilder();
+    while (builder.length() < length) {
+      builder.append(words[random.nextInt(words.length)]);
+    }
+    return builder.substring(0, length).getBytes(UTF_8);
+  }
+}
@@ -16,13 +16,16 @@
 
 package com.facebook.buck.zip;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeThat;
 
 import com.facebook.buck.io.MoreFiles;
 import com.facebook.buck.io.MorePosixFilePermissions;
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.testutil.Zip;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.util.environment.Platform;
@@ -40,6 +43,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.zip.ZipEntry;
 
@@ -153,4 +157,141 @@ public class UnzipTest {
     assertThat(Files.readSymbolicLink(link).toString(), Matchers.equalTo("target.txt"));
   }
 
+  @Test
+  public void testExtractZipStream() throws IOException {
+    final long time = ZipConstants.getFakeTime() / 1000 * 1000;
+
+    // Streamed archives keep the sizes of their entries in data descriptors after the contents.
+    try (ZipArchiveOutputStream zip =
+             new ZipArchiveOutputStream(Files.newOutputStream(zipFile))) {
+      zip.putArchiveEntry(new ZipArchiveEntry("emptydir/"));
+      zip.closeArchiveEntry();
+      ZipArchiveEntry entry = new ZipArchiveEntry("subdir/test.exe");
+      entry.setUnixMode((int) MorePosixFilePermissions.toMode(
+          PosixFilePermissions.fromString("r-x------")));
+      entry.setTime(time);
+      zip.putArchiveEntry(entry);
+      zip.write(DUMMY_FILE_CONTENTS);
+      zip.closeArchiveEntry();
+      zip.putArchiveEntry(new ZipArchiveEntry("1.bin"));
+      zip.write(DUMMY_FILE_CONTENTS);
+      zip.closeArchiveEntry();
+    }
+
+    Path extractFolder = tmpFolder.newFolder();
+    ImmutableList<Path> result;
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      result = Unzip.extractZipStream(
+          input,
+          new ProjectFilesystem(extractFolder),
+          Unzip.ExistingFileMode.OVERWRITE);
+    }
+    assertTrue(Files.isDirectory(extractFolder.resolve("emptydir")));
+    Path exe = extractFolder.resolve("subdir/test.exe");
+    assertTrue(Files.isExecutable(exe));
+    assertThat(Files.getLastModifiedTime(exe).toMillis(), Matchers.equalTo(time));
+    assertArrayEquals(DUMMY_FILE_CONTENTS, Files.readAllBytes(exe));
+    assertFalse(Files.isExecutable(extractFolder.resolve("1.bin")));
+    assertArrayEquals(DUMMY_FILE_CONTENTS, Files.readAllBytes(extractFolder.resolve("1.bin")));
+    assertEquals(
+        ImmutableList.of(Paths.get("subdir/test.exe"), Paths.get("1.bin")),
+        result);
+  }
+
+  @Test
+  public void testExtractZipStreamWithLargeCentralDirectory() throws IOException {
+    // Enough entries for the central directory not to fit in the bytes recorded by default.
+    int entryCount = 5000;
+    try (Zip zip = new Zip(zipFile, true)) {
+      for (int i = 0; i < entryCount; i++) {
+        zip.add(String.format("some/rather/long/directory/name/file-%d.bin", i), new byte[0]);
+      }
+      zip.add("last.bin", DUMMY_FILE_CONTENTS);
+    }
+
+    Path extractFolder = tmpFolder.newFolder();
+    ImmutableList<Path> result;
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      result = Unzip.extractZipStream(
+          input,
+          new ProjectFilesystem(extractFolder),
+          Unzip.ExistingFileMode.OVERWRITE);
+    }
+    assertEquals(entryCount + 1, result.size());
+    assertArrayEquals(DUMMY_FILE_CONTENTS, Files.readAllBytes(extractFolder.resolve("last.bin")));
+  }
+
+  @Test
+  public void testExtractZipStreamWithZip64CentralDirectory() throws IOException {
+    // Too many entries for the end of central directory record to count, so the archive keeps the
+    // count in a zip64 end of central directory record instead.
+    try (ZipArchiveOutputStream zip =
+             new ZipArchiveOutputStream(Files.newOutputStream(zipFile))) {
+      for (int i = 0; i < 0x10000; i++) {
+        zip.putArchiveEntry(new ZipArchiveEntry(String.format("dir/%d/", i)));
+        zip.closeArchiveEntry();
+      }
+      ZipArchiveEntry entry = new ZipArchiveEntry("dir/test.exe");
+      entry.setUnixMode((int) MorePosixFilePermissions.toMode(
+          PosixFilePermissions.fromString("r-x------")));
+      zip.putArchiveEntry(entry);
+      zip.write(DUMMY_FILE_CONTENTS);
+      zip.closeArchiveEntry();
+    }
+
+    Path extractFolder = tmpFolder.newFolder();
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      Unzip.extractZipStream(
+          input,
+          new ProjectFilesystem(extractFolder),
+          Unzip.ExistingFileMode.OVERWRITE);
+    }
+    Path exe = extractFolder.resolve("dir/test.exe");
+    assertTrue(Files.isExecutable(exe));
+    assertArrayEquals(DUMMY_FILE_CONTENTS, Files.readAllBytes(exe));
+  }
+
+  @Test
+  public void testExtractZipStreamCleansDirectories() throws IOException {
+    try (Zip zip = new Zip(zipFile, true)) {
+      zip.add("dir/new.bin", DUMMY_FILE_CONTENTS);
+    }
+
+    Path extractFolder = tmpFolder.newFolder();
+    Files.createDirectories(extractFolder.resolve("dir"));
+    Files.write(extractFolder.resolve("dir/stale.bin"), DUMMY_FILE_CONTENTS);
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      Unzip.extractZipStream(
+          input,
+          new ProjectFilesystem(extractFolder),
+          Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+    }
+    assertTrue(Files.exists(extractFolder.resolve("dir/new.bin")));
+    assertFalse(Files.exists(extractFolder.resolve("dir/stale.bin")));
+  }
+
+  @Test
+  public void testExtractZipStreamSymlink() throws IOException {
+    assumeThat(Platform.detect(), Matchers.is(Matchers.not(Platform.WINDOWS)));
+
+    try (ZipArchiveOutputStream zip =
+             new ZipArchiveOutputStream(Files.newOutputStream(zipFile))) {
+      ZipArchiveEntry entry = new ZipArchiveEntry("link.txt");
+      entry.setUnixMode((int) MoreFiles.S_IFLNK);
+      zip.putArchiveEntry(entry);
+      zip.write("target.txt".getBytes(Charsets.UTF_8));
+      zip.closeArchiveEntry();
+    }
+
+    Path extractFolder = tmpFolder.newFolder();
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      Unzip.extractZipStream(
+          input,
+          new ProjectFilesystem(extractFolder),
+          Unzip.ExistingFileMode.OVERWRITE);
+    }
+    Path link = extractFolder.resolve("link.txt");
+    assertTrue(Files.isSymbolicLink(link));
+    assertThat(Files.readSymbolicLink(link).toString(), Matchers.equalTo("target.txt"));
+  }
 }